@@ -0,0 +1,460 @@
+package quadtree.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import quadtree.core.Palette;
+import quadtree.core.PixelBuffer;
+import quadtree.core.QualityEvaluator;
+import quadtree.core.QualityMetrics;
+import quadtree.core.QuadTree;
+import quadtree.core.RegionStatistics;
+import quadtree.io.QuadTreeWriter;
+
+/**
+ * <p>Busca a precisão de construção de uma QuadTree que atende a metas de
+ * qualidade (PSNR e SSIM mínimos) e de tamanho do arquivo .quad.</p>
+ * 
+ * <p>A qualidade e o tamanho crescem com a precisão, de modo que a precisão 
+ * é encontrada por busca binária: com metas de qualidade, a menor precisão 
+ * que as atende, isto é, a árvore mais barata com a qualidade exigida; 
+ * apenas com o tamanho máximo, a maior precisão dentro do tamanho. Se as 
+ * metas de qualidade excedem o tamanho máximo, o resultado é a árvore de 
+ * melhor qualidade dentro do tamanho, marcada como não atendida.</p>
+ * 
+ * <p>A imagem é decodificada uma única vez pelo chamador, e as construções
+ * compartilham as estatísticas das regiões ({@link RegionStatistics}): os
+ * pixels de cada região são percorridos apenas na primeira construção que 
+ * a avalia. O tamanho do arquivo é medido gravando a árvore em um fluxo que
+ * apenas conta os bytes.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class AccuracyTuner {
+	
+	/**
+	 * Intervalo de precisão em que a busca termina
+	 */
+	public static final double DEFAULT_TOLERANCE = 1.0 / 256;
+	
+	/**
+	 * Os pixels da imagem
+	 */
+	private PixelBuffer image;
+	
+	/**
+	 * Estatísticas das regiões compartilhadas entre as construções
+	 */
+	private RegionStatistics statistics;
+	
+	/**
+	 * PSNR mínima (dB) ou 0 se não há meta
+	 */
+	private double minPsnr;
+	
+	/**
+	 * SSIM mínimo ou 0 se não há meta
+	 */
+	private double minSsim;
+	
+	/**
+	 * Tamanho máximo do arquivo ou 0 se não há meta
+	 */
+	private long maxFileBytes;
+	
+	/**
+	 * Capacidade da paleta das árvores ou 0 se as árvores não utilizam
+	 * paleta
+	 */
+	private int paletteSize;
+	
+	/**
+	 * Indica se os arquivos são gravados com codificação entrópica
+	 */
+	private boolean entropyCoding;
+	
+	/**
+	 * Intervalo de precisão em que a busca termina
+	 */
+	private double tolerance;
+	
+	/**
+	 * As precisões avaliadas
+	 */
+	private Map<Double, Candidate> candidates;
+	
+	/**
+	 * Cria o ajuste para uma imagem
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 */
+	public AccuracyTuner(PixelBuffer image) {
+		this(image, new RegionStatistics());
+	}
+	
+	/**
+	 * Cria o ajuste para uma imagem, reutilizando as estatísticas das 
+	 * regiões de construções anteriores da mesma imagem
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param statistics As estatísticas das regiões da imagem
+	 * 
+	 * @see quadtree.util.ImageCache#getStatistics(java.io.File)
+	 */
+	public AccuracyTuner(PixelBuffer image, RegionStatistics statistics) {
+		
+		this.image = image;
+		this.statistics = statistics;
+		
+		candidates = new HashMap<>();
+		tolerance = DEFAULT_TOLERANCE;
+	
+	}
+	
+	/**
+	 * Define a PSNR mínima das árvores
+	 * 
+	 * @param minPsnr A PSNR mínima em dB ou 0 se não há meta
+	 */
+	public void setMinPsnr(double minPsnr) {
+		this.minPsnr = minPsnr;
+	}
+	
+	/**
+	 * Define o SSIM mínimo das árvores
+	 * 
+	 * @param minSsim O SSIM mínimo, até 1, ou 0 se não há meta
+	 */
+	public void setMinSsim(double minSsim) {
+		this.minSsim = minSsim;
+	}
+	
+	/**
+	 * Define o tamanho máximo do arquivo .quad das árvores
+	 * 
+	 * @param maxFileBytes O tamanho máximo em bytes ou 0 se não há meta
+	 */
+	public void setMaxFileBytes(long maxFileBytes) {
+		this.maxFileBytes = maxFileBytes;
+	}
+	
+	/**
+	 * Define a capacidade da paleta das árvores
+	 * 
+	 * @param paletteSize A capacidade da paleta ou 0 se as árvores não
+	 * 				utilizam paleta
+	 */
+	public void setPaletteSize(int paletteSize) {
+		
+		this.paletteSize = paletteSize;
+		
+		candidates.clear();
+	
+	}
+	
+	/**
+	 * Define se o tamanho do arquivo é medido com codificação entrópica
+	 * 
+	 * @param entropyCoding true se os arquivos são gravados com codificação
+	 * 				entrópica
+	 */
+	public void setEntropyCoding(boolean entropyCoding) {
+		
+		this.entropyCoding = entropyCoding;
+		
+		candidates.clear();
+	
+	}
+	
+	/**
+	 * Define o intervalo de precisão em que a busca termina
+	 * 
+	 * @param tolerance O intervalo, entre 0 e 1 (exclusive)
+	 */
+	public void setTolerance(double tolerance) {
+		
+		if(tolerance <= 0 || tolerance >= 1) {
+			throw new IllegalArgumentException("Tolerância inválida: " + 
+					tolerance);
+		}
+		
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * Busca a precisão que atende às metas e constrói a árvore
+	 * 
+	 * @return A árvore com a precisão escolhida
+	 * 
+	 * @throws IOException Erro ao medir o tamanho do arquivo
+	 * @throws IllegalStateException Nenhuma meta foi definida
+	 * @throws CancellationException A thread foi interrompida. A 
+	 * 		   interrupção é verificada antes de cada construção
+	 */
+	public TunedTree tune() throws IOException {
+		
+		boolean quality = minPsnr > 0 || minSsim > 0;
+		
+		if(!quality && maxFileBytes <= 0) {
+			throw new IllegalStateException("Nenhuma meta definida");
+		}
+		
+		int builds = candidates.size();
+		
+		Candidate chosen;
+		
+		if(quality) {
+			
+			chosen = smallestWithQuality();
+			
+			//as metas de qualidade excedem o tamanho máximo
+			if(!withinSize(chosen)) {
+				chosen = largestWithinSize(chosen.accuracy);
+			}
+		}
+		else {
+			chosen = largestWithinSize(1);
+		}
+		
+		QuadTree tree = build(chosen.accuracy);
+		
+		QualityMetrics metrics = chosen.metrics != null ? chosen.metrics :
+			new QualityEvaluator(tree, image).evaluate();
+		
+		return new TunedTree(tree, metrics, chosen.fileBytes, 
+				meetsQuality(metrics) && withinSize(chosen), 
+				candidates.size() - builds);
+	}
+	
+	/**
+	 * Busca a menor precisão que atende às metas de qualidade
+	 * 
+	 * @return A menor precisão avaliada que atende às metas ou a precisão 1
+	 * 
+	 * @throws IOException Erro ao medir o tamanho do arquivo
+	 */
+	private Candidate smallestWithQuality() throws IOException {
+		
+		Candidate low = evaluate(0);
+		
+		if(meetsQuality(low.metrics)) return low;
+		
+		//a precisão 1 representa a imagem sem perdas
+		double lo = 0, hi = 1;
+		Candidate best = null;
+		
+		while(hi - lo > tolerance) {
+			
+			double mid = (lo + hi) / 2;
+			
+			Candidate c = evaluate(mid);
+			
+			if(meetsQuality(c.metrics)) {
+				hi = mid;
+				best = c;
+			}
+			else {
+				lo = mid;
+			}
+		}
+		
+		return best != null ? best : evaluate(1);
+	}
+	
+	/**
+	 * Busca a maior precisão, até um limite, cujo arquivo não excede o 
+	 * tamanho máximo
+	 * 
+	 * @param limit A maior precisão considerada
+	 * 
+	 * @return A maior precisão avaliada dentro do tamanho máximo ou a 
+	 * 		   precisão 0 se nenhuma precisão está dentro do tamanho
+	 * 
+	 * @throws IOException Erro ao medir o tamanho do arquivo
+	 */
+	private Candidate largestWithinSize(double limit) throws IOException {
+		
+		Candidate high = evaluate(limit);
+		
+		if(withinSize(high)) return high;
+		
+		Candidate best = evaluate(0);
+		
+		if(!withinSize(best)) return best;
+		
+		double lo = 0, hi = limit;
+		
+		while(hi - lo > tolerance) {
+			
+			double mid = (lo + hi) / 2;
+			
+			Candidate c = evaluate(mid);
+			
+			if(withinSize(c)) {
+				lo = mid;
+				best = c;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Verifica se uma qualidade atende às metas de qualidade
+	 * 
+	 * @param metrics A qualidade ou null se não foi medida
+	 * 
+	 * @return true se não há metas de qualidade ou se a qualidade as atende
+	 */
+	private boolean meetsQuality(QualityMetrics metrics) {
+		
+		if(minPsnr <= 0 && minSsim <= 0) return true;
+		
+		return metrics.getPsnr() >= minPsnr && metrics.getSsim() >= minSsim;
+	}
+	
+	/**
+	 * Verifica se o arquivo de uma precisão está dentro do tamanho máximo
+	 * 
+	 * @param c A precisão avaliada
+	 * 
+	 * @return true se não há tamanho máximo ou se o arquivo não o excede
+	 */
+	private boolean withinSize(Candidate c) {
+		return maxFileBytes <= 0 || c.fileBytes <= maxFileBytes;
+	}
+	
+	/**
+	 * Constrói e avalia a árvore de uma precisão, se ela ainda não foi 
+	 * avaliada
+	 * 
+	 * @param accuracy A precisão
+	 * 
+	 * @return A avaliação da precisão
+	 * 
+	 * @throws IOException Erro ao medir o tamanho do arquivo
+	 */
+	private Candidate evaluate(double accuracy) throws IOException {
+		
+		Candidate c = candidates.get(accuracy);
+		
+		if(c == null || (c.metrics == null && (minPsnr > 0 || minSsim > 0))) {
+			
+			QuadTree tree = build(accuracy);
+			
+			c = new Candidate();
+			c.accuracy = accuracy;
+			c.fileBytes = size(tree);
+			
+			if(minPsnr > 0 || minSsim > 0) {
+				c.metrics = new QualityEvaluator(tree, image).evaluate();
+			}
+			
+			candidates.put(accuracy, c);
+		}
+		
+		return c;
+	}
+	
+	/**
+	 * Constrói a árvore de uma precisão com as estatísticas das regiões
+	 * 
+	 * @param accuracy A precisão
+	 * 
+	 * @return A árvore
+	 * 
+	 * @throws CancellationException A thread foi interrompida
+	 */
+	private QuadTree build(double accuracy) {
+		
+		if(Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Ajuste cancelado");
+		}
+		
+		Palette palette = paletteSize > 0 ? new Palette(paletteSize) : null;
+		
+		return new QuadTree(image, accuracy, palette, statistics);
+	}
+	
+	/**
+	 * Mede o tamanho do arquivo .quad de uma árvore
+	 * 
+	 * @param tree A árvore
+	 * 
+	 * @return O tamanho do arquivo em bytes
+	 * 
+	 * @throws IOException Erro ao gravar a árvore
+	 */
+	private long size(QuadTree tree) throws IOException {
+		
+		CountingOutputStream out = new CountingOutputStream();
+		
+		QuadTreeWriter writer = new QuadTreeWriter(tree);
+		writer.setEntropyCoding(entropyCoding);
+		writer.write(out);
+		
+		return out.count;
+	}
+	
+	/**
+	 * Retorna as estatísticas das regiões compartilhadas entre as 
+	 * construções
+	 * 
+	 * @return As estatísticas das regiões
+	 */
+	public RegionStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * <p>Avaliação de uma precisão.</p>
+	 */
+	private static class Candidate {
+		
+		/**
+		 * A precisão
+		 */
+		private double accuracy;
+		
+		/**
+		 * O tamanho do arquivo
+		 */
+		private long fileBytes;
+		
+		/**
+		 * A qualidade ou null se não há metas de qualidade
+		 */
+		private QualityMetrics metrics;
+	
+	}
+	
+	/**
+	 * <p>Fluxo que descarta os bytes gravados, apenas contando-os.</p>
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		
+		/**
+		 * Número de bytes gravados
+		 */
+		private long count;
+		
+		@Override
+		public void write(int b) {
+			count++;
+		}
+		
+		@Override
+		public void write(byte b[], int off, int len) {
+			count = count + len;
+		}
+	
+	}
+
+}
@@ -0,0 +1,822 @@
+package quadtree.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import quadtree.core.Palette;
+import quadtree.core.PixelBuffer;
+import quadtree.core.QualityEvaluator;
+import quadtree.core.QualityMetrics;
+import quadtree.core.QuadTree;
+import quadtree.io.BuildCache;
+import quadtree.io.QuadTreeWriter;
+import quadtree.util.LoadImage;
+
+/**
+ * <p>Converte arquivos de imagem em arquivos <i>.quad</i> em lote.</p>
+ * 
+ * <p>A conversão é dividida em três estágios executados simultaneamente:
+ * decodificação das imagens, construção das árvores e gravação dos 
+ * arquivos. Os estágios são ligados por filas limitadas, de modo que um 
+ * estágio mais rápido é bloqueado quando o seguinte não acompanha 
+ * (contrapressão) e o número de imagens em memória é limitado 
+ * independentemente do número de arquivos.</p>
+ * 
+ * <p>Os estágios de leitura e gravação, limitados por E/S, utilizam
+ * <i>virtual threads</i> quando a JVM as oferece; caso contrário utilizam
+ * threads comuns. O estágio de construção, limitado pela CPU, utiliza uma
+ * thread por processador.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class BatchConverter {
+	
+	/**
+	 * Capacidade padrão das filas entre os estágios
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4;
+	
+	/**
+	 * Número padrão de threads dos estágios de E/S
+	 */
+	public static final int DEFAULT_IO_THREADS = 4;
+	
+	/**
+	 * Diretório dos arquivos gerados
+	 */
+	private File outputDirectory;
+	
+	/**
+	 * Precisão utilizada na construção das árvores
+	 */
+	private double accuracy;
+	
+	/**
+	 * Capacidade da paleta das árvores ou 0 se as árvores não utilizam
+	 * paleta
+	 */
+	private int paletteSize;
+	
+	/**
+	 * Indica se os arquivos são gravados com codificação entrópica
+	 */
+	private boolean entropyCoding;
+	
+	/**
+	 * Indica se a qualidade de cada árvore é medida em relação à imagem
+	 */
+	private boolean measureQuality;
+	
+	/**
+	 * PSNR mínima (dB) das árvores ou 0 se não há meta
+	 */
+	private double minPsnr;
+	
+	/**
+	 * SSIM mínimo das árvores ou 0 se não há meta
+	 */
+	private double minSsim;
+	
+	/**
+	 * Tamanho máximo dos arquivos gerados ou 0 se não há meta
+	 */
+	private long maxFileBytes;
+	
+	/**
+	 * Cache em disco das árvores construídas ou null
+	 */
+	private BuildCache buildCache;
+	
+	/**
+	 * Capacidade das filas entre os estágios
+	 */
+	private int queueCapacity;
+	
+	/**
+	 * Número de threads do estágio de construção
+	 */
+	private int buildThreads;
+	
+	/**
+	 * Número de threads dos estágios de E/S
+	 */
+	private int ioThreads;
+	
+	/**
+	 * Cria o conversor
+	 * 
+	 * @param outputDirectory O diretório dos arquivos gerados
+	 * @param accuracy A precisão utilizada na construção das árvores
+	 */
+	public BatchConverter(File outputDirectory, double accuracy) {
+		
+		this.outputDirectory = outputDirectory;
+		this.accuracy = accuracy;
+		
+		queueCapacity = DEFAULT_QUEUE_CAPACITY;
+		buildThreads = Runtime.getRuntime().availableProcessors();
+		ioThreads = DEFAULT_IO_THREADS;
+	
+	}
+	
+	/**
+	 * Converte os arquivos de imagem, bloqueando até que todos sejam
+	 * processados. Erros em um arquivo não interrompem a conversão dos demais
+	 * 
+	 * @param files Os arquivos de imagem
+	 * 
+	 * @return O relatório da conversão
+	 * 
+	 * @throws InterruptedException A thread foi interrompida. A conversão é
+	 * 				interrompida
+	 */
+	public BatchReport convert(List<File> files) throws InterruptedException {
+		
+		final BatchReport report = new BatchReport();
+		
+		BlockingQueue<Item> input = new LinkedBlockingQueue<>();
+		BlockingQueue<Item> decoded = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Item> built = new ArrayBlockingQueue<>(queueCapacity);
+		
+		ThreadFactory io = virtualThreads();
+		if(io == null) io = new PlatformThreads("batch-io");
+		
+		ThreadFactory cpu = new PlatformThreads("batch-build");
+		
+		Stage stages[] = new Stage[] {
+			
+			new Stage("decodificação", ioThreads, io, input, decoded, 
+					report) {
+				
+				@Override
+				void process(Item item) throws IOException {
+					item.pixels = LoadImage.read(item.file);
+				}
+			
+			},
+			
+			new Stage("construção", buildThreads, cpu, decoded, built, 
+					report) {
+				
+				@Override
+				void process(Item item) throws IOException {
+					
+					boolean tuning = minPsnr > 0 || minSsim > 0 || 
+							maxFileBytes > 0;
+					
+					QualityMetrics metrics = null;
+					String key = null;
+					
+					//árvore construída anteriormente com as mesmas opções
+					if(buildCache != null) {
+						key = BuildCache.key(item.pixels, tuning ? 0 : accuracy,
+								options(tuning));
+						item.tree = buildCache.get(key);
+					}
+					
+					if(item.tree == null) {
+						
+						if(tuning) {
+							
+							TunedTree tuned = tune(item.pixels);
+							
+							item.tree = tuned.getTree();
+							metrics = tuned.getMetrics();
+						}
+						else {
+							
+							Palette palette = paletteSize > 0 ?
+									new Palette(paletteSize) : null;
+							
+							item.tree = new QuadTree(item.pixels, accuracy, 
+									palette);
+						}
+						
+						if(buildCache != null) {
+							
+							//o cache é opcional: o arquivo é convertido mesmo
+							//que a árvore não possa ser armazenada
+							try {
+								buildCache.put(key, item.tree);
+							} catch (IOException e) {
+								System.err.println("Erro ao armazenar " + 
+										item.file + " no cache: " + e);
+							}
+						}
+					}
+					
+					if(tuning) {
+						report.accuracy(item.file, item.tree.getAccuracy());
+					}
+					
+					if(tuning || measureQuality) {
+						
+						if(metrics == null) {
+							metrics = new QualityEvaluator(item.tree, 
+									item.pixels).evaluate();
+						}
+						
+						report.quality(item.file, metrics);
+					}
+					
+					item.pixels = null;
+				
+				}
+			
+			},
+			
+			new Stage("gravação", ioThreads, io, built, null, report) {
+				
+				@Override
+				void process(Item item) throws IOException {
+					
+					QuadTreeWriter writer = new QuadTreeWriter(item.tree);
+					writer.setEntropyCoding(entropyCoding);
+					writer.write(item.output);
+					
+					item.tree = null;
+					
+					report.converted(item.output);
+				
+				}
+			
+			}
+		
+		};
+		
+		for(Stage stage : stages) {
+			report.stage(stage.metrics);
+		}
+		
+		long start = System.nanoTime();
+		
+		try {
+			
+			for(Stage stage : stages) {
+				stage.start();
+			}
+			
+			for(File file : files) {
+				input.add(new Item(file, output(file)));
+			}
+			
+			//encerra cada estágio após o término do anterior
+			input.add(Item.END);
+			
+			for(int i = 0; i < stages.length; ++i) {
+				
+				stages[i].join();
+				
+				if(stages[i].output != null) stages[i].output.put(Item.END);
+			}
+		
+		} catch (InterruptedException e) {
+			
+			for(Stage stage : stages) {
+				stage.interrupt();
+			}
+			
+			throw e;
+		
+		} finally {
+			report.elapsed(System.nanoTime() - start);
+		}
+		
+		return report;
+	
+	}
+	
+	/**
+	 * Constrói a árvore de uma imagem com a menor precisão que atende às 
+	 * metas de qualidade e de tamanho
+	 * 
+	 * @param pixels Os pixels da imagem
+	 * 
+	 * @return A árvore ajustada
+	 * 
+	 * @throws IOException Erro ao medir o tamanho do arquivo
+	 */
+	private TunedTree tune(PixelBuffer pixels) throws IOException {
+		
+		AccuracyTuner tuner = new AccuracyTuner(pixels);
+		tuner.setMinPsnr(minPsnr);
+		tuner.setMinSsim(minSsim);
+		tuner.setMaxFileBytes(maxFileBytes);
+		tuner.setPaletteSize(paletteSize);
+		tuner.setEntropyCoding(entropyCoding);
+		
+		return tuner.tune();
+	}
+	
+	/**
+	 * Retorna as opções de construção que compõem a chave do cache em disco,
+	 * além dos pixels e da precisão
+	 * 
+	 * @param tuning true se a precisão é ajustada às metas
+	 * 
+	 * @return As opções de construção
+	 */
+	private String options(boolean tuning) {
+		
+		String options = "palette=" + paletteSize;
+		
+		if(tuning) {
+			options = options + ";psnr=" + minPsnr + ";ssim=" + minSsim + 
+					";maxBytes=" + maxFileBytes + ";entropy=" + entropyCoding;
+		}
+		
+		return options;
+	}
+	
+	/**
+	 * Retorna o arquivo gerado para um arquivo de imagem
+	 * 
+	 * @param file O arquivo de imagem
+	 * 
+	 * @return O arquivo .quad de mesmo nome no diretório de saída
+	 */
+	private File output(File file) {
+		
+		String name = file.getName();
+		
+		int dot = name.lastIndexOf('.');
+		if(dot > 0) name = name.substring(0, dot);
+		
+		return new File(outputDirectory, name + ".quad");
+	
+	}
+	
+	/**
+	 * Cria uma fábrica de <i>virtual threads</i> por reflexão, de modo que a
+	 * aplicação continue compatível com JVMs que não as oferecem
+	 * 
+	 * @return A fábrica de virtual threads ou null se não disponível
+	 */
+	private static ThreadFactory virtualThreads() {
+		
+		try {
+			
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			
+			Class<?> type = Class.forName("java.lang.Thread$Builder");
+			
+			return (ThreadFactory) type.getMethod("factory").invoke(builder);
+		
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	
+	}
+	
+	/**
+	 * Define a capacidade da paleta das árvores
+	 * 
+	 * @param paletteSize A capacidade da paleta ou 0 se as árvores não
+	 * 				utilizam paleta
+	 */
+	public void setPaletteSize(int paletteSize) {
+		this.paletteSize = paletteSize;
+	}
+	
+	/**
+	 * Define se os arquivos são gravados com codificação entrópica
+	 * 
+	 * @param entropyCoding true se os arquivos são gravados com codificação
+	 * 				entrópica
+	 */
+	public void setEntropyCoding(boolean entropyCoding) {
+		this.entropyCoding = entropyCoding;
+	}
+	
+	/**
+	 * Define se a qualidade de cada árvore é medida em relação à imagem
+	 * ({@link QualityEvaluator}) no estágio de construção. As medidas são
+	 * registradas no relatório
+	 * 
+	 * @param measureQuality true se a qualidade deve ser medida
+	 */
+	public void setMeasureQuality(boolean measureQuality) {
+		this.measureQuality = measureQuality;
+	}
+	
+	/**
+	 * Define as metas de qualidade e de tamanho das árvores. Com alguma meta
+	 * definida, a precisão de cada imagem é ajustada por 
+	 * {@link AccuracyTuner} e a precisão do conversor é ignorada; a precisão
+	 * escolhida e a qualidade são registradas no relatório
+	 * 
+	 * @param minPsnr A PSNR mínima em dB ou 0 se não há meta
+	 * @param minSsim O SSIM mínimo ou 0 se não há meta
+	 * @param maxFileBytes O tamanho máximo do arquivo ou 0 se não há meta
+	 */
+	public void setTargets(double minPsnr, double minSsim, long maxFileBytes) {
+		
+		this.minPsnr = minPsnr;
+		this.minSsim = minSsim;
+		this.maxFileBytes = maxFileBytes;
+	
+	}
+	
+	/**
+	 * Define o cache em disco das árvores construídas. As imagens cujas 
+	 * árvores estão no cache, com a mesma precisão e as mesmas opções, não
+	 * são comprimidas novamente, de modo que repetir uma conversão 
+	 * interrompida ou com erros refaz apenas as construções que faltam. Um 
+	 * erro ao gravar no cache é informado em System.err e não impede a 
+	 * conversão do arquivo
+	 * 
+	 * @param buildCache O cache ou null para construir todas as árvores
+	 */
+	public void setBuildCache(BuildCache buildCache) {
+		this.buildCache = buildCache;
+	}
+	
+	/**
+	 * Define a capacidade das filas entre os estágios. Limita o número de
+	 * imagens decodificadas e de árvores aguardando o estágio seguinte
+	 * 
+	 * @param queueCapacity A capacidade das filas
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		
+		if(queueCapacity < 1) {
+			throw new IllegalArgumentException("Capacidade inválida: " +
+					queueCapacity);
+		}
+		
+		this.queueCapacity = queueCapacity;
+	}
+	
+	/**
+	 * Define o número de threads do estágio de construção
+	 * 
+	 * @param buildThreads O número de threads
+	 */
+	public void setBuildThreads(int buildThreads) {
+		
+		if(buildThreads < 1) {
+			throw new IllegalArgumentException("Número de threads inválido: "
+					+ buildThreads);
+		}
+		
+		this.buildThreads = buildThreads;
+	}
+	
+	/**
+	 * Define o número de threads dos estágios de leitura e gravação
+	 * 
+	 * @param ioThreads O número de threads
+	 */
+	public void setIoThreads(int ioThreads) {
+		
+		if(ioThreads < 1) {
+			throw new IllegalArgumentException("Número de threads inválido: "
+					+ ioThreads);
+		}
+		
+		this.ioThreads = ioThreads;
+	}
+	
+	/**
+	 * Converte em lote os arquivos ou diretórios informados.
+	 * 
+	 * <p>Uso: BatchConverter precisão diretório-de-saída arquivos...</p>
+	 * 
+	 * <p>Com a propriedade de sistema quadtree.quality=true a qualidade de
+	 * cada árvore é medida e apresentada no relatório. As propriedades 
+	 * quadtree.psnr, quadtree.ssim e quadtree.maxBytes definem metas
+	 * ({@link #setTargets(double, double, long)}). A propriedade 
+	 * quadtree.buildCache define o diretório do cache em disco das árvores,
+	 * limitado a quadtree.buildCacheBytes bytes (1 GB por padrão).</p>
+	 * 
+	 * @param args A precisão (0 a 1), o diretório de saída e os arquivos ou
+	 * 				diretórios de imagens
+	 * 
+	 * @throws InterruptedException A conversão foi interrompida
+	 * @throws IOException Erro ao criar o diretório do cache
+	 */
+	public static void main(String[] args) throws InterruptedException, 
+			IOException {
+		
+		if(args.length < 3) {
+			System.err.println("Uso: BatchConverter precisão " +
+					"diretório-de-saída arquivos...");
+			return;
+		}
+		
+		File output = new File(args[1]);
+		output.mkdirs();
+		
+		List<File> files = new ArrayList<>();
+		
+		for(int i = 2; i < args.length; ++i) {
+			
+			File file = new File(args[i]);
+			
+			if(file.isDirectory()) {
+				
+				File children[] = file.listFiles();
+				
+				if(children != null) {
+					Arrays.sort(children);
+					for(File child : children) {
+						if(child.isFile()) files.add(child);
+					}
+				}
+			}
+			else {
+				files.add(file);
+			}
+		}
+		
+		BatchConverter converter =
+				new BatchConverter(output, Double.parseDouble(args[0]));
+		converter.setEntropyCoding(true);
+		converter.setMeasureQuality(Boolean.getBoolean("quadtree.quality"));
+		converter.setTargets(
+				Double.parseDouble(System.getProperty("quadtree.psnr", "0")),
+				Double.parseDouble(System.getProperty("quadtree.ssim", "0")),
+				Long.getLong("quadtree.maxBytes", 0));
+		
+		String cache = System.getProperty("quadtree.buildCache");
+		
+		if(cache != null) {
+			converter.setBuildCache(new BuildCache(new File(cache), 
+					Long.getLong("quadtree.buildCacheBytes", 1L << 30)));
+		}
+		
+		System.out.println(converter.convert(files));
+	
+	}
+	
+	/**
+	 * <p>Imagem em processamento no pipeline.</p>
+	 */
+	private static class Item {
+		
+		/**
+		 * Marca o fim da fila
+		 */
+		private static final Item END = new Item(null, null);
+		
+		/**
+		 * O arquivo de imagem
+		 */
+		private File file;
+		
+		/**
+		 * O arquivo gerado
+		 */
+		private File output;
+		
+		/**
+		 * Os pixels da imagem, após a decodificação
+		 */
+		private PixelBuffer pixels;
+		
+		/**
+		 * A árvore, após a construção
+		 */
+		private QuadTree tree;
+		
+		/**
+		 * Cria o item
+		 * 
+		 * @param file O arquivo de imagem
+		 * @param output O arquivo gerado
+		 */
+		private Item(File file, File output) {
+			this.file = file;
+			this.output = output;
+		}
+	
+	}
+	
+	/**
+	 * <p>Estágio do pipeline: um conjunto de threads que retiram itens da
+	 * fila de entrada, os processam e os inserem na fila de saída.</p>
+	 */
+	private abstract static class Stage {
+		
+		/**
+		 * As threads do estágio
+		 */
+		private Thread workers[];
+		
+		/**
+		 * A fila de entrada
+		 */
+		private BlockingQueue<Item> input;
+		
+		/**
+		 * A fila de saída ou null se é o último estágio
+		 */
+		private BlockingQueue<Item> output;
+		
+		/**
+		 * O relatório da conversão
+		 */
+		private BatchReport report;
+		
+		/**
+		 * As métricas do estágio
+		 */
+		private StageMetrics metrics;
+		
+		/**
+		 * Cria o estágio
+		 * 
+		 * @param name O nome do estágio
+		 * @param threads O número de threads do estágio
+		 * @param factory A fábrica das threads
+		 * @param input A fila de entrada
+		 * @param output A fila de saída ou null se é o último estágio
+		 * @param report O relatório da conversão
+		 */
+		private Stage(String name, int threads, ThreadFactory factory,
+				BlockingQueue<Item> input, BlockingQueue<Item> output,
+				BatchReport report) {
+			
+			this.input = input;
+			this.output = output;
+			this.report = report;
+			
+			metrics = new StageMetrics(name, threads);
+			
+			workers = new Thread[threads];
+			
+			for(int i = 0; i < threads; ++i) {
+				
+				workers[i] = factory.newThread(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						try {
+							work();
+						} catch (InterruptedException e) {
+							//conversão interrompida
+						}
+					
+					}
+				
+				});
+			}
+		
+		}
+		
+		/**
+		 * Processa um item
+		 * 
+		 * @param item O item
+		 * 
+		 * @throws Exception Erro ao processar o item
+		 */
+		abstract void process(Item item) throws Exception;
+		
+		/**
+		 * Laço de uma thread do estágio. O erro de um item, inclusive um 
+		 * {@link Error} como {@link OutOfMemoryError}, é registrado no 
+		 * relatório e a thread segue para o próximo item
+		 * 
+		 * @throws InterruptedException A conversão foi interrompida
+		 */
+		private void work() throws InterruptedException {
+			
+			while(true) {
+				
+				Item item = input.take();
+				
+				//repassa o fim da fila às demais threads do estágio
+				if(item == Item.END) {
+					input.put(Item.END);
+					return;
+				}
+				
+				long start = System.nanoTime();
+				boolean success = false;
+				
+				try {
+					
+					process(item);
+					success = true;
+				
+				} catch (Exception e) {
+					report.failed(item.file, e);
+				} catch (Throwable e) {
+					
+					//erros como OutOfMemoryError não encerram a thread: as 
+					//demais threads e os estágios anteriores bloqueariam
+					report.failed(item.file, new ExecutionException(e));
+				
+				} finally {
+					metrics.processed(System.nanoTime() - start, success);
+				}
+				
+				//libera a memória do item descartado
+				if(!success) {
+					item.pixels = null;
+					item.tree = null;
+				}
+				
+				if(success && output != null) {
+					
+					long blocked = System.nanoTime();
+					
+					output.put(item);
+					
+					metrics.blocked(System.nanoTime() - blocked);
+				}
+			}
+		
+		}
+		
+		/**
+		 * Inicia as threads do estágio
+		 */
+		private void start() {
+			
+			metrics.started();
+			
+			for(Thread worker : workers) {
+				worker.start();
+			}
+		
+		}
+		
+		/**
+		 * Aguarda o término das threads do estágio
+		 * 
+		 * @throws InterruptedException A espera foi interrompida
+		 */
+		private void join() throws InterruptedException {
+			
+			for(Thread worker : workers) {
+				worker.join();
+			}
+			
+			metrics.finished();
+		
+		}
+		
+		/**
+		 * Interrompe as threads do estágio
+		 */
+		private void interrupt() {
+			
+			for(Thread worker : workers) {
+				worker.interrupt();
+			}
+		
+		}
+	
+	}
+	
+	/**
+	 * <p>Fábrica de threads comuns (<i>daemon</i>) com nome numerado.</p>
+	 */
+	private static class PlatformThreads implements ThreadFactory {
+		
+		/**
+		 * Prefixo do nome das threads
+		 */
+		private String prefix;
+		
+		/**
+		 * Número de threads criadas
+		 */
+		private AtomicInteger count;
+		
+		/**
+		 * Cria a fábrica
+		 * 
+		 * @param prefix O prefixo do nome das threads
+		 */
+		private PlatformThreads(String prefix) {
+			this.prefix = prefix;
+			count = new AtomicInteger();
+		}
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread thread = new Thread(r, prefix + "-" +
+					count.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	
+	}
+
+}
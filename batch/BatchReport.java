@@ -0,0 +1,211 @@
+package quadtree.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import quadtree.core.QualityMetrics;
+
+/**
+ * <p>Relatório de uma conversão em lote: os arquivos gerados, os arquivos
+ * com erro e as métricas de cada estágio do pipeline.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class BatchReport {
+	
+	/**
+	 * Arquivos gerados
+	 */
+	private List<File> converted;
+	
+	/**
+	 * Erro de cada arquivo que não foi convertido
+	 */
+	private Map<File, Exception> failures;
+	
+	/**
+	 * Qualidade de cada árvore construída, se medida
+	 */
+	private Map<File, QualityMetrics> quality;
+	
+	/**
+	 * Precisão escolhida para cada árvore com precisão ajustada
+	 */
+	private Map<File, Double> accuracies;
+	
+	/**
+	 * Métricas de cada estágio, na ordem do pipeline
+	 */
+	private List<StageMetrics> stages;
+	
+	/**
+	 * Duração da conversão (ns)
+	 */
+	private long elapsed;
+	
+	/**
+	 * Cria o relatório vazio
+	 */
+	BatchReport() {
+		
+		converted = new ArrayList<>();
+		failures = new LinkedHashMap<>();
+		quality = new LinkedHashMap<>();
+		accuracies = new LinkedHashMap<>();
+		stages = new ArrayList<>();
+	
+	}
+	
+	/**
+	 * Registra um arquivo gerado
+	 * 
+	 * @param file O arquivo gerado
+	 */
+	synchronized void converted(File file) {
+		converted.add(file);
+	}
+	
+	/**
+	 * Registra o erro de um arquivo
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param error O erro
+	 */
+	synchronized void failed(File file, Exception error) {
+		failures.put(file, error);
+	}
+	
+	/**
+	 * Registra a qualidade da árvore de um arquivo
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param metrics A qualidade da árvore
+	 */
+	synchronized void quality(File file, QualityMetrics metrics) {
+		quality.put(file, metrics);
+	}
+	
+	/**
+	 * Registra a precisão escolhida para a árvore de um arquivo
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param accuracy A precisão escolhida
+	 */
+	synchronized void accuracy(File file, double accuracy) {
+		accuracies.put(file, accuracy);
+	}
+	
+	/**
+	 * Registra as métricas de um estágio
+	 * 
+	 * @param metrics As métricas do estágio
+	 */
+	synchronized void stage(StageMetrics metrics) {
+		stages.add(metrics);
+	}
+	
+	/**
+	 * Registra a duração da conversão
+	 * 
+	 * @param nanos A duração da conversão
+	 */
+	synchronized void elapsed(long nanos) {
+		elapsed = nanos;
+	}
+	
+	/**
+	 * Retorna os arquivos gerados, na ordem de conclusão
+	 * 
+	 * @return Os arquivos gerados
+	 */
+	public synchronized List<File> getConverted() {
+		return Collections.unmodifiableList(new ArrayList<>(converted));
+	}
+	
+	/**
+	 * Retorna os arquivos que não foram convertidos
+	 * 
+	 * @return O erro de cada arquivo que não foi convertido
+	 */
+	public synchronized Map<File, Exception> getFailures() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+	}
+	
+	/**
+	 * Retorna a qualidade das árvores construídas, se medida
+	 * 
+	 * @return A qualidade da árvore de cada arquivo, na ordem de construção
+	 * 
+	 * @see BatchConverter#setMeasureQuality(boolean)
+	 */
+	public synchronized Map<File, QualityMetrics> getQuality() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(quality));
+	}
+	
+	/**
+	 * Retorna as precisões escolhidas pelo ajuste às metas
+	 * 
+	 * @return A precisão da árvore de cada arquivo, na ordem de construção
+	 * 
+	 * @see BatchConverter#setTargets(double, double, long)
+	 */
+	public synchronized Map<File, Double> getAccuracies() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(accuracies));
+	}
+	
+	/**
+	 * Retorna as métricas de cada estágio
+	 * 
+	 * @return As métricas de cada estágio, na ordem do pipeline
+	 */
+	public synchronized List<StageMetrics> getStages() {
+		return Collections.unmodifiableList(new ArrayList<>(stages));
+	}
+	
+	/**
+	 * Retorna a duração da conversão
+	 * 
+	 * @return A duração da conversão em nanossegundos
+	 */
+	public synchronized long getElapsedNanos() {
+		return elapsed;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(String.format("%d arquivos convertidos, %d erros em " +
+				"%.2f s%n", converted.size(), failures.size(), elapsed / 1e9));
+		
+		for(StageMetrics stage : stages) {
+			sb.append("  ").append(stage).append(String.format("%n"));
+		}
+		
+		for(Map.Entry<File, QualityMetrics> e : quality.entrySet()) {
+			sb.append("  ").append(e.getKey().getName()).append(": ");
+			
+			Double accuracy = accuracies.get(e.getKey());
+			
+			if(accuracy != null) {
+				sb.append(String.format("precisão %.2f%%, ", accuracy * 100));
+			}
+			
+			sb.append(e.getValue()).append(String.format("%n"));
+		}
+		
+		for(Map.Entry<File, Exception> e : failures.entrySet()) {
+			sb.append("  erro: ").append(e.getKey()).append(": ")
+				.append(e.getValue().getMessage()).append(String.format("%n"));
+		}
+		
+		return sb.toString();
+	}
+
+}
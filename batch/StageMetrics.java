@@ -0,0 +1,215 @@
+package quadtree.batch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Métricas de um estágio do pipeline de conversão em lote.</p>
+ * 
+ * <p>Contabiliza os itens processados e com erro, o tempo ocupado das
+ * threads do estágio e o tempo de espera por espaço na fila de saída
+ * (contrapressão do estágio seguinte).</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class StageMetrics {
+	
+	/**
+	 * Nome do estágio
+	 */
+	private String name;
+	
+	/**
+	 * Número de threads do estágio
+	 */
+	private int threads;
+	
+	/**
+	 * Itens processados com sucesso
+	 */
+	private AtomicLong count;
+	
+	/**
+	 * Itens com erro
+	 */
+	private AtomicLong failures;
+	
+	/**
+	 * Tempo (ns) gasto no processamento dos itens, somado entre as threads
+	 */
+	private AtomicLong busy;
+	
+	/**
+	 * Tempo (ns) de espera por espaço na fila de saída, somado entre as
+	 * threads
+	 */
+	private AtomicLong blocked;
+	
+	/**
+	 * Instante (ns) do início do estágio
+	 */
+	private volatile long start;
+	
+	/**
+	 * Instante (ns) do fim do estágio
+	 */
+	private volatile long end;
+	
+	/**
+	 * Cria as métricas de um estágio
+	 * 
+	 * @param name O nome do estágio
+	 * @param threads O número de threads do estágio
+	 */
+	StageMetrics(String name, int threads) {
+		
+		this.name = name;
+		this.threads = threads;
+		
+		count = new AtomicLong();
+		failures = new AtomicLong();
+		busy = new AtomicLong();
+		blocked = new AtomicLong();
+	
+	}
+	
+	/**
+	 * Marca o início do estágio
+	 */
+	void started() {
+		start = System.nanoTime();
+	}
+	
+	/**
+	 * Marca o fim do estágio
+	 */
+	void finished() {
+		end = System.nanoTime();
+	}
+	
+	/**
+	 * Registra o processamento de um item
+	 * 
+	 * @param nanos O tempo de processamento do item
+	 * @param success true se o item foi processado com sucesso
+	 */
+	void processed(long nanos, boolean success) {
+		
+		busy.addAndGet(nanos);
+		
+		if(success) count.incrementAndGet();
+		else failures.incrementAndGet();
+	
+	}
+	
+	/**
+	 * Registra a espera por espaço na fila de saída
+	 * 
+	 * @param nanos O tempo de espera
+	 */
+	void blocked(long nanos) {
+		blocked.addAndGet(nanos);
+	}
+	
+	/**
+	 * Retorna o nome do estágio
+	 * 
+	 * @return O nome do estágio
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Retorna o número de threads do estágio
+	 * 
+	 * @return O número de threads do estágio
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Retorna o número de itens processados com sucesso
+	 * 
+	 * @return O número de itens processados com sucesso
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Retorna o número de itens com erro
+	 * 
+	 * @return O número de itens com erro
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+	
+	/**
+	 * Retorna o tempo gasto no processamento dos itens, somado entre as
+	 * threads
+	 * 
+	 * @return O tempo de processamento em nanossegundos
+	 */
+	public long getBusyNanos() {
+		return busy.get();
+	}
+	
+	/**
+	 * Retorna o tempo de espera por espaço na fila de saída, somado entre as
+	 * threads
+	 * 
+	 * @return O tempo de espera em nanossegundos
+	 */
+	public long getBlockedNanos() {
+		return blocked.get();
+	}
+	
+	/**
+	 * Retorna a duração do estágio, do início até o fim ou até o instante
+	 * atual se o estágio não terminou
+	 * 
+	 * @return A duração do estágio em nanossegundos
+	 */
+	public long getElapsedNanos() {
+		
+		if(start == 0) return 0;
+		
+		return (end != 0 ? end : System.nanoTime()) - start;
+	}
+	
+	/**
+	 * Retorna a vazão do estágio
+	 * 
+	 * @return O número de itens processados por segundo
+	 */
+	public double getThroughput() {
+		
+		long elapsed = getElapsedNanos();
+		
+		return elapsed > 0 ? (getCount() + getFailures()) * 1e9 / elapsed : 0;
+	}
+	
+	/**
+	 * Retorna a utilização das threads do estágio
+	 * 
+	 * @return A fração do tempo em que as threads estavam processando itens
+	 */
+	public double getUtilization() {
+		
+		long elapsed = getElapsedNanos();
+		
+		return elapsed > 0 ? (double) getBusyNanos() / (elapsed * threads) : 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: %d itens (%d erros), %.2f itens/s, " +
+				"%d threads, utilização %.0f%%, bloqueado %.1f s", name,
+				getCount(), getFailures(), getThroughput(), threads,
+				getUtilization() * 100, getBlockedNanos() / 1e9);
+	}
+
+}
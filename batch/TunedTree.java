@@ -0,0 +1,124 @@
+package quadtree.batch;
+
+import quadtree.core.QualityMetrics;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Resultado do ajuste da precisão de uma QuadTree às metas de qualidade e
+ * de tamanho ({@link AccuracyTuner}): a árvore construída com a precisão 
+ * escolhida, a sua qualidade e o tamanho do seu arquivo.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class TunedTree {
+	
+	/**
+	 * A árvore construída com a precisão escolhida
+	 */
+	private QuadTree tree;
+	
+	/**
+	 * A qualidade da árvore
+	 */
+	private QualityMetrics metrics;
+	
+	/**
+	 * Tamanho do arquivo .quad da árvore
+	 */
+	private long fileBytes;
+	
+	/**
+	 * Indica se a árvore atende a todas as metas
+	 */
+	private boolean satisfied;
+	
+	/**
+	 * Número de árvores construídas na busca
+	 */
+	private int builds;
+	
+	/**
+	 * Cria o resultado
+	 * 
+	 * @param tree A árvore construída com a precisão escolhida
+	 * @param metrics A qualidade da árvore
+	 * @param fileBytes O tamanho do arquivo da árvore
+	 * @param satisfied true se a árvore atende a todas as metas
+	 * @param builds O número de árvores construídas na busca
+	 */
+	TunedTree(QuadTree tree, QualityMetrics metrics, long fileBytes, 
+			boolean satisfied, int builds) {
+		
+		this.tree = tree;
+		this.metrics = metrics;
+		this.fileBytes = fileBytes;
+		this.satisfied = satisfied;
+		this.builds = builds;
+	
+	}
+	
+	/**
+	 * Retorna a árvore construída com a precisão escolhida
+	 * 
+	 * @return A árvore
+	 */
+	public QuadTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * Retorna a precisão escolhida
+	 * 
+	 * @return A precisão, entre 0 e 1
+	 */
+	public double getAccuracy() {
+		return tree.getAccuracy();
+	}
+	
+	/**
+	 * Retorna a qualidade da árvore em relação à imagem
+	 * 
+	 * @return A qualidade da árvore
+	 */
+	public QualityMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Retorna o tamanho do arquivo .quad da árvore
+	 * 
+	 * @return O tamanho em bytes, com as opções de gravação do ajuste
+	 */
+	public long getFileBytes() {
+		return fileBytes;
+	}
+	
+	/**
+	 * Verifica se a árvore atende a todas as metas. Se as metas de 
+	 * qualidade não cabem no tamanho máximo, a árvore é a de melhor 
+	 * qualidade dentro do tamanho máximo
+	 * 
+	 * @return true se a árvore atende a todas as metas
+	 */
+	public boolean isSatisfied() {
+		return satisfied;
+	}
+	
+	/**
+	 * Retorna o número de árvores construídas na busca
+	 * 
+	 * @return O número de precisões avaliadas
+	 */
+	public int getBuilds() {
+		return builds;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("precisão %.2f%%: %s, %d KB%s (%d construções)",
+				getAccuracy() * 100, metrics, fileBytes / 1024, 
+				satisfied ? "" : ", metas não atendidas", builds);
+	}
+
+}
@@ -0,0 +1,198 @@
+package quadtree.core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Precisões diferentes para regiões diferentes da imagem (regiões de
+ * interesse).</p>
+ * 
+ * <p>A máscara define uma precisão de fundo e precisões maiores para 
+ * regiões de interesse: retângulos com precisão própria e, opcionalmente, 
+ * uma máscara de pixels em que os pixels marcados usam uma mesma precisão. Ao
+ * avaliar uma região, a construção da árvore usa a maior precisão entre as
+ * regiões de interesse que interceptam a região, ou a precisão de fundo se
+ * nenhuma a intercepta. Assim, o fundo é representado com poucos nós e as
+ * regiões de interesse mantêm o detalhe.</p>
+ * 
+ * <p>Os retângulos são percorridos a cada avaliação: a máscara é adequada a
+ * algumas dezenas de retângulos. Regiões de forma arbitrária devem ser
+ * definidas pela máscara de pixels, consultada em tempo constante por meio
+ * de uma tabela de somas acumuladas.</p>
+ * 
+ * @author pedro
+ * 
+ * @see QuadTree#QuadTree(PixelBuffer, AccuracyMask, Palette)
+ */
+public class AccuracyMask {
+	
+	/**
+	 * Precisão fora das regiões de interesse
+	 */
+	private double background;
+	
+	/**
+	 * Retângulos das regiões de interesse
+	 */
+	private List<Rectangle> regions;
+	
+	/**
+	 * Precisão de cada retângulo
+	 */
+	private List<Double> accuracies;
+	
+	/**
+	 * Somas acumuladas dos pixels marcados da máscara de pixels, com uma
+	 * linha e uma coluna adicionais, ou null se não há máscara de pixels
+	 */
+	private int marked[];
+	
+	/**
+	 * Largura da máscara de pixels
+	 */
+	private int maskWidth;
+	
+	/**
+	 * Altura da máscara de pixels
+	 */
+	private int maskHeight;
+	
+	/**
+	 * Precisão dos pixels marcados da máscara de pixels
+	 */
+	private double maskAccuracy;
+	
+	/**
+	 * Cria a máscara sem regiões de interesse
+	 * 
+	 * @param background A precisão fora das regiões de interesse
+	 */
+	public AccuracyMask(double background) {
+		
+		this.background = background;
+		
+		regions = new ArrayList<>();
+		accuracies = new ArrayList<>();
+	
+	}
+	
+	/**
+	 * Adiciona uma região de interesse retangular
+	 * 
+	 * @param region A região, em coordenadas da imagem
+	 * @param accuracy A precisão da região
+	 * 
+	 * @return A própria máscara
+	 */
+	public AccuracyMask add(Rectangle region, double accuracy) {
+		
+		regions.add(new Rectangle(region));
+		accuracies.add(accuracy);
+		
+		return this;
+	}
+	
+	/**
+	 * Define a máscara de pixels. Os pixels marcados são os pixels não
+	 * transparentes e diferentes de preto
+	 * 
+	 * @param mask A máscara, com as dimensões da imagem
+	 * @param accuracy A precisão dos pixels marcados
+	 * 
+	 * @return A própria máscara
+	 */
+	public AccuracyMask setMask(PixelBuffer mask, double accuracy) {
+		
+		int w = mask.getWidth();
+		int h = mask.getHeight();
+		
+		int sums[] = new int[(w + 1) * (h + 1)];
+		
+		for(int i = 0; i < h; ++i) {
+			
+			int row = 0;
+			
+			for(int j = 0; j < w; ++j) {
+				
+				int c = mask.get(mask.getX() + j, mask.getY() + i);
+				
+				if((c >>> 24) != 0 && (c & 0xffffff) != 0) row++;
+				
+				sums[(i + 1) * (w + 1) + j + 1] = sums[i * (w + 1) + j + 1] +
+						row;
+			}
+		}
+		
+		marked = sums;
+		maskWidth = w;
+		maskHeight = h;
+		maskAccuracy = accuracy;
+		
+		return this;
+	}
+	
+	/**
+	 * Retorna a precisão exigida para uma região da imagem: a maior precisão
+	 * entre as regiões de interesse que a interceptam ou a precisão de fundo
+	 * 
+	 * @param x A coluna inicial da região
+	 * @param y A linha inicial da região
+	 * @param width A largura da região
+	 * @param height A altura da região
+	 * 
+	 * @return A precisão da região
+	 */
+	public double getAccuracy(int x, int y, int width, int height) {
+		
+		double accuracy = background;
+		
+		for(int k = 0; k < regions.size(); ++k) {
+			
+			if(accuracies.get(k) > accuracy &&
+					regions.get(k).intersects(x, y, width, height)) {
+				accuracy = accuracies.get(k);
+			}
+		}
+		
+		if(marked != null && maskAccuracy > accuracy &&
+				count(x, y, width, height) > 0) {
+			accuracy = maskAccuracy;
+		}
+		
+		return accuracy;
+	}
+	
+	/**
+	 * Conta os pixels marcados da máscara de pixels em uma região
+	 * 
+	 * @param x A coluna inicial da região
+	 * @param y A linha inicial da região
+	 * @param width A largura da região
+	 * @param height A altura da região
+	 * 
+	 * @return O número de pixels marcados
+	 */
+	private int count(int x, int y, int width, int height) {
+		
+		int x0 = Math.max(0, Math.min(maskWidth, x));
+		int y0 = Math.max(0, Math.min(maskHeight, y));
+		int x1 = Math.max(0, Math.min(maskWidth, x + width));
+		int y1 = Math.max(0, Math.min(maskHeight, y + height));
+		
+		int w = maskWidth + 1;
+		
+		return marked[y1 * w + x1] - marked[y0 * w + x1] -
+				marked[y1 * w + x0] + marked[y0 * w + x0];
+	}
+	
+	/**
+	 * Retorna a precisão fora das regiões de interesse
+	 * 
+	 * @return A precisão de fundo
+	 */
+	public double getBackground() {
+		return background;
+	}
+
+}
@@ -0,0 +1,25 @@
+package quadtree.core;
+
+/**
+ * <p>Acompanha o progresso da construção de uma QuadTree.</p>
+ * 
+ * <p>O progresso é medido em pixels: a área das regiões já representadas por
+ * folhas. Os eventos podem ser gerados por qualquer thread da construção.</p>
+ * 
+ * @author pedro
+ *
+ * @see QuadTree#buildAsync(java.io.File, double, Palette, 
+ * 			java.util.concurrent.Executor, BuildListener)
+ */
+public interface BuildListener {
+	
+	/**
+	 * Informa o progresso da construção. Chamado a cada ponto percentual 
+	 * concluído
+	 * 
+	 * @param pixels O número de pixels já processados
+	 * @param total O número de pixels da imagem
+	 */
+	void progress(long pixels, long total);
+
+}
@@ -1,6 +1,8 @@
 package quadtree.core;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -13,8 +15,20 @@ import java.io.Serializable;
  * <p>Se o nó é uma folha ele armazena a cor da região que representa, caso 
  * contrário armazena a média das cores de seus filhos</p>
  * 
+ * <p>Além da cor, o nó armazena a soma de cada componente (R, G, B e alpha)
+ * das cores da região. O número de pixels é a área da região. As somas de 
+ * uma folha são a cor da folha multiplicada pela área; as somas de um nó 
+ * interno são as somas de seus filhos, agregadas sem ponto flutuante. Assim
+ * a cor de um nó interno é a média exata, ponderada pela área, das cores de
+ * suas folhas. Os leitores de árvores agregam as somas dos filhos após 
+ * ler cada nó interno, de modo que a árvore carregada de um arquivo .quad
+ * ou de uma sequência tem as mesmas somas da árvore construída; a exceção 
+ * são os arquivos do formato antigo (serialização do objeto) gravados antes
+ * das somas. Nos nós internos cuja cor é definida diretamente 
+ * ({@link #setColor(Color)}) as somas são a cor multiplicada pela área.</p>
+ * 
  * @author pedro
- *
+ * 
  */
 public class Node implements Serializable {
 	
@@ -53,6 +67,26 @@ public class Node implements Serializable {
 	 */
 	private Node q[];
 	
+	/**
+	 * Soma da componente vermelha das cores da região
+	 */
+	private long red;
+	
+	/**
+	 * Soma da componente verde das cores da região
+	 */
+	private long green;
+	
+	/**
+	 * Soma da componente azul das cores da região
+	 */
+	private long blue;
+	
+	/**
+	 * Soma da componente alpha das cores da região
+	 */
+	private long alpha;
+	
 	/**
 	 * 
 	 * Cria a instância de um nó através dos valores x e y inciais e dimensões
@@ -75,43 +109,179 @@ public class Node implements Serializable {
 	}
 	
 	/**
-	 * Obtém a média de cor dos filhos do nó. A cor resultante é composta pela
-	 * média de cada uma das componentes (R, G e B e alpha)
+	 * Obtém a média de cor dos filhos do nó, ponderada pela área de cada 
+	 * filho. A cor resultante é composta pela média de cada uma das 
+	 * componentes (R, G e B e alpha)
 	 * 
 	 * @return A cor média dos filhos
+	 * 
+	 * @see #aggregateChildren()
 	 */
 	public Color averageChildren() {
 		
-		float r = 0.0f;
-		float g = 0.0f;
-		float b = 0.0f;
-		float a = 0.0f;
-		
-		int div = 0;
+		long r = 0, g = 0, b = 0, a = 0;
+		long area = 0;
 		
 		for(int i = 0; i < q.length; ++i) {
 			
 			if(q[i] != null) {
-								
-				r = r + (q[i].getColor().getRed() / 255.0f);
-				g = g + (q[i].getColor().getGreen() / 255.0f);
-				b = b + (q[i].getColor().getBlue() / 255.0f);
-				a = a + (q[i].getColor().getAlpha() / 255.0f);
 				
-				++div;
-			}	
-						
+				r = r + q[i].red;
+				g = g + q[i].green;
+				b = b + q[i].blue;
+				a = a + q[i].alpha;
+				
+				area = area + q[i].getPixelCount();
+			}
+			
 		}
 		
-		r = r / div;
-		g = g / div;
-		b = b / div;
-		a = a / div;
+		return mean(r, g, b, a, area);
+		
+	}
+	
+	/**
+	 * Define as somas do nó como as somas de seus filhos e a cor do nó como a
+	 * média correspondente, ponderada pela área de cada filho
+	 */
+	public void aggregateChildren() {
+		
+		long r = 0, g = 0, b = 0, a = 0;
+		
+		for(int i = 0; i < q.length; ++i) {
+			
+			if(q[i] != null) {
+				r = r + q[i].red;
+				g = g + q[i].green;
+				b = b + q[i].blue;
+				a = a + q[i].alpha;
+			}
 			
-		return new Color(r, g, b, a);
+		}
+		
+		setSums(r, g, b, a);
 		
 	}
 	
+	/**
+	 * Define as somas das componentes das cores da região e a cor do nó como
+	 * a média correspondente
+	 * 
+	 * @param r A soma da componente vermelha
+	 * @param g A soma da componente verde
+	 * @param b A soma da componente azul
+	 * @param a A soma da componente alpha
+	 */
+	void setSums(long r, long g, long b, long a) {
+		
+		red = r;
+		green = g;
+		blue = b;
+		alpha = a;
+		
+		color = mean(r, g, b, a, getPixelCount());
+		
+	}
+	
+	/**
+	 * Calcula a cor média a partir das somas das componentes, arredondando 
+	 * cada componente para o inteiro mais próximo
+	 * 
+	 * @param r A soma da componente vermelha
+	 * @param g A soma da componente verde
+	 * @param b A soma da componente azul
+	 * @param a A soma da componente alpha
+	 * @param count O número de pixels
+	 * 
+	 * @return A cor média
+	 */
+	static Color mean(long r, long g, long b, long a, long count) {
+		return new Color((int) ((2 * r + count) / (2 * count)), 
+				(int) ((2 * g + count) / (2 * count)), 
+				(int) ((2 * b + count) / (2 * count)), 
+				(int) ((2 * a + count) / (2 * count)));
+	}
+	
+	/**
+	 * Divide a região do nó em sub-regiões, criando os filhos do nó. A divisão
+	 * segue sempre a mesma regra, de modo que a geometria dos filhos depende
+	 * apenas da geometria do nó:
+	 * 
+	 * <ul>
+	 * <li>regiões com altura ou largura igual a 1 (faixas) com até 4 pixels
+	 * são divididas em pixels;</li>
+	 * <li>faixas maiores são divididas em duas metades;</li>
+	 * <li>as demais regiões são divididas em quatro quadrantes, na ordem
+	 * superior direito, superior esquerdo, inferior esquerdo e inferior 
+	 * direito.</li>
+	 * </ul>
+	 * 
+	 * Regiões de um único pixel não são divididas
+	 */
+	public void split() {
+		
+		if(height == 1 && width == 1) return;
+		
+		if(height == 1) {
+			
+			if(width <= 4) {
+				for(int k = 0; k < width; ++k) {
+					q[k] = new Node(x + k, y, 1, 1);
+				}
+			}
+			else {
+				
+				int w_ = width / 2;
+				
+				q[0] = new Node(x, y, 1, w_);
+				q[1] = new Node(x + w_, y, 1, width - w_);
+				
+			}
+			
+		}
+		else if(width == 1) {
+			
+			if(height <= 4) {
+				for(int k = 0; k < height; ++k) {
+					q[k] = new Node(x, y + k, 1, 1);
+				}
+			}
+			else {
+				
+				int h_ = height / 2;
+				
+				q[0] = new Node(x, y, h_, 1);
+				q[1] = new Node(x, y + h_, height - h_, 1);
+				
+			}
+			
+		}
+		else {
+			
+			int h_ = height / 2;
+			int w_ = width / 2;
+			
+			q[0] = new Node(x + w_, y, h_, width - w_);
+			q[1] = new Node(x, y, h_, w_);
+			q[2] = new Node(x, y + h_, height - h_, w_);
+			q[3] = new Node(x + w_, y + h_, height - h_, width - w_);
+			
+		}
+		
+	}
+	
+	/**
+	 * Verifica se a divisão da região do nó é opcional, ou seja, se a região
+	 * tem altura e largura maiores que 1. Faixas de largura ou altura 1 são
+	 * sempre divididas e pixels nunca são divididos
+	 * 
+	 * @return true se a região pode ou não ser dividida
+	 * 		   false caso contrário
+	 */
+	public boolean isRegular() {
+		return height > 1 && width > 1;
+	}
+	
 	/**
 	 * Verifica se o nó é uma folha (não tem nenhum filho)
 	 * 
@@ -130,7 +300,7 @@ public class Node implements Serializable {
 	public int getX() {
 		return x;
 	}
-
+	
 	/**
 	 * Retorna a posição Y inicial representada pelo nó
 	 * 
@@ -148,16 +318,70 @@ public class Node implements Serializable {
 	public Color getColor() {
 		return color;
 	}
-
+	
 	/**
 	 * Define a cor do nó
 	 * 
 	 * @param color A cor que será atribuída ao nó
 	 */
 	public void setColor(Color color) {
+		
 		this.color = color;
+		
+		long area = getPixelCount();
+		
+		red = color == null ? 0 : color.getRed() * area;
+		green = color == null ? 0 : color.getGreen() * area;
+		blue = color == null ? 0 : color.getBlue() * area;
+		alpha = color == null ? 0 : color.getAlpha() * area;
+		
 	}
-
+	
+	/**
+	 * Retorna a soma da componente vermelha das cores da região
+	 * 
+	 * @return A soma da componente vermelha
+	 */
+	public long getRedSum() {
+		return red;
+	}
+	
+	/**
+	 * Retorna a soma da componente verde das cores da região
+	 * 
+	 * @return A soma da componente verde
+	 */
+	public long getGreenSum() {
+		return green;
+	}
+	
+	/**
+	 * Retorna a soma da componente azul das cores da região
+	 * 
+	 * @return A soma da componente azul
+	 */
+	public long getBlueSum() {
+		return blue;
+	}
+	
+	/**
+	 * Retorna a soma da componente alpha das cores da região
+	 * 
+	 * @return A soma da componente alpha
+	 */
+	public long getAlphaSum() {
+		return alpha;
+	}
+	
+	/**
+	 * Retorna o número de pixels da região
+	 * 
+	 * @return O número de pixels da região
+	 */
+	public long getPixelCount() {
+		return (long) height * width;
+	}
+	
 	/**
 	 * Retorna o vetor contendo os filhos do nó
 	 * 
@@ -175,7 +399,7 @@ public class Node implements Serializable {
 	public int getHeight() {
 		return height;
 	}
-
+	
 	/**
 	 * Retorna a largura da região representada pelo nó
 	 * 
@@ -184,5 +408,23 @@ public class Node implements Serializable {
 	public int getWidth() {
 		return width;
 	}
+	
+	/**
+	 * Lê o nó serializado. Nós serializados por versões anteriores não têm as
+	 * somas das componentes, que são calculadas a partir da cor
+	 * 
+	 * @param in A stream do objeto
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 * @throws ClassNotFoundException Classe de um campo não encontrada
+	 */
+	private void readObject(ObjectInputStream in) 
+			throws IOException, ClassNotFoundException {
+		
+		in.defaultReadObject();
+		
+		if((red | green | blue | alpha) == 0) setColor(color);
+		
+	}
 
 }
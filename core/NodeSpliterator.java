@@ -0,0 +1,269 @@
+package quadtree.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <p>{@link Spliterator} dos nós de uma QuadTree, em pré-ordem.</p>
+ * 
+ * <p>O spliterator mantém a pilha das subárvores ainda não percorridas. A
+ * divisão entrega a primeira metade da pilha a um novo spliterator; se resta
+ * uma única subárvore, ela é substituída pelo seu nó raiz e pelas
+ * subárvores dos seus filhos (quadrantes) antes da divisão. Assim as
+ * subárvores são distribuídas entre as threads de um <i>stream</i> paralelo
+ * mantendo a ordem da pré-ordem. O tamanho estimado é a área das subárvores
+ * pendentes, e subárvores com área menor que {@link #MIN_SPLIT_AREA} não são
+ * divididas.</p>
+ * 
+ * @author pedro
+ * 
+ * @see QuadTree#nodes()
+ */
+class NodeSpliterator implements Spliterator<Node> {
+	
+	/**
+	 * Todos os nós
+	 */
+	static final int ALL = 0;
+	
+	/**
+	 * Apenas as folhas
+	 */
+	static final int LEAVES = 1;
+	
+	/**
+	 * Apenas os nós de um nível
+	 */
+	static final int LEVEL = 2;
+	
+	/**
+	 * Área mínima das subárvores pendentes para a divisão
+	 */
+	private static final long MIN_SPLIT_AREA = 1 << 12;
+	
+	/**
+	 * Subárvores e nós pendentes, na ordem em que são percorridos
+	 */
+	private Deque<Entry> pending;
+	
+	/**
+	 * Área das subárvores pendentes
+	 */
+	private long area;
+	
+	/**
+	 * Os nós entregues: {@link #ALL}, {@link #LEAVES} ou {@link #LEVEL}
+	 */
+	private int mode;
+	
+	/**
+	 * O nível dos nós entregues no modo {@link #LEVEL}
+	 */
+	private int level;
+	
+	/**
+	 * Cria o spliterator da subárvore de um nó
+	 * 
+	 * @param root A raiz da subárvore (profundidade 0)
+	 * @param mode Os nós entregues: {@link #ALL}, {@link #LEAVES} ou
+	 * 			   {@link #LEVEL}
+	 * @param level O nível dos nós entregues no modo {@link #LEVEL}
+	 */
+	NodeSpliterator(Node root, int mode, int level) {
+		
+		this(new ArrayDeque<Entry>(), mode, level);
+		
+		push(new Entry(root, 0, true));
+	
+	}
+	
+	/**
+	 * Cria o spliterator de subárvores pendentes
+	 * 
+	 * @param pending As subárvores e nós pendentes
+	 * @param mode Os nós entregues
+	 * @param level O nível dos nós entregues no modo {@link #LEVEL}
+	 */
+	private NodeSpliterator(Deque<Entry> pending, int mode, int level) {
+		
+		this.pending = pending;
+		this.mode = mode;
+		this.level = level;
+		
+		for(Entry e : pending) area = area + e.area();
+	
+	}
+	
+	/**
+	 * Adiciona uma entrada ao início das entradas pendentes
+	 * 
+	 * @param e A entrada
+	 */
+	private void push(Entry e) {
+		
+		pending.push(e);
+		area = area + e.area();
+	
+	}
+	
+	/**
+	 * Remove a primeira entrada pendente
+	 * 
+	 * @return A entrada
+	 */
+	private Entry pop() {
+		
+		Entry e = pending.pop();
+		area = area - e.area();
+		
+		return e;
+	}
+	
+	/**
+	 * Verifica se os filhos de uma entrada devem ser percorridos
+	 * 
+	 * @param e A entrada
+	 * 
+	 * @return true se a entrada é uma subárvore com nós a serem entregues
+	 * 		   abaixo da sua raiz
+	 */
+	private boolean expandable(Entry e) {
+		return e.subtree && !e.node.isLeaf() &&
+				(mode != LEVEL || e.depth < level);
+	}
+	
+	/**
+	 * Adiciona as subárvores dos filhos de um nó ao início das entradas
+	 * pendentes, de modo que o primeiro filho é o próximo a ser percorrido
+	 * 
+	 * @param e A entrada do nó
+	 */
+	private void pushChildren(Entry e) {
+		
+		Node q[] = e.node.getQ();
+		
+		for(int k = q.length - 1; k >= 0; --k) {
+			if(q[k] != null) push(new Entry(q[k], e.depth + 1, true));
+		}
+	
+	}
+	
+	/**
+	 * Verifica se um nó deve ser entregue
+	 * 
+	 * @param e A entrada do nó
+	 * 
+	 * @return true se o nó deve ser entregue
+	 */
+	private boolean accept(Entry e) {
+		
+		switch(mode) {
+			case LEAVES: return e.node.isLeaf();
+			case LEVEL: return e.depth == level;
+			default: return true;
+		}
+	
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super Node> action) {
+		
+		while(!pending.isEmpty()) {
+			
+			Entry e = pop();
+			
+			if(expandable(e)) pushChildren(e);
+			
+			if(accept(e)) {
+				action.accept(e.node);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	@Override
+	public Spliterator<Node> trySplit() {
+		
+		if(area < MIN_SPLIT_AREA) return null;
+		
+		//uma única subárvore: dividida em raiz e quadrantes
+		if(pending.size() == 1) {
+			
+			Entry e = pending.peek();
+			
+			if(!expandable(e)) return null;
+			
+			pop();
+			pushChildren(e);
+			push(new Entry(e.node, e.depth, false));
+		}
+		
+		int n = pending.size() / 2;
+		
+		Deque<Entry> prefix = new ArrayDeque<>();
+		
+		for(int k = 0; k < n; ++k) prefix.add(pop());
+		
+		return new NodeSpliterator(prefix, mode, level);
+	}
+	
+	@Override
+	public long estimateSize() {
+		return area;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+	
+	/**
+	 * <p>Entrada pendente: uma subárvore ou apenas um nó.</p>
+	 */
+	private static class Entry {
+		
+		/**
+		 * O nó
+		 */
+		private Node node;
+		
+		/**
+		 * A profundidade do nó
+		 */
+		private int depth;
+		
+		/**
+		 * true se a subárvore do nó deve ser percorrida, false se apenas o
+		 * nó
+		 */
+		private boolean subtree;
+		
+		/**
+		 * Cria a entrada
+		 * 
+		 * @param node O nó
+		 * @param depth A profundidade do nó
+		 * @param subtree true se a subárvore do nó deve ser percorrida
+		 */
+		private Entry(Node node, int depth, boolean subtree) {
+			this.node = node;
+			this.depth = depth;
+			this.subtree = subtree;
+		}
+		
+		/**
+		 * Retorna a área da entrada
+		 * 
+		 * @return A área da região do nó ou 1 se apenas o nó é percorrido
+		 */
+		private long area() {
+			return subtree ? node.getPixelCount() : 1;
+		}
+	
+	}
+
+}
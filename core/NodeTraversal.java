@@ -0,0 +1,183 @@
+package quadtree.core;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * <p>Percurso em pré-ordem dos nós de uma QuadTree com pilha explícita.</p>
+ * 
+ * <p>O percurso não utiliza recursão, de modo que a profundidade da árvore
+ * não é limitada pela pilha da JVM, e a pilha é reutilizada entre percursos,
+ * sem alocação por nó. As subárvores podem ser podadas de quatro formas:</p>
+ * 
+ * <ul>
+ * <li>o visitante retorna false ao visitar um nó e a subárvore do nó não é
+ * percorrida;</li>
+ * <li>os nós abaixo de uma profundidade máxima não são visitados
+ * ({@link #setMaxDepth(int)});</li>
+ * <li>as subárvores que não interceptam uma região não são visitadas
+ * ({@link #setRegion(Rectangle)});</li>
+ * <li>o visitante interrompe o percurso ({@link #stop()}).</li>
+ * </ul>
+ * 
+ * <p>Uma instância não deve ser utilizada por mais de uma thread ao mesmo
+ * tempo.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class NodeTraversal {
+	
+	/**
+	 * Capacidade inicial da pilha
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+	
+	/**
+	 * Nós pendentes
+	 */
+	private Node nodes[];
+	
+	/**
+	 * Profundidade dos nós pendentes
+	 */
+	private int depths[];
+	
+	/**
+	 * Profundidade máxima dos nós visitados
+	 */
+	private int maxDepth;
+	
+	/**
+	 * Região dos nós visitados ou null se todos os nós são visitados
+	 */
+	private Rectangle region;
+	
+	/**
+	 * Armazena se o percurso em andamento foi interrompido
+	 */
+	private boolean stopped;
+	
+	/**
+	 * Cria o percurso sem poda por profundidade ou por região
+	 */
+	public NodeTraversal() {
+		
+		nodes = new Node[INITIAL_CAPACITY];
+		depths = new int[INITIAL_CAPACITY];
+		
+		maxDepth = Integer.MAX_VALUE;
+	
+	}
+	
+	/**
+	 * Define a profundidade máxima dos nós visitados
+	 * 
+	 * @param maxDepth A profundidade máxima (a raiz tem profundidade 0)
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+	
+	/**
+	 * Define a região dos nós visitados. Apenas os nós cuja região intercepta
+	 * a região são visitados
+	 * 
+	 * @param region A região da imagem ou null para visitar todos os nós
+	 */
+	public void setRegion(Rectangle region) {
+		this.region = region == null ? null : new Rectangle(region);
+	}
+	
+	/**
+	 * Interrompe o percurso em andamento. Chamado pelo visitante
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	/**
+	 * Percorre em pré-ordem a subárvore de um nó
+	 * 
+	 * @param root A raiz da subárvore (profundidade 0)
+	 * @param visitor O visitante dos nós. Os filhos de um nó são visitados
+	 * 				  apenas se o visitante retorna true
+	 * 
+	 * @return true se o percurso foi concluído
+	 * 		   false se foi interrompido por {@link #stop()}
+	 */
+	public boolean traverse(Node root, NodeVisitor visitor) {
+		
+		stopped = false;
+		
+		int top = 0;
+		
+		nodes[top] = root;
+		depths[top] = 0;
+		top++;
+		
+		while(top > 0) {
+			
+			top--;
+			
+			Node node = nodes[top];
+			int depth = depths[top];
+			
+			nodes[top] = null;
+			
+			if(!intersects(node)) continue;
+			
+			boolean children = visitor.visit(node, depth);
+			
+			if(stopped) {
+				Arrays.fill(nodes, 0, top, null);
+				return false;
+			}
+			
+			if(!children || depth >= maxDepth) continue;
+			
+			Node q[] = node.getQ();
+			
+			if(top + q.length > nodes.length) grow();
+			
+			//o primeiro filho fica no topo da pilha
+			for(int k = q.length - 1; k >= 0; --k) {
+				if(q[k] != null) {
+					nodes[top] = q[k];
+					depths[top] = depth + 1;
+					top++;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Verifica se a região de um nó intercepta a região do percurso
+	 * 
+	 * @param node O nó
+	 * 
+	 * @return true se o nó deve ser visitado
+	 */
+	private boolean intersects(Node node) {
+		
+		if(region == null) return true;
+		
+		return node.getX() < region.x + region.width &&
+				region.x < node.getX() + node.getWidth() &&
+				node.getY() < region.y + region.height &&
+				region.y < node.getY() + node.getHeight();
+	}
+	
+	/**
+	 * Dobra a capacidade da pilha
+	 */
+	private void grow() {
+		
+		nodes = Arrays.copyOf(nodes, nodes.length * 2);
+		depths = Arrays.copyOf(depths, depths.length * 2);
+	
+	}
+
+}
@@ -0,0 +1,22 @@
+package quadtree.core;
+
+/**
+ * <p>Visitante dos nós de uma QuadTree. Os nós são visitados em pré-ordem.</p>
+ * 
+ * @author pedro
+ *
+ */
+public interface NodeVisitor {
+	
+	/**
+	 * Visita um nó da árvore
+	 * 
+	 * @param node O nó visitado
+	 * @param depth A profundidade do nó (a raiz tem profundidade 0)
+	 * 
+	 * @return true se os filhos do nó devem ser visitados
+	 * 		   false caso contrário
+	 */
+	boolean visit(Node node, int depth);
+
+}
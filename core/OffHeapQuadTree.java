@@ -0,0 +1,751 @@
+package quadtree.core;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>QuadTree armazenada fora do <i>heap</i> da JVM.</p>
+ * 
+ * <p>Os nós são armazenados em pré-ordem em buffers diretos
+ * ({@link ByteBuffer#allocateDirect(int)}), 8 bytes por nó: a cor (ARGB) e o
+ * número de nós da subárvore. A geometria dos nós não é armazenada: ela é
+ * calculada ao percorrer a árvore a partir da raiz, com a mesma divisão de
+ * {@link Node#split()}. Os filhos de um nó são os nós seguintes a ele, e o
+ * número de nós da subárvore permite saltar subárvores inteiras. Uma árvore
+ * com centenas de milhões de nós não ocupa o <i>heap</i> e não é percorrida
+ * pelo coletor de lixo.</p>
+ * 
+ * <p>Os nós entregues aos visitantes são temporários, criados durante o
+ * percurso. A memória dos buffers é liberada explicitamente por
+ * {@link #close()}; após o fechamento nenhuma operação é permitida. O
+ * fechamento não pode ser concorrente com outras operações sobre a árvore. A
+ * memória disponível para buffers diretos é limitada pela opção
+ * <code>-XX:MaxDirectMemorySize</code> da JVM.</p>
+ * 
+ * <p>São utilizados buffers diretos e não a API de memória externa
+ * (<code>MemorySegment</code>), que no Java 17 ainda é um módulo incubado:
+ * assim como a Vector API de {@link PixelKernel}, ela exigiria opções de
+ * compilação e execução, e a árvore é parte dos fontes principais.</p>
+ * 
+ * <p>A árvore pode ser construída diretamente a partir dos pixels de uma
+ * imagem ({@link #build(PixelBuffer, double)}), lida de um arquivo
+ * (<code>QuadTreeReader.readOffHeap</code>) ou copiada de uma QuadTree
+ * ({@link #of(QuadTree)}).</p>
+ * 
+ * @author pedro
+ * 
+ * @see Builder
+ */
+public class OffHeapQuadTree implements Closeable {
+	
+	/**
+	 * Bytes ocupados por um nó
+	 */
+	public static final int NODE_BYTES = 8;
+	
+	/**
+	 * Número máximo de nós de cada buffer (128 MB)
+	 */
+	private static final int CHUNK_NODES = 1 << 24;
+	
+	/**
+	 * Capacidade inicial, em nós, quando o número de nós não é conhecido
+	 */
+	private static final int INITIAL_NODES = 1 << 12;
+	
+	/**
+	 * Buffers dos nós. Todos exceto o último têm {@link #CHUNK_NODES} nós
+	 */
+	private ByteBuffer chunks[];
+	
+	/**
+	 * Número de nós
+	 */
+	private long count;
+	
+	/**
+	 * Altura da imagem
+	 */
+	private int height;
+	
+	/**
+	 * Largura da imagem
+	 */
+	private int width;
+	
+	/**
+	 * Precisão utilizada na construção da árvore
+	 */
+	private double accuracy;
+	
+	/**
+	 * Paleta de cores das folhas ou null
+	 */
+	private Palette palette;
+	
+	/**
+	 * Cria a árvore vazia
+	 * 
+	 * @param height Altura da imagem
+	 * @param width Largura da imagem
+	 * @param accuracy Precisão utilizada na construção da árvore
+	 * @param palette Paleta de cores das folhas ou null
+	 * @param capacity Número esperado de nós ou 0 se desconhecido
+	 */
+	private OffHeapQuadTree(int height, int width, double accuracy,
+			Palette palette, long capacity) {
+		
+		this.height = height;
+		this.width = width;
+		this.accuracy = accuracy;
+		this.palette = palette;
+		
+		int first = capacity > 0 ? (int) Math.min(capacity, CHUNK_NODES) :
+			INITIAL_NODES;
+		
+		chunks = new ByteBuffer[] {allocate(first)};
+	
+	}
+	
+	/**
+	 * Copia uma QuadTree para fora do <i>heap</i>
+	 * 
+	 * @param quadTree A árvore
+	 * 
+	 * @return A cópia da árvore fora do <i>heap</i>
+	 */
+	public static OffHeapQuadTree of(QuadTree quadTree) {
+		
+		Builder builder = new Builder(quadTree.getHeight(),
+				quadTree.getWidth(), quadTree.getAccuracy(),
+				quadTree.getPalette(), 0);
+		
+		copy(quadTree.getRoot(), 0, builder);
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Constrói a árvore de uma imagem fora do <i>heap</i>, com a mesma 
+	 * divisão e as mesmas cores de 
+	 * {@link QuadTree#QuadTree(PixelBuffer, double, Palette)} sem paleta.
+	 * 
+	 * <p>Os nós são entregues ao construtor à medida que são criados e 
+	 * descartados em seguida: apenas os pixels da imagem e o caminho entre a
+	 * raiz e o nó atual ocupam o <i>heap</i>.</p>
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * 
+	 * @return A árvore, que deve ser fechada após o uso
+	 */
+	public static OffHeapQuadTree build(PixelBuffer image, double accuracy) {
+		
+		Builder builder = new Builder(image.getHeight(), image.getWidth(),
+				accuracy, null, 0);
+		
+		QuadTree.compress(image, accuracy, builder);
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Entrega os nós de uma árvore em memória ao construtor, em pré-ordem
+	 * 
+	 * @param node O nó atual
+	 * @param depth A profundidade do nó
+	 * @param builder O construtor
+	 */
+	private static void copy(Node node, int depth, Builder builder) {
+		
+		builder.visit(node, depth);
+		
+		for(Node q : node.getQ()) {
+			if(q != null) copy(q, depth + 1, builder);
+		}
+	
+	}
+	
+	/**
+	 * Aloca um buffer direto
+	 * 
+	 * @param nodes A capacidade do buffer em nós
+	 * 
+	 * @return O buffer
+	 */
+	private static ByteBuffer allocate(int nodes) {
+		return ByteBuffer.allocateDirect(nodes * NODE_BYTES)
+				.order(ByteOrder.nativeOrder());
+	}
+	
+	/**
+	 * Adiciona um nó ao final da árvore
+	 * 
+	 * @param color A cor do nó (ARGB)
+	 * 
+	 * @return O índice do nó
+	 */
+	private long add(int color) {
+		
+		if(count == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Número máximo de nós excedido");
+		}
+		
+		ByteBuffer last = chunks[chunks.length - 1];
+		int nodes = last.capacity() / NODE_BYTES;
+		
+		//último buffer cheio
+		if(count == (long) (chunks.length - 1) * CHUNK_NODES + nodes) {
+			
+			if(nodes < CHUNK_NODES) {
+				
+				ByteBuffer grown = allocate(Math.min(CHUNK_NODES, 2 * nodes));
+				
+				last.clear();
+				grown.put(last);
+				
+				free(last);
+				
+				chunks[chunks.length - 1] = grown;
+			}
+			else {
+				
+				ByteBuffer expanded[] = new ByteBuffer[chunks.length + 1];
+				System.arraycopy(chunks, 0, expanded, 0, chunks.length);
+				
+				expanded[chunks.length] = allocate(INITIAL_NODES);
+				
+				chunks = expanded;
+			}
+		}
+		
+		long index = count++;
+		
+		setColor(index, color);
+		
+		return index;
+	}
+	
+	/**
+	 * Retorna o buffer de um nó
+	 * 
+	 * @param index O índice do nó
+	 * 
+	 * @return O buffer que contém o nó
+	 */
+	private ByteBuffer chunk(long index) {
+		
+		if(chunks == null) {
+			throw new IllegalStateException("Árvore fechada");
+		}
+		
+		return chunks[(int) (index / CHUNK_NODES)];
+	}
+	
+	/**
+	 * Retorna a posição de um nó no seu buffer
+	 * 
+	 * @param index O índice do nó
+	 * 
+	 * @return A posição do nó em bytes
+	 */
+	private static int offset(long index) {
+		return (int) (index % CHUNK_NODES) * NODE_BYTES;
+	}
+	
+	/**
+	 * Retorna a cor de um nó
+	 * 
+	 * @param index O índice do nó
+	 * 
+	 * @return A cor do nó (ARGB)
+	 */
+	private int color(long index) {
+		return chunk(index).getInt(offset(index));
+	}
+	
+	/**
+	 * Define a cor de um nó
+	 * 
+	 * @param index O índice do nó
+	 * @param color A cor do nó (ARGB)
+	 */
+	private void setColor(long index, int color) {
+		chunk(index).putInt(offset(index), color);
+	}
+	
+	/**
+	 * Retorna o número de nós da subárvore de um nó
+	 * 
+	 * @param index O índice do nó
+	 * 
+	 * @return O número de nós da subárvore (1 para folhas)
+	 */
+	private int size(long index) {
+		return chunk(index).getInt(offset(index) + 4);
+	}
+	
+	/**
+	 * Define o número de nós da subárvore de um nó
+	 * 
+	 * @param index O índice do nó
+	 * @param size O número de nós da subárvore
+	 */
+	private void setSize(long index, int size) {
+		chunk(index).putInt(offset(index) + 4, size);
+	}
+	
+	/**
+	 * Percorre a árvore em pré-ordem. Os filhos de um nó são visitados apenas
+	 * se o visitante retorna true ao visitar o nó
+	 * 
+	 * @param visitor O visitante dos nós
+	 */
+	public void visit(NodeVisitor visitor) {
+		visit(0, new Node(0, 0, height, width), 0, visitor);
+	}
+	
+	/**
+	 * Percorre a subárvore de um nó em pré-ordem
+	 * 
+	 * @param index O índice do nó
+	 * @param node O nó temporário com a geometria do nó
+	 * @param depth A profundidade do nó
+	 * @param visitor O visitante dos nós
+	 */
+	private void visit(long index, Node node, int depth,
+			NodeVisitor visitor) {
+		
+		node.setColor(new Color(color(index), true));
+		
+		int size = size(index);
+		
+		//os filhos são criados antes da visita para que a folha seja 
+		//identificada pelo visitante
+		if(size > 1) node.split();
+		
+		if(!visitor.visit(node, depth) || size == 1) return;
+		
+		long child = index + 1;
+		
+		for(Node q : node.getQ()) {
+			if(q != null) {
+				visit(child, q, depth + 1, visitor);
+				child = child + size(child);
+			}
+		}
+	
+	}
+	
+	/**
+	 * Retorna a cor de um pixel, dada pela folha que o contém
+	 * 
+	 * @param x A coluna do pixel
+	 * @param y A linha do pixel
+	 * 
+	 * @return A cor do pixel (ARGB)
+	 */
+	public int getColor(int x, int y) {
+		
+		if(x < 0 || y < 0 || x >= width || y >= height) {
+			throw new IndexOutOfBoundsException("Pixel fora da imagem: " +
+					x + ", " + y);
+		}
+		
+		long index = 0;
+		Node node = new Node(0, 0, height, width);
+		
+		while(size(index) > 1) {
+			
+			node.split();
+			
+			long child = index + 1;
+			
+			for(Node q : node.getQ()) {
+				
+				if(q == null) continue;
+				
+				if(bounds(q).contains(x, y)) {
+					node = q;
+					break;
+				}
+				
+				child = child + size(child);
+			}
+			
+			index = child;
+		}
+		
+		return color(index);
+	}
+	
+	/**
+	 * Desenha as folhas da árvore na região de um buffer de pixels. Apenas as
+	 * subárvores que interceptam a região do buffer são percorridas
+	 * 
+	 * @param buffer O buffer de destino
+	 */
+	public void paint(final PixelBuffer buffer) {
+		
+		final Rectangle region = buffer.getBounds();
+		
+		visit(new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				Rectangle bounds = bounds(node);
+				
+				if(!bounds.intersects(region)) return false;
+				
+				if(node.isLeaf()) {
+					buffer.fill(bounds, node.getColor().getRGB());
+				}
+				
+				return true;
+			}
+		
+		});
+	
+	}
+	
+	/**
+	 * Desenha as folhas da árvore em uma região da imagem
+	 * 
+	 * @param region A região da imagem
+	 * 
+	 * @return Os pixels da região
+	 */
+	public PixelBuffer render(Rectangle region) {
+		
+		PixelBuffer buffer = new PixelBuffer(
+				new int[region.width * region.height], region.x, region.y,
+				region.width, region.height);
+		
+		paint(buffer);
+		
+		return buffer;
+	}
+	
+	/**
+	 * Copia a árvore para o <i>heap</i>
+	 * 
+	 * @return A QuadTree com os mesmos nós
+	 */
+	public QuadTree toQuadTree() {
+		
+		Node root = new Node(0, 0, height, width);
+		
+		expand(0, root);
+		
+		return new QuadTree(height, width, accuracy, root, palette);
+	}
+	
+	/**
+	 * Cria os nós da subárvore de um nó a partir de um nó com a geometria já
+	 * definida
+	 * 
+	 * @param index O índice do nó
+	 * @param node O nó com a geometria do nó
+	 */
+	private void expand(long index, Node node) {
+		
+		node.setColor(new Color(color(index), true));
+		
+		if(size(index) == 1) return;
+		
+		node.split();
+		
+		long child = index + 1;
+		
+		for(Node q : node.getQ()) {
+			if(q != null) {
+				expand(child, q);
+				child = child + size(child);
+			}
+		}
+		
+		//somas exatas, como na árvore construída
+		node.aggregateChildren();
+	
+	}
+	
+	/**
+	 * Retorna a altura da árvore (número de níveis)
+	 * 
+	 * @return A altura da árvore (número de níveis)
+	 */
+	public int height() {
+		
+		final int levels[] = new int[1];
+		
+		visit(new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				levels[0] = Math.max(levels[0], depth + 1);
+				
+				return true;
+			}
+		
+		});
+		
+		return levels[0];
+	}
+	
+	/**
+	 * Libera a memória dos buffers. Após o fechamento nenhuma operação é
+	 * permitida
+	 */
+	@Override
+	public void close() {
+		
+		ByteBuffer released[] = chunks;
+		
+		if(released == null) return;
+		
+		chunks = null;
+		
+		for(ByteBuffer chunk : released) free(chunk);
+	
+	}
+	
+	/**
+	 * Libera a memória de um buffer direto imediatamente, se a JVM permitir.
+	 * Caso contrário a memória é liberada pelo coletor de lixo quando o
+	 * buffer deixa de ser referenciado
+	 * 
+	 * @param buffer O buffer
+	 */
+	private static void free(ByteBuffer buffer) {
+		
+		try {
+			
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			
+			Method invokeCleaner = type.getMethod("invokeCleaner",
+					ByteBuffer.class);
+			invokeCleaner.invoke(field.get(null), buffer);
+		
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			//liberação pelo coletor de lixo
+		}
+	
+	}
+	
+	/**
+	 * Verifica se a árvore foi fechada
+	 * 
+	 * @return true se a memória da árvore foi liberada
+	 * 		   false caso contrário
+	 */
+	public boolean isClosed() {
+		return chunks == null;
+	}
+	
+	/**
+	 * Retorna a região da imagem representada por um nó
+	 * 
+	 * @param node O nó
+	 * 
+	 * @return A região representada pelo nó
+	 */
+	private static Rectangle bounds(Node node) {
+		return new Rectangle(node.getX(), node.getY(), node.getWidth(),
+				node.getHeight());
+	}
+	
+	/**
+	 * Retorna o número de nós da árvore
+	 * 
+	 * @return O número de nós
+	 */
+	public long getNodeCount() {
+		return count;
+	}
+	
+	/**
+	 * Retorna a memória ocupada pelos buffers da árvore
+	 * 
+	 * @return A memória fora do <i>heap</i> em bytes
+	 */
+	public long getMemoryBytes() {
+		
+		long bytes = 0;
+		
+		if(chunks != null) {
+			for(ByteBuffer chunk : chunks) bytes = bytes + chunk.capacity();
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * Retorna a altura da imagem
+	 * 
+	 * @return A altura da imagem
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura da imagem
+	 * 
+	 * @return A largura da imagem
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção da árvore
+	 * 
+	 * @return A precisão utilizada na construção da árvore
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * Retorna a paleta de cores das folhas
+	 * 
+	 * @return A paleta de cores das folhas ou null se a árvore não utiliza
+	 * 		   paleta
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+	
+	/**
+	 * <p>Constrói uma árvore fora do <i>heap</i> a partir dos nós entregues
+	 * em pré-ordem, como por
+	 * {@link quadtree.io.QuadTreeReader#stream(java.io.File, NodeVisitor)}.
+	 * Apenas o caminho entre a raiz e o nó atual é mantido pelo construtor,
+	 * de modo que a árvore pode ser lida de um arquivo sem ser carregada no
+	 * <i>heap</i>.</p>
+	 * 
+	 * <p>Um nó interno cuja cor depende dos filhos pode ser entregue sem cor
+	 * e ter a cor definida por {@link #setColor(int, Color)} após a entrega
+	 * da sua subárvore.</p>
+	 */
+	public static class Builder implements NodeVisitor {
+		
+		/**
+		 * A árvore em construção
+		 */
+		private OffHeapQuadTree tree;
+		
+		/**
+		 * Índice dos nós do caminho entre a raiz e o último nó, por
+		 * profundidade
+		 */
+		private long path[];
+		
+		/**
+		 * Profundidade do último nó ou -1 se nenhum nó foi adicionado
+		 */
+		private int depth;
+		
+		/**
+		 * Cria o construtor de uma árvore
+		 * 
+		 * @param height Altura da imagem
+		 * @param width Largura da imagem
+		 * @param accuracy Precisão utilizada na construção da árvore
+		 * @param palette Paleta de cores das folhas ou null
+		 * @param nodeCount Número de nós da árvore, para reservar a memória,
+		 * 					ou 0 se desconhecido
+		 */
+		public Builder(int height, int width, double accuracy,
+				Palette palette, long nodeCount) {
+			
+			tree = new OffHeapQuadTree(height, width, accuracy, palette,
+					nodeCount);
+			
+			path = new long[64];
+			depth = -1;
+		
+		}
+		
+		@Override
+		public boolean visit(Node node, int depth) {
+			
+			//as subárvores dos nós anteriores de mesma profundidade ou mais
+			//profundos estão completas
+			finish(depth);
+			
+			if(depth == path.length) {
+				long grown[] = new long[2 * path.length];
+				System.arraycopy(path, 0, grown, 0, path.length);
+				path = grown;
+			}
+			
+			Color color = node.getColor();
+			
+			path[depth] = tree.add(color != null ? color.getRGB() : 0);
+			this.depth = depth;
+			
+			return true;
+		}
+		
+		/**
+		 * Define a cor de um nó do caminho entre a raiz e o último nó 
+		 * entregue
+		 * 
+		 * @param depth A profundidade do nó
+		 * @param color A cor do nó
+		 */
+		public void setColor(int depth, Color color) {
+			
+			if(depth < 0 || depth > this.depth) {
+				throw new IllegalArgumentException(
+						"Profundidade fora do caminho: " + depth);
+			}
+			
+			tree.setColor(path[depth], color.getRGB());
+		
+		}
+		
+		/**
+		 * Define o número de nós das subárvores completas
+		 * 
+		 * @param level A profundidade a partir da qual as subárvores estão
+		 * 				completas
+		 */
+		private void finish(int level) {
+			
+			for(; depth >= level; --depth) {
+				tree.setSize(path[depth], (int) (tree.count - path[depth]));
+			}
+		
+		}
+		
+		/**
+		 * Conclui a construção
+		 * 
+		 * @return A árvore construída
+		 */
+		public OffHeapQuadTree build() {
+			
+			finish(0);
+			
+			if(tree.count == 0) {
+				throw new IllegalStateException("Árvore vazia");
+			}
+			
+			return tree;
+		}
+	
+	}
+
+}
@@ -0,0 +1,432 @@
+package quadtree.core;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <p>Dicionário de cores compartilhado pelas folhas de uma QuadTree.</p>
+ *
+ * <p>Cada cor distinta é armazenada uma única vez e as folhas referenciam a
+ * entrada da paleta, de modo que em arquivo apenas o índice da entrada é
+ * armazenado para cada folha.</p>
+ *
+ * <p>Se o número de cores distintas excede a capacidade da paleta as cores
+ * são quantizadas por meio do algoritmo <i>median cut</i>.</p>
+ *
+ * @author pedro
+ *
+ */
+public class Palette implements Serializable {
+
+	/**
+	 * Serial version
+	 */
+	private static final long serialVersionUID = -2144630381949375582L;
+
+	/**
+	 * Capacidade máxima de uma paleta. Os índices são armazenados em até
+	 * dois bytes
+	 */
+	public static final int MAX_SIZE = 65536;
+
+	/**
+	 * Número máximo de entradas da paleta
+	 */
+	private int maxSize;
+
+	/**
+	 * Entradas da paleta
+	 */
+	private Color colors[];
+
+	/**
+	 * Indica se as cores foram quantizadas, ou seja, se cores distintas
+	 * compartilham a mesma entrada
+	 */
+	private boolean quantized;
+
+	/**
+	 * Índice de cada cor (ARGB) na paleta
+	 */
+	private transient Map<Integer, Integer> index;
+
+	/**
+	 * Cria uma paleta vazia com a capacidade máxima
+	 */
+	public Palette() {
+		this(MAX_SIZE);
+	}
+
+	/**
+	 * Cria uma paleta vazia
+	 *
+	 * @param maxSize O número máximo de entradas da paleta. Se a imagem
+	 * 				possui mais cores as cores são quantizadas
+	 */
+	public Palette(int maxSize) {
+
+		if(maxSize < 1 || maxSize > MAX_SIZE) {
+			throw new IllegalArgumentException("Tamanho de paleta inválido: "
+					+ maxSize);
+		}
+
+		this.maxSize = maxSize;
+
+		colors = new Color[0];
+		index = new HashMap<>();
+	}
+
+	/**
+	 * Cria uma paleta a partir das suas entradas, como ao carregar a paleta de
+	 * um arquivo
+	 *
+	 * @param argb As entradas da paleta no formato ARGB
+	 */
+	public Palette(int argb[]) {
+
+		this(Math.max(1, argb.length));
+
+		colors = new Color[argb.length];
+
+		for(int i = 0; i < argb.length; ++i) {
+			colors[i] = new Color(argb[i], true);
+			index.put(argb[i], i);
+		}
+
+	}
+
+	/**
+	 * Define as entradas da paleta a partir do histograma de cores da imagem.
+	 * Se o número de cores é maior que a capacidade da paleta as cores são
+	 * quantizadas
+	 *
+	 * @param histogram O histograma de cores (cor ARGB e número de pixels)
+	 */
+	public void build(Map<Integer, Integer> histogram) {
+
+		index = new HashMap<>();
+
+		int argb[] = new int[histogram.size()];
+
+		int n = 0;
+		for(int c : histogram.keySet()) {
+			argb[n++] = c;
+		}
+
+		//todas as cores cabem na paleta, não há quantização
+		if(argb.length <= maxSize) {
+
+			quantized = false;
+			colors = new Color[argb.length];
+
+			for(int i = 0; i < argb.length; ++i) {
+				colors[i] = new Color(argb[i], true);
+				index.put(argb[i], i);
+			}
+
+			return;
+		}
+
+		quantized = true;
+
+		medianCut(argb, histogram);
+
+	}
+
+	/**
+	 * Quantiza as cores da imagem por meio do algoritmo median cut. A caixa
+	 * com o maior intervalo em uma das componentes é dividida na mediana
+	 * (ponderada pelo número de pixels) até que a paleta esteja cheia
+	 *
+	 * @param argb As cores distintas da imagem
+	 * @param histogram O histograma de cores
+	 */
+	private void medianCut(int argb[], Map<Integer, Integer> histogram) {
+
+		PriorityQueue<Box> queue = new PriorityQueue<>(
+				new Comparator<Box>() {
+
+			@Override
+			public int compare(Box b1, Box b2) {
+				return Integer.compare(b2.range, b1.range);
+			}
+
+		});
+
+		Box boxes[] = new Box[maxSize];
+		int count = 0;
+
+		Box first = new Box(argb, 0, argb.length);
+		first.slot = count;
+		boxes[count++] = first;
+		queue.add(first);
+
+		while(count < maxSize && !queue.isEmpty()) {
+
+			Box box = queue.poll();
+
+			//caixa com uma única cor não pode ser dividida
+			if(box.range == 0) break;
+
+			box.sort(argb);
+
+			//mediana ponderada pelo número de pixels
+			long total = 0;
+			for(int i = box.start; i < box.end; ++i) {
+				total = total + histogram.get(argb[i]);
+			}
+
+			long acc = 0;
+			int median = box.start + 1;
+			for(int i = box.start; i < box.end - 1; ++i) {
+
+				acc = acc + histogram.get(argb[i]);
+				median = i + 1;
+
+				if(acc * 2 >= total) break;
+			}
+
+			Box left = new Box(argb, box.start, median);
+			Box right = new Box(argb, median, box.end);
+
+			//substitui a caixa dividida pela metade esquerda
+			left.slot = box.slot;
+			boxes[left.slot] = left;
+
+			right.slot = count;
+			boxes[count++] = right;
+
+			queue.add(left);
+			queue.add(right);
+
+		}
+
+		//a cor de cada caixa é a média ponderada das cores da caixa
+		colors = new Color[count];
+
+		for(int k = 0; k < count; ++k) {
+
+			Box box = boxes[k];
+
+			long a = 0, r = 0, g = 0, b = 0, total = 0;
+
+			for(int i = box.start; i < box.end; ++i) {
+
+				int c = argb[i];
+				long weight = histogram.get(c);
+
+				a = a + ((c >>> 24) & 0xff) * weight;
+				r = r + ((c >> 16) & 0xff) * weight;
+				g = g + ((c >> 8) & 0xff) * weight;
+				b = b + (c & 0xff) * weight;
+
+				total = total + weight;
+
+				index.put(c, k);
+			}
+
+			colors[k] = new Color((int) (r / total), (int) (g / total),
+					(int) (b / total), (int) (a / total));
+		}
+		
+		//cada entrada é representada por ela mesma
+		for(int k = 0; k < count; ++k) {
+			index.put(colors[k].getRGB(), k);
+		}
+
+	}
+
+	/**
+	 * Retorna o índice da entrada da paleta que representa a cor. Se a cor
+	 * não foi utilizada na construção da paleta a entrada mais próxima é
+	 * retornada
+	 *
+	 * @param color A cor
+	 *
+	 * @return O índice da entrada que representa a cor
+	 */
+	public int indexOf(Color color) {
+
+		int argb = color.getRGB();
+
+		Integer i = index.get(argb);
+		if(i != null) return i;
+
+		//busca a entrada mais próxima
+		int best = 0;
+		long min = Long.MAX_VALUE;
+
+		for(int k = 0; k < colors.length; ++k) {
+
+			long da = colors[k].getAlpha() - color.getAlpha();
+			long dr = colors[k].getRed() - color.getRed();
+			long dg = colors[k].getGreen() - color.getGreen();
+			long db = colors[k].getBlue() - color.getBlue();
+
+			long d = da * da + dr * dr + dg * dg + db * db;
+
+			if(d < min) {
+				min = d;
+				best = k;
+			}
+		}
+
+		index.put(argb, best);
+
+		return best;
+	}
+
+	/**
+	 * Retorna a cor de uma entrada da paleta
+	 *
+	 * @param index O índice da entrada
+	 *
+	 * @return A cor da entrada
+	 */
+	public Color getColor(int index) {
+		return colors[index];
+	}
+
+	/**
+	 * Retorna o número de entradas da paleta
+	 *
+	 * @return O número de entradas da paleta
+	 */
+	public int size() {
+		return colors.length;
+	}
+
+	/**
+	 * Retorna o número máximo de entradas da paleta
+	 *
+	 * @return O número máximo de entradas da paleta
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Retorna se as cores da imagem foram quantizadas na construção da paleta
+	 *
+	 * @return true se cores distintas compartilham a mesma entrada
+	 * 		   false caso contrário
+	 */
+	public boolean isQuantized() {
+		return quantized;
+	}
+
+	/**
+	 * Reconstrói o índice das cores ao deserializar a paleta
+	 *
+	 * @param in A stream de leitura do objeto
+	 *
+	 * @throws IOException Erro de leitura
+	 * @throws ClassNotFoundException Classe serializada não encontrada
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+
+		in.defaultReadObject();
+
+		index = new HashMap<>();
+		for(int i = 0; i < colors.length; ++i) {
+			index.put(colors[i].getRGB(), i);
+		}
+
+	}
+
+	/**
+	 * <p>Caixa do algoritmo median cut: intervalo do vetor de cores.</p>
+	 */
+	private static class Box {
+
+		/**
+		 * Posição inicial (inclusiva) da caixa no vetor de cores
+		 */
+		private int start;
+
+		/**
+		 * Posição final (exclusiva) da caixa no vetor de cores
+		 */
+		private int end;
+
+		/**
+		 * Deslocamento (em bits) da componente com maior intervalo
+		 */
+		private int shift;
+
+		/**
+		 * O intervalo da componente com maior intervalo
+		 */
+		private int range;
+
+		/**
+		 * Posição da caixa no vetor de caixas
+		 */
+		private int slot;
+
+		/**
+		 * Cria a caixa, calculando a componente com maior intervalo
+		 *
+		 * @param argb O vetor de cores
+		 * @param start Posição inicial (inclusiva) da caixa
+		 * @param end Posição final (exclusiva) da caixa
+		 */
+		private Box(int argb[], int start, int end) {
+
+			this.start = start;
+			this.end = end;
+
+			range = -1;
+
+			for(int s = 0; s <= 24; s += 8) {
+
+				int min = 255;
+				int max = 0;
+
+				for(int i = start; i < end; ++i) {
+					int v = (argb[i] >>> s) & 0xff;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+
+				if(max - min > range) {
+					range = max - min;
+					shift = s;
+				}
+			}
+
+		}
+
+		/**
+		 * Ordena as cores da caixa pela componente com maior intervalo
+		 *
+		 * @param argb O vetor de cores
+		 */
+		private void sort(int argb[]) {
+
+			long keys[] = new long[end - start];
+
+			for(int i = start; i < end; ++i) {
+				long v = (argb[i] >>> shift) & 0xff;
+				keys[i - start] = (v << 32) | (argb[i] & 0xffffffffL);
+			}
+
+			Arrays.sort(keys);
+
+			for(int i = start; i < end; ++i) {
+				argb[i] = (int) keys[i - start];
+			}
+
+		}
+
+	}
+
+}
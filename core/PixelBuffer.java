@@ -0,0 +1,214 @@
+package quadtree.core;
+
+import java.awt.Rectangle;
+
+/**
+ * <p>Região retangular de pixels de uma imagem, armazenados no formato ARGB
+ * linha a linha.</p>
+ * 
+ * <p>Os pixels são acessados pelas coordenadas da imagem: a região começa na
+ * posição (x, y) da imagem, de modo que um buffer pode representar tanto a
+ * imagem inteira quanto apenas a região de um nó.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class PixelBuffer {
+	
+	/**
+	 * Pixels da região no formato ARGB
+	 */
+	private int pixels[];
+	
+	/**
+	 * Posição X inicial da região na imagem
+	 */
+	private int x;
+	
+	/**
+	 * Posição Y inicial da região na imagem
+	 */
+	private int y;
+	
+	/**
+	 * Largura da região
+	 */
+	private int width;
+	
+	/**
+	 * Altura da região
+	 */
+	private int height;
+	
+	/**
+	 * Cria um buffer vazio (pixels pretos transparentes) que representa uma
+	 * imagem inteira
+	 * 
+	 * @param width A largura da imagem
+	 * @param height A altura da imagem
+	 */
+	public PixelBuffer(int width, int height) {
+		this(new int[width * height], 0, 0, width, height);
+	}
+	
+	/**
+	 * Cria um buffer para uma região da imagem. O vetor de pixels não é 
+	 * copiado
+	 * 
+	 * @param pixels Os pixels da região no formato ARGB, linha a linha
+	 * @param x Posição X inicial da região na imagem
+	 * @param y Posição Y inicial da região na imagem
+	 * @param width Largura da região
+	 * @param height Altura da região
+	 */
+	public PixelBuffer(int pixels[], int x, int y, int width, int height) {
+		
+		if(pixels.length < width * height) {
+			throw new IllegalArgumentException("O vetor de pixels é menor que"
+					+ " a região " + width + "x" + height);
+		}
+		
+		this.pixels = pixels;
+		
+		this.x = x;
+		this.y = y;
+		
+		this.width = width;
+		this.height = height;
+		
+	}
+	
+	/**
+	 * Retorna a cor (ARGB) de um pixel
+	 * 
+	 * @param x A posição X do pixel na imagem
+	 * @param y A posição Y do pixel na imagem
+	 * 
+	 * @return A cor do pixel
+	 */
+	public int get(int x, int y) {
+		return pixels[(y - this.y) * width + (x - this.x)];
+	}
+	
+	/**
+	 * Define a cor (ARGB) de um pixel
+	 * 
+	 * @param x A posição X do pixel na imagem
+	 * @param y A posição Y do pixel na imagem
+	 * @param argb A cor do pixel
+	 */
+	public void set(int x, int y, int argb) {
+		pixels[(y - this.y) * width + (x - this.x)] = argb;
+	}
+	
+	/**
+	 * Preenche uma região com uma cor. A parte da região fora do buffer é 
+	 * ignorada
+	 * 
+	 * @param region A região, em coordenadas da imagem
+	 * @param argb A cor
+	 */
+	public void fill(Rectangle region, int argb) {
+		
+		Rectangle r = region.intersection(getBounds());
+		
+		for(int i = r.y; i < r.y + r.height; ++i) {
+			
+			int offset = (i - y) * width + (r.x - x);
+			
+			for(int j = 0; j < r.width; ++j) {
+				pixels[offset + j] = argb;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Copia os pixels de uma região para o buffer. A parte da região fora do
+	 * buffer é ignorada
+	 * 
+	 * @param region A região, em coordenadas da imagem
+	 * @param argb Os pixels da região no formato ARGB, linha a linha
+	 */
+	public void copy(Rectangle region, int argb[]) {
+		
+		Rectangle r = region.intersection(getBounds());
+		
+		for(int i = r.y; i < r.y + r.height; ++i) {
+			
+			int src = (i - region.y) * region.width + (r.x - region.x);
+			int dst = (i - y) * width + (r.x - x);
+			
+			System.arraycopy(argb, src, pixels, dst, r.width);
+		}
+		
+	}
+	
+	/**
+	 * Retorna a região representada pelo buffer, em coordenadas da imagem
+	 * 
+	 * @return A região representada pelo buffer
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(x, y, width, height);
+	}
+	
+	/**
+	 * Retorna o vetor de pixels do buffer no formato ARGB, linha a linha
+	 * 
+	 * @return O vetor de pixels do buffer
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * Retorna a posição de um pixel no vetor de pixels do buffer. Os pixels
+	 * seguintes da mesma linha ocupam as posições seguintes
+	 * 
+	 * @param x A posição X do pixel na imagem
+	 * @param y A posição Y do pixel na imagem
+	 * 
+	 * @return A posição do pixel em {@link #getPixels()}
+	 */
+	public int offset(int x, int y) {
+		return (y - this.y) * width + (x - this.x);
+	}
+	
+	/**
+	 * Retorna a posição X inicial da região na imagem
+	 * 
+	 * @return A posição X inicial da região
+	 */
+	public int getX() {
+		return x;
+	}
+	
+	/**
+	 * Retorna a posição Y inicial da região na imagem
+	 * 
+	 * @return A posição Y inicial da região
+	 */
+	public int getY() {
+		return y;
+	}
+	
+	/**
+	 * Retorna a largura da região
+	 * 
+	 * @return A largura da região
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a altura da região
+	 * 
+	 * @return A altura da região
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+}
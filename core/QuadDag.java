@@ -0,0 +1,429 @@
+package quadtree.core;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Representação compacta de uma QuadTree em que subárvores idênticas são
+ * armazenadas uma única vez (grafo acíclico dirigido).</p>
+ * 
+ * <p>Como a geometria dos filhos depende apenas das dimensões da região (ver
+ * {@link Node#split()}), duas subárvores são idênticas quando têm as mesmas 
+ * dimensões, a mesma estrutura e as mesmas cores, independentemente da 
+ * posição na imagem. Cada subárvore distinta é uma entrada, identificada por
+ * um inteiro, que armazena as dimensões, a cor e as entradas dos filhos. 
+ * Padrões repetidos (texturas, margens, elementos de interface) ocupam 
+ * apenas uma entrada.</p>
+ * 
+ * <p>As entradas não armazenam posição: a posição de cada nó é calculada ao
+ * percorrer o grafo a partir da raiz.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class QuadDag {
+	
+	/**
+	 * Número de filhos de cada entrada
+	 */
+	private static final int CHILDREN = 4;
+	
+	/**
+	 * Cor (ARGB) de cada entrada
+	 */
+	private int colors[];
+	
+	/**
+	 * Altura da região de cada entrada
+	 */
+	private int heights[];
+	
+	/**
+	 * Largura da região de cada entrada
+	 */
+	private int widths[];
+	
+	/**
+	 * Entradas dos filhos de cada entrada (quatro posições por entrada, -1 
+	 * para filhos inexistentes)
+	 */
+	private int children[];
+	
+	/**
+	 * Número de nós da subárvore de cada entrada
+	 */
+	private long sizes[];
+	
+	/**
+	 * Número de entradas
+	 */
+	private int count;
+	
+	/**
+	 * Entrada da raiz
+	 */
+	private int root;
+	
+	/**
+	 * Altura da imagem
+	 */
+	private int height;
+	
+	/**
+	 * Largura da imagem
+	 */
+	private int width;
+	
+	/**
+	 * Precisão utilizada na construção da árvore
+	 */
+	private double accuracy;
+	
+	/**
+	 * Paleta de cores das folhas ou null
+	 */
+	private Palette palette;
+	
+	/**
+	 * Índice das entradas já criadas, para identificar subárvores idênticas
+	 */
+	private Map<Key, Integer> index;
+	
+	/**
+	 * Cria o grafo de uma QuadTree, identificando as subárvores idênticas
+	 * 
+	 * @param quadTree A árvore
+	 */
+	public QuadDag(QuadTree quadTree) {
+		
+		height = quadTree.getHeight();
+		width = quadTree.getWidth();
+		accuracy = quadTree.getAccuracy();
+		palette = quadTree.getPalette();
+		
+		colors = new int[64];
+		heights = new int[64];
+		widths = new int[64];
+		children = new int[64 * CHILDREN];
+		sizes = new long[64];
+		
+		index = new HashMap<>();
+		
+		root = add(quadTree.getRoot());
+		
+		//o índice só é necessário durante a construção
+		index = null;
+		
+	}
+	
+	/**
+	 * Adiciona a subárvore de um nó ao grafo. Os filhos são adicionados 
+	 * primeiro, de modo que subárvores idênticas têm as mesmas entradas de 
+	 * filhos
+	 * 
+	 * @param node O nó
+	 * 
+	 * @return A entrada que representa a subárvore
+	 */
+	private int add(Node node) {
+		
+		int q[] = new int[CHILDREN];
+		Arrays.fill(q, -1);
+		
+		long size = 1;
+		
+		for(int k = 0; k < CHILDREN; ++k) {
+			if(node.getQ()[k] != null) {
+				q[k] = add(node.getQ()[k]);
+				size = size + sizes[q[k]];
+			}
+		}
+		
+		Key key = new Key(node.getHeight(), node.getWidth(), 
+				node.getColor().getRGB(), q);
+		
+		Integer id = index.get(key);
+		if(id != null) return id;
+		
+		if(count == colors.length) grow();
+		
+		colors[count] = key.color;
+		heights[count] = key.height;
+		widths[count] = key.width;
+		sizes[count] = size;
+		System.arraycopy(q, 0, children, count * CHILDREN, CHILDREN);
+		
+		index.put(key, count);
+		
+		return count++;
+	}
+	
+	/**
+	 * Dobra a capacidade dos vetores das entradas
+	 */
+	private void grow() {
+		
+		int capacity = colors.length * 2;
+		
+		colors = Arrays.copyOf(colors, capacity);
+		heights = Arrays.copyOf(heights, capacity);
+		widths = Arrays.copyOf(widths, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		children = Arrays.copyOf(children, capacity * CHILDREN);
+		
+	}
+	
+	/**
+	 * Reconstrói a QuadTree representada pelo grafo, criando um nó para cada
+	 * posição da imagem
+	 * 
+	 * @return A QuadTree representada pelo grafo
+	 */
+	public QuadTree toQuadTree() {
+		
+		Node node = new Node(0, 0, height, width);
+		
+		expand(root, node);
+		
+		return new QuadTree(height, width, accuracy, node, palette);
+	}
+	
+	/**
+	 * Cria os nós da subárvore de uma entrada a partir de um nó com a 
+	 * geometria já definida
+	 * 
+	 * @param id A entrada
+	 * @param node O nó que representa a entrada na posição desejada
+	 */
+	private void expand(int id, Node node) {
+		
+		Color color = new Color(colors[id], true);
+		
+		if(isLeaf(id)) {
+			
+			//folhas referenciam as entradas da paleta
+			if(palette != null) {
+				color = palette.getColor(palette.indexOf(color));
+			}
+			
+			node.setColor(color);
+			
+			return;
+		}
+		
+		node.setColor(color);
+		
+		node.split();
+		
+		for(int k = 0; k < CHILDREN; ++k) {
+			if(node.getQ()[k] != null) {
+				expand(getChild(id, k), node.getQ()[k]);
+			}
+		}
+		
+		//somas exatas, como na árvore construída
+		node.aggregateChildren();
+		
+	}
+	
+	/**
+	 * Retorna a entrada da raiz
+	 * 
+	 * @return A entrada da raiz
+	 */
+	public int getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Retorna o número de entradas (subárvores distintas) do grafo
+	 * 
+	 * @return O número de entradas
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Retorna o número de nós da árvore representada pelo grafo
+	 * 
+	 * @return O número de nós da árvore
+	 */
+	public long getNodeCount() {
+		return sizes[root];
+	}
+	
+	/**
+	 * Retorna a cor (ARGB) de uma entrada
+	 * 
+	 * @param id A entrada
+	 * 
+	 * @return A cor da entrada
+	 */
+	public int getColor(int id) {
+		return colors[id];
+	}
+	
+	/**
+	 * Retorna a altura da região de uma entrada
+	 * 
+	 * @param id A entrada
+	 * 
+	 * @return A altura da região
+	 */
+	public int getHeight(int id) {
+		return heights[id];
+	}
+	
+	/**
+	 * Retorna a largura da região de uma entrada
+	 * 
+	 * @param id A entrada
+	 * 
+	 * @return A largura da região
+	 */
+	public int getWidth(int id) {
+		return widths[id];
+	}
+	
+	/**
+	 * Retorna a entrada de um filho
+	 * 
+	 * @param id A entrada
+	 * @param k O índice do filho
+	 * 
+	 * @return A entrada do filho ou -1 se o filho não existe
+	 */
+	public int getChild(int id, int k) {
+		return children[id * CHILDREN + k];
+	}
+	
+	/**
+	 * Verifica se uma entrada é uma folha
+	 * 
+	 * @param id A entrada
+	 * 
+	 * @return true se a entrada não tem filhos
+	 */
+	public boolean isLeaf(int id) {
+		
+		for(int k = 0; k < CHILDREN; ++k) {
+			if(getChild(id, k) >= 0) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Retorna o número de nós da subárvore de uma entrada
+	 * 
+	 * @param id A entrada
+	 * 
+	 * @return O número de nós da subárvore
+	 */
+	public long getSubtreeSize(int id) {
+		return sizes[id];
+	}
+	
+	/**
+	 * Retorna a altura da imagem
+	 * 
+	 * @return A altura da imagem
+	 */
+	public int getImageHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura da imagem
+	 * 
+	 * @return A largura da imagem
+	 */
+	public int getImageWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção da árvore
+	 * 
+	 * @return A precisão utilizada na construção da árvore
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * Retorna a paleta de cores das folhas
+	 * 
+	 * @return A paleta de cores das folhas ou null se a árvore não utiliza
+	 * 		   paleta
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+	
+	/**
+	 * <p>Chave de uma subárvore: dimensões, cor e entradas dos filhos.</p>
+	 */
+	private static class Key {
+		
+		/**
+		 * Altura da região
+		 */
+		private int height;
+		
+		/**
+		 * Largura da região
+		 */
+		private int width;
+		
+		/**
+		 * Cor (ARGB)
+		 */
+		private int color;
+		
+		/**
+		 * Entradas dos filhos
+		 */
+		private int q[];
+		
+		/**
+		 * Cria a chave de uma subárvore
+		 * 
+		 * @param height Altura da região
+		 * @param width Largura da região
+		 * @param color Cor (ARGB)
+		 * @param q Entradas dos filhos
+		 */
+		private Key(int height, int width, int color, int q[]) {
+			this.height = height;
+			this.width = width;
+			this.color = color;
+			this.q = q;
+		}
+		
+		@Override
+		public int hashCode() {
+			
+			int h = 31 * height + width;
+			h = 31 * h + color;
+			
+			return 31 * h + Arrays.hashCode(q);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			
+			if(!(obj instanceof Key)) return false;
+			
+			Key k = (Key) obj;
+			
+			return height == k.height && width == k.width && 
+					color == k.color && Arrays.equals(q, k.q);
+		}
+		
+	}
+
+}
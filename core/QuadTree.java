@@ -1,11 +1,27 @@
 package quadtree.core;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import quadtree.util.ImageCache;
 import quadtree.util.LoadImage;
 
 /**
@@ -15,15 +31,23 @@ import quadtree.util.LoadImage;
  * mesma região dependem do fator de precisão</p>
  * 
  * @author pedro
- *
+ * 
  */
 public class QuadTree implements Serializable {
-
+	
 	/**
 	 * Serial version
 	 */
 	private static final long serialVersionUID = 5855898554454654068L;
 	
+	/**
+	 * Versão do algoritmo de construção. Deve ser incrementada sempre que a
+	 * regra de divisão ou o cálculo das cores dos nós muda, de modo que as 
+	 * árvores construídas pela regra anterior e armazenadas em cache 
+	 * ({@link quadtree.io.BuildCache}) não sejam reutilizadas
+	 */
+	public static final int BUILD_VERSION = 1;
+	
 	/**
 	 * Altura da imagem representada pela árvore
 	 */
@@ -45,6 +69,47 @@ public class QuadTree implements Serializable {
 	 */
 	private double accuracy;
 	
+	/**
+	 * Paleta de cores compartilhada pelas folhas da árvore. Tem como valor
+	 * null se a árvore não utiliza paleta
+	 */
+	private Palette palette;
+	
+	/**
+	 * Pixels da imagem de origem. Mantidos apenas quando a árvore é criada a
+	 * partir de um buffer de pixels
+	 */
+	private transient PixelBuffer source;
+	
+	/**
+	 * Precisões das regiões de interesse utilizadas na construção ou null se
+	 * a precisão é a mesma para toda a imagem
+	 */
+	private transient AccuracyMask mask;
+	
+	/**
+	 * Estatísticas das regiões reutilizadas entre construções da mesma 
+	 * imagem ou null
+	 */
+	private transient RegionStatistics statistics;
+	
+	/**
+	 * Número de níveis da árvore divididos antes da construção assíncrona.
+	 * As regiões resultantes são comprimidas em paralelo
+	 */
+	private static final int PARALLEL_LEVELS = 3;
+	
+	/**
+	 * Progresso da construção assíncrona em andamento ou null
+	 */
+	private transient volatile Progress progress;
+	
+	/**
+	 * Número de nós de cada nível, calculado na primeira consulta e 
+	 * descartado quando a estrutura da árvore é alterada, ou null
+	 */
+	private transient volatile long levelCounts[];
+	
 	/**
 	 * Cria uma instância de uma QuadTree para representar uma imagem
 	 * 
@@ -52,253 +117,1368 @@ public class QuadTree implements Serializable {
 	 * @param accuracy A precisão utilizada no processo de divisão da imagem
 	 */
 	public QuadTree(File file, double accuracy) {
+		this(file, accuracy, null);
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para representar uma imagem, 
+	 * armazenando as cores das folhas em uma paleta compartilhada.
+	 * 
+	 * <p>Todas as folhas com a mesma cor referenciam a mesma entrada da 
+	 * paleta. Se a imagem possui mais cores do que a capacidade da paleta as
+	 * cores são quantizadas.</p>
+	 * 
+	 * <p>Os pixels e as estatísticas das regiões da imagem são obtidos de 
+	 * {@link ImageCache}: a imagem é decodificada apenas se não está no 
+	 * cache.</p>
+	 * 
+	 * @param file O arquivo que armazena a imagem a ser convertida à QuadTree
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 */
+	public QuadTree(File file, double accuracy, Palette palette) {
 		
-		//transforma a imagem representada pelo arquivo em uma matriz de pixels
+		//transforma a imagem representada pelo arquivo em um buffer de pixels
 		LoadImage loadImage = new LoadImage(file);
-		Color image[][] = loadImage.getPixels();
 		
-		height = loadImage.getHeight();
-		width = loadImage.getWidth();
+		//regiões avaliadas em construções anteriores da mesma imagem
+		statistics = statistics(file);
+		
+		build(loadImage.getPixels(), accuracy, palette);
+		
+		statistics = null;
+		
+		//as estatísticas cresceram durante a construção
+		ImageCache.getInstance().trim();
+		
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para representar uma imagem já 
+	 * carregada em um buffer de pixels.
+	 * 
+	 * <p>A árvore mantém uma referência ao buffer, que é utilizado como 
+	 * imagem de origem por {@link #update(Rectangle, int[])}. O buffer não 
+	 * deve ser alterado por quem o forneceu, e é alterado pela árvore: 
+	 * {@link #update(Rectangle, int[])} copia os novos pixels para o 
+	 * buffer. Buffers compartilhados, como os de 
+	 * {@link ImageCache}, devem ser copiados antes.</p>
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 */
+	public QuadTree(PixelBuffer image, double accuracy, Palette palette) {
+		
+		build(image, accuracy, palette);
+		
+		source = image;
+		
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para representar uma imagem já 
+	 * carregada em um buffer de pixels, reutilizando as estatísticas das 
+	 * regiões avaliadas em construções anteriores da mesma imagem.
+	 * 
+	 * <p>As regiões avaliadas são adicionadas às estatísticas, de modo que 
+	 * construções sucessivas com precisões diferentes, como na busca da 
+	 * precisão que atende a uma meta de qualidade, percorrem os pixels de 
+	 * cada região apenas uma vez.</p>
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 * @param statistics As estatísticas das regiões da imagem
+	 */
+	public QuadTree(PixelBuffer image, double accuracy, Palette palette, 
+			RegionStatistics statistics) {
+		
+		this.statistics = statistics;
+		
+		build(image, accuracy, palette);
+		
+		this.statistics = null;
+		
+		source = image;
+		
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para representar uma imagem com 
+	 * precisões diferentes nas regiões de interesse.
+	 * 
+	 * <p>Cada região é avaliada com a precisão exigida pela máscara 
+	 * ({@link AccuracyMask#getAccuracy(int, int, int, int)}), de modo que o 
+	 * fundo é representado com poucos nós. A precisão da árvore 
+	 * ({@link #getAccuracy()}) é a precisão de fundo da máscara.</p>
+	 * 
+	 * @param file O arquivo que armazena a imagem a ser convertida à QuadTree
+	 * @param mask As precisões das regiões da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 */
+	public QuadTree(File file, AccuracyMask mask, Palette palette) {
+		this(new LoadImage(file).getPixels(), mask, palette);
+		
+		//a árvore não mantém os pixels de um arquivo
+		source = null;
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para representar uma imagem já 
+	 * carregada em um buffer de pixels, com precisões diferentes nas regiões
+	 * de interesse. A máscara também é utilizada por 
+	 * {@link #update(Rectangle, int[])}
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param mask As precisões das regiões da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 * 
+	 * @see #QuadTree(File, AccuracyMask, Palette)
+	 */
+	public QuadTree(PixelBuffer image, AccuracyMask mask, Palette palette) {
+		
+		this.mask = mask;
+		
+		build(image, mask.getBackground(), palette);
+		
+		source = image;
+		
+	}
+	
+	/**
+	 * Cria uma instância de uma QuadTree para um quadro de uma sequência, 
+	 * reutilizando as subárvores do quadro anterior cujas regiões não foram
+	 * alteradas. Os nós reutilizados são compartilhados pelas duas árvores
+	 * 
+	 * @param image Os pixels do quadro
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param previous A árvore do quadro anterior
+	 * @param previousImage Os pixels do quadro anterior
+	 * 
+	 * @see QuadTreeSequence
+	 */
+	QuadTree(PixelBuffer image, double accuracy, QuadTree previous, 
+			PixelBuffer previousImage) {
+		
+		height = image.getHeight();
+		width = image.getWidth();
 		
 		this.accuracy = accuracy;
 		
-		//armazena a matriz de pixels na árvore realizando sucessivas divisões
-		//na imagem por meio de quadrantes
-		root = compress(image, 0, 0, height, width);
+		Rectangle changed = difference(image, previousImage);
+		
+		root = compress(image, new Node(0, 0, height, width), 
+				previous.getRoot(), previousImage, changed);
 		
 	}
 	
 	/**
-	 * Transforma uma matriz de pixels em uma QuadTree. Função recursiva que 
-	 * realiza subdivisões em uma região específica da imagem
+	 * Cria uma árvore vazia para a construção assíncrona
+	 * 
+	 * @param height A altura da imagem
+	 * @param width A largura da imagem
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 */
+	private QuadTree(int height, int width, double accuracy) {
+		
+		this.height = height;
+		this.width = width;
+		this.accuracy = accuracy;
+		
+	}
+	
+	/**
+	 * Cria uma QuadTree a partir de um arquivo de imagem de forma 
+	 * assíncrona.
+	 * 
+	 * @param file O arquivo que armazena a imagem a ser convertida à QuadTree
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 * @param executor O executor do carregamento e da construção
 	 * 
-	 * @param image A matriz de pixels da imagem a ser dividida
-	 * @param i Coordenada X inicial da região
-	 * @param j Coordenada Y inicial da reigão
-	 * @param h Altura da região
-	 * @param w Largura da região
+	 * @return A construção da árvore. É concluída com erro se o arquivo não 
+	 * 		   pode ser lido
 	 * 
-	 * @return O nó que representa a região
+	 * @see #buildAsync(File, double, Palette, Executor, BuildListener)
 	 */
-	private Node compress(Color image[][], int i, int j, int h, int w) {
-					
-		//cria o nó que representará a região
-		Node node = new Node(j, i, h, w);
+	public static CompletableFuture<QuadTree> buildAsync(File file, 
+			double accuracy, Palette palette, Executor executor) {
+		return buildAsync(file, accuracy, palette, executor, null);
+	}
+	
+	/**
+	 * Cria uma QuadTree a partir de um arquivo de imagem de forma 
+	 * assíncrona.
+	 * 
+	 * <p>Os pixels são extraídos em faixas de linhas paralelas 
+	 * ({@link LoadImage#loadAsync(File, Executor)}) e cada região dos 
+	 * primeiros níveis da árvore é comprimida assim que as faixas que a 
+	 * contêm foram extraídas, de modo que o carregamento e a construção da
+	 * árvore são sobrepostos. A árvore resultante é idêntica à criada por
+	 * {@link #QuadTree(File, double, Palette)}.</p>
+	 * 
+	 * <p>A construção é interrompida se o resultado é cancelado 
+	 * ({@link CompletableFuture#cancel(boolean)}): as regiões ainda não 
+	 * comprimidas são descartadas.</p>
+	 * 
+	 * @param file O arquivo que armazena a imagem a ser convertida à QuadTree
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null se as 
+	 * 				cores não devem ser armazenadas em uma paleta
+	 * @param executor O executor do carregamento e da construção
+	 * @param listener O listener do progresso da construção ou null
+	 * 
+	 * @return A construção da árvore. É concluída com erro se o arquivo não 
+	 * 		   pode ser lido
+	 */
+	public static CompletableFuture<QuadTree> buildAsync(File file, 
+			final double accuracy, final Palette palette, 
+			final Executor executor, final BuildListener listener) {
 		
-		Color c;
-				
-		//caso base, menor elemento (pixel)
-		if(h == 1 && w == 1) {			
-			node.setColor(image[i][j]);
-		}
-		//caso especial quando a divisão não é exata.
-		//apenas a altura ou largura é igual a 1
-		else if(h == 1 || w == 1) {
+		final CompletableFuture<QuadTree> result = new CompletableFuture<>();
+		
+		LoadImage.loadAsync(file, executor).thenCompose(
+				new Function<LoadImage, CompletableFuture<QuadTree>>() {
 			
-			if(h == 1) {
+			@Override
+			public CompletableFuture<QuadTree> apply(LoadImage image) {
 				
-				if(w <= 4) {
-					
-					for(int k = 0; k < w; ++k) {
-						node.getQ()[k] = compress(image, i, j + k, h, 1);
-					}		
-										
-				}
-				else {
-					
-					int w_ = w / 2;
+				final QuadTree tree = new QuadTree(image.getHeight(), 
+						image.getWidth(), accuracy);
+				
+				tree.progress = new Progress(result, listener, 
+						(long) tree.height * tree.width);
+				
+				Node root = new Node(0, 0, tree.height, tree.width);
+				
+				tree.statistics = statistics(file);
+				
+				return tree.compress(image, root, PARALLEL_LEVELS, executor)
+						.thenApply(new Function<Node, QuadTree>() {
 					
-					node.getQ()[0] = compress(image, i, j, 1, w_);
-					node.getQ()[1] = compress(image, i, j + w_, 1, w - w_);
+					@Override
+					public QuadTree apply(Node root) {
+						
+						tree.root = root;
+						tree.progress = null;
+						tree.statistics = null;
+						
+						if(palette != null) tree.applyPalette(palette);
+						
+						return tree;
+					}
 					
-				}
-				
+				});
 			}
-			else {
+			
+		}).whenComplete(new BiConsumer<QuadTree, Throwable>() {
+			
+			@Override
+			public void accept(QuadTree tree, Throwable error) {
 				
-				if(h <= 4) {
+				//as estatísticas cresceram durante a construção
+				ImageCache.getInstance().trim();
+				
+				if(error != null) {
 					
-					for(int k = 0; k < h; ++k) {
-						node.getQ()[k] = compress(image, i + k, j, 1, w);
-					}			
+					if(error instanceof CompletionException && 
+							error.getCause() != null) {
+						error = error.getCause();
+					}
 					
+					result.completeExceptionally(error);
 				}
 				else {
-									
-					int h_ = h / 2;
-					
-					node.getQ()[0] = compress(image, i, j, h_, 1);
-					node.getQ()[1] = compress(image, i + h_, j, h - h_, 1);
-					
+					result.complete(tree);
 				}
-				 
-			}
-			
-			//define a cor do nó de acordo com a méida das cores dos filhos
-			node.setColor(node.averageChildren());
-			
-			
-		}
-		//compressão com nível de qualidade desejado pelo usuário
-		else if((c = getNodeColor(image, i, j, h, w)) != null) {
-			node.setColor(c);
-		}
-		//divisão e chamadas recursivas
-		else {
-			
-			int h_ = h / 2;
-			int w_ = w / 2;
 				
-			node.getQ()[0] = compress(image, i, j + w_, h_, w - w_);
-			node.getQ()[1] = compress(image, i, j, h_, w_);
-			node.getQ()[2] = compress(image, i + h_, j, h - h_, w_);
-			node.getQ()[3] = compress(image, i + h_, j + w_, h - h_, w - w_);
+			}
 			
-			node.setColor(node.averageChildren());
-	
-		}
-				
-		return node;
-								
+		});
+		
+		return result;
+		
 	}
 	
 	/**
-	 * Retorna a cor da região, se a mesma possui a precisão mínima.
-	 * Se a precisão mínima não é respeitada retorna um ponteiro nulo
+	 * Comprime uma região da imagem de forma assíncrona. Nos primeiros 
+	 * níveis a região é dividida antes de ser avaliada e os filhos são 
+	 * comprimidos em paralelo; ao final, se a região inteira atende à 
+	 * precisão, os filhos são descartados e o nó se torna uma folha, como em
+	 * {@link #compress(PixelBuffer, Node)}
 	 * 
-	 * @param image A matriz de pixels da imagem
-	 * @param i Coordenada X inicial da região
-	 * @param j Coordenada Y inicial da região
-	 * @param h Altura da região
-	 * @param w largura da região
+	 * @param image A imagem sendo carregada
+	 * @param node O nó que representa a região
+	 * @param levels O número de níveis ainda divididos antes da avaliação
+	 * @param executor O executor da compressão
 	 * 
-	 * @return A média da reigão se a região respeita a precisão mínima
-	 *         null caso contrário
+	 * @return O nó que representa a região: o próprio nó ou a folha que o 
+	 * 		   substitui
 	 */
-	private Color getNodeColor(Color image[][], int i, int j, int h, int w) {
+	private CompletableFuture<Node> compress(final LoadImage image, 
+			final Node node, int levels, Executor executor) {
 		
-		Map<Color, Integer> colors = new HashMap<>();
-		
-		float r = 0.0f;
-		float g = 0.0f;
-		float b = 0.0f;
-		float a = 0.0f;
-		
-		for(int k = 0; k < h; ++k) {
+		//região comprimida assim que suas linhas foram extraídas
+		if(levels == 0 || !node.isRegular()) {
 			
-			for(int l = 0; l < w; ++l) {
+			return image.rows(node.getY(), node.getHeight()).thenApplyAsync(
+					new Function<Void, Node>() {
 				
-				Color c = image[k + i][l + j];
-				
-				r = r + (c.getRed() / 255.0f);
-				g = g + (c.getGreen() / 255.0f);
-				b = b + (c.getBlue() / 255.0f);
-				a = a + (c.getAlpha() / 255.0f);
-				
-				//cria um hashmap contendo todas as cores da região e q a 
-				//frequência de ocorrência
-				if(!colors.containsKey(c)) {
-					colors.put(c, 1);
-				}
-				else {
-					int count = colors.get(c) + 1;
-					colors.put(c, count);
+				@Override
+				public Node apply(Void v) {
+					
+					compress(image.getPixels(), node);
+					
+					return node;
 				}
 				
-			}	
-						
+			}, executor);
 		}
 		
-		int size = h * w;
+		node.split();
 		
-		r = r / size;
-		g = g / size;
-		b = b / size;
-		a = a / size;
+		final Node q[] = node.getQ();
 		
-		//verifica a cor de maior ocorrência na região
-		int max = 0;
-		for (Color c : colors.keySet()) {  
-			
-			int count = colors.get(c);
-			max = Math.max(max, count); 
+		final List<CompletableFuture<Node>> children = 
+				new ArrayList<>(q.length);
+		
+		for(int k = 0; k < q.length; ++k) {
 			
+			if(q[k] != null) {
+				children.add(compress(image, q[k], levels - 1, executor));
+			}
+			else {
+				children.add(CompletableFuture.<Node>completedFuture(null));
+			}
 		}
 		
-		//precisão da região em relação a cor com maior número de ocorrências
-		double currentAccuracy = (double) max / size;
-		
-		return (currentAccuracy >= accuracy) ? new Color(r, g, b, a) : null;
-		
-	}
+		return CompletableFuture.allOf(children.toArray(
+				new CompletableFuture<?>[children.size()])).thenApply(
+				new Function<Void, Node>() {
+			
+			@Override
+			public Node apply(Void v) {
+				
+				for(int k = 0; k < q.length; ++k) {
+					q[k] = children.get(k).join();
+				}
+				
+				Node leaf = new Node(node.getX(), node.getY(), 
+						node.getHeight(), node.getWidth());
+				
+				//a região inteira atende à precisão
+				if(setRegionColor(image.getPixels(), leaf)) return leaf;
+				
+				node.aggregateChildren();
+				
+				return node;
+			}
+			
+		});
 		
-	/**
-	 * Retorna a altura da árvore (número de níveis)
-	 * 
-	 * @return A altura da árvore (número de níveis)
-	 */
-	public int height() {
-		return height(root);
 	}
 	
 	/**
-	 * Método recursivo para realizar o cálculo da altura da árvore a partir
-	 * de um nó inicial
+	 * Constrói a árvore a partir dos pixels da imagem
 	 * 
-	 * @param node Nó sobre o qual deseja-se calcular a altura da árvore
-	 * 
-	 * @return A altura da árvore sobre aquele nó
+	 * @param image Os pixels da imagem inteira
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param palette A paleta (vazia) utilizada pela árvore ou null
 	 */
-	private int height(Node node) {
+	private void build(PixelBuffer image, double accuracy, Palette palette) {
 		
-		if(node == null) return 0;
+		height = image.getHeight();
+		width = image.getWidth();
 		
-		int h1 = height(node.getQ()[0]);
-		int h2 = height(node.getQ()[1]);
-		int h3 = height(node.getQ()[2]);
-		int h4 = height(node.getQ()[3]);
-				
-		int max = (h1 > h2) ? h1 : (h2 > h3) ? h2 : (h3 > h4) ? h3 : h4;
+		this.accuracy = accuracy;
 		
-		return max + 1;
+		//armazena os pixels na árvore realizando sucessivas divisões na 
+		//imagem por meio de quadrantes
+		root = new Node(0, 0, height, width);
+		compress(image, root);
+		
+		//substitui as cores das folhas pelas cores da paleta
+		if(palette != null) applyPalette(palette);
 		
 	}
 	
 	/**
-	 * Retorna a raiz da árvore
+	 * Constrói a paleta a partir das cores das folhas e substitui as cores
+	 * das folhas pelas cores da paleta
 	 * 
-	 * @return A raiz da árvore
+	 * @param palette A paleta (vazia) utilizada pela árvore
 	 */
-	public Node getRoot() {
-		return root;
+	private void applyPalette(Palette palette) {
+		
+		Map<Integer, Integer> colors = new HashMap<>();
+		histogram(root, colors);
+		
+		palette.build(colors);
+		
+		this.palette = palette;
+		
+		applyPalette(root);
+		
 	}
 	
 	/**
-	 * Retorna a altura da imagem representada pela árvore
+	 * Cria uma instância de uma QuadTree a partir de uma árvore já construída,
+	 * como ao carregar a árvore de um arquivo
 	 * 
-	 * @return A altura da imagem representada pela árvore
+	 * @param height A altura da imagem representada pela árvore
+	 * @param width A largura da imagem representada pela árvore
+	 * @param accuracy A precisão utilizada na construção da árvore
+	 * @param root A raiz da árvore
+	 * @param palette A paleta das cores das folhas ou null se a árvore não 
+	 * 				utiliza paleta
 	 */
-	public int getHeight() {
-		return height;
+	public QuadTree(int height, int width, double accuracy, Node root, 
+			Palette palette) {
+		
+		this.height = height;
+		this.width = width;
+		this.accuracy = accuracy;
+		this.root = root;
+		this.palette = palette;
+		
 	}
 	
 	/**
-	 * Retorna a largura da imagem representada pela árvore
+	 * Transforma um buffer de pixels em uma QuadTree. Função recursiva que 
+	 * realiza subdivisões em uma região específica da imagem
 	 * 
-	 * @return A largura da imagem representada pela árvore
+	 * @param image O buffer que contém os pixels da região
+	 * @param node O nó que representa a região. A região é dividida por meio
+	 * 				de {@link Node#split()}
 	 */
-	public int getWidth() {
-		return width;
+	private void compress(PixelBuffer image, Node node) {
+		
+		int i = node.getY();
+		int j = node.getX();
+		int h = node.getHeight();
+		int w = node.getWidth();
+		
+		if(progress != null) progress.check();
+				
+		//caso base, menor elemento (pixel)
+		if(h == 1 && w == 1) {			
+			node.setColor(new Color(image.get(j, i), true));
+			
+			if(progress != null) progress.add(1);
+		}
+		//compressão com nível de qualidade desejado pelo usuário. Regiões 
+		//em que apenas a altura ou largura é igual a 1 são sempre divididas
+		else if(node.isRegular() && setRegionColor(image, node)) {
+			if(progress != null) progress.add((long) h * w);
+		}
+		//divisão e chamadas recursivas
+		else {
+			
+			node.split();
+			
+			for(int k = 0; k < node.getQ().length; ++k) {
+				if(node.getQ()[k] != null) {
+					compress(image, node.getQ()[k]);
+				}
+			}
+			
+			//define a cor do nó de acordo com a méida das cores dos filhos
+			node.aggregateChildren();
+	
+		}
+								
 	}
 	
 	/**
-	 * Retorna a precisão utilizada na construção da árvore e realizar divisões
-	 * na imagem 
+	 * Transforma um buffer de pixels em uma QuadTree reutilizando os nós de 
+	 * uma árvore de referência (o quadro anterior de uma sequência). Se os 
+	 * pixels da região não foram alterados em relação à imagem de referência
+	 * o nó da árvore de referência é reutilizado, com toda a sua subárvore. 
+	 * Caso contrário a região é comprimida como em 
+	 * {@link #compress(PixelBuffer, Node)}, comparando os filhos com os filhos
+	 * do nó de referência
 	 * 
-	 * @return A precisão utilizada na construção da árvore
+	 * @param image O buffer que contém os pixels da imagem
+	 * @param node O nó que representa a região
+	 * @param reference O nó da árvore de referência que representa a mesma
+	 * 				região ou null se não existe
+	 * @param previous Os pixels da imagem de referência
+	 * @param changed A região que contém todos os pixels alterados
+	 * 
+	 * @return O nó que representa a região: o nó de referência ou o nó 
+	 * 		   criado
 	 */
-	public double getAccuracy() {
-		return accuracy;
+	private Node compress(PixelBuffer image, Node node, Node reference,
+			PixelBuffer previous, Rectangle changed) {
+		
+		//região não alterada, reutiliza o nó de referência
+		if(reference != null && (!bounds(node).intersects(changed) || 
+				equals(image, previous, node))) {
+			return reference;
+		}
+		
+		//não há nós de referência para os filhos
+		if(reference == null || reference.isLeaf()) {
+			compress(image, node);
+			return node;
+		}
+		
+		//compressão com nível de qualidade desejado pelo usuário
+		if(node.isRegular() && setRegionColor(image, node)) {
+			return node;
+		}
+		//divisão e chamadas recursivas
+		else {
+			
+			node.split();
+			
+			for(int k = 0; k < node.getQ().length; ++k) {
+				if(node.getQ()[k] != null) {
+					node.getQ()[k] = compress(image, node.getQ()[k], 
+							reference.getQ()[k], previous, changed);
+				}
+			}
+			
+			node.aggregateChildren();
+			
+		}
+		
+		return node;
+		
+	}
+	
+	/**
+	 * Verifica se a região de um nó tem os mesmos pixels em duas imagens
+	 * 
+	 * @param image A primeira imagem
+	 * @param other A segunda imagem
+	 * @param node O nó que representa a região
+	 * 
+	 * @return true se os pixels da região são iguais
+	 */
+	private static boolean equals(PixelBuffer image, PixelBuffer other, 
+			Node node) {
+		
+		for(int i = node.getY(); i < node.getY() + node.getHeight(); ++i) {
+			for(int j = node.getX(); j < node.getX() + node.getWidth(); ++j) {
+				if(image.get(j, i) != other.get(j, i)) return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Calcula a menor região que contém todos os pixels diferentes entre duas
+	 * imagens de mesmas dimensões
+	 * 
+	 * @param image A primeira imagem
+	 * @param other A segunda imagem
+	 * 
+	 * @return A região que contém os pixels diferentes (vazia se as imagens
+	 * 		   são iguais)
+	 */
+	private static Rectangle difference(PixelBuffer image, 
+			PixelBuffer other) {
+		
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = -1, maxY = -1;
+		
+		int a[] = image.getPixels();
+		int b[] = other.getPixels();
+		
+		int w = image.getWidth();
+		
+		for(int i = 0; i < image.getHeight(); ++i) {
+			for(int j = 0; j < w; ++j) {
+				
+				if(a[i * w + j] != b[i * w + j]) {
+					minX = Math.min(minX, j);
+					maxX = Math.max(maxX, j);
+					minY = Math.min(minY, i);
+					maxY = Math.max(maxY, i);
+				}
+				
+			}
+		}
+		
+		if(maxX < 0) return new Rectangle();
+		
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+	
+	/**
+	 * Substitui a cor das folhas pela entrada correspondente da paleta da 
+	 * árvore, recalculando a cor média dos nós internos
+	 * 
+	 * @param node O nó a partir do qual as cores são substituídas
+	 */
+	private void applyPalette(Node node) {
+		
+		if(node.isLeaf()) {
+			node.setColor(palette.getColor(palette.indexOf(node.getColor())));
+			return;
+		}
+		
+		for(int k = 0; k < node.getQ().length; ++k) {
+			if(node.getQ()[k] != null) {
+				applyPalette(node.getQ()[k]);
+			}
+		}
+		
+		node.aggregateChildren();
+		
+	}
+	
+	/**
+	 * Cria o histograma das cores das folhas, ponderado pela área de cada 
+	 * folha
+	 * 
+	 * @param node O nó a partir do qual as folhas são visitadas
+	 * @param histogram O histograma (cor ARGB e número de pixels)
+	 */
+	private void histogram(Node node, 
+			final Map<Integer, Integer> histogram) {
+		
+		new NodeTraversal().traverse(node, new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				if(node.isLeaf()) {
+					
+					int argb = node.getColor().getRGB();
+					int area = node.getHeight() * node.getWidth();
+					
+					Integer count = histogram.get(argb);
+					histogram.put(argb, count == null ? area : count + area);
+				}
+				
+				return true;
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Define a cor de um nó como a média dos pixels da sua região, se a 
+	 * região possui a precisão mínima. A média é calculada com inteiros, 
+	 * linha a linha, por {@link PixelKernel}. Se a árvore utiliza 
+	 * estatísticas de regiões, uma região avaliada em uma construção 
+	 * anterior não é percorrida novamente
+	 * 
+	 * @param image O buffer que contém os pixels da região
+	 * @param node O nó que representa a região
+	 * 
+	 * @return true se a região respeita a precisão mínima e a cor do nó foi
+	 * 		   definida
+	 *         false caso contrário
+	 */
+	private boolean setRegionColor(PixelBuffer image, Node node) {
+		
+		int i = node.getY();
+		int j = node.getX();
+		int h = node.getHeight();
+		int w = node.getWidth();
+		
+		int size = h * w;
+		
+		//precisão exigida pelas regiões de interesse que interceptam a região
+		double required = mask == null ? accuracy : 
+			mask.getAccuracy(j, i, w, h);
+		
+		//região avaliada em uma construção anterior
+		long cached = statistics == null ? RegionStatistics.MISSING :
+			statistics.get(j, i, w);
+		
+		if(cached != RegionStatistics.MISSING) {
+			
+			if((double) RegionStatistics.dominant(cached) / size < required) {
+				return false;
+			}
+			
+			node.setColor(new Color(RegionStatistics.color(cached), true));
+			
+			return true;
+		}
+		
+		int pixels[] = image.getPixels();
+		
+		PixelKernel kernel = PixelKernel.getInstance();
+		
+		//somas dos canais e número de pixels iguais ao primeiro pixel
+		long sums[] = new long[4];
+		
+		int first = image.get(j, i);
+		int uniform = 0;
+		
+		for(int k = 0; k < h; ++k) {
+			
+			int offset = image.offset(j, k + i);
+			
+			kernel.sum(pixels, offset, w, sums);
+			uniform = uniform + kernel.count(pixels, offset, w, first);
+		}
+		
+		Color mean = Node.mean(sums[0], sums[1], sums[2], sums[3], size);
+		
+		if(statistics != null) {
+			
+			//a cor do primeiro pixel é a dominante se ocupa mais da metade da
+			//região
+			int dominant = 2 * uniform > size ? uniform : 
+				dominant(image, node);
+			
+			statistics.put(j, i, w, dominant, mean.getRGB());
+			
+			if((double) dominant / size < required) return false;
+		}
+		//a cor de maior ocorrência é a cor do primeiro pixel ou ocorre no 
+		//máximo size - uniform vezes: o histograma é calculado apenas se 
+		//esses limites não decidem a precisão
+		else if((double) uniform / size < required) {
+			
+			if((double) (size - uniform) / size < required) return false;
+			
+			if((double) dominant(image, node) / size < required) {
+				return false;
+			}
+		}
+		
+		node.setColor(mean);
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Retorna o número de ocorrências da cor de maior ocorrência na região de
+	 * um nó
+	 * 
+	 * @param image O buffer que contém os pixels da região
+	 * @param node O nó que representa a região
+	 * 
+	 * @return O número de ocorrências da cor de maior ocorrência
+	 */
+	private int dominant(PixelBuffer image, Node node) {
+		
+		int i = node.getY();
+		int j = node.getX();
+		int h = node.getHeight();
+		int w = node.getWidth();
+		
+		Map<Integer, Integer> colors = new HashMap<>();
+		
+		for(int k = 0; k < h; ++k) {
+			
+			for(int l = 0; l < w; ++l) {
+				
+				int c = image.get(l + j, k + i);
+				
+				//cria um hashmap contendo todas as cores da região e q a 
+				//frequência de ocorrência
+				if(!colors.containsKey(c)) {
+					colors.put(c, 1);
+				}
+				else {
+					int count = colors.get(c) + 1;
+					colors.put(c, count);
+				}
+				
+			}	
+						
+		}
+		
+		//verifica a cor de maior ocorrência na região
+		int max = 0;
+		for (int c : colors.keySet()) {  
+			
+			int count = colors.get(c);
+			max = Math.max(max, count); 
+			
+		}
+		
+		return max;
+		
+	}
+	
+	/**
+	 * Retorna a cor média de uma região da imagem representada pela árvore.
+	 * Os nós contidos na região contribuem com as suas somas, sem percorrer 
+	 * as suas subárvores; apenas os nós na borda da região são divididos
+	 * 
+	 * @param region A região da imagem
+	 * 
+	 * @return A cor média da região ou null se a região não intercepta a 
+	 * 		   imagem
+	 */
+	public Color getAverageColor(Rectangle region) {
+		
+		Rectangle r = region.intersection(new Rectangle(0, 0, width, height));
+		
+		if(r.isEmpty()) return null;
+		
+		long sums[] = new long[4];
+		
+		aggregate(root, r, sums);
+		
+		return Node.mean(sums[0], sums[1], sums[2], sums[3], 
+				(long) r.width * r.height);
+	}
+	
+	/**
+	 * Soma as componentes dos pixels de um nó contidos em uma região
+	 * 
+	 * @param node O nó
+	 * @param region A região
+	 * @param sums As somas das componentes (R, G, B e alpha)
+	 */
+	private void aggregate(Node node, Rectangle region, long sums[]) {
+		
+		Rectangle bounds = bounds(node);
+		
+		if(!bounds.intersects(region)) return;
+		
+		if(region.contains(bounds)) {
+			sums[0] += node.getRedSum();
+			sums[1] += node.getGreenSum();
+			sums[2] += node.getBlueSum();
+			sums[3] += node.getAlphaSum();
+			return;
+		}
+		
+		//folha parcialmente contida: a cor da folha ponderada pela área 
+		//contida
+		if(node.isLeaf()) {
+			
+			Rectangle inside = bounds.intersection(region);
+			long area = (long) inside.width * inside.height;
+			
+			Color c = node.getColor();
+			
+			sums[0] += c.getRed() * area;
+			sums[1] += c.getGreen() * area;
+			sums[2] += c.getBlue() * area;
+			sums[3] += c.getAlpha() * area;
+			
+			return;
+		}
+		
+		for(int k = 0; k < node.getQ().length; ++k) {
+			if(node.getQ()[k] != null) {
+				aggregate(node.getQ()[k], region, sums);
+			}
+		}
+		
+	}
+		
+	/**
+	 * Atualiza a árvore após a alteração de uma região da imagem, sem 
+	 * reconstruir a árvore inteira.
+	 * 
+	 * <p>Apenas os nós cujas regiões interceptam a região alterada são 
+	 * processados. Folhas e nós em que a região alterada ocupa ao menos um
+	 * quarto da área são comprimidos novamente; nos demais nós apenas os 
+	 * filhos são atualizados, mantendo a divisão existente, e a cor é 
+	 * recalculada até a raiz. Os nós que não interceptam a região alterada 
+	 * não são alterados.</p>
+	 * 
+	 * <p>O custo é proporcional à área dos nós comprimidos novamente, e não à
+	 * área alterada: uma alteração pequena em uma folha grande percorre a 
+	 * folha inteira, e no pior caso (uma folha que cobre a imagem) o custo é
+	 * o de reconstruir a árvore.</p>
+	 * 
+	 * <p>Se a árvore foi criada a partir de um buffer de pixels o buffer é
+	 * atualizado e utilizado como origem dos pixels fora da região alterada,
+	 * e o resultado é o mesmo da compressão da imagem alterada. Caso 
+	 * contrário (árvores criadas a partir de arquivos ou lidas de arquivos 
+	 * .quad) esses pixels são reconstruídos a partir da cor das folhas, em um
+	 * buffer alocado com a área de cada nó comprimido novamente: a 
+	 * atualização comprime a aproximação da imagem e perde detalhe em 
+	 * relação a uma nova construção. Para atualizações exatas a árvore deve 
+	 * ser criada por {@link #QuadTree(PixelBuffer, double, Palette)}.</p>
+	 * 
+	 * @param dirty A região alterada da imagem
+	 * @param newPixels Os novos pixels da região no formato ARGB, linha a 
+	 * 				linha (dirty.width * dirty.height pixels)
+	 */
+	public void update(Rectangle dirty, int newPixels[]) {
+		
+		if(newPixels.length < dirty.width * dirty.height) {
+			throw new IllegalArgumentException("Número de pixels menor que a "
+					+ "região alterada");
+		}
+		
+		Rectangle bounds = new Rectangle(0, 0, width, height);
+		if(!bounds.intersects(dirty)) return;
+		
+		PixelBuffer changes = new PixelBuffer(newPixels, dirty.x, dirty.y, 
+				dirty.width, dirty.height);
+		
+		if(source != null) source.copy(dirty, newPixels);
+		
+		update(root, changes);
+		
+		//a estrutura da árvore foi alterada
+		levelCounts = null;
+		
+	}
+	
+	/**
+	 * Atualiza um nó cuja região pode interceptar a região alterada.
+	 * Função recursiva que percorre apenas os nós que interceptam a região
+	 * 
+	 * @param node O nó atual
+	 * @param changes Os novos pixels da região alterada
+	 */
+	private void update(Node node, PixelBuffer changes) {
+		
+		Rectangle region = bounds(node);
+		Rectangle intersection = region.intersection(changes.getBounds());
+		
+		if(intersection.isEmpty()) return;
+		
+		long area = (long) region.width * region.height;
+		long changed = (long) intersection.width * intersection.height;
+		
+		//a região do nó é comprimida novamente com os novos pixels
+		if(node.isLeaf() || area <= 4 * changed) {
+			
+			PixelBuffer pixels = pixels(node, changes);
+			
+			for(int k = 0; k < node.getQ().length; ++k) {
+				node.getQ()[k] = null;
+			}
+			
+			compress(pixels, node);
+			
+			if(palette != null) applyPalette(node);
+			
+			return;
+		}
+		
+		for(int k = 0; k < node.getQ().length; ++k) {
+			if(node.getQ()[k] != null) {
+				update(node.getQ()[k], changes);
+			}
+		}
+		
+		node.aggregateChildren();
+		
+	}
+	
+	/**
+	 * Retorna os pixels da região de um nó após a alteração da imagem. Os 
+	 * pixels fora da região alterada são obtidos da imagem de origem ou, se a
+	 * árvore não mantém a imagem de origem, da cor das folhas do nó
+	 * 
+	 * @param node O nó
+	 * @param changes Os novos pixels da região alterada
+	 * 
+	 * @return Os pixels da região do nó
+	 */
+	private PixelBuffer pixels(Node node, PixelBuffer changes) {
+		
+		//a imagem de origem já contém os novos pixels
+		if(source != null) return source;
+		
+		PixelBuffer buffer = new PixelBuffer(
+				new int[node.getWidth() * node.getHeight()], node.getX(), 
+				node.getY(), node.getWidth(), node.getHeight());
+		
+		paint(node, buffer);
+		
+		buffer.copy(changes.getBounds(), changes.getPixels());
+		
+		return buffer;
+	}
+	
+	/**
+	 * Desenha as folhas de um nó em um buffer de pixels
+	 * 
+	 * @param node O nó
+	 * @param buffer O buffer de destino
+	 */
+	private void paint(Node node, final PixelBuffer buffer) {
+		
+		NodeTraversal traversal = new NodeTraversal();
+		traversal.setRegion(buffer.getBounds());
+		
+		traversal.traverse(node, new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				if(node.isLeaf()) {
+					buffer.fill(bounds(node), node.getColor().getRGB());
+				}
+				
+				return true;
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Comprime uma região da imagem com a mesma regra de divisão da 
+	 * construção da árvore. Utilizado por {@link SizeEstimator} para 
+	 * construir as subárvores das regiões amostradas
+	 * 
+	 * @param image O buffer que contém os pixels da região
+	 * @param node O nó que representa a região
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 */
+	static void compress(PixelBuffer image, Node node, double accuracy) {
+		new QuadTree(image.getHeight(), image.getWidth(), accuracy)
+				.compress(image, node);
+	}
+	
+	/**
+	 * Constrói a árvore de uma imagem entregando os nós a um construtor de 
+	 * árvore fora do <i>heap</i>. Utilizado por 
+	 * {@link OffHeapQuadTree#build(PixelBuffer, double)}
+	 * 
+	 * @param image Os pixels da imagem inteira
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param builder O construtor da árvore
+	 */
+	static void compress(PixelBuffer image, double accuracy, 
+			OffHeapQuadTree.Builder builder) {
+		new QuadTree(image.getHeight(), image.getWidth(), accuracy)
+				.compress(image, new Node(0, 0, image.getHeight(), 
+						image.getWidth()), 0, builder);
+	}
+	
+	/**
+	 * Transforma um buffer de pixels em uma árvore fora do <i>heap</i>, com
+	 * a mesma divisão de {@link #compress(PixelBuffer, Node)}. Os nós são 
+	 * entregues ao construtor em pré-ordem; a cor de um nó dividido é 
+	 * definida após os seus filhos, que são então descartados
+	 * 
+	 * @param image O buffer que contém os pixels da região
+	 * @param node O nó que representa a região
+	 * @param depth A profundidade do nó
+	 * @param builder O construtor da árvore
+	 */
+	private void compress(PixelBuffer image, Node node, int depth, 
+			OffHeapQuadTree.Builder builder) {
+		
+		//caso base, menor elemento (pixel)
+		if(node.getHeight() == 1 && node.getWidth() == 1) {
+			node.setColor(new Color(image.get(node.getX(), node.getY()), 
+					true));
+			builder.visit(node, depth);
+		}
+		//região com a precisão mínima
+		else if(node.isRegular() && setRegionColor(image, node)) {
+			builder.visit(node, depth);
+		}
+		//divisão e chamadas recursivas
+		else {
+			
+			node.split();
+			builder.visit(node, depth);
+			
+			Node q[] = node.getQ();
+			
+			for(int k = 0; k < q.length; ++k) {
+				if(q[k] != null) compress(image, q[k], depth + 1, builder);
+			}
+			
+			node.aggregateChildren();
+			builder.setColor(depth, node.getColor());
+			
+			//as somas do nó bastam para a cor do pai
+			Arrays.fill(q, null);
+		
+		}
+	
+	}
+	
+	/**
+	 * Retorna as estatísticas das regiões de um arquivo de imagem 
+	 * compartilhadas pela aplicação
+	 * 
+	 * @param file O arquivo de imagem
+	 * 
+	 * @return As estatísticas de {@link ImageCache} ou null se o arquivo não
+	 * 		   pode ser identificado
+	 */
+	private static RegionStatistics statistics(File file) {
+		
+		try {
+			return ImageCache.getInstance().getStatistics(file);
+		} catch (IOException e) {
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Retorna a região da imagem representada por um nó
+	 * 
+	 * @param node O nó
+	 * 
+	 * @return A região representada pelo nó
+	 */
+	private static Rectangle bounds(Node node) {
+		return new Rectangle(node.getX(), node.getY(), node.getWidth(), 
+				node.getHeight());
+	}
+	
+	/**
+	 * Retorna os nós da árvore em pré-ordem.
+	 * 
+	 * <p>O <i>stream</i> é sequencial. Em um <i>stream</i> paralelo 
+	 * ({@link Stream#parallel()}) as subárvores são divididas entre as 
+	 * threads ao longo dos quadrantes ({@link NodeSpliterator}).</p>
+	 * 
+	 * @return Os nós da árvore
+	 */
+	public Stream<Node> nodes() {
+		return StreamSupport.stream(new NodeSpliterator(root, 
+				NodeSpliterator.ALL, 0), false);
+	}
+	
+	/**
+	 * Retorna as folhas da árvore, da esquerda para a direita na pré-ordem
+	 * 
+	 * @return As folhas da árvore
+	 * 
+	 * @see #nodes()
+	 */
+	public Stream<Node> leaves() {
+		return StreamSupport.stream(new NodeSpliterator(root, 
+				NodeSpliterator.LEAVES, 0), false);
+	}
+	
+	/**
+	 * Retorna os nós de um nível da árvore. As subárvores abaixo do nível não
+	 * são percorridas
+	 * 
+	 * @param level O nível (a raiz está no nível 0)
+	 * 
+	 * @return Os nós do nível, na ordem da pré-ordem
+	 * 
+	 * @see #nodes()
+	 */
+	public Stream<Node> nodes(int level) {
+		return StreamSupport.stream(new NodeSpliterator(root, 
+				NodeSpliterator.LEVEL, level), false);
+	}
+	
+	/**
+	 * Retorna os nós da árvore em ordem de nível: a raiz, os nós do nível 1,
+	 * os nós do nível 2 e assim por diante. Cada nível é percorrido por 
+	 * {@link #nodes(int)}
+	 * 
+	 * @return Os nós da árvore em ordem de nível
+	 */
+	public Stream<Node> levelOrder() {
+		
+		return IntStream.range(0, height()).boxed().flatMap(
+				new Function<Integer, Stream<Node>>() {
+			
+			@Override
+			public Stream<Node> apply(Integer level) {
+				return nodes(level);
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Retorna a altura da árvore (número de níveis)
+	 * 
+	 * @return A altura da árvore (número de níveis)
+	 */
+	public int height() {
+		return levelCounts().length;
+	}
+	
+	/**
+	 * Retorna o número de nós de cada nível da árvore
+	 * 
+	 * @return O número de nós de cada nível (a raiz está no nível 0)
+	 */
+	public long[] getLevelCounts() {
+		return levelCounts().clone();
+	}
+	
+	/**
+	 * Retorna o número de nós de cada nível, percorrendo a árvore apenas na 
+	 * primeira consulta
+	 * 
+	 * @return O número de nós de cada nível
+	 */
+	private long[] levelCounts() {
+		
+		long counts[] = levelCounts;
+		
+		if(counts != null) return counts;
+		
+		final long levels[][] = {new long[32]};
+		final int height[] = {0};
+		
+		new NodeTraversal().traverse(root, new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				if(depth == levels[0].length) {
+					levels[0] = Arrays.copyOf(levels[0], 2 * depth);
+				}
+				
+				levels[0][depth]++;
+				height[0] = Math.max(height[0], depth + 1);
+				
+				return true;
+			}
+			
+		});
+		
+		counts = Arrays.copyOf(levels[0], height[0]);
+		levelCounts = counts;
+		
+		return counts;
+	}
+	
+	/**
+	 * Retorna a raiz da árvore
+	 * 
+	 * @return A raiz da árvore
+	 */
+	public Node getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Retorna a altura da imagem representada pela árvore
+	 * 
+	 * @return A altura da imagem representada pela árvore
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura da imagem representada pela árvore
+	 * 
+	 * @return A largura da imagem representada pela árvore
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção da árvore e realizar divisões
+	 * na imagem 
+	 * 
+	 * @return A precisão utilizada na construção da árvore
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * Retorna a paleta de cores das folhas da árvore
+	 * 
+	 * @return A paleta de cores das folhas ou null se a árvore não utiliza
+	 * 		   paleta
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+	
+	/**
+	 * <p>Progresso de uma construção assíncrona: acumula os pixels 
+	 * processados pelas threads da construção e verifica o cancelamento.</p>
+	 */
+	private static class Progress {
+		
+		/**
+		 * O resultado da construção
+		 */
+		private CompletableFuture<?> result;
+		
+		/**
+		 * O listener do progresso ou null
+		 */
+		private BuildListener listener;
+		
+		/**
+		 * O número de pixels da imagem
+		 */
+		private long total;
+		
+		/**
+		 * O número de pixels que corresponde a um ponto percentual
+		 */
+		private long step;
+		
+		/**
+		 * O número de pixels já processados
+		 */
+		private AtomicLong pixels;
+		
+		/**
+		 * Cria o progresso da construção
+		 * 
+		 * @param result O resultado da construção
+		 * @param listener O listener do progresso ou null
+		 * @param total O número de pixels da imagem
+		 */
+		private Progress(CompletableFuture<?> result, BuildListener listener,
+				long total) {
+			
+			this.result = result;
+			this.listener = listener;
+			this.total = total;
+			
+			step = Math.max(1, total / 100);
+			pixels = new AtomicLong();
+			
+		}
+		
+		/**
+		 * Acumula pixels processados, informando o listener a cada ponto 
+		 * percentual
+		 * 
+		 * @param count O número de pixels processados
+		 */
+		private void add(long count) {
+			
+			long after = pixels.addAndGet(count);
+			
+			if(listener != null && after / step != (after - count) / step) {
+				listener.progress(after, total);
+			}
+			
+		}
+		
+		/**
+		 * Verifica se a construção foi cancelada
+		 * 
+		 * @throws CancellationException A construção foi cancelada
+		 */
+		private void check() {
+			
+			if(result.isCancelled()) {
+				throw new CancellationException("Construção cancelada");
+			}
+			
+		}
+		
 	}
 
 }
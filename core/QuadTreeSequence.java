@@ -0,0 +1,133 @@
+package quadtree.core;
+
+import java.io.File;
+
+import quadtree.util.LoadImage;
+
+/**
+ * <p>Sequência de quadros (vídeo ou <i>timelapse</i>) representados por 
+ * QuadTrees.</p>
+ * 
+ * <p>Cada novo quadro é comparado ao quadro anterior: as subárvores cujas 
+ * regiões não foram alteradas são reutilizadas por referência e apenas as 
+ * regiões alteradas são comprimidas. Como os nós são compartilhados entre as
+ * árvores da sequência, as árvores não devem ser alteradas (por exemplo, por
+ * meio de {@link QuadTree#update(java.awt.Rectangle, int[])}).</p>
+ * 
+ * @see quadtree.io.SequenceWriter
+ * 
+ * @author pedro
+ * 
+ */
+public class QuadTreeSequence {
+	
+	/**
+	 * Precisão utilizada na construção das árvores
+	 */
+	private double accuracy;
+	
+	/**
+	 * Árvore do último quadro adicionado
+	 */
+	private QuadTree previous;
+	
+	/**
+	 * Pixels do último quadro adicionado
+	 */
+	private PixelBuffer previousImage;
+	
+	/**
+	 * Número de quadros adicionados
+	 */
+	private int frames;
+	
+	/**
+	 * Cria uma sequência vazia
+	 * 
+	 * @param accuracy A precisão utilizada na construção das árvores
+	 */
+	public QuadTreeSequence(double accuracy) {
+		this.accuracy = accuracy;
+	}
+	
+	/**
+	 * Adiciona um quadro à sequência. Os pixels do arquivo, compartilhados
+	 * por {@link quadtree.util.ImageCache}, são copiados: a árvore do quadro
+	 * pode alterar os seus pixels em 
+	 * {@link QuadTree#update(java.awt.Rectangle, int[])}
+	 * 
+	 * @param file O arquivo de imagem do quadro
+	 * 
+	 * @return A árvore que representa o quadro
+	 */
+	public QuadTree add(File file) {
+		
+		PixelBuffer shared = new LoadImage(file).getPixels();
+		
+		return add(new PixelBuffer(shared.getPixels().clone(), 
+				shared.getX(), shared.getY(), shared.getWidth(), 
+				shared.getHeight()));
+	}
+	
+	/**
+	 * Adiciona um quadro à sequência. O buffer não deve ser alterado após ser
+	 * adicionado, pois é utilizado na comparação com o próximo quadro
+	 * 
+	 * @param image Os pixels do quadro
+	 * 
+	 * @return A árvore que representa o quadro
+	 */
+	public QuadTree add(PixelBuffer image) {
+		
+		QuadTree quadTree;
+		
+		if(previous == null) {
+			quadTree = new QuadTree(image, accuracy, null);
+		}
+		else {
+			
+			if(image.getWidth() != previous.getWidth() || 
+					image.getHeight() != previous.getHeight()) {
+				throw new IllegalArgumentException("Os quadros da sequência "
+						+ "devem ter as mesmas dimensões");
+			}
+			
+			quadTree = new QuadTree(image, accuracy, previous, previousImage);
+		}
+		
+		previous = quadTree;
+		previousImage = image;
+		
+		++frames;
+		
+		return quadTree;
+	}
+	
+	/**
+	 * Retorna a árvore do último quadro adicionado
+	 * 
+	 * @return A árvore do último quadro ou null se a sequência está vazia
+	 */
+	public QuadTree getLast() {
+		return previous;
+	}
+	
+	/**
+	 * Retorna o número de quadros adicionados
+	 * 
+	 * @return O número de quadros adicionados
+	 */
+	public int getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção das árvores
+	 * 
+	 * @return A precisão utilizada na construção das árvores
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+}
@@ -0,0 +1,330 @@
+package quadtree.core;
+
+import java.awt.Rectangle;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Compara a imagem representada por uma QuadTree, em qualquer nível de
+ * detalhamento, com a imagem de origem ({@link QualityMetrics}).</p>
+ * 
+ * <p>A imagem da árvore não é gerada por inteiro: a imagem é dividida em
+ * blocos de {@link #TILE_SIZE} x {@link #TILE_SIZE} pixels, avaliados em
+ * paralelo. Cada bloco é desenhado em um buffer próprio a partir dos nós que
+ * o interceptam ({@link NodeTraversal#setRegion(Rectangle)}) e comparado com
+ * os pixels de origem; apenas as somas dos erros e dos índices de 
+ * similaridade são mantidas.</p>
+ * 
+ * <p>O SSIM é calculado sobre a luminância (Rec. 601), em janelas de 
+ * {@link #WINDOW} x {@link #WINDOW} pixels sem sobreposição, alinhadas aos
+ * blocos. As janelas incompletas na borda da imagem são ignoradas pelo SSIM,
+ * mas não pelo MSE. Em uma imagem com menos de {@link #WINDOW} pixels de 
+ * altura ou largura a janela é reduzida a essa dimensão da imagem, de modo
+ * que toda imagem tem ao menos uma janela.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class QualityEvaluator {
+	
+	/**
+	 * Lado dos blocos avaliados em paralelo, múltiplo de {@link #WINDOW}
+	 */
+	public static final int TILE_SIZE = 256;
+	
+	/**
+	 * Lado das janelas do SSIM
+	 */
+	public static final int WINDOW = 8;
+	
+	/**
+	 * Constante de estabilização da média do SSIM: (0.01 * 255)²
+	 */
+	private static final double C1 = 6.5025;
+	
+	/**
+	 * Constante de estabilização da variância do SSIM: (0.03 * 255)²
+	 */
+	private static final double C2 = 58.5225;
+	
+	/**
+	 * A árvore avaliada
+	 */
+	private QuadTree tree;
+	
+	/**
+	 * Os pixels da imagem de origem
+	 */
+	private PixelBuffer source;
+	
+	/**
+	 * Cria o avaliador de uma árvore
+	 * 
+	 * @param tree A árvore avaliada
+	 * @param source Os pixels da imagem de origem, com as dimensões da árvore
+	 */
+	public QualityEvaluator(QuadTree tree, PixelBuffer source) {
+		
+		if(source.getWidth() != tree.getWidth() ||
+				source.getHeight() != tree.getHeight()) {
+			throw new IllegalArgumentException("A imagem " + 
+					source.getWidth() + "x" + source.getHeight() + 
+					" não tem as dimensões da árvore " + tree.getWidth() + 
+					"x" + tree.getHeight());
+		}
+		
+		this.tree = tree;
+		this.source = source;
+	
+	}
+	
+	/**
+	 * Compara a imagem representada pelas folhas da árvore com a imagem de
+	 * origem
+	 * 
+	 * @return As medidas de qualidade
+	 */
+	public QualityMetrics evaluate() {
+		return evaluate(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Compara a imagem representada por um nível da árvore com a imagem de
+	 * origem. Os nós do nível e as folhas acima dele representam a imagem
+	 * 
+	 * @param level O nível de detalhamento (a raiz tem nível 0)
+	 * 
+	 * @return As medidas de qualidade
+	 */
+	public QualityMetrics evaluate(final int level) {
+		
+		final int columns = (tree.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (tree.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+		
+		Sums sums = IntStream.range(0, columns * rows).parallel().collect(
+				new Supplier<Sums>() {
+					
+					@Override
+					public Sums get() {
+						return new Sums();
+					}
+					
+				},
+				new ObjIntConsumer<Sums>() {
+					
+					@Override
+					public void accept(Sums sums, int tile) {
+						compare(sums, tile % columns, tile / columns, level);
+					}
+					
+				},
+				new BiConsumer<Sums, Sums>() {
+					
+					@Override
+					public void accept(Sums sums, Sums other) {
+						sums.add(other);
+					}
+					
+				});
+		
+		double mse = sums.pixels == 0 ? 0 : 
+			(double) sums.squaredError / (3 * sums.pixels);
+		double ssim = sums.windows == 0 ? 1 : sums.ssim / sums.windows;
+		
+		return new QualityMetrics(level, mse, ssim, sums.pixels);
+	}
+	
+	/**
+	 * Desenha um bloco com os nós de um nível da árvore e acumula os erros e
+	 * os índices de similaridade do bloco
+	 * 
+	 * @param sums As somas às quais o bloco é adicionado
+	 * @param column A coluna do bloco
+	 * @param row A linha do bloco
+	 * @param level O nível de detalhamento
+	 */
+	private void compare(Sums sums, int column, int row, final int level) {
+		
+		final int x = column * TILE_SIZE;
+		final int y = row * TILE_SIZE;
+		final int w = Math.min(TILE_SIZE, tree.getWidth() - x);
+		final int h = Math.min(TILE_SIZE, tree.getHeight() - y);
+		
+		final int tile[] = new int[w * h];
+		
+		NodeTraversal traversal = new NodeTraversal();
+		traversal.setRegion(new Rectangle(x, y, w, h));
+		
+		traversal.traverse(tree.getRoot(), new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				if(depth < level && !node.isLeaf()) return true;
+				
+				int argb = node.getColor().getRGB();
+				
+				int x0 = Math.max(x, node.getX());
+				int y0 = Math.max(y, node.getY());
+				int x1 = Math.min(x + w, node.getX() + node.getWidth());
+				int y1 = Math.min(y + h, node.getY() + node.getHeight());
+				
+				for(int i = y0; i < y1; ++i) {
+					
+					int offset = (i - y) * w;
+					
+					for(int j = x0; j < x1; ++j) {
+						tile[offset + j - x] = argb;
+					}
+				}
+				
+				return false;
+			}
+			
+		});
+		
+		int pixels[] = source.getPixels();
+		
+		long squaredError = 0;
+		
+		for(int i = 0; i < h; ++i) {
+			
+			int offset = source.offset(source.getX() + x, 
+					source.getY() + y + i);
+			
+			for(int j = 0; j < w; ++j) {
+				
+				int a = pixels[offset + j];
+				int b = tile[i * w + j];
+				
+				int dr = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+				int dg = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+				int db = (a & 0xff) - (b & 0xff);
+				
+				squaredError = squaredError + dr * dr + dg * dg + db * db;
+			}
+		}
+		
+		sums.squaredError = sums.squaredError + squaredError;
+		sums.pixels = sums.pixels + (long) w * h;
+		
+		//janelas reduzidas apenas nas imagens menores que uma janela
+		int ww = Math.min(WINDOW, tree.getWidth());
+		int wh = Math.min(WINDOW, tree.getHeight());
+		
+		//janelas completas do SSIM
+		for(int i = 0; i + wh <= h; i += wh) {
+			for(int j = 0; j + ww <= w; j += ww) {
+				
+				int offset = source.offset(source.getX() + x + j, 
+						source.getY() + y + i);
+				
+				sums.ssim = sums.ssim + ssim(pixels, offset, 
+						source.getWidth(), tile, i * w + j, w, ww, wh);
+				sums.windows++;
+			}
+		}
+	
+	}
+	
+	/**
+	 * Calcula o índice de similaridade estrutural de uma janela
+	 * 
+	 * @param a Os pixels da primeira imagem
+	 * @param offsetA A posição do primeiro pixel da janela na primeira imagem
+	 * @param strideA A largura da primeira imagem
+	 * @param b Os pixels da segunda imagem
+	 * @param offsetB A posição do primeiro pixel da janela na segunda imagem
+	 * @param strideB A largura da segunda imagem
+	 * @param width A largura da janela
+	 * @param height A altura da janela
+	 * 
+	 * @return O SSIM da janela
+	 */
+	private static double ssim(int a[], int offsetA, int strideA, int b[],
+			int offsetB, int strideB, int width, int height) {
+		
+		double sa = 0, sb = 0, saa = 0, sbb = 0, sab = 0;
+		
+		for(int i = 0; i < height; ++i) {
+			for(int j = 0; j < width; ++j) {
+				
+				double la = luma(a[offsetA + i * strideA + j]);
+				double lb = luma(b[offsetB + i * strideB + j]);
+				
+				sa = sa + la;
+				sb = sb + lb;
+				saa = saa + la * la;
+				sbb = sbb + lb * lb;
+				sab = sab + la * lb;
+			}
+		}
+		
+		int n = width * height;
+		
+		double ma = sa / n;
+		double mb = sb / n;
+		double va = saa / n - ma * ma;
+		double vb = sbb / n - mb * mb;
+		double cov = sab / n - ma * mb;
+		
+		return (2 * ma * mb + C1) * (2 * cov + C2) / 
+				((ma * ma + mb * mb + C1) * (va + vb + C2));
+	}
+	
+	/**
+	 * Retorna a luminância de uma cor
+	 * 
+	 * @param argb A cor no formato ARGB
+	 * 
+	 * @return A luminância, entre 0 e 255
+	 */
+	private static double luma(int argb) {
+		return 0.299 * ((argb >> 16) & 0xff) + 0.587 * ((argb >> 8) & 0xff) +
+				0.114 * (argb & 0xff);
+	}
+	
+	/**
+	 * <p>Somas parciais de um conjunto de blocos.</p>
+	 */
+	private static class Sums {
+		
+		/**
+		 * Soma dos quadrados dos erros dos canais
+		 */
+		private long squaredError;
+		
+		/**
+		 * Número de pixels comparados
+		 */
+		private long pixels;
+		
+		/**
+		 * Soma dos índices de similaridade das janelas
+		 */
+		private double ssim;
+		
+		/**
+		 * Número de janelas
+		 */
+		private long windows;
+		
+		/**
+		 * Adiciona as somas de outro conjunto de blocos
+		 * 
+		 * @param other As somas do outro conjunto
+		 */
+		private void add(Sums other) {
+			
+			squaredError = squaredError + other.squaredError;
+			pixels = pixels + other.pixels;
+			ssim = ssim + other.ssim;
+			windows = windows + other.windows;
+		
+		}
+	
+	}
+
+}
@@ -0,0 +1,114 @@
+package quadtree.core;
+
+/**
+ * <p>Medidas objetivas da qualidade da imagem representada por uma QuadTree
+ * em relação à imagem de origem.</p>
+ * 
+ * <ul>
+ * <li>MSE: o erro quadrático médio dos canais vermelho, verde e azul;</li>
+ * <li>PSNR: a relação sinal-ruído de pico, em decibéis, calculada a partir do
+ * MSE. É infinita se as imagens são iguais;</li>
+ * <li>SSIM: o índice de similaridade estrutural médio das janelas da
+ * luminância, entre -1 e 1 (1 se as imagens são iguais).</li>
+ * </ul>
+ * 
+ * @author pedro
+ * 
+ * @see QualityEvaluator
+ */
+public class QualityMetrics {
+	
+	/**
+	 * O nível da árvore avaliado
+	 */
+	private int level;
+	
+	/**
+	 * Erro quadrático médio
+	 */
+	private double mse;
+	
+	/**
+	 * Índice de similaridade estrutural médio
+	 */
+	private double ssim;
+	
+	/**
+	 * Número de pixels comparados
+	 */
+	private long pixels;
+	
+	/**
+	 * Cria as medidas
+	 * 
+	 * @param level O nível da árvore avaliado
+	 * @param mse O erro quadrático médio
+	 * @param ssim O índice de similaridade estrutural médio
+	 * @param pixels O número de pixels comparados
+	 */
+	QualityMetrics(int level, double mse, double ssim, long pixels) {
+		
+		this.level = level;
+		this.mse = mse;
+		this.ssim = ssim;
+		this.pixels = pixels;
+	
+	}
+	
+	/**
+	 * Retorna o nível da árvore avaliado
+	 * 
+	 * @return O nível avaliado ou {@link Integer#MAX_VALUE} se a árvore foi
+	 * 		   avaliada até as folhas
+	 */
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Retorna o erro quadrático médio dos canais vermelho, verde e azul
+	 * 
+	 * @return O erro quadrático médio
+	 */
+	public double getMse() {
+		return mse;
+	}
+	
+	/**
+	 * Retorna a relação sinal-ruído de pico
+	 * 
+	 * @return A PSNR em decibéis ou {@link Double#POSITIVE_INFINITY} se as
+	 * 		   imagens são iguais
+	 */
+	public double getPsnr() {
+		
+		if(mse == 0) return Double.POSITIVE_INFINITY;
+		
+		return 10 * Math.log10(255.0 * 255.0 / mse);
+	}
+	
+	/**
+	 * Retorna o índice de similaridade estrutural médio
+	 * 
+	 * @return O SSIM, entre -1 e 1
+	 */
+	public double getSsim() {
+		return ssim;
+	}
+	
+	/**
+	 * Retorna o número de pixels comparados
+	 * 
+	 * @return O número de pixels da imagem
+	 */
+	public long getPixelCount() {
+		return pixels;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("MSE %.2f, PSNR %.2f dB, SSIM %.4f", mse,
+				getPsnr(), ssim);
+	}
+
+}
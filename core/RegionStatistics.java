@@ -0,0 +1,371 @@
+package quadtree.core;
+
+/**
+ * <p>Estatísticas das regiões de uma imagem avaliadas durante a construção
+ * de QuadTrees, reutilizadas entre construções da mesma imagem com 
+ * precisões diferentes.</p>
+ * 
+ * <p>A geometria das regiões não depende da precisão ({@link Node#split()}),
+ * e a avaliação de uma região resulta sempre no mesmo número de ocorrências
+ * da cor dominante e na mesma cor média; apenas a comparação com a precisão
+ * muda. Assim, depois da primeira construção, as regiões já avaliadas não são
+ * percorridas novamente. Uma região regular é identificada pela sua posição e
+ * pela sua largura, que diminui a cada nível.</p>
+ * 
+ * <p>As estatísticas são armazenadas em uma tabela de endereçamento aberto 
+ * de inteiros longos, sem objetos por região, limitada a 
+ * {@link #MAX_ENTRIES} regiões; as regiões avaliadas depois do limite não 
+ * são armazenadas. Imagens com dimensões maiores que 2<sup>21</sup> pixels
+ * não são armazenadas. A mesma instância pode ser utilizada pelas threads 
+ * de uma construção paralela ou por construções simultâneas da mesma 
+ * imagem: a tabela é dividida em {@link #STRIPES} partes, escolhidas pelo 
+ * código de espalhamento da região, cada uma com o seu próprio bloqueio, de
+ * modo que as threads raramente aguardam umas pelas outras.</p>
+ * 
+ * @author pedro
+ * 
+ * @see QuadTree#QuadTree(PixelBuffer, double, Palette, RegionStatistics)
+ */
+public class RegionStatistics {
+	
+	/**
+	 * Número máximo de regiões armazenadas
+	 */
+	public static final int MAX_ENTRIES = 1 << 22;
+	
+	/**
+	 * Número de partes da tabela, cada uma com o seu bloqueio
+	 */
+	public static final int STRIPES = 64;
+	
+	/**
+	 * Valor de uma região ausente
+	 */
+	static final long MISSING = 0;
+	
+	/**
+	 * Bits do código de espalhamento que escolhem a parte da tabela
+	 */
+	private static final int STRIPE_BITS = 6;
+	
+	/**
+	 * Capacidade inicial de cada parte da tabela
+	 */
+	private static final int INITIAL_CAPACITY = 1 << 6;
+	
+	/**
+	 * Maior coordenada das regiões armazenadas
+	 */
+	private static final int MAX_COORDINATE = (1 << 21) - 1;
+	
+	/**
+	 * As partes da tabela
+	 */
+	private Stripe stripes[];
+	
+	/**
+	 * Cria a tabela vazia
+	 */
+	public RegionStatistics() {
+		
+		stripes = new Stripe[STRIPES];
+		
+		for(int k = 0; k < STRIPES; ++k) stripes[k] = new Stripe();
+	
+	}
+	
+	/**
+	 * Retorna as estatísticas de uma região
+	 * 
+	 * @param x A coluna inicial da região
+	 * @param y A linha inicial da região
+	 * @param width A largura da região
+	 * 
+	 * @return As estatísticas da região ou {@link #MISSING}
+	 */
+	long get(int x, int y, int width) {
+		
+		long key = key(x, y, width);
+		int hash = hash(key);
+		
+		return stripes[hash >>> (32 - STRIPE_BITS)].get(key, hash);
+	}
+	
+	/**
+	 * Armazena as estatísticas de uma região
+	 * 
+	 * @param x A coluna inicial da região
+	 * @param y A linha inicial da região
+	 * @param width A largura da região
+	 * @param dominant O número de ocorrências da cor dominante
+	 * @param argb A cor média
+	 */
+	void put(int x, int y, int width, int dominant, int argb) {
+		
+		long key = key(x, y, width);
+		
+		if(key == 0) return;
+		
+		int hash = hash(key);
+		
+		stripes[hash >>> (32 - STRIPE_BITS)].put(key, hash, 
+				((long) dominant << 32) | (argb & 0xffffffffL));
+	
+	}
+	
+	/**
+	 * Retorna o número de ocorrências da cor dominante de estatísticas
+	 * 
+	 * @param value As estatísticas de uma região
+	 * 
+	 * @return O número de ocorrências da cor dominante
+	 */
+	static int dominant(long value) {
+		return (int) (value >>> 32);
+	}
+	
+	/**
+	 * Retorna a cor média de estatísticas
+	 * 
+	 * @param value As estatísticas de uma região
+	 * 
+	 * @return A cor média no formato ARGB
+	 */
+	static int color(long value) {
+		return (int) value;
+	}
+	
+	/**
+	 * Retorna a chave de uma região
+	 * 
+	 * @param x A coluna inicial da região
+	 * @param y A linha inicial da região
+	 * @param width A largura da região
+	 * 
+	 * @return A chave da região ou 0 se a região não pode ser armazenada
+	 */
+	private static long key(int x, int y, int width) {
+		
+		if(x > MAX_COORDINATE || y > MAX_COORDINATE || 
+				width > MAX_COORDINATE) {
+			return 0;
+		}
+		
+		return ((long) x << 42) | ((long) y << 21) | width;
+	}
+	
+	/**
+	 * Espalha os bits de uma chave
+	 * 
+	 * @param key A chave
+	 * 
+	 * @return O código de espalhamento da chave
+	 */
+	private static int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+	
+	/**
+	 * Retorna o número de regiões armazenadas
+	 * 
+	 * @return O número de regiões armazenadas
+	 */
+	public int size() {
+		
+		int size = 0;
+		
+		for(Stripe stripe : stripes) {
+			synchronized(stripe) {
+				size = size + stripe.size;
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Retorna o número de consultas atendidas pela tabela
+	 * 
+	 * @return O número de regiões que não foram percorridas novamente
+	 */
+	public long getHits() {
+		
+		long hits = 0;
+		
+		for(Stripe stripe : stripes) {
+			synchronized(stripe) {
+				hits = hits + stripe.hits;
+			}
+		}
+		
+		return hits;
+	}
+	
+	/**
+	 * Retorna o número de consultas não atendidas pela tabela
+	 * 
+	 * @return O número de regiões percorridas
+	 */
+	public long getMisses() {
+		
+		long misses = 0;
+		
+		for(Stripe stripe : stripes) {
+			synchronized(stripe) {
+				misses = misses + stripe.misses;
+			}
+		}
+		
+		return misses;
+	}
+	
+	/**
+	 * Retorna a memória ocupada pela tabela
+	 * 
+	 * @return O tamanho dos vetores da tabela em bytes
+	 */
+	public long getMemoryBytes() {
+		
+		long bytes = 0;
+		
+		for(Stripe stripe : stripes) {
+			synchronized(stripe) {
+				bytes = bytes + 16L * stripe.keys.length;
+			}
+		}
+		
+		return bytes;
+	}
+	
+	/**
+	 * <p>Parte da tabela: uma tabela de endereçamento aberto com o seu 
+	 * próprio bloqueio e até {@link #MAX_ENTRIES} / {@link #STRIPES} 
+	 * regiões.</p>
+	 */
+	private static class Stripe {
+		
+		/**
+		 * Chaves das regiões (0 em posições vazias)
+		 */
+		private long keys[];
+		
+		/**
+		 * Estatísticas das regiões: o número de ocorrências da cor dominante
+		 * nos 32 bits superiores e a cor média (ARGB) nos 32 bits inferiores
+		 */
+		private long values[];
+		
+		/**
+		 * Número de regiões armazenadas
+		 */
+		private int size;
+		
+		/**
+		 * Número de consultas atendidas
+		 */
+		private long hits;
+		
+		/**
+		 * Número de consultas não atendidas
+		 */
+		private long misses;
+		
+		/**
+		 * Cria a parte vazia
+		 */
+		private Stripe() {
+			
+			keys = new long[INITIAL_CAPACITY];
+			values = new long[INITIAL_CAPACITY];
+		
+		}
+		
+		/**
+		 * Retorna as estatísticas de uma região
+		 * 
+		 * @param key A chave da região ou 0
+		 * @param hash O código de espalhamento da chave
+		 * 
+		 * @return As estatísticas da região ou {@link #MISSING}
+		 */
+		private synchronized long get(long key, int hash) {
+			
+			if(key != 0) {
+				
+				int mask = keys.length - 1;
+				
+				for(int k = hash & mask; keys[k] != 0; k = (k + 1) & mask) {
+					if(keys[k] == key) {
+						hits++;
+						return values[k];
+					}
+				}
+			}
+			
+			misses++;
+			
+			return MISSING;
+		}
+		
+		/**
+		 * Armazena as estatísticas de uma região
+		 * 
+		 * @param key A chave da região
+		 * @param hash O código de espalhamento da chave
+		 * @param value As estatísticas da região
+		 */
+		private synchronized void put(long key, int hash, long value) {
+			
+			if(size >= MAX_ENTRIES / STRIPES) return;
+			
+			if(2 * (size + 1) > keys.length) grow();
+			
+			insert(key, hash, value);
+		
+		}
+		
+		/**
+		 * Insere uma região, substituindo as estatísticas se a região já 
+		 * está armazenada
+		 * 
+		 * @param key A chave da região
+		 * @param hash O código de espalhamento da chave
+		 * @param value As estatísticas da região
+		 */
+		private void insert(long key, int hash, long value) {
+			
+			int mask = keys.length - 1;
+			int k = hash & mask;
+			
+			while(keys[k] != 0 && keys[k] != key) k = (k + 1) & mask;
+			
+			if(keys[k] == 0) size++;
+			
+			keys[k] = key;
+			values[k] = value;
+		
+		}
+		
+		/**
+		 * Dobra a capacidade da parte
+		 */
+		private void grow() {
+			
+			long oldKeys[] = keys;
+			long oldValues[] = values;
+			
+			keys = new long[oldKeys.length * 2];
+			values = new long[oldValues.length * 2];
+			size = 0;
+			
+			for(int k = 0; k < oldKeys.length; ++k) {
+				if(oldKeys[k] != 0) {
+					insert(oldKeys[k], hash(oldKeys[k]), oldValues[k]);
+				}
+			}
+		
+		}
+	
+	}
+
+}
@@ -0,0 +1,166 @@
+package quadtree.core;
+
+/**
+ * <p>Estimativa do tamanho de uma QuadTree antes da sua construção.</p>
+ * 
+ * <p>Cada grandeza é acompanhada do seu erro: a metade do intervalo de
+ * confiança de 95% da amostragem. O valor real está, com 95% de confiança,
+ * entre o valor estimado menos o erro e o valor estimado mais o erro.</p>
+ * 
+ * @author pedro
+ * 
+ * @see SizeEstimator
+ */
+public class SizeEstimate {
+	
+	/**
+	 * A precisão da estimativa
+	 */
+	private double accuracy;
+	
+	/**
+	 * Número estimado de nós
+	 */
+	private long nodes;
+	
+	/**
+	 * Erro do número de nós
+	 */
+	private long nodesError;
+	
+	/**
+	 * Tamanho estimado do arquivo .quad
+	 */
+	private long fileBytes;
+	
+	/**
+	 * Erro do tamanho do arquivo .quad
+	 */
+	private long fileError;
+	
+	/**
+	 * Número de pixels da imagem
+	 */
+	private long pixels;
+	
+	/**
+	 * Cria a estimativa
+	 * 
+	 * @param accuracy A precisão da estimativa
+	 * @param nodes O número estimado de nós
+	 * @param nodesError O erro do número de nós
+	 * @param fileBytes O tamanho estimado do arquivo .quad
+	 * @param fileError O erro do tamanho do arquivo .quad
+	 * @param pixels O número de pixels da imagem
+	 */
+	SizeEstimate(double accuracy, long nodes, long nodesError, long fileBytes,
+			long fileError, long pixels) {
+		
+		this.accuracy = accuracy;
+		this.nodes = nodes;
+		this.nodesError = nodesError;
+		this.fileBytes = fileBytes;
+		this.fileError = fileError;
+		this.pixels = pixels;
+	
+	}
+	
+	/**
+	 * Retorna a precisão da estimativa
+	 * 
+	 * @return A precisão da estimativa
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * Retorna o número estimado de nós (internos e folhas) da árvore
+	 * 
+	 * @return O número estimado de nós
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+	
+	/**
+	 * Retorna o erro do número de nós
+	 * 
+	 * @return O erro do número de nós
+	 */
+	public long getNodeCountError() {
+		return nodesError;
+	}
+	
+	/**
+	 * Retorna a memória estimada ocupada pela árvore
+	 * 
+	 * @return A memória estimada em bytes
+	 * 
+	 * @see SizeEstimator#NODE_BYTES
+	 */
+	public long getMemoryBytes() {
+		return nodes * SizeEstimator.NODE_BYTES;
+	}
+	
+	/**
+	 * Retorna o erro da memória ocupada pela árvore
+	 * 
+	 * @return O erro da memória em bytes
+	 */
+	public long getMemoryError() {
+		return nodesError * SizeEstimator.NODE_BYTES;
+	}
+	
+	/**
+	 * Retorna a memória estimada necessária durante a construção: a árvore e
+	 * os pixels da imagem
+	 * 
+	 * @return A memória estimada em bytes
+	 */
+	public long getPeakMemoryBytes() {
+		return getMemoryBytes() + pixels * 4;
+	}
+	
+	/**
+	 * Retorna o tamanho estimado do arquivo .quad, no formato sem paleta e
+	 * sem codificação entrópica, desconsiderando a miniatura do cabeçalho
+	 * 
+	 * @return O tamanho estimado do arquivo em bytes
+	 */
+	public long getFileBytes() {
+		return fileBytes;
+	}
+	
+	/**
+	 * Retorna o erro do tamanho do arquivo .quad
+	 * 
+	 * @return O erro do tamanho do arquivo em bytes
+	 */
+	public long getFileError() {
+		return fileError;
+	}
+	
+	/**
+	 * Verifica se a construção da árvore cabe em um limite de memória,
+	 * considerando o limite superior da estimativa
+	 * 
+	 * @param bytes O limite de memória em bytes
+	 * 
+	 * @return true se a memória necessária, com 95% de confiança, não
+	 * 		   excede o limite
+	 * 		   false caso contrário
+	 */
+	public boolean fits(long bytes) {
+		return getPeakMemoryBytes() + getMemoryError() <= bytes;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("precisão %.1f%%: %d ± %d nós, %d ± %d KB em " +
+				"memória, %d ± %d KB em arquivo", accuracy * 100, nodes,
+				nodesError, getMemoryBytes() / 1024, getMemoryError() / 1024,
+				fileBytes / 1024, fileError / 1024);
+	}
+
+}
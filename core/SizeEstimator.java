@@ -0,0 +1,596 @@
+package quadtree.core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>Estima o número de nós, a memória e o tamanho em arquivo de uma
+ * QuadTree sem construí-la.</p>
+ * 
+ * <p>A imagem é decodificada com subamostragem, limitada a
+ * {@link #MAX_PREVIEW_PIXELS} pixels. A regra de divisão é aplicada sobre a
+ * imagem subamostrada até o nível das <i>células</i>, regiões grandes o
+ * suficiente para conter ao menos {@link #CELL_SAMPLES} x
+ * {@link #CELL_SAMPLES} pixels da imagem subamostrada. As subárvores das
+ * células não são estimadas a partir da imagem subamostrada: algumas faixas
+ * de células são decodificadas na resolução original e suas subárvores são
+ * construídas de fato. O tamanho das subárvores das demais células é
+ * estimado pela razão entre os nós e as células das faixas amostradas
+ * (amostragem por conglomerados), com intervalo de confiança de 95%.</p>
+ * 
+ * <p>As faixas amostradas são mantidas em memória, de modo que estimativas
+ * para várias precisões não decodificam a imagem novamente. Imagens com até
+ * {@link #MAX_PREVIEW_PIXELS} pixels são decodificadas por inteiro e a
+ * estimativa é exata.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class SizeEstimator {
+	
+	/**
+	 * Memória ocupada por um nó, em uma JVM de 64 bits com referências
+	 * comprimidas: o nó (72 bytes, com as somas das componentes), o vetor 
+	 * de filhos (32 bytes) e a cor (32 bytes)
+	 */
+	public static final int NODE_BYTES = 136;
+	
+	/**
+	 * Número máximo de pixels da imagem subamostrada
+	 */
+	public static final int MAX_PREVIEW_PIXELS = 1 << 20;
+	
+	/**
+	 * Número máximo de faixas de células decodificadas na resolução original
+	 */
+	public static final int SAMPLED_BANDS = 8;
+	
+	/**
+	 * Número máximo de pixels de cada faixa decodificada na resolução
+	 * original
+	 */
+	private static final int BAND_PIXELS = 1 << 20;
+	
+	/**
+	 * Lado mínimo de uma célula, em pixels da imagem subamostrada
+	 */
+	private static final int CELL_SAMPLES = 8;
+	
+	/**
+	 * Lado mínimo de uma célula, em pixels
+	 */
+	private static final int MIN_CELL_SIZE = 32;
+	
+	/**
+	 * Tamanho do cabeçalho do arquivo .quad sem paleta e sem miniatura, mais
+	 * o tamanho da estrutura
+	 */
+	private static final int HEADER_BYTES = 38;
+	
+	/**
+	 * Quantil da distribuição normal do intervalo de confiança de 95%
+	 */
+	private static final double Z = 1.96;
+	
+	/**
+	 * Altura da imagem
+	 */
+	private int height;
+	
+	/**
+	 * Largura da imagem
+	 */
+	private int width;
+	
+	/**
+	 * Fator de subamostragem
+	 */
+	private int step;
+	
+	/**
+	 * A imagem subamostrada
+	 */
+	private PixelBuffer preview;
+	
+	/**
+	 * Nível das células na árvore
+	 */
+	private int depth;
+	
+	/**
+	 * Número total de faixas de células
+	 */
+	private int bandCount;
+	
+	/**
+	 * As faixas decodificadas na resolução original
+	 */
+	private List<PixelBuffer> bands;
+	
+	/**
+	 * Cria o estimador, decodificando a imagem subamostrada e as faixas
+	 * amostradas
+	 * 
+	 * @param file O arquivo da imagem
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou formato não suportado
+	 */
+	public SizeEstimator(File file) throws IOException {
+		
+		ImageInputStream iis = ImageIO.createImageInputStream(file);
+		
+		if(iis == null) {
+			throw new IOException("Arquivo não encontrado: " + file);
+		}
+		
+		try {
+			
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			
+			if(!readers.hasNext()) {
+				throw new IOException("Formato de imagem não suportado: " +
+						file);
+			}
+			
+			ImageReader reader = readers.next();
+			
+			try {
+				
+				reader.setInput(iis, false, true);
+				
+				load(reader);
+			
+			} finally {
+				reader.dispose();
+			}
+		
+		} finally {
+			iis.close();
+		}
+	
+	}
+	
+	/**
+	 * Decodifica a imagem subamostrada e as faixas amostradas
+	 * 
+	 * @param reader O leitor da imagem
+	 * 
+	 * @throws IOException Erro ao ler a imagem
+	 */
+	private void load(ImageReader reader) throws IOException {
+		
+		width = reader.getWidth(0);
+		height = reader.getHeight(0);
+		
+		double pixels = (double) width * height;
+		step = Math.max(1, (int) Math.ceil(
+				Math.sqrt(pixels / MAX_PREVIEW_PIXELS)));
+		
+		ImageReadParam param = reader.getDefaultReadParam();
+		param.setSourceSubsampling(step, step, 0, 0);
+		
+		preview = toBuffer(reader.read(0, param), 0, 0);
+		
+		//nível das células
+		int cell = Math.max(MIN_CELL_SIZE, CELL_SAMPLES * step);
+		
+		depth = 0;
+		while((Math.min(height, width) >> (depth + 1)) >= cell) depth++;
+		
+		List<int[]> rows = new ArrayList<>();
+		divide(0, height, depth, rows);
+		
+		List<int[]> columns = new ArrayList<>();
+		divide(0, width, depth, columns);
+		
+		//faixas: trechos de linhas de células
+		int cellPixels = (height >> depth) * (width >> depth);
+		int length = Math.max(1, Math.min(columns.size(),
+				BAND_PIXELS / Math.max(1, cellPixels)));
+		
+		List<Rectangle> all = new ArrayList<>();
+		
+		for(int[] row : rows) {
+			for(int c = 0; c < columns.size(); c += length) {
+				
+				int[] first = columns.get(c);
+				int[] last = columns.get(Math.min(columns.size(),
+						c + length) - 1);
+				
+				all.add(new Rectangle(first[0], row[0],
+						last[0] + last[1] - first[0], row[1]));
+			}
+		}
+		
+		bandCount = all.size();
+		bands = new ArrayList<>();
+		
+		//imagem inteira já decodificada
+		if(step == 1) {
+			bands.add(preview);
+			bandCount = 1;
+			return;
+		}
+		
+		//amostragem estratificada das faixas
+		int n = Math.min(SAMPLED_BANDS, bandCount);
+		Random random = new Random(bandCount);
+		
+		for(int k = 0; k < n; ++k) {
+			
+			int from = k * bandCount / n;
+			int to = (k + 1) * bandCount / n;
+			
+			Rectangle band = all.get(from + random.nextInt(to - from));
+			
+			param = reader.getDefaultReadParam();
+			param.setSourceRegion(band);
+			
+			bands.add(toBuffer(reader.read(0, param), band.x, band.y));
+		}
+	
+	}
+	
+	/**
+	 * Divide um intervalo (linhas ou colunas) como na divisão de uma região
+	 * regular em quadrantes, até um nível
+	 * 
+	 * @param start O início do intervalo
+	 * @param length O comprimento do intervalo
+	 * @param level O número de divisões restantes
+	 * @param parts Os intervalos resultantes (início e comprimento)
+	 */
+	private static void divide(int start, int length, int level,
+			List<int[]> parts) {
+		
+		if(level == 0) {
+			parts.add(new int[] {start, length});
+			return;
+		}
+		
+		int half = length / 2;
+		
+		divide(start, half, level - 1, parts);
+		divide(start + half, length - half, level - 1, parts);
+	
+	}
+	
+	/**
+	 * Converte uma imagem decodificada em um buffer de pixels
+	 * 
+	 * @param image A imagem decodificada
+	 * @param x A coluna do primeiro pixel da imagem
+	 * @param y A linha do primeiro pixel da imagem
+	 * 
+	 * @return O buffer de pixels
+	 */
+	private static PixelBuffer toBuffer(BufferedImage image, int x, int y) {
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		
+		int argb[] = image.getRGB(0, 0, w, h, null, 0, w);
+		
+		return new PixelBuffer(argb, x, y, w, h);
+	
+	}
+	
+	/**
+	 * Estima o tamanho da árvore construída com uma precisão
+	 * 
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * 
+	 * @return A estimativa
+	 */
+	public SizeEstimate estimate(double accuracy) {
+		
+		Sample sample = new Sample(bands.size());
+		
+		visit(new Node(0, 0, height, width), 0, accuracy, sample);
+		
+		double nodes[] = ratio(sample, Sample.NODES);
+		double file[] = ratio(sample, Sample.FILE);
+		
+		long estimatedNodes = sample.nodes + Math.round(nodes[0]);
+		long estimatedFile = HEADER_BYTES + sample.regular / 8 +
+				sample.leaves * 4 + Math.round(file[0]);
+		
+		return new SizeEstimate(accuracy, estimatedNodes,
+				Math.round(nodes[1]), estimatedFile, Math.round(file[1]),
+				(long) height * width);
+	
+	}
+	
+	/**
+	 * Aplica a regra de divisão sobre a imagem subamostrada até o nível das
+	 * células. As subárvores das células amostradas são construídas na
+	 * resolução original
+	 * 
+	 * @param node O nó atual
+	 * @param level O nível do nó
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * @param sample A amostra em construção
+	 */
+	private void visit(Node node, int level, double accuracy,
+			Sample sample) {
+		
+		//célula: subárvore construída se a célula está em uma faixa amostrada
+		if(level == depth) {
+			
+			sample.cells++;
+			
+			for(int b = 0; b < bands.size(); ++b) {
+				
+				PixelBuffer band = bands.get(b);
+				
+				if(band.getBounds().contains(node.getX(), node.getY(),
+						node.getWidth(), node.getHeight())) {
+					
+					QuadTree.compress(band, node, accuracy);
+					
+					long count[] = new long[3];
+					count(node, count);
+					
+					sample.add(b, count[0], count[1], count[2]);
+					
+					break;
+				}
+			}
+			
+			return;
+		}
+		
+		sample.nodes++;
+		if(node.isRegular()) sample.regular++;
+		
+		if(node.isRegular() && uniform(node, accuracy)) {
+			sample.leaves++;
+			return;
+		}
+		
+		node.split();
+		
+		for(Node q : node.getQ()) {
+			if(q != null) visit(q, level + 1, accuracy, sample);
+		}
+	
+	}
+	
+	/**
+	 * Verifica na imagem subamostrada se a cor de maior ocorrência de uma
+	 * região atende à precisão, como na construção da árvore
+	 * 
+	 * @param node O nó que representa a região
+	 * @param accuracy A precisão utilizada no processo de divisão da imagem
+	 * 
+	 * @return true se a região é representada por uma folha
+	 * 		   false caso contrário
+	 */
+	private boolean uniform(Node node, double accuracy) {
+		
+		int x0 = (node.getX() + step - 1) / step;
+		int y0 = (node.getY() + step - 1) / step;
+		int x1 = Math.min(preview.getWidth(),
+				(node.getX() + node.getWidth() + step - 1) / step);
+		int y1 = Math.min(preview.getHeight(),
+				(node.getY() + node.getHeight() + step - 1) / step);
+		
+		if(x1 <= x0 || y1 <= y0) return false;
+		
+		Map<Integer, Integer> colors = new HashMap<>();
+		
+		int max = 0;
+		
+		for(int y = y0; y < y1; ++y) {
+			for(int x = x0; x < x1; ++x) {
+				
+				int c = preview.get(x, y);
+				
+				Integer count = colors.get(c);
+				count = count == null ? 1 : count + 1;
+				
+				colors.put(c, count);
+				max = Math.max(max, count);
+			}
+		}
+		
+		double size = (double) (x1 - x0) * (y1 - y0);
+		
+		return max / size >= accuracy;
+	
+	}
+	
+	/**
+	 * Conta os nós de uma subárvore
+	 * 
+	 * @param node A raiz da subárvore
+	 * @param count O número de nós, de folhas e de nós regulares
+	 */
+	private static void count(Node node, long count[]) {
+		
+		count[0]++;
+		if(node.isRegular()) count[2]++;
+		
+		if(node.isLeaf()) {
+			count[1]++;
+			return;
+		}
+		
+		for(Node q : node.getQ()) {
+			if(q != null) count(q, count);
+		}
+	
+	}
+	
+	/**
+	 * Estima o total de uma grandeza sobre todas as células pela razão entre
+	 * a grandeza e o número de células das faixas amostradas
+	 * 
+	 * @param sample A amostra
+	 * @param index A grandeza ({@link Sample#NODES} ou {@link Sample#FILE})
+	 * 
+	 * @return O total estimado e o seu erro (95% de confiança)
+	 */
+	private double[] ratio(Sample sample, int index) {
+		
+		if(sample.cells == 0) return new double[] {0, 0};
+		
+		int n = bands.size();
+		
+		double cells = 0;
+		double total = 0;
+		
+		for(double band[] : sample.bands) {
+			cells = cells + band[Sample.CELLS];
+			total = total + band[index];
+		}
+		
+		//nenhuma célula amostrada: apenas os limites de uma célula
+		if(cells == 0) {
+			
+			double area = Math.ceil((double) height / (1 << depth)) *
+					Math.ceil((double) width / (1 << depth));
+			
+			double max = index == Sample.NODES ? 2 * area : 4.2 * area;
+			
+			return new double[] {sample.cells, sample.cells * max};
+		}
+		
+		double r = total / cells;
+		double estimate = sample.cells * r;
+		
+		//todas as faixas amostradas
+		if(n >= bandCount) return new double[] {estimate, 0};
+		
+		if(n < 2) return new double[] {estimate, estimate};
+		
+		double mean = cells / n;
+		double residual = 0;
+		
+		for(double band[] : sample.bands) {
+			double d = band[index] - r * band[Sample.CELLS];
+			residual = residual + d * d;
+		}
+		
+		double variance = (1 - (double) n / bandCount) * residual / (n - 1) /
+				(n * mean * mean);
+		
+		return new double[] {estimate, Z * sample.cells * Math.sqrt(variance)};
+	
+	}
+	
+	/**
+	 * Retorna o fator de subamostragem da imagem
+	 * 
+	 * @return O fator de subamostragem (1 se a imagem foi decodificada por
+	 * 		   inteiro)
+	 */
+	public int getStep() {
+		return step;
+	}
+	
+	/**
+	 * Retorna a altura da imagem
+	 * 
+	 * @return A altura da imagem
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura da imagem
+	 * 
+	 * @return A largura da imagem
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * <p>Amostra de uma estimativa: os nós acima do nível das células e os
+	 * totais de cada faixa amostrada.</p>
+	 */
+	private static class Sample {
+		
+		/**
+		 * Índice do número de células de uma faixa
+		 */
+		private static final int CELLS = 0;
+		
+		/**
+		 * Índice do número de nós de uma faixa
+		 */
+		private static final int NODES = 1;
+		
+		/**
+		 * Índice do tamanho em arquivo de uma faixa
+		 */
+		private static final int FILE = 2;
+		
+		/**
+		 * Nós acima do nível das células
+		 */
+		private long nodes;
+		
+		/**
+		 * Folhas acima do nível das células
+		 */
+		private long leaves;
+		
+		/**
+		 * Nós regulares acima do nível das células
+		 */
+		private long regular;
+		
+		/**
+		 * Número de células
+		 */
+		private long cells;
+		
+		/**
+		 * Totais de cada faixa amostrada
+		 */
+		private double bands[][];
+		
+		/**
+		 * Cria a amostra
+		 * 
+		 * @param count O número de faixas amostradas
+		 */
+		private Sample(int count) {
+			bands = new double[count][3];
+		}
+		
+		/**
+		 * Adiciona a subárvore de uma célula amostrada
+		 * 
+		 * @param band A faixa da célula
+		 * @param nodes O número de nós da subárvore
+		 * @param leaves O número de folhas da subárvore
+		 * @param regular O número de nós regulares da subárvore
+		 */
+		private void add(int band, long nodes, long leaves, long regular) {
+			
+			bands[band][CELLS]++;
+			bands[band][NODES] += nodes;
+			bands[band][FILE] += regular / 8.0 + leaves * 4;
+		
+		}
+	
+	}
+
+}
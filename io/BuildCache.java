@@ -0,0 +1,318 @@
+package quadtree.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import quadtree.core.PixelBuffer;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Cache em disco de QuadTrees construídas, endereçado pelo conteúdo.</p>
+ * 
+ * <p>A chave de uma árvore é o SHA-256 dos pixels da imagem de origem, da
+ * precisão, das opções de construção, da versão do formato .quad e da 
+ * versão do algoritmo de construção, {@link QuadTree#BUILD_VERSION}
+ * ({@link #key(PixelBuffer, double, String)}); a árvore é armazenada em um 
+ * arquivo <i>.quad</i> com codificação entrópica cujo nome é a chave. Assim,
+ * a mesma imagem construída com as mesmas opções é carregada do cache em vez
+ * de ser comprimida novamente, independentemente do nome ou da data do 
+ * arquivo de imagem.</p>
+ * 
+ * <p>As gravações são atômicas: a árvore é gravada em um arquivo temporário
+ * no diretório do cache, sincronizada com o disco e renomeada para o nome 
+ * final. Processos concorrentes que gravam a mesma chave produzem o mesmo 
+ * conteúdo, e um leitor encontra o arquivo completo ou não o encontra. Um 
+ * arquivo que não pode ser lido é descartado e tratado como ausente.</p>
+ * 
+ * <p>O cache é limitado em bytes: após cada gravação, os arquivos utilizados
+ * há mais tempo (data de modificação, atualizada a cada leitura) são 
+ * removidos até que o cache respeite o limite. Arquivos temporários 
+ * abandonados por processos interrompidos são removidos após
+ * {@link #STALE_TEMP_MILLIS} ms.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class BuildCache {
+	
+	/**
+	 * Extensão dos arquivos do cache
+	 */
+	private static final String EXTENSION = ".quad";
+	
+	/**
+	 * Extensão dos arquivos temporários
+	 */
+	private static final String TEMP_EXTENSION = ".tmp";
+	
+	/**
+	 * Idade a partir da qual um arquivo temporário é considerado abandonado
+	 */
+	public static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+	
+	/**
+	 * O diretório do cache
+	 */
+	private File directory;
+	
+	/**
+	 * O limite do cache em bytes
+	 */
+	private long maxBytes;
+	
+	/**
+	 * Cria o cache em um diretório, criando o diretório se necessário
+	 * 
+	 * @param directory O diretório do cache
+	 * @param maxBytes O limite do cache em bytes
+	 * 
+	 * @throws IOException Erro ao criar o diretório
+	 */
+	public BuildCache(File directory, long maxBytes) throws IOException {
+		
+		Files.createDirectories(directory.toPath());
+		
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	
+	}
+	
+	/**
+	 * Calcula a chave de uma árvore
+	 * 
+	 * @param pixels Os pixels da imagem inteira
+	 * @param accuracy A precisão da construção
+	 * @param options As demais opções que alteram a árvore construída, como
+	 * 				  a capacidade da paleta
+	 * 
+	 * @return A chave, em hexadecimal
+	 */
+	public static String key(PixelBuffer pixels, double accuracy, 
+			String options) {
+		
+		MessageDigest digest;
+		
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			//todas as JVMs oferecem SHA-256
+			throw new IllegalStateException(e);
+		}
+		
+		int width = pixels.getWidth();
+		int height = pixels.getHeight();
+		
+		ByteBuffer header = ByteBuffer.allocate(24);
+		header.putInt(QuadFormat.VERSION);
+		header.putInt(QuadTree.BUILD_VERSION);
+		header.putLong(Double.doubleToLongBits(accuracy));
+		header.putInt(width);
+		header.putInt(height);
+		
+		digest.update(header.array());
+		digest.update(options.getBytes(StandardCharsets.UTF_8));
+		
+		ByteBuffer row = ByteBuffer.allocate(4 * width);
+		
+		for(int y = 0; y < height; ++y) {
+			
+			row.clear();
+			row.asIntBuffer().put(pixels.getPixels(), 
+					pixels.offset(pixels.getX(), pixels.getY() + y), width);
+			
+			digest.update(row.array());
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(byte b : digest.digest()) sb.append(String.format("%02x", b));
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Carrega a árvore de uma chave
+	 * 
+	 * @param key A chave da árvore
+	 * 
+	 * @return A árvore ou null se a chave não está no cache
+	 */
+	public QuadTree get(String key) {
+		
+		File file = file(key);
+		
+		if(!file.isFile()) return null;
+		
+		try(InputStream in = new BufferedInputStream(
+				Files.newInputStream(file.toPath()))) {
+			
+			QuadTree tree = new QuadTreeReader().read(in);
+			
+			//utilizada recentemente: removida por último
+			file.setLastModified(System.currentTimeMillis());
+			
+			return tree;
+			
+		} catch (NoSuchFileException e) {
+			//removida por outro processo
+			return null;
+		} catch (IOException | RuntimeException e) {
+			
+			//arquivo inválido
+			file.delete();
+			
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Armazena a árvore de uma chave e remove os arquivos utilizados há mais
+	 * tempo se o cache excede o limite
+	 * 
+	 * @param key A chave da árvore
+	 * @param tree A árvore
+	 * 
+	 * @throws IOException Erro ao gravar o arquivo
+	 */
+	public void put(String key, QuadTree tree) throws IOException {
+		
+		File temp = File.createTempFile(key + "-", TEMP_EXTENSION, 
+				directory);
+		
+		try {
+			
+			try(FileOutputStream fos = new FileOutputStream(temp)) {
+				
+				OutputStream out = new BufferedOutputStream(fos);
+				
+				QuadTreeWriter writer = new QuadTreeWriter(tree);
+				writer.setEntropyCoding(true);
+				writer.write(out);
+				
+				out.flush();
+				
+				//o conteúdo está em disco antes de o arquivo ser visível
+				fos.getFD().sync();
+			}
+			
+			try {
+				Files.move(temp.toPath(), file(key).toPath(), 
+						StandardCopyOption.ATOMIC_MOVE, 
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file(key).toPath(), 
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			
+		} finally {
+			temp.delete();
+		}
+		
+		evict();
+		
+	}
+	
+	/**
+	 * Remove os arquivos temporários abandonados e os arquivos utilizados há
+	 * mais tempo até que o cache respeite o limite. Arquivos removidos por 
+	 * outros processos são ignorados
+	 */
+	public void evict() {
+		
+		File files[] = directory.listFiles();
+		
+		if(files == null) return;
+		
+		long now = System.currentTimeMillis();
+		long bytes = 0;
+		
+		List<File> entries = new ArrayList<>();
+		final List<Long> modified = new ArrayList<>();
+		
+		for(File file : files) {
+			
+			String name = file.getName();
+			long time = file.lastModified();
+			
+			if(name.endsWith(TEMP_EXTENSION)) {
+				if(time > 0 && now - time > STALE_TEMP_MILLIS) file.delete();
+			}
+			else if(name.endsWith(EXTENSION)) {
+				entries.add(file);
+				modified.add(time);
+				bytes = bytes + file.length();
+			}
+		}
+		
+		if(bytes <= maxBytes) return;
+		
+		Integer order[] = new Integer[entries.size()];
+		for(int k = 0; k < order.length; ++k) order[k] = k;
+		
+		Arrays.sort(order, new Comparator<Integer>() {
+			
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(modified.get(a), modified.get(b));
+			}
+			
+		});
+		
+		for(int k = 0; k < order.length && bytes > maxBytes; ++k) {
+			
+			File file = entries.get(order[k]);
+			long length = file.length();
+			
+			if(file.delete()) bytes = bytes - length;
+		}
+	
+	}
+	
+	/**
+	 * Retorna o arquivo de uma chave
+	 * 
+	 * @param key A chave
+	 * 
+	 * @return O arquivo da árvore no diretório do cache
+	 */
+	private File file(String key) {
+		return new File(directory, key + EXTENSION);
+	}
+	
+	/**
+	 * Retorna o diretório do cache
+	 * 
+	 * @return O diretório do cache
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	
+	/**
+	 * Retorna o limite do cache
+	 * 
+	 * @return O limite do cache em bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+}
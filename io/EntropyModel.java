@@ -0,0 +1,306 @@
+package quadtree.io;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>Modelo de contexto da codificação entrópica dos arquivos <i>.quad</i>.
+ * </p>
+ * 
+ * <p>Os nós são codificados em pré-ordem. Para cada região regular é 
+ * codificado o bit de divisão, em um contexto definido pelo tamanho da 
+ * região. A cor de cada nó é codificada como a diferença, em cada componente,
+ * em relação à cor do nó pai (a raiz é comparada à cor preta transparente),
+ * em contextos separados por componente e por tipo de nó (folha ou nó 
+ * interno).</p>
+ * 
+ * <p>O mesmo modelo é utilizado pelo codificador e pelo decodificador, que 
+ * atualizam as probabilidades da mesma forma.</p>
+ * 
+ * @author pedro
+ *
+ */
+class EntropyModel {
+	
+	/**
+	 * Número de contextos do bit de divisão
+	 */
+	private static final int SPLIT_CONTEXTS = 32;
+	
+	/**
+	 * Probabilidades do bit de divisão, por tamanho da região
+	 */
+	private short split[];
+	
+	/**
+	 * Probabilidades das diferenças de cor, por tipo de nó e componente
+	 */
+	private short channels[][][];
+	
+	/**
+	 * Probabilidades do bit de reutilização do nó do quadro anterior 
+	 * (sequências de quadros), por tamanho da região
+	 */
+	private short shared[];
+	
+	/**
+	 * Probabilidades do bit que indica se o nó é a repetição de uma subárvore
+	 * já gravada (grafo de subárvores), por tamanho da região
+	 */
+	private short repeated[];
+	
+	/**
+	 * Probabilidade do bit que indica se existe um próximo quadro 
+	 * (sequências de quadros)
+	 */
+	private short frame[];
+	
+	/**
+	 * Cria o modelo com todas as probabilidades iguais a 0,5
+	 */
+	EntropyModel() {
+		
+		split = new short[SPLIT_CONTEXTS];
+		Arrays.fill(split, RangeEncoder.INITIAL_PROBABILITY);
+		
+		shared = new short[SPLIT_CONTEXTS];
+		Arrays.fill(shared, RangeEncoder.INITIAL_PROBABILITY);
+		
+		repeated = new short[SPLIT_CONTEXTS];
+		Arrays.fill(repeated, RangeEncoder.INITIAL_PROBABILITY);
+		
+		frame = new short[] { RangeEncoder.INITIAL_PROBABILITY };
+		
+		channels = new short[2][4][256];
+		
+		for(int i = 0; i < 2; ++i) {
+			for(int j = 0; j < 4; ++j) {
+				Arrays.fill(channels[i][j], RangeEncoder.INITIAL_PROBABILITY);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Codifica o bit de divisão de uma região regular
+	 * 
+	 * @param encoder O codificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * @param split true se a região foi dividida
+	 * 
+	 * @throws IOException Erro ao gravar o bit
+	 */
+	void encodeSplit(RangeEncoder encoder, int height, int width, 
+			boolean split) throws IOException {
+		encoder.encodeBit(this.split, context(height, width), split ? 1 : 0);
+	}
+	
+	/**
+	 * Decodifica o bit de divisão de uma região regular
+	 * 
+	 * @param decoder O decodificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * 
+	 * @return true se a região foi dividida
+	 * 
+	 * @throws IOException Erro ao ler o bit
+	 */
+	boolean decodeSplit(RangeDecoder decoder, int height, int width) 
+			throws IOException {
+		return decoder.decodeBit(split, context(height, width)) == 1;
+	}
+	
+	/**
+	 * Codifica se o nó é o mesmo nó do quadro anterior na mesma região
+	 * 
+	 * @param encoder O codificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * @param shared true se o nó do quadro anterior é reutilizado
+	 * 
+	 * @throws IOException Erro ao gravar o bit
+	 */
+	void encodeShared(RangeEncoder encoder, int height, int width, 
+			boolean shared) throws IOException {
+		encoder.encodeBit(this.shared, context(height, width), shared ? 1 : 0);
+	}
+	
+	/**
+	 * Decodifica se o nó é o mesmo nó do quadro anterior na mesma região
+	 * 
+	 * @param decoder O decodificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * 
+	 * @return true se o nó do quadro anterior é reutilizado
+	 * 
+	 * @throws IOException Erro ao ler o bit
+	 */
+	boolean decodeShared(RangeDecoder decoder, int height, int width) 
+			throws IOException {
+		return decoder.decodeBit(shared, context(height, width)) == 1;
+	}
+	
+	/**
+	 * Codifica se o nó repete uma subárvore já gravada e, se for o caso, o 
+	 * identificador da subárvore
+	 * 
+	 * @param encoder O codificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * @param id O identificador da subárvore repetida ou -1 se o nó não é 
+	 * 				uma repetição
+	 * @param count O número de subárvores já gravadas (maior que zero)
+	 * 
+	 * @throws IOException Erro ao gravar o nó
+	 */
+	void encodeRepeated(RangeEncoder encoder, int height, int width, int id, 
+			int count) throws IOException {
+		
+		encoder.encodeBit(repeated, context(height, width), id >= 0 ? 1 : 0);
+		
+		if(id >= 0) encoder.encodeDirectBits(id, bits(count));
+		
+	}
+	
+	/**
+	 * Decodifica se o nó repete uma subárvore já gravada
+	 * 
+	 * @param decoder O decodificador
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * @param count O número de subárvores já gravadas (maior que zero)
+	 * 
+	 * @return O identificador da subárvore repetida ou -1 se o nó não é uma
+	 * 		   repetição
+	 * 
+	 * @throws IOException Erro ao ler o nó
+	 */
+	int decodeRepeated(RangeDecoder decoder, int height, int width, 
+			int count) throws IOException {
+		
+		if(decoder.decodeBit(repeated, context(height, width)) == 0) {
+			return -1;
+		}
+		
+		return decoder.decodeDirectBits(bits(count));
+	}
+	
+	/**
+	 * Retorna o número de bits necessários para representar os 
+	 * identificadores de 0 a count - 1
+	 * 
+	 * @param count O número de identificadores
+	 * 
+	 * @return O número de bits
+	 */
+	private static int bits(int count) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(count - 1));
+	}
+	
+	/**
+	 * Codifica se existe um próximo quadro na sequência
+	 * 
+	 * @param encoder O codificador
+	 * @param next true se existe um próximo quadro
+	 * 
+	 * @throws IOException Erro ao gravar o bit
+	 */
+	void encodeFrame(RangeEncoder encoder, boolean next) throws IOException {
+		encoder.encodeBit(frame, 0, next ? 1 : 0);
+	}
+	
+	/**
+	 * Decodifica se existe um próximo quadro na sequência
+	 * 
+	 * @param decoder O decodificador
+	 * 
+	 * @return true se existe um próximo quadro
+	 * 
+	 * @throws IOException Erro ao ler o bit
+	 */
+	boolean decodeFrame(RangeDecoder decoder) throws IOException {
+		return decoder.decodeBit(frame, 0) == 1;
+	}
+	
+	/**
+	 * Codifica a cor de um nó como a diferença em relação à cor do pai
+	 * 
+	 * @param encoder O codificador
+	 * @param leaf true se o nó é uma folha
+	 * @param color A cor do nó (ARGB)
+	 * @param parent A cor do pai (ARGB)
+	 * 
+	 * @throws IOException Erro ao gravar a cor
+	 */
+	void encodeColor(RangeEncoder encoder, boolean leaf, int color, 
+			int parent) throws IOException {
+		
+		short model[][] = channels[leaf ? 0 : 1];
+		
+		for(int k = 0; k < 4; ++k) {
+			
+			int s = k * 8;
+			
+			//diferença com sinal (8 bits) mapeada para valores sem sinal:
+			//0, -1, 1, -2, 2, ...
+			byte d = (byte) (((color >>> s) & 0xFF) - ((parent >>> s) & 0xFF));
+			int z = ((d << 1) ^ (d >> 7)) & 0xFF;
+			
+			encoder.encodeByte(model[k], z);
+		}
+		
+	}
+	
+	/**
+	 * Decodifica a cor de um nó
+	 * 
+	 * @param decoder O decodificador
+	 * @param leaf true se o nó é uma folha
+	 * @param parent A cor do pai (ARGB)
+	 * 
+	 * @return A cor do nó
+	 * 
+	 * @throws IOException Erro ao ler a cor
+	 */
+	Color decodeColor(RangeDecoder decoder, boolean leaf, int parent) 
+			throws IOException {
+		
+		short model[][] = channels[leaf ? 0 : 1];
+		
+		int color = 0;
+		
+		for(int k = 0; k < 4; ++k) {
+			
+			int s = k * 8;
+			
+			int z = decoder.decodeByte(model[k]);
+			int d = (z >>> 1) ^ -(z & 1);
+			
+			color = color | ((((parent >>> s) + d) & 0xFF) << s);
+		}
+		
+		return new Color(color, true);
+	}
+	
+	/**
+	 * Retorna o contexto do bit de divisão de uma região, de acordo com o 
+	 * logaritmo do maior lado da região
+	 * 
+	 * @param height A altura da região
+	 * @param width A largura da região
+	 * 
+	 * @return O contexto do bit de divisão
+	 */
+	private int context(int height, int width) {
+		
+		int size = Math.max(height, width);
+		
+		return Math.min(SPLIT_CONTEXTS - 1, 
+				32 - Integer.numberOfLeadingZeros(size));
+	}
+
+}
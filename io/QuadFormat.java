@@ -0,0 +1,88 @@
+package quadtree.io;
+
+/**
+ * <p>Constantes do formato binário dos arquivos <i>.quad</i>.</p>
+ * 
+ * <p>O arquivo é composto por um cabeçalho (identificador, versão, opções, 
+ * dimensões da imagem, precisão, número de nós e uma miniatura no formato 
+ * PNG), pela paleta de cores (se a árvore utiliza paleta), pela estrutura da
+ * árvore e pelas cores das folhas. O número de nós e a miniatura estão 
+ * presentes a partir da versão 2 e precedem a paleta, de modo que as 
+ * informações do arquivo são obtidas lendo apenas alguns KB.</p>
+ * 
+ * <p>A geometria dos nós não é armazenada: ela é definida pela regra de 
+ * divisão de {@link quadtree.core.Node#split()}. A estrutura armazena apenas
+ * um bit por região regular (divisão opcional), em pré-ordem, e a cor dos nós
+ * internos é recalculada a partir das folhas.</p>
+ * 
+ * <p>Com a codificação entrópica ({@link #FLAG_ENTROPY}) os nós são gravados
+ * em pré-ordem em uma única stream, de modo que a árvore pode ser gravada e
+ * lida sem ser mantida inteira em memória.</p>
+ * 
+ * @author pedro
+ *
+ */
+public final class QuadFormat {
+	
+	/**
+	 * Identificador do formato ("QUAD")
+	 */
+	public static final int MAGIC = 0x51554144;
+	
+	/**
+	 * Versão atual do formato
+	 */
+	public static final int VERSION = 2;
+	
+	/**
+	 * Largura máxima da miniatura armazenada no cabeçalho
+	 */
+	public static final int THUMBNAIL_WIDTH = 150;
+	
+	/**
+	 * Altura máxima da miniatura armazenada no cabeçalho
+	 */
+	public static final int THUMBNAIL_HEIGHT = 100;
+	
+	/**
+	 * Opção: as cores das folhas são índices de uma paleta
+	 */
+	public static final int FLAG_PALETTE = 1;
+	
+	/**
+	 * Opção: a estrutura e as cores são codificadas por um codificador 
+	 * aritmético adaptativo, com as cores armazenadas como diferenças em 
+	 * relação à cor do nó pai
+	 */
+	public static final int FLAG_ENTROPY = 2;
+	
+	/**
+	 * Opção: subárvores idênticas são gravadas uma única vez. As repetições 
+	 * são gravadas como referências à primeira ocorrência. Implica 
+	 * {@link #FLAG_ENTROPY}
+	 */
+	public static final int FLAG_DAG = 4;
+	
+	/**
+	 * Área mínima de uma região para que a sua subárvore possa ser 
+	 * referenciada por repetições ({@link #FLAG_DAG})
+	 */
+	public static final int DAG_MIN_AREA = 16;
+	
+	/**
+	 * Identificador dos arquivos de sequências de quadros ("QSEQ")
+	 */
+	public static final int SEQUENCE_MAGIC = 0x51534551;
+	
+	/**
+	 * Identificador de arquivos gerados pela serialização de objetos Java 
+	 * (formato antigo dos arquivos .quad)
+	 */
+	public static final int SERIALIZED_MAGIC = 0xACED;
+	
+	/**
+	 * Não permite instanciar a classe
+	 */
+	private QuadFormat() {}
+
+}
@@ -0,0 +1,125 @@
+package quadtree.io;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * <p>Informações de um arquivo <i>.quad</i> obtidas do seu cabeçalho, sem
+ * carregar a árvore.</p>
+ * 
+ * @author pedro
+ * 
+ * @see QuadTreeReader#readInfo(File)
+ * 
+ */
+public class QuadInfo {
+	
+	/**
+	 * O arquivo
+	 */
+	private File file;
+	
+	/**
+	 * Altura da imagem
+	 */
+	private int height;
+	
+	/**
+	 * Largura da imagem
+	 */
+	private int width;
+	
+	/**
+	 * Precisão utilizada na construção da árvore
+	 */
+	private double accuracy;
+	
+	/**
+	 * Número de nós da árvore
+	 */
+	private long nodeCount;
+	
+	/**
+	 * Miniatura da imagem
+	 */
+	private BufferedImage thumbnail;
+	
+	/**
+	 * Cria as informações do arquivo
+	 * 
+	 * @param file O arquivo
+	 * @param height A altura da imagem
+	 * @param width A largura da imagem
+	 * @param accuracy A precisão utilizada na construção da árvore
+	 * @param nodeCount O número de nós da árvore
+	 * @param thumbnail A miniatura da imagem
+	 */
+	QuadInfo(File file, int height, int width, double accuracy,
+			long nodeCount, BufferedImage thumbnail) {
+		
+		this.file = file;
+		this.height = height;
+		this.width = width;
+		this.accuracy = accuracy;
+		this.nodeCount = nodeCount;
+		this.thumbnail = thumbnail;
+	
+	}
+	
+	/**
+	 * Retorna o arquivo
+	 * 
+	 * @return O arquivo
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Retorna a altura da imagem
+	 * 
+	 * @return A altura da imagem
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura da imagem
+	 * 
+	 * @return A largura da imagem
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção da árvore
+	 * 
+	 * @return A precisão utilizada na construção da árvore
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * Retorna o número de nós (internos e folhas) da árvore
+	 * 
+	 * @return O número de nós da árvore
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+	
+	/**
+	 * Retorna a miniatura da imagem, com dimensões máximas
+	 * {@link QuadFormat#THUMBNAIL_WIDTH} x
+	 * {@link QuadFormat#THUMBNAIL_HEIGHT}
+	 * 
+	 * @return A miniatura da imagem
+	 */
+	public BufferedImage getThumbnail() {
+		return thumbnail;
+	}
+
+}
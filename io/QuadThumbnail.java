@@ -0,0 +1,143 @@
+package quadtree.io;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import quadtree.core.Node;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Miniatura de uma árvore armazenada no cabeçalho dos arquivos
+ * <i>.quad</i>.</p>
+ * 
+ * <p>A miniatura é gerada a partir dos primeiros níveis da árvore: a
+ * descida termina nas folhas ou nos nós que ocupam no máximo um pixel da
+ * miniatura, cuja cor é a cor média da região. A miniatura é armazenada no
+ * formato PNG.</p>
+ * 
+ * @author pedro
+ * 
+ */
+final class QuadThumbnail {
+	
+	/**
+	 * Não permite instanciar a classe
+	 */
+	private QuadThumbnail() {}
+	
+	/**
+	 * Gera a miniatura de uma árvore, mantendo a proporção da imagem
+	 * 
+	 * @param quadTree A árvore
+	 * 
+	 * @return A miniatura, com dimensões máximas
+	 * 		   {@link QuadFormat#THUMBNAIL_WIDTH} x
+	 * 		   {@link QuadFormat#THUMBNAIL_HEIGHT}
+	 */
+	static BufferedImage render(QuadTree quadTree) {
+		
+		int h = quadTree.getHeight();
+		int w = quadTree.getWidth();
+		
+		double scale = Math.min(1.0, Math.min(
+				(double) QuadFormat.THUMBNAIL_WIDTH / w,
+				(double) QuadFormat.THUMBNAIL_HEIGHT / h));
+		
+		int tw = Math.max(1, (int) Math.round(w * scale));
+		int th = Math.max(1, (int) Math.round(h * scale));
+		
+		int argb[] = new int[tw * th];
+		
+		paint(quadTree.getRoot(), (double) tw / w, (double) th / h, argb,
+				tw, th);
+		
+		BufferedImage thumbnail = new BufferedImage(tw, th,
+				BufferedImage.TYPE_INT_ARGB);
+		thumbnail.setRGB(0, 0, tw, th, argb, 0, tw);
+		
+		return thumbnail;
+	
+	}
+	
+	/**
+	 * Pinta a região de um nó na miniatura
+	 * 
+	 * @param node O nó
+	 * @param sx A escala horizontal da miniatura
+	 * @param sy A escala vertical da miniatura
+	 * @param argb Os pixels da miniatura
+	 * @param tw A largura da miniatura
+	 * @param th A altura da miniatura
+	 */
+	private static void paint(Node node, double sx, double sy, int argb[],
+			int tw, int th) {
+		
+		//nó ocupa no máximo um pixel da miniatura: a cor média é suficiente
+		if(node.isLeaf() ||
+				(node.getWidth() * sx <= 1 && node.getHeight() * sy <= 1)) {
+			
+			int x0 = (int) (node.getX() * sx);
+			int y0 = (int) (node.getY() * sy);
+			int x1 = Math.max(x0 + 1,
+					(int) ((node.getX() + node.getWidth()) * sx));
+			int y1 = Math.max(y0 + 1,
+					(int) ((node.getY() + node.getHeight()) * sy));
+			
+			int color = node.getColor().getRGB();
+			
+			for(int y = y0; y < Math.min(y1, th); ++y) {
+				for(int x = x0; x < Math.min(x1, tw); ++x) {
+					argb[y * tw + x] = color;
+				}
+			}
+			
+			return;
+		}
+		
+		for(Node q : node.getQ()) {
+			if(q != null) paint(q, sx, sy, argb, tw, th);
+		}
+	
+	}
+	
+	/**
+	 * Codifica a miniatura no formato PNG
+	 * 
+	 * @param thumbnail A miniatura
+	 * 
+	 * @return Os bytes da miniatura
+	 * 
+	 * @throws IOException Erro ao codificar a miniatura
+	 */
+	static byte[] encode(BufferedImage thumbnail) throws IOException {
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		ImageIO.write(thumbnail, "png", out);
+		
+		return out.toByteArray();
+	
+	}
+	
+	/**
+	 * Decodifica uma miniatura armazenada no formato PNG
+	 * 
+	 * @param bytes Os bytes da miniatura
+	 * 
+	 * @return A miniatura ou null se os bytes são vazios
+	 * 
+	 * @throws IOException Erro ao decodificar a miniatura
+	 */
+	static BufferedImage decode(byte bytes[]) throws IOException {
+		
+		if(bytes == null || bytes.length == 0) return null;
+		
+		return ImageIO.read(new ByteArrayInputStream(bytes));
+	
+	}
+
+}
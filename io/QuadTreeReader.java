@@ -0,0 +1,940 @@
+package quadtree.io;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import quadtree.core.Node;
+import quadtree.core.NodeTraversal;
+import quadtree.core.NodeVisitor;
+import quadtree.core.OffHeapQuadTree;
+import quadtree.core.Palette;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Carrega uma QuadTree de um arquivo <i>.quad</i>.</p>
+ * 
+ * <p>Aceita tanto o formato binário ({@link QuadFormat}) quanto o formato 
+ * antigo, gerado pela serialização do objeto da árvore. Árvores gravadas com
+ * codificação entrópica podem ainda ser percorridas sem serem carregadas por
+ * meio de {@link #stream(InputStream, NodeVisitor)}, e árvores gravadas sem
+ * {@link QuadFormat#FLAG_DAG} carregadas fora do <i>heap</i> por meio de
+ * {@link #readOffHeap(File)}.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class QuadTreeReader {
+	
+	/**
+	 * Carrega a árvore de um arquivo
+	 * 
+	 * @param file O arquivo que armazena a árvore
+	 * 
+	 * @return A árvore carregada
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou arquivo inválido
+	 */
+	public QuadTree read(File file) throws IOException {
+		
+		try(InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			return read(in);
+		}
+		
+	}
+	
+	/**
+	 * Carrega a árvore de uma stream. A stream não é fechada
+	 * 
+	 * @param in A stream que contém a árvore
+	 * 
+	 * @return A árvore carregada
+	 * 
+	 * @throws IOException Erro ao ler a stream ou formato inválido
+	 */
+	public QuadTree read(InputStream in) throws IOException {
+		
+		if(!in.markSupported()) in = new BufferedInputStream(in);
+		
+		if(isSerialized(in)) {
+			return readSerialized(in);
+		}
+		
+		DataInputStream dis = new DataInputStream(in);
+		
+		Header header = readHeader(dis, true);
+		
+		Node root = readBody(dis, header);
+		
+		return new QuadTree(header.height, header.width, header.accuracy, 
+				root, header.palette);
+		
+	}
+	
+	/**
+	 * Carrega a árvore de um arquivo fora do <i>heap</i> 
+	 * ({@link OffHeapQuadTree}).
+	 * 
+	 * <p>Árvores gravadas sem {@link QuadFormat#FLAG_DAG} são lidas 
+	 * diretamente para os buffers da árvore, sem que os nós sejam mantidos no
+	 * <i>heap</i>: com codificação entrópica os nós são decodificados em 
+	 * pré-ordem; sem ela apenas a estrutura (um bit por nó regular) é lida
+	 * para o <i>heap</i>, e as cores das folhas são lidas à medida que os nós
+	 * são entregues. Árvores gravadas com {@link QuadFormat#FLAG_DAG}, que 
+	 * reutilizam subárvores já decodificadas, e no formato antigo
+	 * (serialização do objeto) são carregadas no <i>heap</i> e então 
+	 * copiadas.</p>
+	 * 
+	 * @param file O arquivo que armazena a árvore
+	 * 
+	 * @return A árvore carregada, que deve ser fechada após o uso
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou arquivo inválido
+	 */
+	public OffHeapQuadTree readOffHeap(File file) throws IOException {
+		
+		try(InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			
+			if(isSerialized(in)) {
+				return OffHeapQuadTree.of(readSerialized(in));
+			}
+			
+			DataInputStream dis = new DataInputStream(in);
+			
+			Header header = readHeader(dis, true);
+			
+			OffHeapQuadTree.Builder builder = new OffHeapQuadTree.Builder(
+					header.height, header.width, header.accuracy, 
+					header.palette, Math.max(0, header.nodeCount));
+			
+			if((header.flags & QuadFormat.FLAG_ENTROPY) != 0 && 
+					(header.flags & QuadFormat.FLAG_DAG) == 0) {
+				decode(dis, header, builder, false);
+			}
+			else if((header.flags & QuadFormat.FLAG_DAG) == 0) {
+				
+				byte structure[] = new byte[dis.readInt()];
+				dis.readFully(structure);
+				
+				readNode(new Node(0, 0, header.height, header.width), 0, 
+						new BitReader(structure), header.palette, dis, 
+						builder);
+			}
+			else {
+				visit(readBody(dis, header), builder);
+			}
+			
+			return builder.build();
+		}
+		
+	}
+	
+	/**
+	 * Lê as informações de um arquivo .quad a partir do seu cabeçalho, sem 
+	 * carregar a árvore. Apenas o cabeçalho (alguns KB) é lido do disco.
+	 * 
+	 * <p>Arquivos gravados em versões anteriores do formato não possuem 
+	 * miniatura no cabeçalho e são carregados por inteiro.</p>
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return As informações do arquivo
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou arquivo inválido
+	 */
+	public QuadInfo readInfo(File file) throws IOException {
+		
+		Header header;
+		
+		try(InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			
+			header = isSerialized(in) ? null : 
+				readHeader(new DataInputStream(in), false);
+		}
+		
+		//miniatura disponível no cabeçalho
+		if(header != null && header.thumbnail != null) {
+			
+			return new QuadInfo(file, header.height, header.width, 
+					header.accuracy, header.nodeCount, 
+					QuadThumbnail.decode(header.thumbnail));
+		}
+		
+		//formato antigo, a árvore é carregada
+		QuadTree quadTree = read(file);
+		
+		final long count[] = new long[1];
+		
+		visit(quadTree.getRoot(), new NodeVisitor() {
+			
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				count[0]++;
+				
+				return true;
+			}
+			
+		});
+		
+		return new QuadInfo(file, quadTree.getHeight(), quadTree.getWidth(), 
+				quadTree.getAccuracy(), count[0], 
+				QuadThumbnail.render(quadTree));
+		
+	}
+	
+	/**
+	 * Lê as informações de todos os arquivos .quad de um diretório, em ordem
+	 * alfabética. Arquivos inválidos são ignorados
+	 * 
+	 * @param directory O diretório
+	 * 
+	 * @return As informações dos arquivos .quad do diretório
+	 * 
+	 * @throws IOException O diretório não pode ser listado
+	 * 
+	 * @see #readInfo(File)
+	 */
+	public List<QuadInfo> list(File directory) throws IOException {
+		
+		File files[] = directory.listFiles(new FileFilter() {
+			
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && 
+						file.getName().toLowerCase().endsWith(".quad");
+			}
+			
+		});
+		
+		if(files == null) {
+			throw new IOException("Diretório inválido: " + directory);
+		}
+		
+		Arrays.sort(files);
+		
+		List<QuadInfo> infos = new ArrayList<>();
+		
+		for(File file : files) {
+			
+			try {
+				infos.add(readInfo(file));
+			} catch (IOException e) { 
+				//arquivo inválido
+			}
+		}
+		
+		return infos;
+		
+	}
+	
+	/**
+	 * Percorre em pré-ordem a árvore armazenada em um arquivo
+	 * 
+	 * @param file O arquivo que armazena a árvore
+	 * @param visitor O visitante dos nós
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou arquivo inválido
+	 * 
+	 * @see #stream(InputStream, NodeVisitor)
+	 */
+	public void stream(File file, NodeVisitor visitor) throws IOException {
+		
+		try(InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			stream(in, visitor);
+		}
+		
+	}
+	
+	/**
+	 * Percorre em pré-ordem a árvore armazenada em uma stream.
+	 * 
+	 * <p>Se a árvore foi gravada com codificação entrópica os nós são 
+	 * decodificados e entregues ao visitante sem que a árvore seja mantida em
+	 * memória: apenas o caminho entre a raiz e o nó atual é mantido. Os nós
+	 * entregues ao visitante são temporários: os filhos de um nó têm apenas a
+	 * geometria definida no momento da visita e são descartados após serem
+	 * percorridos. Nos demais formatos a árvore é carregada e então 
+	 * percorrida.</p>
+	 * 
+	 * @param in A stream que contém a árvore
+	 * @param visitor O visitante dos nós
+	 * 
+	 * @throws IOException Erro ao ler a stream ou formato inválido
+	 */
+	public void stream(InputStream in, NodeVisitor visitor) 
+			throws IOException {
+		
+		if(!in.markSupported()) in = new BufferedInputStream(in);
+		
+		if(isSerialized(in)) {
+			visit(readSerialized(in).getRoot(), visitor);
+			return;
+		}
+		
+		DataInputStream dis = new DataInputStream(in);
+		
+		Header header = readHeader(dis, true);
+		
+		if((header.flags & QuadFormat.FLAG_ENTROPY) != 0 && 
+				(header.flags & QuadFormat.FLAG_DAG) == 0) {
+			decode(dis, header, visitor, false);
+		}
+		else {
+			visit(readBody(dis, header), visitor);
+		}
+		
+	}
+	
+	/**
+	 * Lê a árvore armazenada após o cabeçalho do arquivo
+	 * 
+	 * @param dis A stream posicionada após o cabeçalho
+	 * @param header O cabeçalho do arquivo
+	 * 
+	 * @return A raiz da árvore
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	private Node readBody(DataInputStream dis, Header header) 
+			throws IOException {
+		
+		//subárvores distintas codificadas uma única vez
+		if((header.flags & QuadFormat.FLAG_DAG) != 0) {
+			
+			Node root = new Node(0, 0, header.height, header.width);
+			
+			new DagDecoder(new RangeDecoder(dis), header.palette)
+					.read(root, 0);
+			
+			return root;
+		}
+		
+		//estrutura e cores codificadas em uma única stream
+		if((header.flags & QuadFormat.FLAG_ENTROPY) != 0) {
+			return decode(dis, header, null, true);
+		}
+		
+		//estrutura
+		byte structure[] = new byte[dis.readInt()];
+		dis.readFully(structure);
+		
+		//reconstrói a árvore, lendo as cores das folhas
+		Node root = new Node(0, 0, header.height, header.width);
+		readNode(root, new BitReader(structure), header.palette, dis);
+		
+		return root;
+	}
+	
+	/**
+	 * Percorre uma árvore em memória em pré-ordem
+	 * 
+	 * @param root A raiz da árvore
+	 * @param visitor O visitante dos nós
+	 */
+	private void visit(Node root, NodeVisitor visitor) {
+		new NodeTraversal().traverse(root, visitor);
+	}
+	
+	/**
+	 * Verifica se a stream contém uma árvore gravada no formato antigo 
+	 * (serialização do objeto). A posição da stream não é alterada
+	 * 
+	 * @param in A stream (com suporte a marcação)
+	 * 
+	 * @return true se a stream contém um objeto serializado
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	private boolean isSerialized(InputStream in) throws IOException {
+		
+		DataInputStream dis = new DataInputStream(in);
+		
+		dis.mark(4);
+		int magic = dis.readUnsignedShort();
+		dis.reset();
+		
+		return magic == QuadFormat.SERIALIZED_MAGIC;
+	}
+	
+	/**
+	 * Lê o cabeçalho e a paleta do arquivo
+	 * 
+	 * @param dis A stream posicionada no início do arquivo
+	 * @param palette true se a paleta deve ser lida. Caso contrário a stream 
+	 * 				permanece posicionada no início da paleta
+	 * 
+	 * @return O cabeçalho do arquivo
+	 * 
+	 * @throws IOException Erro ao ler a stream ou formato inválido
+	 */
+	private Header readHeader(DataInputStream dis, boolean palette) 
+			throws IOException {
+		
+		if(dis.readInt() != QuadFormat.MAGIC) {
+			throw new IOException("Arquivo .quad inválido");
+		}
+		
+		int version = dis.readUnsignedByte();
+		if(version > QuadFormat.VERSION) {
+			throw new IOException("Versão do arquivo .quad não suportada: " 
+					+ version);
+		}
+		
+		Header header = new Header();
+		
+		header.flags = dis.readUnsignedByte();
+		header.height = dis.readInt();
+		header.width = dis.readInt();
+		header.accuracy = dis.readDouble();
+		
+		//número de nós e miniatura
+		if(version >= 2) {
+			
+			header.nodeCount = dis.readLong();
+			
+			header.thumbnail = new byte[dis.readInt()];
+			dis.readFully(header.thumbnail);
+		}
+		
+		//paleta
+		if(palette && (header.flags & QuadFormat.FLAG_PALETTE) != 0) {
+			
+			int colors[] = new int[dis.readInt()];
+			
+			for(int i = 0; i < colors.length; ++i) {
+				colors[i] = dis.readInt();
+			}
+			
+			header.palette = new Palette(colors);
+		}
+		
+		return header;
+	}
+	
+	/**
+	 * Decodifica uma árvore gravada com codificação entrópica. Os nós são 
+	 * decodificados em pré-ordem por meio de uma pilha explícita que contém
+	 * apenas o caminho entre a raiz e o nó atual
+	 * 
+	 * @param dis A stream posicionada após o cabeçalho
+	 * @param header O cabeçalho do arquivo
+	 * @param visitor O visitante dos nós ou null
+	 * @param keep true se os nós devem ser mantidos (a árvore é montada)
+	 * 				false se os nós devem ser descartados após serem 
+	 * 				percorridos
+	 * 
+	 * @return A raiz da árvore
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	private Node decode(DataInputStream dis, Header header, 
+			NodeVisitor visitor, boolean keep) throws IOException {
+		
+		RangeDecoder decoder = new RangeDecoder(dis);
+		EntropyModel model = new EntropyModel();
+		
+		Deque<Frame> stack = new ArrayDeque<>();
+		
+		Node root = new Node(0, 0, header.height, header.width);
+		
+		boolean split = decodeNode(root, 0, header.palette, model, decoder);
+		boolean children = visitor == null || visitor.visit(root, 0);
+		
+		if(split) stack.push(new Frame(root, 0, children));
+		
+		while(!stack.isEmpty()) {
+			
+			Frame frame = stack.peek();
+			Node q[] = frame.node.getQ();
+			
+			//todos os filhos foram percorridos
+			if(frame.next == q.length) {
+				
+				stack.pop();
+				
+				//somas exatas, como na árvore construída
+				if(keep) frame.node.aggregateChildren();
+				
+				//descarta o nó percorrido
+				if(!keep && !stack.isEmpty()) {
+					Frame parent = stack.peek();
+					parent.node.getQ()[parent.next - 1] = null;
+				}
+				
+				continue;
+			}
+			
+			int k = frame.next++;
+			
+			Node child = q[k];
+			if(child == null) continue;
+			
+			int parent = frame.node.getColor().getRGB();
+			
+			split = decodeNode(child, parent, header.palette, model, decoder);
+			
+			boolean visitChildren = frame.children && (visitor == null || 
+					visitor.visit(child, frame.depth + 1));
+			
+			if(split) {
+				stack.push(new Frame(child, frame.depth + 1, visitChildren));
+			}
+			else if(!keep) {
+				q[k] = null;
+			}
+			
+		}
+		
+		return root;
+		
+	}
+	
+	/**
+	 * Decodifica um nó: o bit de divisão (regiões regulares) e a cor. Se o nó
+	 * foi dividido os filhos são criados com a geometria definida
+	 * 
+	 * @param node O nó, com a geometria já definida
+	 * @param parent A cor do pai (ARGB)
+	 * @param palette A paleta da árvore ou null
+	 * @param model O modelo de contexto
+	 * @param decoder O decodificador
+	 * 
+	 * @return true se o nó foi dividido
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	private boolean decodeNode(Node node, int parent, Palette palette, 
+			EntropyModel model, RangeDecoder decoder) throws IOException {
+		
+		boolean split;
+		
+		if(node.isRegular()) {
+			split = model.decodeSplit(decoder, node.getHeight(), 
+					node.getWidth());
+		}
+		else {
+			split = node.getHeight() > 1 || node.getWidth() > 1;
+		}
+		
+		if(split) node.split();
+		
+		Color color = model.decodeColor(decoder, !split, parent);
+		
+		//folhas referenciam as entradas da paleta
+		if(!split && palette != null) {
+			color = palette.getColor(palette.indexOf(color));
+		}
+		
+		node.setColor(color);
+		
+		return split;
+	}
+	
+	/**
+	 * Reconstrói a árvore em pré-ordem a partir da estrutura e das cores das
+	 * folhas
+	 * 
+	 * @param node O nó atual, com a geometria já definida
+	 * @param bits Os bits da estrutura
+	 * @param palette A paleta da árvore ou null
+	 * @param dis A stream que contém as cores das folhas
+	 * 
+	 * @throws IOException Erro ao ler as cores
+	 */
+	private void readNode(Node node, BitReader bits, Palette palette, 
+			DataInputStream dis) throws IOException {
+		
+		boolean split;
+		
+		if(node.isRegular()) split = bits.read();
+		else split = node.getHeight() > 1 || node.getWidth() > 1;
+		
+		//folha
+		if(!split) {
+			node.setColor(readColor(palette, dis));
+			return;
+		}
+		
+		node.split();
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			if(node.getQ()[i] != null) {
+				readNode(node.getQ()[i], bits, palette, dis);
+			}
+		}
+		
+		node.aggregateChildren();
+		
+	}
+	
+	/**
+	 * Entrega ao construtor de uma árvore fora do <i>heap</i> os nós, em 
+	 * pré-ordem, a partir da estrutura e das cores das folhas. A cor de um nó
+	 * interno é definida após os seus filhos, que são então descartados
+	 * 
+	 * @param node O nó atual, com a geometria já definida
+	 * @param depth A profundidade do nó
+	 * @param bits Os bits da estrutura
+	 * @param palette A paleta da árvore ou null
+	 * @param dis A stream que contém as cores das folhas
+	 * @param builder O construtor da árvore
+	 * 
+	 * @throws IOException Erro ao ler as cores
+	 */
+	private void readNode(Node node, int depth, BitReader bits, 
+			Palette palette, DataInputStream dis, 
+			OffHeapQuadTree.Builder builder) throws IOException {
+		
+		boolean split;
+		
+		if(node.isRegular()) split = bits.read();
+		else split = node.getHeight() > 1 || node.getWidth() > 1;
+		
+		//folha
+		if(!split) {
+			node.setColor(readColor(palette, dis));
+			builder.visit(node, depth);
+			return;
+		}
+		
+		node.split();
+		builder.visit(node, depth);
+		
+		Node q[] = node.getQ();
+		
+		for(int i = 0; i < q.length; ++i) {
+			if(q[i] != null) {
+				readNode(q[i], depth + 1, bits, palette, dis, builder);
+			}
+		}
+		
+		node.aggregateChildren();
+		builder.setColor(depth, node.getColor());
+		
+		//as somas do nó bastam para a cor do pai
+		Arrays.fill(q, null);
+		
+	}
+	
+	/**
+	 * Lê a cor de uma folha
+	 * 
+	 * @param palette A paleta da árvore ou null
+	 * @param dis A stream que contém as cores
+	 * 
+	 * @return A cor da folha
+	 * 
+	 * @throws IOException Erro ao ler a cor
+	 */
+	private Color readColor(Palette palette, DataInputStream dis) 
+			throws IOException {
+		
+		if(palette == null) {
+			return new Color(dis.readInt(), true);
+		}
+		
+		if(palette.size() <= 256) {
+			return palette.getColor(dis.readUnsignedByte());
+		}
+		
+		return palette.getColor(dis.readUnsignedShort());
+		
+	}
+	
+	/**
+	 * Carrega uma árvore gravada no formato antigo (serialização do objeto)
+	 * 
+	 * @param in A stream que contém o objeto serializado
+	 * 
+	 * @return A árvore carregada
+	 * 
+	 * @throws IOException Erro ao deserializar o objeto
+	 */
+	private QuadTree readSerialized(InputStream in) throws IOException {
+		
+		ObjectInputStream ois = new ObjectInputStream(in);
+		
+		try { return (QuadTree) ois.readObject(); }
+		catch (ClassNotFoundException | ClassCastException e) { 
+			throw new IOException("Arquivo .quad inválido", e); 
+		}
+		
+	}
+	
+	/**
+	 * <p>Decodifica uma árvore gravada com {@link QuadFormat#FLAG_DAG}. As 
+	 * subárvores que podem ser repetidas são mantidas como modelo e copiadas
+	 * para a posição de cada repetição.</p>
+	 */
+	private static class DagDecoder {
+		
+		/**
+		 * O decodificador
+		 */
+		private RangeDecoder decoder;
+		
+		/**
+		 * O modelo de contexto
+		 */
+		private EntropyModel model;
+		
+		/**
+		 * A paleta da árvore ou null
+		 */
+		private Palette palette;
+		
+		/**
+		 * Subárvores já lidas, pelo identificador
+		 */
+		private List<Node> subtrees;
+		
+		/**
+		 * Cria o decodificador do grafo
+		 * 
+		 * @param decoder O decodificador
+		 * @param palette A paleta da árvore ou null
+		 */
+		private DagDecoder(RangeDecoder decoder, Palette palette) {
+			
+			this.decoder = decoder;
+			this.palette = palette;
+			
+			model = new EntropyModel();
+			subtrees = new ArrayList<>();
+			
+		}
+		
+		/**
+		 * Lê um nó em pré-ordem
+		 * 
+		 * @param node O nó, com a geometria já definida
+		 * @param parent A cor do pai (ARGB)
+		 * 
+		 * @throws IOException Erro ao ler o nó
+		 */
+		private void read(Node node, int parent) throws IOException {
+			
+			int h = node.getHeight();
+			int w = node.getWidth();
+			
+			boolean shared = (long) h * w >= QuadFormat.DAG_MIN_AREA;
+			
+			//repetição de uma subárvore já lida
+			if(shared && !subtrees.isEmpty()) {
+				
+				int id = model.decodeRepeated(decoder, h, w, subtrees.size());
+				
+				if(id >= subtrees.size()) {
+					throw new IOException("Referência inválida a subárvore: " 
+							+ id);
+				}
+				
+				if(id >= 0) {
+					copy(subtrees.get(id), node);
+					return;
+				}
+			}
+			
+			boolean split;
+			
+			if(node.isRegular()) split = model.decodeSplit(decoder, h, w);
+			else split = h > 1 || w > 1;
+			
+			Color color = model.decodeColor(decoder, !split, parent);
+			
+			//folhas referenciam as entradas da paleta
+			if(!split && palette != null) {
+				color = palette.getColor(palette.indexOf(color));
+			}
+			
+			node.setColor(color);
+			
+			if(split) {
+				
+				node.split();
+				
+				for(int i = 0; i < node.getQ().length; ++i) {
+					if(node.getQ()[i] != null) {
+						read(node.getQ()[i], color.getRGB());
+					}
+				}
+				
+				node.aggregateChildren();
+			}
+			
+			if(shared) subtrees.add(node);
+			
+		}
+		
+		/**
+		 * Copia a estrutura e as cores de uma subárvore para um nó de mesmas
+		 * dimensões
+		 * 
+		 * @param subtree A subárvore copiada
+		 * @param node O nó de destino, com a geometria já definida
+		 */
+		private void copy(Node subtree, Node node) {
+			
+			node.setColor(subtree.getColor());
+			
+			if(subtree.isLeaf()) return;
+			
+			node.split();
+			
+			for(int i = 0; i < node.getQ().length; ++i) {
+				if(node.getQ()[i] != null) {
+					copy(subtree.getQ()[i], node.getQ()[i]);
+				}
+			}
+			
+			node.aggregateChildren();
+			
+		}
+		
+	}
+	
+	/**
+	 * <p>Cabeçalho de um arquivo .quad no formato binário.</p>
+	 */
+	private static class Header {
+		
+		/**
+		 * Opções do arquivo
+		 */
+		private int flags;
+		
+		/**
+		 * Altura da imagem
+		 */
+		private int height;
+		
+		/**
+		 * Largura da imagem
+		 */
+		private int width;
+		
+		/**
+		 * Precisão utilizada na construção da árvore
+		 */
+		private double accuracy;
+		
+		/**
+		 * Paleta da árvore ou null
+		 */
+		private Palette palette;
+		
+		/**
+		 * Número de nós da árvore ou -1 se não está no cabeçalho
+		 */
+		private long nodeCount = -1;
+		
+		/**
+		 * Miniatura no formato PNG ou null se não está no cabeçalho
+		 */
+		private byte thumbnail[];
+		
+	}
+	
+	/**
+	 * <p>Nó em processamento durante a decodificação.</p>
+	 */
+	private static class Frame {
+		
+		/**
+		 * O nó
+		 */
+		private Node node;
+		
+		/**
+		 * A profundidade do nó
+		 */
+		private int depth;
+		
+		/**
+		 * Indica se os filhos do nó devem ser entregues ao visitante
+		 */
+		private boolean children;
+		
+		/**
+		 * Índice do próximo filho a ser decodificado
+		 */
+		private int next;
+		
+		/**
+		 * Cria o registro do nó em processamento
+		 * 
+		 * @param node O nó
+		 * @param depth A profundidade do nó
+		 * @param children true se os filhos devem ser entregues ao visitante
+		 */
+		private Frame(Node node, int depth, boolean children) {
+			this.node = node;
+			this.depth = depth;
+			this.children = children;
+		}
+		
+	}
+	
+	/**
+	 * <p>Lê bits de um vetor de bytes, do bit mais significativo para o menos
+	 * significativo.</p>
+	 */
+	private static class BitReader {
+		
+		/**
+		 * Os bytes lidos
+		 */
+		private byte bytes[];
+		
+		/**
+		 * Posição (em bits) do próximo bit
+		 */
+		private int position;
+		
+		/**
+		 * Cria o leitor de bits
+		 * 
+		 * @param bytes Os bytes a serem lidos
+		 */
+		private BitReader(byte bytes[]) {
+			this.bytes = bytes;
+		}
+		
+		/**
+		 * Lê o próximo bit
+		 * 
+		 * @return O próximo bit
+		 * 
+		 * @throws IOException Os bits acabaram
+		 */
+		private boolean read() throws IOException {
+			
+			if(position >= bytes.length * 8) {
+				throw new IOException("Estrutura da árvore incompleta");
+			}
+			
+			int b = bytes[position >> 3] >> (7 - (position & 7));
+			++position;
+			
+			return (b & 1) != 0;
+		}
+		
+	}
+
+}
@@ -0,0 +1,482 @@
+package quadtree.io;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import quadtree.core.Node;
+import quadtree.core.Palette;
+import quadtree.core.QuadDag;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Grava uma QuadTree em um arquivo no formato binário <i>.quad</i>.</p>
+ * 
+ * @see QuadFormat
+ * 
+ * @author pedro
+ *
+ */
+public class QuadTreeWriter {
+	
+	/**
+	 * A árvore a ser gravada
+	 */
+	private QuadTree quadTree;
+	
+	/**
+	 * Indica se a árvore é gravada com codificação entrópica
+	 */
+	private boolean entropyCoding;
+	
+	/**
+	 * Indica se subárvores idênticas são gravadas uma única vez
+	 */
+	private boolean dagCompression;
+	
+	/**
+	 * Cria o objeto para gravar uma QuadTree
+	 * 
+	 * @param quadTree A árvore a ser gravada
+	 */
+	public QuadTreeWriter(QuadTree quadTree) {
+		this.quadTree = quadTree;
+	}
+	
+	/**
+	 * Define se a árvore deve ser gravada com codificação entrópica
+	 * 
+	 * @param entropyCoding true se a estrutura e as cores devem ser 
+	 * 				codificadas pelo codificador aritmético
+	 * 
+	 * @see QuadFormat#FLAG_ENTROPY
+	 */
+	public void setEntropyCoding(boolean entropyCoding) {
+		this.entropyCoding = entropyCoding;
+	}
+	
+	/**
+	 * Retorna se a árvore é gravada com codificação entrópica
+	 * 
+	 * @return true se a árvore é gravada com codificação entrópica
+	 * 		   false caso contrário
+	 */
+	public boolean isEntropyCoding() {
+		return entropyCoding;
+	}
+	
+	/**
+	 * Define se subárvores idênticas devem ser gravadas uma única vez. A 
+	 * opção implica a codificação entrópica
+	 * 
+	 * @param dagCompression true se as repetições de subárvores devem ser
+	 * 				gravadas como referências
+	 * 
+	 * @see QuadFormat#FLAG_DAG
+	 */
+	public void setDagCompression(boolean dagCompression) {
+		this.dagCompression = dagCompression;
+	}
+	
+	/**
+	 * Retorna se subárvores idênticas são gravadas uma única vez
+	 * 
+	 * @return true se as repetições de subárvores são gravadas como 
+	 * 		   referências
+	 * 		   false caso contrário
+	 */
+	public boolean isDagCompression() {
+		return dagCompression;
+	}
+	
+	/**
+	 * Grava a árvore em um arquivo
+	 * 
+	 * @param file O arquivo de destino
+	 * 
+	 * @throws IOException Erro ao gravar o arquivo
+	 */
+	public void write(File file) throws IOException {
+		
+		try(OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(file))) {
+			write(out);
+		}
+		
+	}
+	
+	/**
+	 * Grava a árvore em uma stream. A stream não é fechada
+	 * 
+	 * @param out A stream de destino
+	 * 
+	 * @throws IOException Erro ao gravar a árvore
+	 */
+	public void write(OutputStream out) throws IOException {
+		
+		DataOutputStream dos = new DataOutputStream(out);
+		
+		Palette palette = quadTree.getPalette();
+		
+		int flags = 0;
+		if(palette != null) flags = flags | QuadFormat.FLAG_PALETTE;
+		if(entropyCoding) flags = flags | QuadFormat.FLAG_ENTROPY;
+		if(dagCompression) {
+			flags = flags | QuadFormat.FLAG_DAG | QuadFormat.FLAG_ENTROPY;
+		}
+		
+		//cabeçalho
+		dos.writeInt(QuadFormat.MAGIC);
+		dos.writeByte(QuadFormat.VERSION);
+		dos.writeByte(flags);
+		dos.writeInt(quadTree.getHeight());
+		dos.writeInt(quadTree.getWidth());
+		dos.writeDouble(quadTree.getAccuracy());
+		dos.writeLong(count(quadTree.getRoot()));
+		
+		//miniatura
+		byte thumbnail[] = QuadThumbnail.encode(
+				QuadThumbnail.render(quadTree));
+		
+		dos.writeInt(thumbnail.length);
+		dos.write(thumbnail);
+		
+		//paleta
+		if(palette != null) {
+			
+			dos.writeInt(palette.size());
+			
+			for(int i = 0; i < palette.size(); ++i) {
+				dos.writeInt(palette.getColor(i).getRGB());
+			}
+			
+		}
+		
+		//subárvores distintas codificadas uma única vez
+		if(dagCompression) {
+			
+			dos.flush();
+			
+			RangeEncoder encoder = new RangeEncoder(out);
+			
+			new DagEncoder(new QuadDag(quadTree), encoder).write();
+			
+			encoder.flush();
+			out.flush();
+			
+			return;
+		}
+		
+		//estrutura e cores codificadas em uma única stream
+		if(entropyCoding) {
+			
+			dos.flush();
+			
+			RangeEncoder encoder = new RangeEncoder(out);
+			
+			writeEncoded(quadTree.getRoot(), 0, new EntropyModel(), encoder);
+			
+			encoder.flush();
+			out.flush();
+			
+			return;
+		}
+		
+		//estrutura da árvore, um bit por região regular
+		BitWriter bits = new BitWriter();
+		writeStructure(quadTree.getRoot(), bits);
+		
+		byte structure[] = bits.toByteArray();
+		
+		dos.writeInt(structure.length);
+		dos.write(structure);
+		
+		//cores das folhas em pré-ordem
+		writeColors(quadTree.getRoot(), palette, dos);
+		
+		dos.flush();
+		
+	}
+	
+	/**
+	 * Codifica a árvore em pré-ordem: o bit de divisão (regiões regulares) e
+	 * a cor do nó em relação à cor do pai
+	 * 
+	 * @param node O nó atual
+	 * @param parent A cor do pai (ARGB)
+	 * @param model O modelo de contexto
+	 * @param encoder O codificador
+	 * 
+	 * @throws IOException Erro ao gravar o nó
+	 */
+	private void writeEncoded(Node node, int parent, EntropyModel model, 
+			RangeEncoder encoder) throws IOException {
+		
+		boolean leaf = node.isLeaf();
+		
+		if(node.isRegular()) {
+			model.encodeSplit(encoder, node.getHeight(), node.getWidth(), 
+					!leaf);
+		}
+		
+		int color = node.getColor().getRGB();
+		
+		model.encodeColor(encoder, leaf, color, parent);
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			if(node.getQ()[i] != null) {
+				writeEncoded(node.getQ()[i], color, model, encoder);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Grava a estrutura da árvore em pré-ordem. Apenas regiões regulares 
+	 * (divisão opcional) geram um bit, indicando se a região foi dividida
+	 * 
+	 * @param node O nó atual
+	 * @param bits O destino dos bits da estrutura
+	 */
+	private void writeStructure(Node node, BitWriter bits) {
+		
+		if(node.isRegular()) {
+			bits.write(!node.isLeaf());
+		}
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			if(node.getQ()[i] != null) {
+				writeStructure(node.getQ()[i], bits);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Grava as cores das folhas da árvore em pré-ordem. Se a árvore utiliza
+	 * paleta apenas o índice da cor é gravado (um byte para paletas de até 
+	 * 256 cores e dois bytes caso contrário)
+	 * 
+	 * @param node O nó atual
+	 * @param palette A paleta da árvore ou null
+	 * @param dos A stream de destino
+	 * 
+	 * @throws IOException Erro ao gravar as cores
+	 */
+	private void writeColors(Node node, Palette palette, DataOutputStream dos)
+			throws IOException {
+		
+		if(node.isLeaf()) {
+			
+			Color c = node.getColor();
+			
+			if(palette == null) {
+				dos.writeInt(c.getRGB());
+			}
+			else if(palette.size() <= 256) {
+				dos.writeByte(palette.indexOf(c));
+			}
+			else {
+				dos.writeShort(palette.indexOf(c));
+			}
+			
+			return;
+		}
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			if(node.getQ()[i] != null) {
+				writeColors(node.getQ()[i], palette, dos);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Conta os nós de uma subárvore
+	 * 
+	 * @param node A raiz da subárvore
+	 * 
+	 * @return O número de nós (internos e folhas) da subárvore
+	 */
+	private long count(Node node) {
+		
+		long count = 1;
+		
+		if(!node.isLeaf()) {
+			for(Node q : node.getQ()) {
+				if(q != null) count = count + count(q);
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * <p>Codifica o grafo de subárvores de uma árvore em pré-ordem. A 
+	 * primeira ocorrência de cada subárvore é codificada como em 
+	 * {@link QuadFormat#FLAG_ENTROPY}; as demais ocorrências são codificadas
+	 * pelo identificador da primeira ocorrência.</p>
+	 */
+	private static class DagEncoder {
+		
+		/**
+		 * O grafo de subárvores
+		 */
+		private QuadDag dag;
+		
+		/**
+		 * O codificador
+		 */
+		private RangeEncoder encoder;
+		
+		/**
+		 * O modelo de contexto
+		 */
+		private EntropyModel model;
+		
+		/**
+		 * Identificador de cada entrada já gravada ou -1
+		 */
+		private int written[];
+		
+		/**
+		 * Número de identificadores atribuídos
+		 */
+		private int count;
+		
+		/**
+		 * Cria o codificador do grafo
+		 * 
+		 * @param dag O grafo de subárvores
+		 * @param encoder O codificador
+		 */
+		private DagEncoder(QuadDag dag, RangeEncoder encoder) {
+			
+			this.dag = dag;
+			this.encoder = encoder;
+			
+			model = new EntropyModel();
+			
+			written = new int[dag.size()];
+			Arrays.fill(written, -1);
+			
+		}
+		
+		/**
+		 * Codifica o grafo a partir da raiz
+		 * 
+		 * @throws IOException Erro ao gravar o grafo
+		 */
+		private void write() throws IOException {
+			write(dag.getRoot(), 0);
+		}
+		
+		/**
+		 * Codifica uma entrada do grafo. Entradas de regiões com área menor 
+		 * que {@link QuadFormat#DAG_MIN_AREA} são sempre codificadas por 
+		 * completo
+		 * 
+		 * @param id A entrada
+		 * @param parent A cor do pai (ARGB)
+		 * 
+		 * @throws IOException Erro ao gravar a entrada
+		 */
+		private void write(int id, int parent) throws IOException {
+			
+			int h = dag.getHeight(id);
+			int w = dag.getWidth(id);
+			
+			boolean shared = (long) h * w >= QuadFormat.DAG_MIN_AREA;
+			
+			//repetição de uma subárvore já gravada
+			if(shared && count > 0) {
+				
+				model.encodeRepeated(encoder, h, w, written[id], count);
+				
+				if(written[id] >= 0) return;
+			}
+			
+			boolean leaf = dag.isLeaf(id);
+			
+			if(h > 1 && w > 1) model.encodeSplit(encoder, h, w, !leaf);
+			
+			int color = dag.getColor(id);
+			
+			model.encodeColor(encoder, leaf, color, parent);
+			
+			for(int k = 0; k < 4; ++k) {
+				
+				int child = dag.getChild(id, k);
+				
+				if(child >= 0) write(child, color);
+			}
+			
+			if(shared) written[id] = count++;
+			
+		}
+		
+	}
+	
+	/**
+	 * <p>Acumula bits em um vetor de bytes, do bit mais significativo para o 
+	 * menos significativo.</p>
+	 */
+	private static class BitWriter {
+		
+		/**
+		 * Bytes completos
+		 */
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		/**
+		 * Byte em construção
+		 */
+		private int current;
+		
+		/**
+		 * Número de bits do byte em construção
+		 */
+		private int count;
+		
+		/**
+		 * Adiciona um bit
+		 * 
+		 * @param bit O bit a ser adicionado
+		 */
+		private void write(boolean bit) {
+			
+			current = (current << 1) | (bit ? 1 : 0);
+			
+			if(++count == 8) {
+				bytes.write(current);
+				current = 0;
+				count = 0;
+			}
+			
+		}
+		
+		/**
+		 * Retorna os bits acumulados. O último byte é completado com zeros
+		 * 
+		 * @return Os bits acumulados
+		 */
+		private byte[] toByteArray() {
+			
+			if(count > 0) {
+				bytes.write(current << (8 - count));
+				current = 0;
+				count = 0;
+			}
+			
+			return bytes.toByteArray();
+		}
+		
+	}
+
+}
@@ -0,0 +1,165 @@
+package quadtree.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Decodificador aritmético binário adaptativo, correspondente ao 
+ * {@link RangeEncoder}.</p>
+ * 
+ * <p>Os bytes são lidos da stream à medida que são necessários.</p>
+ * 
+ * @author pedro
+ *
+ */
+class RangeDecoder {
+	
+	/**
+	 * A stream de origem
+	 */
+	private InputStream in;
+	
+	/**
+	 * Tamanho do intervalo (sem sinal)
+	 */
+	private int range;
+	
+	/**
+	 * Valor codificado, relativo ao limite inferior do intervalo
+	 */
+	private int code;
+	
+	/**
+	 * Cria o decodificador, lendo os primeiros bytes da stream
+	 * 
+	 * @param in A stream de origem
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	RangeDecoder(InputStream in) throws IOException {
+		
+		this.in = in;
+		
+		range = 0xFFFFFFFF;
+		code = 0;
+		
+		for(int i = 0; i < 5; ++i) {
+			code = (code << 8) | next();
+		}
+		
+	}
+	
+	/**
+	 * Decodifica um bit
+	 * 
+	 * @param probabilities As probabilidades dos contextos
+	 * @param index O contexto do bit
+	 * 
+	 * @return O bit decodificado
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	int decodeBit(short probabilities[], int index) throws IOException {
+		
+		int p = probabilities[index];
+		int bound = (range >>> RangeEncoder.PROBABILITY_BITS) * p;
+		
+		int bit;
+		
+		if((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+			range = bound;
+			probabilities[index] = (short) (p + 
+					(((1 << RangeEncoder.PROBABILITY_BITS) - p) 
+							>>> RangeEncoder.MOVE_BITS));
+			bit = 0;
+		}
+		else {
+			code = code - bound;
+			range = range - bound;
+			probabilities[index] = (short) 
+					(p - (p >>> RangeEncoder.MOVE_BITS));
+			bit = 1;
+		}
+		
+		while((range & 0xFF000000) == 0) {
+			code = (code << 8) | next();
+			range = range << 8;
+		}
+		
+		return bit;
+	}
+	
+	/**
+	 * Decodifica um símbolo de 8 bits codificado por 
+	 * {@link RangeEncoder#encodeByte(short[], int)}
+	 * 
+	 * @param probabilities As probabilidades da árvore (256 posições)
+	 * 
+	 * @return O símbolo decodificado
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	int decodeByte(short probabilities[]) throws IOException {
+		
+		int m = 1;
+		
+		while(m < 256) {
+			m = (m << 1) | decodeBit(probabilities, m);
+		}
+		
+		return m - 256;
+	}
+	
+	/**
+	 * Decodifica um valor codificado por 
+	 * {@link RangeEncoder#encodeDirectBits(int, int)}
+	 * 
+	 * @param count O número de bits do valor
+	 * 
+	 * @return O valor decodificado
+	 * 
+	 * @throws IOException Erro ao ler a stream
+	 */
+	int decodeDirectBits(int count) throws IOException {
+		
+		int result = 0;
+		
+		while(count-- > 0) {
+			
+			range = range >>> 1;
+			
+			int bit = 0;
+			
+			if((code ^ 0x80000000) >= (range ^ 0x80000000)) {
+				code = code - range;
+				bit = 1;
+			}
+			
+			result = (result << 1) | bit;
+			
+			while((range & 0xFF000000) == 0) {
+				code = (code << 8) | next();
+				range = range << 8;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Lê o próximo byte da stream
+	 * 
+	 * @return O próximo byte
+	 * 
+	 * @throws IOException Erro ao ler a stream ou fim da stream
+	 */
+	private int next() throws IOException {
+		
+		int b = in.read();
+		if(b < 0) throw new EOFException("Fim inesperado do arquivo .quad");
+		
+		return b;
+	}
+
+}
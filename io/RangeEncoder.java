@@ -0,0 +1,200 @@
+package quadtree.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Codificador aritmético binário adaptativo (<i>range coder</i>).</p>
+ * 
+ * <p>Cada bit é codificado de acordo com a probabilidade estimada do seu
+ * contexto. As probabilidades são armazenadas em 11 bits e atualizadas a 
+ * cada bit codificado. Os bytes são gravados na stream à medida que são 
+ * produzidos.</p>
+ * 
+ * @see RangeDecoder
+ * 
+ * @author pedro
+ *
+ */
+class RangeEncoder {
+	
+	/**
+	 * Número de bits das probabilidades
+	 */
+	static final int PROBABILITY_BITS = 11;
+	
+	/**
+	 * Probabilidade inicial (0,5) de um contexto
+	 */
+	static final short INITIAL_PROBABILITY = 1 << (PROBABILITY_BITS - 1);
+	
+	/**
+	 * Velocidade de adaptação das probabilidades
+	 */
+	static final int MOVE_BITS = 5;
+	
+	/**
+	 * A stream de destino
+	 */
+	private OutputStream out;
+	
+	/**
+	 * Limite inferior do intervalo
+	 */
+	private long low;
+	
+	/**
+	 * Tamanho do intervalo (sem sinal)
+	 */
+	private int range;
+	
+	/**
+	 * Byte pendente, que ainda pode ser alterado por um <i>carry</i>
+	 */
+	private int cache;
+	
+	/**
+	 * Número de bytes pendentes
+	 */
+	private long cacheSize;
+	
+	/**
+	 * Cria o codificador
+	 * 
+	 * @param out A stream de destino
+	 */
+	RangeEncoder(OutputStream out) {
+		
+		this.out = out;
+		
+		low = 0;
+		range = 0xFFFFFFFF;
+		cache = 0;
+		cacheSize = 1;
+		
+	}
+	
+	/**
+	 * Codifica um bit
+	 * 
+	 * @param probabilities As probabilidades dos contextos
+	 * @param index O contexto do bit
+	 * @param bit O bit
+	 * 
+	 * @throws IOException Erro ao gravar na stream
+	 */
+	void encodeBit(short probabilities[], int index, int bit) 
+			throws IOException {
+		
+		int p = probabilities[index];
+		int bound = (range >>> PROBABILITY_BITS) * p;
+		
+		if(bit == 0) {
+			range = bound;
+			probabilities[index] = (short) 
+					(p + (((1 << PROBABILITY_BITS) - p) >>> MOVE_BITS));
+		}
+		else {
+			low = low + (bound & 0xFFFFFFFFL);
+			range = range - bound;
+			probabilities[index] = (short) (p - (p >>> MOVE_BITS));
+		}
+		
+		while((range & 0xFF000000) == 0) {
+			range = range << 8;
+			shiftLow();
+		}
+		
+	}
+	
+	/**
+	 * Codifica um símbolo de 8 bits por meio de uma árvore de contextos 
+	 * binários (255 contextos)
+	 * 
+	 * @param probabilities As probabilidades da árvore (256 posições)
+	 * @param symbol O símbolo
+	 * 
+	 * @throws IOException Erro ao gravar na stream
+	 */
+	void encodeByte(short probabilities[], int symbol) throws IOException {
+		
+		int m = 1;
+		
+		for(int i = 7; i >= 0; --i) {
+			
+			int bit = (symbol >>> i) & 1;
+			
+			encodeBit(probabilities, m, bit);
+			
+			m = (m << 1) | bit;
+		}
+		
+	}
+	
+	/**
+	 * Codifica um valor com bits equiprováveis, sem contexto
+	 * 
+	 * @param value O valor
+	 * @param count O número de bits do valor
+	 * 
+	 * @throws IOException Erro ao gravar na stream
+	 */
+	void encodeDirectBits(int value, int count) throws IOException {
+		
+		while(count > 0) {
+			
+			range = range >>> 1;
+			
+			if(((value >>> --count) & 1) != 0) {
+				low = low + (range & 0xFFFFFFFFL);
+			}
+			
+			while((range & 0xFF000000) == 0) {
+				range = range << 8;
+				shiftLow();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Grava os bytes restantes do intervalo. Deve ser chamado após o último 
+	 * bit
+	 * 
+	 * @throws IOException Erro ao gravar na stream
+	 */
+	void flush() throws IOException {
+		
+		for(int i = 0; i < 5; ++i) {
+			shiftLow();
+		}
+		
+	}
+	
+	/**
+	 * Desloca o limite inferior do intervalo, gravando o byte mais 
+	 * significativo quando ele não pode mais ser alterado por um carry
+	 * 
+	 * @throws IOException Erro ao gravar na stream
+	 */
+	private void shiftLow() throws IOException {
+		
+		if(low < 0xFF000000L || low > 0xFFFFFFFFL) {
+			
+			int carry = (int) (low >>> 32);
+			int temp = cache;
+			
+			do {
+				out.write((temp + carry) & 0xFF);
+				temp = 0xFF;
+			} while(--cacheSize != 0);
+			
+			cache = (int) ((low >>> 24) & 0xFF);
+		}
+		
+		++cacheSize;
+		low = (low & 0x00FFFFFFL) << 8;
+		
+	}
+
+}
@@ -0,0 +1,229 @@
+package quadtree.io;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import quadtree.core.Node;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Lê os quadros de uma sequência gravada por {@link SequenceWriter}.</p>
+ * 
+ * <p>Os quadros são lidos em ordem. Os nós referenciados pelo quadro seguinte
+ * são compartilhados entre as árvores, como na sequência original.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class SequenceReader implements Closeable {
+	
+	/**
+	 * A stream de origem
+	 */
+	private InputStream in;
+	
+	/**
+	 * O decodificador dos quadros
+	 */
+	private RangeDecoder decoder;
+	
+	/**
+	 * O modelo de contexto, compartilhado por todos os quadros
+	 */
+	private EntropyModel model;
+	
+	/**
+	 * Altura dos quadros
+	 */
+	private int height;
+	
+	/**
+	 * Largura dos quadros
+	 */
+	private int width;
+	
+	/**
+	 * Precisão utilizada na construção das árvores
+	 */
+	private double accuracy;
+	
+	/**
+	 * Árvore do último quadro lido
+	 */
+	private QuadTree previous;
+	
+	/**
+	 * Indica se todos os quadros foram lidos
+	 */
+	private boolean finished;
+	
+	/**
+	 * Abre uma sequência gravada em um arquivo
+	 * 
+	 * @param file O arquivo da sequência
+	 * 
+	 * @throws IOException Erro ao ler o cabeçalho ou arquivo inválido
+	 */
+	public SequenceReader(File file) throws IOException {
+		this(new BufferedInputStream(new FileInputStream(file)));
+	}
+	
+	/**
+	 * Abre uma sequência gravada em uma stream. A stream é fechada por 
+	 * {@link #close()}
+	 * 
+	 * @param in A stream da sequência
+	 * 
+	 * @throws IOException Erro ao ler o cabeçalho ou formato inválido
+	 */
+	public SequenceReader(InputStream in) throws IOException {
+		
+		this.in = in;
+		
+		DataInputStream dis = new DataInputStream(in);
+		
+		try {
+			
+			if(dis.readInt() != QuadFormat.SEQUENCE_MAGIC) {
+				throw new IOException("Arquivo de sequência inválido");
+			}
+			
+			int version = dis.readUnsignedByte();
+			if(version > QuadFormat.VERSION) {
+				throw new IOException("Versão da sequência não suportada: " 
+						+ version);
+			}
+			
+			height = dis.readInt();
+			width = dis.readInt();
+			accuracy = dis.readDouble();
+			
+			decoder = new RangeDecoder(in);
+			model = new EntropyModel();
+			
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		
+	}
+	
+	/**
+	 * Lê o próximo quadro da sequência
+	 * 
+	 * @return A árvore que representa o quadro ou null se todos os quadros
+	 * 		   foram lidos
+	 * 
+	 * @throws IOException Erro ao ler o quadro
+	 */
+	public QuadTree next() throws IOException {
+		
+		if(finished) return null;
+		
+		if(!model.decodeFrame(decoder)) {
+			finished = true;
+			return null;
+		}
+		
+		Node reference = previous == null ? null : previous.getRoot();
+		
+		Node root = readNode(new Node(0, 0, height, width), reference, 0);
+		
+		previous = new QuadTree(height, width, accuracy, root, null);
+		
+		return previous;
+	}
+	
+	/**
+	 * Lê um nó do quadro em pré-ordem
+	 * 
+	 * @param node O nó, com a geometria já definida
+	 * @param reference O nó do quadro anterior na mesma região ou null
+	 * @param parent A cor do pai (ARGB)
+	 * 
+	 * @return O nó lido ou o nó do quadro anterior, se compartilhado
+	 * 
+	 * @throws IOException Erro ao ler o nó
+	 */
+	private Node readNode(Node node, Node reference, int parent) 
+			throws IOException {
+		
+		if(reference != null && model.decodeShared(decoder, 
+				node.getHeight(), node.getWidth())) {
+			return reference;
+		}
+		
+		boolean split;
+		
+		if(node.isRegular()) {
+			split = model.decodeSplit(decoder, node.getHeight(), 
+					node.getWidth());
+		}
+		else {
+			split = node.getHeight() > 1 || node.getWidth() > 1;
+		}
+		
+		Color color = model.decodeColor(decoder, !split, parent);
+		node.setColor(color);
+		
+		if(!split) return node;
+		
+		node.split();
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			
+			if(node.getQ()[i] == null) continue;
+			
+			Node r = null;
+			if(reference != null && !reference.isLeaf()) {
+				r = reference.getQ()[i];
+			}
+			
+			node.getQ()[i] = readNode(node.getQ()[i], r, color.getRGB());
+		}
+		
+		//somas exatas, como na árvore construída
+		node.aggregateChildren();
+		
+		return node;
+	}
+	
+	/**
+	 * Retorna a altura dos quadros
+	 * 
+	 * @return A altura dos quadros
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Retorna a largura dos quadros
+	 * 
+	 * @return A largura dos quadros
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Retorna a precisão utilizada na construção das árvores
+	 * 
+	 * @return A precisão utilizada na construção das árvores
+	 */
+	public double getAccuracy() {
+		return accuracy;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
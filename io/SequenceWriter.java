@@ -0,0 +1,199 @@
+package quadtree.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import quadtree.core.Node;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Grava uma sequência de quadros representados por QuadTrees em um único
+ * arquivo.</p>
+ * 
+ * <p>O arquivo contém um cabeçalho (identificador, versão, dimensões e 
+ * precisão) seguido pelos quadros, codificados em uma única stream pelo 
+ * codificador aritmético. Cada nó que é o mesmo objeto do quadro anterior na 
+ * mesma região (subárvore compartilhada, como produzido por 
+ * {@link quadtree.core.QuadTreeSequence}) é gravado como uma referência de 
+ * um único bit; os demais nós são gravados como em 
+ * {@link QuadFormat#FLAG_ENTROPY}.</p>
+ * 
+ * @see SequenceReader
+ * 
+ * @author pedro
+ *
+ */
+public class SequenceWriter implements Closeable {
+	
+	/**
+	 * A stream de destino
+	 */
+	private OutputStream out;
+	
+	/**
+	 * O codificador dos quadros
+	 */
+	private RangeEncoder encoder;
+	
+	/**
+	 * O modelo de contexto, compartilhado por todos os quadros
+	 */
+	private EntropyModel model;
+	
+	/**
+	 * Altura dos quadros
+	 */
+	private int height;
+	
+	/**
+	 * Largura dos quadros
+	 */
+	private int width;
+	
+	/**
+	 * Árvore do último quadro gravado
+	 */
+	private QuadTree previous;
+	
+	/**
+	 * Cria o objeto para gravar uma sequência em um arquivo
+	 * 
+	 * @param file O arquivo de destino
+	 * @param height A altura dos quadros
+	 * @param width A largura dos quadros
+	 * @param accuracy A precisão utilizada na construção das árvores
+	 * 
+	 * @throws IOException Erro ao gravar o cabeçalho
+	 */
+	public SequenceWriter(File file, int height, int width, double accuracy)
+			throws IOException {
+		this(new BufferedOutputStream(new FileOutputStream(file)), height, 
+				width, accuracy);
+	}
+	
+	/**
+	 * Cria o objeto para gravar uma sequência em uma stream. A stream é 
+	 * fechada por {@link #close()}
+	 * 
+	 * @param out A stream de destino
+	 * @param height A altura dos quadros
+	 * @param width A largura dos quadros
+	 * @param accuracy A precisão utilizada na construção das árvores
+	 * 
+	 * @throws IOException Erro ao gravar o cabeçalho
+	 */
+	public SequenceWriter(OutputStream out, int height, int width, 
+			double accuracy) throws IOException {
+		
+		this.out = out;
+		this.height = height;
+		this.width = width;
+		
+		DataOutputStream dos = new DataOutputStream(out);
+		
+		dos.writeInt(QuadFormat.SEQUENCE_MAGIC);
+		dos.writeByte(QuadFormat.VERSION);
+		dos.writeInt(height);
+		dos.writeInt(width);
+		dos.writeDouble(accuracy);
+		dos.flush();
+		
+		encoder = new RangeEncoder(out);
+		model = new EntropyModel();
+		
+	}
+	
+	/**
+	 * Grava um quadro da sequência
+	 * 
+	 * @param quadTree A árvore que representa o quadro
+	 * 
+	 * @throws IOException Erro ao gravar o quadro
+	 */
+	public void write(QuadTree quadTree) throws IOException {
+		
+		if(quadTree.getHeight() != height || quadTree.getWidth() != width) {
+			throw new IllegalArgumentException("Os quadros da sequência devem"
+					+ " ter as mesmas dimensões");
+		}
+		
+		model.encodeFrame(encoder, true);
+		
+		Node reference = previous == null ? null : previous.getRoot();
+		
+		writeNode(quadTree.getRoot(), reference, 0);
+		
+		previous = quadTree;
+		
+	}
+	
+	/**
+	 * Grava um nó do quadro em pré-ordem. Nós compartilhados com o quadro 
+	 * anterior são gravados como referência, sem a sua subárvore
+	 * 
+	 * @param node O nó atual
+	 * @param reference O nó do quadro anterior na mesma região ou null
+	 * @param parent A cor do pai (ARGB)
+	 * 
+	 * @throws IOException Erro ao gravar o nó
+	 */
+	private void writeNode(Node node, Node reference, int parent) 
+			throws IOException {
+		
+		if(reference != null) {
+			
+			boolean shared = node == reference;
+			
+			model.encodeShared(encoder, node.getHeight(), node.getWidth(), 
+					shared);
+			
+			if(shared) return;
+		}
+		
+		boolean leaf = node.isLeaf();
+		
+		if(node.isRegular()) {
+			model.encodeSplit(encoder, node.getHeight(), node.getWidth(), 
+					!leaf);
+		}
+		
+		int color = node.getColor().getRGB();
+		
+		model.encodeColor(encoder, leaf, color, parent);
+		
+		for(int i = 0; i < node.getQ().length; ++i) {
+			
+			if(node.getQ()[i] == null) continue;
+			
+			Node r = null;
+			if(reference != null && !reference.isLeaf()) {
+				r = reference.getQ()[i];
+			}
+			
+			writeNode(node.getQ()[i], r, color);
+		}
+		
+	}
+	
+	/**
+	 * Finaliza a sequência e fecha a stream
+	 * 
+	 * @throws IOException Erro ao gravar o final da sequência
+	 */
+	@Override
+	public void close() throws IOException {
+		
+		model.encodeFrame(encoder, false);
+		
+		encoder.flush();
+		
+		out.close();
+		
+	}
+
+}
@@ -0,0 +1,224 @@
+package quadtree.tiles;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Métricas de latência das requisições de um tipo atendidas pelo
+ * {@link TileServer}.</p>
+ * 
+ * <p>Contabiliza as requisições atendidas e com erro, o tempo total e o
+ * maior tempo de atendimento, e um histograma das latências do qual são
+ * obtidos os percentis. O histograma tem quatro faixas por potência de dois,
+ * de modo que um percentil é estimado com erro de no máximo 25%, sem
+ * armazenar as latências. O registro não utiliza bloqueios e pode ser feito
+ * por várias threads.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class RequestMetrics {
+	
+	/**
+	 * Número de faixas do histograma
+	 */
+	private static final int BUCKETS = 256;
+	
+	/**
+	 * Tipo das requisições
+	 */
+	private String name;
+	
+	/**
+	 * Requisições atendidas com sucesso
+	 */
+	private AtomicLong count;
+	
+	/**
+	 * Requisições com erro
+	 */
+	private AtomicLong failures;
+	
+	/**
+	 * Tempo (ns) de atendimento das requisições, somado
+	 */
+	private AtomicLong total;
+	
+	/**
+	 * Maior tempo (ns) de atendimento
+	 */
+	private AtomicLong max;
+	
+	/**
+	 * Número de requisições por faixa de latência
+	 */
+	private AtomicLongArray histogram;
+	
+	/**
+	 * Cria as métricas de um tipo de requisição
+	 * 
+	 * @param name O tipo das requisições
+	 */
+	RequestMetrics(String name) {
+		
+		this.name = name;
+		
+		count = new AtomicLong();
+		failures = new AtomicLong();
+		total = new AtomicLong();
+		max = new AtomicLong();
+		histogram = new AtomicLongArray(BUCKETS);
+	
+	}
+	
+	/**
+	 * Registra o atendimento de uma requisição
+	 * 
+	 * @param nanos O tempo de atendimento
+	 * @param success true se a requisição foi atendida com sucesso
+	 */
+	void record(long nanos, boolean success) {
+		
+		nanos = Math.max(0, nanos);
+		
+		if(success) count.incrementAndGet();
+		else failures.incrementAndGet();
+		
+		total.addAndGet(nanos);
+		histogram.incrementAndGet(bucket(nanos));
+		
+		long current = max.get();
+		
+		while(nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	
+	}
+	
+	/**
+	 * Retorna a faixa do histograma de uma latência: as latências até 3 ns
+	 * têm faixas próprias e cada potência de dois seguinte é dividida em
+	 * quatro faixas
+	 * 
+	 * @param nanos A latência
+	 * 
+	 * @return O índice da faixa
+	 */
+	private static int bucket(long nanos) {
+		
+		if(nanos < 4) return (int) nanos;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - 2)) & 3;
+		
+		return 4 * (exponent - 1) + sub;
+	}
+	
+	/**
+	 * Retorna a maior latência de uma faixa do histograma
+	 * 
+	 * @param bucket O índice da faixa
+	 * 
+	 * @return A maior latência da faixa em nanossegundos
+	 */
+	private static long upperBound(int bucket) {
+		
+		if(bucket < 4) return bucket;
+		
+		int exponent = bucket / 4 + 1;
+		long sub = bucket % 4;
+		
+		return ((5 + sub) << (exponent - 2)) - 1;
+	}
+	
+	/**
+	 * Retorna o tipo das requisições
+	 * 
+	 * @return O tipo das requisições
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Retorna o número de requisições atendidas com sucesso
+	 * 
+	 * @return O número de requisições atendidas com sucesso
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Retorna o número de requisições com erro
+	 * 
+	 * @return O número de requisições com erro
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+	
+	/**
+	 * Retorna a latência média das requisições
+	 * 
+	 * @return A latência média em nanossegundos
+	 */
+	public double getMeanNanos() {
+		
+		long n = getCount() + getFailures();
+		
+		return n > 0 ? (double) total.get() / n : 0;
+	}
+	
+	/**
+	 * Retorna a maior latência das requisições
+	 * 
+	 * @return A maior latência em nanossegundos
+	 */
+	public long getMaxNanos() {
+		return max.get();
+	}
+	
+	/**
+	 * Estima um percentil da latência das requisições pela maior latência
+	 * da faixa do histograma que contém o percentil
+	 * 
+	 * @param percentile O percentil, entre 0 e 100
+	 * 
+	 * @return A latência em nanossegundos ou 0 se não há requisições
+	 */
+	public long getPercentileNanos(double percentile) {
+		
+		long counts[] = new long[BUCKETS];
+		long n = 0;
+		
+		for(int k = 0; k < BUCKETS; ++k) {
+			counts[k] = histogram.get(k);
+			n = n + counts[k];
+		}
+		
+		if(n == 0) return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long seen = 0;
+		
+		for(int k = 0; k < BUCKETS; ++k) {
+			
+			seen = seen + counts[k];
+			
+			if(seen >= rank) return Math.min(upperBound(k), getMaxNanos());
+		}
+		
+		return getMaxNanos();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: %d requisições (%d erros), média %.2f ms, " +
+				"p50 %.2f ms, p99 %.2f ms, máximo %.2f ms", name, getCount(),
+				getFailures(), getMeanNanos() / 1e6,
+				getPercentileNanos(50) / 1e6, getPercentileNanos(99) / 1e6,
+				getMaxNanos() / 1e6);
+	}
+
+}
@@ -0,0 +1,140 @@
+package quadtree.tiles;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Cache dos PNG dos tiles desenhados pelo {@link TileServer}.</p>
+ * 
+ * <p>O cache é limitado pela soma dos tamanhos dos PNG: ao exceder o limite,
+ * os tiles utilizados há mais tempo são descartados (LRU). As operações
+ * podem ser chamadas por várias threads; duas requisições simultâneas do
+ * mesmo tile ausente podem desenhá-lo duas vezes.</p>
+ * 
+ * @author pedro
+ * 
+ */
+class TileCache {
+	
+	/**
+	 * Os tiles armazenados, do utilizado há mais tempo ao mais recente
+	 */
+	private LinkedHashMap<String, byte[]> tiles;
+	
+	/**
+	 * O limite do cache em bytes
+	 */
+	private long maxBytes;
+	
+	/**
+	 * A soma dos tamanhos dos tiles armazenados
+	 */
+	private long bytes;
+	
+	/**
+	 * Número de consultas atendidas pelo cache
+	 */
+	private long hits;
+	
+	/**
+	 * Número de consultas de tiles ausentes
+	 */
+	private long misses;
+	
+	/**
+	 * Cria um cache vazio
+	 * 
+	 * @param maxBytes O limite do cache em bytes
+	 */
+	TileCache(long maxBytes) {
+		
+		this.maxBytes = maxBytes;
+		
+		tiles = new LinkedHashMap<>(16, 0.75f, true);
+	
+	}
+	
+	/**
+	 * Retorna o PNG de um tile
+	 * 
+	 * @param key A chave do tile
+	 * 
+	 * @return O PNG ou null se o tile não está no cache
+	 */
+	synchronized byte[] get(String key) {
+		
+		byte png[] = tiles.get(key);
+		
+		if(png != null) hits++;
+		else misses++;
+		
+		return png;
+	}
+	
+	/**
+	 * Armazena o PNG de um tile e descarta os tiles utilizados há mais tempo
+	 * se o limite foi excedido. Tiles maiores que o limite não são
+	 * armazenados
+	 * 
+	 * @param key A chave do tile
+	 * @param png O PNG do tile
+	 */
+	synchronized void put(String key, byte png[]) {
+		
+		if(png.length > maxBytes) return;
+		
+		byte previous[] = tiles.put(key, png);
+		
+		bytes = bytes + png.length;
+		if(previous != null) bytes = bytes - previous.length;
+		
+		Iterator<Map.Entry<String, byte[]>> it = tiles.entrySet().iterator();
+		
+		while(bytes > maxBytes && it.hasNext()) {
+			
+			Map.Entry<String, byte[]> e = it.next();
+			
+			bytes = bytes - e.getValue().length;
+			it.remove();
+		}
+	
+	}
+	
+	/**
+	 * Retorna a soma dos tamanhos dos tiles armazenados
+	 * 
+	 * @return O tamanho do cache em bytes
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * Retorna o número de tiles armazenados
+	 * 
+	 * @return O número de tiles
+	 */
+	synchronized int size() {
+		return tiles.size();
+	}
+	
+	/**
+	 * Retorna o número de consultas atendidas pelo cache
+	 * 
+	 * @return O número de acertos
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Retorna o número de consultas de tiles ausentes
+	 * 
+	 * @return O número de falhas
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+}
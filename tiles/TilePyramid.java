@@ -0,0 +1,701 @@
+package quadtree.tiles;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import quadtree.core.Node;
+import quadtree.core.NodeTraversal;
+import quadtree.core.NodeVisitor;
+import quadtree.core.OffHeapQuadTree;
+import quadtree.core.QuadTree;
+
+/**
+ * <p>Gera uma pirâmide de <i>tiles</i> (esquema XYZ, <code>z/x/y.png</code>)
+ * a partir de uma QuadTree, para a visualização da imagem em visualizadores
+ * web.</p>
+ * 
+ * <p>O maior nível de zoom representa a imagem em tamanho real e cada nível
+ * anterior reduz a imagem pela metade. Cada tile é desenhado diretamente a 
+ * partir dos nós que interceptam a sua região: a descida na árvore é 
+ * interrompida quando a região do nó ocupa no máximo um pixel do tile, de 
+ * modo que cada nível de zoom utiliza naturalmente um nível a menos da 
+ * árvore, representado pela cor média dos nós internos.</p>
+ * 
+ * <p>Os tiles são gerados em paralelo. Tiles de uma única cor não são 
+ * desenhados: o PNG de cada cor é gerado uma única vez e compartilhado.</p>
+ * 
+ * <p>Além dos tiles é gerado o descritor <code>tiles.json</code> com as 
+ * dimensões da imagem, o tamanho dos tiles e os níveis de zoom.</p>
+ * 
+ * <p>A árvore pode estar no <i>heap</i> ou fora dele 
+ * ({@link OffHeapQuadTree}); neste caso os tiles podem ser desenhados sob
+ * demanda por várias threads, como em {@link TileServer}.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class TilePyramid {
+	
+	/**
+	 * Tamanho padrão dos tiles
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+	
+	/**
+	 * Nome do descritor da pirâmide
+	 */
+	public static final String DESCRIPTOR = "tiles.json";
+	
+	/**
+	 * A árvore que representa a imagem ou null se a árvore está fora do 
+	 * <i>heap</i>
+	 */
+	private QuadTree quadTree;
+	
+	/**
+	 * A árvore fora do <i>heap</i> ou null
+	 */
+	private OffHeapQuadTree offHeap;
+	
+	/**
+	 * Largura da imagem
+	 */
+	private int width;
+	
+	/**
+	 * Altura da imagem
+	 */
+	private int height;
+	
+	/**
+	 * Precisão utilizada na construção da árvore
+	 */
+	private double accuracy;
+	
+	/**
+	 * Tamanho (altura e largura) dos tiles
+	 */
+	private int tileSize;
+	
+	/**
+	 * Número de threads utilizadas na geração dos tiles
+	 */
+	private int threads;
+	
+	/**
+	 * PNG dos tiles de uma única cor, por cor (ARGB)
+	 */
+	private Map<Integer, byte[]> uniformTiles;
+	
+	/**
+	 * Cria o gerador da pirâmide de tiles com o tamanho padrão de tiles
+	 * 
+	 * @param quadTree A árvore que representa a imagem
+	 */
+	public TilePyramid(QuadTree quadTree) {
+		this(quadTree, DEFAULT_TILE_SIZE);
+	}
+	
+	/**
+	 * Cria o gerador da pirâmide de tiles
+	 * 
+	 * @param quadTree A árvore que representa a imagem
+	 * @param tileSize O tamanho (altura e largura) dos tiles
+	 */
+	public TilePyramid(QuadTree quadTree, int tileSize) {
+		
+		this(quadTree.getWidth(), quadTree.getHeight(), 
+				quadTree.getAccuracy(), tileSize);
+		
+		this.quadTree = quadTree;
+		
+	}
+	
+	/**
+	 * Cria o gerador da pirâmide de tiles de uma árvore fora do <i>heap</i>.
+	 * A árvore não deve ser fechada enquanto o gerador é utilizado
+	 * 
+	 * @param offHeap A árvore que representa a imagem
+	 * @param tileSize O tamanho (altura e largura) dos tiles
+	 */
+	public TilePyramid(OffHeapQuadTree offHeap, int tileSize) {
+		
+		this(offHeap.getWidth(), offHeap.getHeight(), offHeap.getAccuracy(),
+				tileSize);
+		
+		this.offHeap = offHeap;
+		
+	}
+	
+	/**
+	 * Cria o gerador da pirâmide de tiles sem a árvore
+	 * 
+	 * @param width A largura da imagem
+	 * @param height A altura da imagem
+	 * @param accuracy A precisão utilizada na construção da árvore
+	 * @param tileSize O tamanho (altura e largura) dos tiles
+	 */
+	private TilePyramid(int width, int height, double accuracy, 
+			int tileSize) {
+		
+		this.width = width;
+		this.height = height;
+		this.accuracy = accuracy;
+		this.tileSize = tileSize;
+		
+		threads = Runtime.getRuntime().availableProcessors();
+		uniformTiles = new ConcurrentHashMap<>();
+		
+	}
+	
+	/**
+	 * Retorna o maior nível de zoom, no qual a imagem é representada em 
+	 * tamanho real
+	 * 
+	 * @return O maior nível de zoom
+	 */
+	public int getMaxZoom() {
+		
+		int size = Math.max(width, height);
+		
+		int zoom = 0;
+		while(((long) tileSize << zoom) < size) ++zoom;
+		
+		return zoom;
+	}
+	
+	/**
+	 * Retorna o número de colunas de tiles de um nível de zoom
+	 * 
+	 * @param zoom O nível de zoom
+	 * 
+	 * @return O número de colunas de tiles
+	 */
+	public int getColumns(int zoom) {
+		return tiles(width, zoom);
+	}
+	
+	/**
+	 * Retorna o número de linhas de tiles de um nível de zoom
+	 * 
+	 * @param zoom O nível de zoom
+	 * 
+	 * @return O número de linhas de tiles
+	 */
+	public int getRows(int zoom) {
+		return tiles(height, zoom);
+	}
+	
+	/**
+	 * Calcula o número de tiles necessários para cobrir uma dimensão da 
+	 * imagem em um nível de zoom
+	 * 
+	 * @param size A dimensão da imagem em tamanho real
+	 * @param zoom O nível de zoom
+	 * 
+	 * @return O número de tiles
+	 */
+	private int tiles(int size, int zoom) {
+		
+		double scaled = size * scale(zoom);
+		
+		return Math.max(1, (int) Math.ceil(scaled / tileSize));
+	}
+	
+	/**
+	 * Retorna o fator de escala de um nível de zoom em relação à imagem em 
+	 * tamanho real
+	 * 
+	 * @param zoom O nível de zoom
+	 * 
+	 * @return O fator de escala
+	 */
+	private double scale(int zoom) {
+		return Math.pow(2, zoom - getMaxZoom());
+	}
+	
+	/**
+	 * Gera a pirâmide de tiles e o descritor em um diretório
+	 * 
+	 * @param directory O diretório de destino
+	 * 
+	 * @return O número de tiles gerados
+	 * 
+	 * @throws IOException Erro ao gravar os tiles
+	 */
+	public int generate(File directory) throws IOException {
+		
+		final File dir = directory;
+		
+		final int maxZoom = getMaxZoom();
+		
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		
+		for(int z = 0; z <= maxZoom; ++z) {
+			
+			for(int x = 0; x < getColumns(z); ++x) {
+				
+				File column = new File(dir, z + File.separator + x);
+				
+				if(!column.isDirectory() && !column.mkdirs()) {
+					throw new IOException("Não foi possível criar o diretório "
+							+ column.getAbsolutePath());
+				}
+				
+				for(int y = 0; y < getRows(z); ++y) {
+					
+					final int tz = z, tx = x, ty = y;
+					
+					tasks.add(new Callable<Boolean>() {
+						
+						@Override
+						public Boolean call() throws IOException {
+							return writeTile(dir, tz, tx, ty);
+						}
+						
+					});
+					
+				}
+				
+			}
+			
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		
+		int uniform = 0;
+		
+		try {
+			
+			for(Future<Boolean> f : executor.invokeAll(tasks)) {
+				if(f.get()) ++uniform;
+			}
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Geração dos tiles interrompida", e);
+		} catch (ExecutionException e) {
+			
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			
+			throw new IOException("Erro ao gerar os tiles", e.getCause());
+			
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		writeDescriptor(dir, maxZoom, tasks.size(), uniform);
+		
+		return tasks.size();
+		
+	}
+	
+	/**
+	 * Desenha e grava um tile
+	 * 
+	 * @param dir O diretório da pirâmide
+	 * @param z O nível de zoom
+	 * @param x A coluna do tile
+	 * @param y A linha do tile
+	 * 
+	 * @return true se o tile tem uma única cor
+	 * 
+	 * @throws IOException Erro ao gravar o tile
+	 */
+	private boolean writeTile(File dir, int z, int x, int y) 
+			throws IOException {
+		
+		File file = new File(dir, z + File.separator + x + File.separator + 
+				y + ".png");
+		
+		Tile tile = new Tile(z, x, y);
+		
+		//tile de uma única cor, utiliza o PNG compartilhado
+		Node node = tile.cover();
+		if(node != null) {
+			Files.write(file.toPath(), uniformTile(node.getColor().getRGB()));
+			return true;
+		}
+		
+		ImageIO.write(tile.render(), "png", file);
+		
+		return false;
+	}
+	
+	/**
+	 * Desenha um tile
+	 * 
+	 * @param z O nível de zoom
+	 * @param x A coluna do tile
+	 * @param y A linha do tile
+	 * 
+	 * @return A imagem do tile
+	 */
+	public BufferedImage renderTile(int z, int x, int y) {
+		return new Tile(z, x, y).render();
+	}
+	
+	/**
+	 * Desenha um tile e o codifica em PNG. O PNG dos tiles de uma única cor é
+	 * compartilhado
+	 * 
+	 * @param z O nível de zoom
+	 * @param x A coluna do tile
+	 * @param y A linha do tile
+	 * 
+	 * @return O PNG do tile
+	 * 
+	 * @throws IOException Erro ao codificar o PNG
+	 */
+	public byte[] encodeTile(int z, int x, int y) throws IOException {
+		
+		Tile tile = new Tile(z, x, y);
+		
+		Node node = tile.cover();
+		if(node != null) return uniformTile(node.getColor().getRGB());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(tile.render(), "png", out);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Verifica se um tile existe na pirâmide
+	 * 
+	 * @param z O nível de zoom
+	 * @param x A coluna do tile
+	 * @param y A linha do tile
+	 * 
+	 * @return true se o nível de zoom, a coluna e a linha são válidos
+	 */
+	public boolean contains(int z, int x, int y) {
+		return z >= 0 && z <= getMaxZoom() && x >= 0 && x < getColumns(z) &&
+				y >= 0 && y < getRows(z);
+	}
+	
+	/**
+	 * Percorre em pré-ordem os nós da árvore, no <i>heap</i> ou fora dele
+	 * 
+	 * @param visitor O visitante dos nós. Os filhos de um nó são visitados
+	 * 				  apenas se o visitante retorna true
+	 */
+	private void visit(NodeVisitor visitor) {
+		
+		if(offHeap != null) offHeap.visit(visitor);
+		else new NodeTraversal().traverse(quadTree.getRoot(), visitor);
+	
+	}
+	
+	/**
+	 * Retorna o PNG de um tile de uma única cor, gerando-o apenas na primeira
+	 * vez em que a cor é utilizada
+	 * 
+	 * @param argb A cor do tile
+	 * 
+	 * @return O PNG do tile
+	 * 
+	 * @throws IOException Erro ao gerar o PNG
+	 */
+	private byte[] uniformTile(int argb) throws IOException {
+		
+		byte png[] = uniformTiles.get(argb);
+		if(png != null) return png;
+		
+		BufferedImage image = new BufferedImage(tileSize, tileSize, 
+				BufferedImage.TYPE_INT_ARGB);
+		
+		int pixels[] = ((DataBufferInt) image.getRaster().getDataBuffer())
+				.getData();
+		Arrays.fill(pixels, argb);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		
+		png = out.toByteArray();
+		uniformTiles.put(argb, png);
+		
+		return png;
+	}
+	
+	/**
+	 * Grava o descritor da pirâmide
+	 * 
+	 * @param dir O diretório da pirâmide
+	 * @param maxZoom O maior nível de zoom
+	 * @param tiles O número de tiles gerados
+	 * @param uniform O número de tiles de uma única cor
+	 * 
+	 * @throws IOException Erro ao gravar o descritor
+	 */
+	private void writeDescriptor(File dir, int maxZoom, int tiles, 
+			int uniform) throws IOException {
+		
+		File file = new File(dir, DESCRIPTOR);
+		
+		try(Writer writer = new OutputStreamWriter(
+				Files.newOutputStream(file.toPath()), 
+				StandardCharsets.UTF_8)) {
+			
+			writer.write(String.format(Locale.ROOT, 
+					"{%n" +
+					"  \"scheme\": \"xyz\",%n" +
+					"  \"format\": \"png\",%n" +
+					"  \"url\": \"{z}/{x}/{y}.png\",%n" +
+					"  \"width\": %d,%n" +
+					"  \"height\": %d,%n" +
+					"  \"tileSize\": %d,%n" +
+					"  \"minZoom\": 0,%n" +
+					"  \"maxZoom\": %d,%n" +
+					"  \"accuracy\": %s,%n" +
+					"  \"tiles\": %d,%n" +
+					"  \"uniformTiles\": %d%n" +
+					"}%n",
+					width, height, tileSize, maxZoom, 
+					Double.toString(accuracy), tiles,
+					uniform));
+			
+		}
+		
+	}
+	
+	/**
+	 * Define o número de threads utilizadas na geração dos tiles
+	 * 
+	 * @param threads O número de threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	/**
+	 * Retorna o tamanho (altura e largura) dos tiles
+	 * 
+	 * @return O tamanho dos tiles
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	/**
+	 * <p>Região de um tile na imagem em tamanho real.</p>
+	 */
+	private class Tile {
+		
+		/**
+		 * Fator de escala do nível de zoom do tile
+		 */
+		private double scale;
+		
+		/**
+		 * Posição X inicial do tile no nível de zoom
+		 */
+		private int offsetX;
+		
+		/**
+		 * Posição Y inicial do tile no nível de zoom
+		 */
+		private int offsetY;
+		
+		/**
+		 * Posição X inicial da região do tile na imagem em tamanho real
+		 */
+		private double x0;
+		
+		/**
+		 * Posição Y inicial da região do tile na imagem em tamanho real
+		 */
+		private double y0;
+		
+		/**
+		 * Posição X final da região do tile na imagem em tamanho real
+		 */
+		private double x1;
+		
+		/**
+		 * Posição Y final da região do tile na imagem em tamanho real
+		 */
+		private double y1;
+		
+		/**
+		 * Cria a região de um tile
+		 * 
+		 * @param z O nível de zoom
+		 * @param x A coluna do tile
+		 * @param y A linha do tile
+		 */
+		private Tile(int z, int x, int y) {
+			
+			scale = scale(z);
+			
+			offsetX = x * tileSize;
+			offsetY = y * tileSize;
+			
+			x0 = offsetX / scale;
+			y0 = offsetY / scale;
+			x1 = (offsetX + tileSize) / scale;
+			y1 = (offsetY + tileSize) / scale;
+			
+		}
+		
+		/**
+		 * Verifica se o tile é coberto por um único nó desenhado, ou seja, se
+		 * o tile tem uma única cor
+		 * 
+		 * @return O nó que cobre o tile ou null se o tile tem mais de uma cor
+		 */
+		private Node cover() {
+			
+			final Node cover[] = new Node[1];
+			
+			visit(new NodeVisitor() {
+				
+				@Override
+				public boolean visit(Node node, int depth) {
+					
+					//o tile inteiro deve estar contido na região do nó
+					if(node.getX() > x0 || node.getY() > y0 || 
+							node.getX() + node.getWidth() < x1 || 
+							node.getY() + node.getHeight() < y1) {
+						return false;
+					}
+					
+					if(stop(node)) {
+						cover[0] = node;
+						return false;
+					}
+					
+					return true;
+				}
+			
+			});
+			
+			return cover[0];
+		}
+		
+		/**
+		 * Verifica se a descida na árvore deve ser interrompida no nó: o nó é
+		 * uma folha ou sua região ocupa no máximo um pixel do tile
+		 * 
+		 * @param node O nó
+		 * 
+		 * @return true se o nó deve ser desenhado com a sua cor
+		 */
+		private boolean stop(Node node) {
+			return node.isLeaf() || (node.getWidth() * scale <= 1 && 
+					node.getHeight() * scale <= 1);
+		}
+		
+		/**
+		 * Desenha o tile. As regiões fora da imagem são transparentes
+		 * 
+		 * @return A imagem do tile
+		 */
+		private BufferedImage render() {
+			
+			BufferedImage image = new BufferedImage(tileSize, tileSize, 
+					BufferedImage.TYPE_INT_ARGB);
+			
+			int pixels[] = ((DataBufferInt) image.getRaster()
+					.getDataBuffer()).getData();
+			
+			paint(pixels);
+			
+			return image;
+		}
+		
+		/**
+		 * Desenha os nós que interceptam o tile. A descida na árvore é 
+		 * interrompida quando o nó deve ser desenhado com a sua cor
+		 * 
+		 * @param pixels Os pixels do tile
+		 */
+		private void paint(final int pixels[]) {
+			
+			visit(new NodeVisitor() {
+				
+				@Override
+				public boolean visit(Node node, int depth) {
+					
+					//nó fora do tile
+					if(node.getX() >= x1 || node.getY() >= y1 || 
+							node.getX() + node.getWidth() <= x0 || 
+							node.getY() + node.getHeight() <= y0) {
+						return false;
+					}
+					
+					if(stop(node)) {
+						fill(node, pixels);
+						return false;
+					}
+					
+					return true;
+				}
+			
+			});
+			
+		}
+		
+		/**
+		 * Preenche a região do nó no tile com a cor do nó
+		 * 
+		 * @param node O nó
+		 * @param pixels Os pixels do tile
+		 */
+		private void fill(Node node, int pixels[]) {
+			
+			int left = (int) Math.floor(node.getX() * scale) - offsetX;
+			int top = (int) Math.floor(node.getY() * scale) - offsetY;
+			
+			int right = (int) Math.floor((node.getX() + node.getWidth()) * 
+					scale) - offsetX;
+			int bottom = (int) Math.floor((node.getY() + node.getHeight()) * 
+					scale) - offsetY;
+			
+			//cada nó ocupa ao menos um pixel
+			right = Math.max(right, left + 1);
+			bottom = Math.max(bottom, top + 1);
+			
+			left = Math.max(left, 0);
+			top = Math.max(top, 0);
+			right = Math.min(right, tileSize);
+			bottom = Math.min(bottom, tileSize);
+			
+			int argb = node.getColor().getRGB();
+			
+			for(int i = top; i < bottom; ++i) {
+				
+				int row = i * tileSize;
+				
+				for(int j = left; j < right; ++j) {
+					pixels[row + j] = argb;
+				}
+			}
+			
+		}
+		
+	}
+
+}
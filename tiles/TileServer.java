@@ -0,0 +1,994 @@
+package quadtree.tiles;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import quadtree.core.OffHeapQuadTree;
+import quadtree.io.QuadTreeReader;
+import quadtree.util.LoadImage;
+
+/**
+ * <p>Servidor HTTP local que desenha sob demanda tiles, regiões e pixels de
+ * arquivos .quad, sem a geração prévia da pirâmide de tiles.</p>
+ * 
+ * <p>Cada árvore é carregada fora do <i>heap</i> ({@link OffHeapQuadTree})
+ * e identificada pelo nome do arquivo sem a extensão. As requisições
+ * atendidas são:</p>
+ * 
+ * <ul>
+ * <li><code>/</code>: as árvores carregadas;</li>
+ * <li><code>/{nome}/tiles.json</code>: o descritor da pirâmide de tiles da
+ * árvore, como o gerado por {@link TilePyramid};</li>
+ * <li><code>/{nome}/{z}/{x}/{y}.png</code>: um tile (esquema XYZ);</li>
+ * <li><code>/{nome}/region?x=&amp;y=&amp;width=&amp;height=</code>: uma
+ * região da imagem em tamanho real, em PNG;</li>
+ * <li><code>/{nome}/point?x=&amp;y=</code>: a cor de um pixel;</li>
+ * <li><code>/metrics</code>: as métricas de latência por tipo de requisição
+ * e do cache de tiles.</li>
+ * </ul>
+ * 
+ * <p>Os tiles desenhados são mantidos em um cache limitado em bytes
+ * ({@link TileCache}); o limite padrão pode ser definido pela propriedade
+ * de sistema {@value #CACHE_BYTES_PROPERTY}. As requisições são atendidas
+ * por <i>virtual threads</i>, uma por requisição, quando a JVM as oferece,
+ * ou por um conjunto fixo de threads nas versões anteriores. O servidor
+ * atende apenas a interface local (<i>loopback</i>).</p>
+ * 
+ * @author pedro
+ * 
+ * @see TilePyramid
+ */
+public class TileServer implements Closeable {
+	
+	/**
+	 * Porta padrão do servidor
+	 */
+	public static final int DEFAULT_PORT = 8080;
+	
+	/**
+	 * Propriedade de sistema com o limite do cache de tiles em bytes
+	 */
+	public static final String CACHE_BYTES_PROPERTY = "quadtree.tileCache";
+	
+	/**
+	 * Limite padrão do cache de tiles (64 MB)
+	 */
+	private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+	
+	/**
+	 * Número máximo de pixels de uma região desenhada
+	 */
+	private static final int MAX_REGION_PIXELS = 1 << 24;
+	
+	/**
+	 * Tipos de requisição com métricas próprias
+	 */
+	private static final String TYPES[] = {"tile", "região", "ponto",
+			"descritor", "outras"};
+	
+	/**
+	 * Endereço do servidor
+	 */
+	private InetSocketAddress address;
+	
+	/**
+	 * Tamanho (altura e largura) dos tiles
+	 */
+	private int tileSize;
+	
+	/**
+	 * As árvores carregadas, por nome
+	 */
+	private ConcurrentMap<String, Layer> layers;
+	
+	/**
+	 * Cache dos tiles desenhados
+	 */
+	private TileCache cache;
+	
+	/**
+	 * Métricas por tipo de requisição
+	 */
+	private Map<String, RequestMetrics> metrics;
+	
+	/**
+	 * O servidor HTTP ou null se o servidor não foi iniciado
+	 */
+	private HttpServer server;
+	
+	/**
+	 * Threads que atendem as requisições
+	 */
+	private ExecutorService executor;
+	
+	/**
+	 * Armazena se as requisições são atendidas por <i>virtual threads</i>
+	 */
+	private boolean virtual;
+	
+	/**
+	 * Cria o servidor com o tamanho padrão de tiles e o limite padrão do
+	 * cache
+	 * 
+	 * @param port A porta local ou 0 para uma porta livre
+	 */
+	public TileServer(int port) {
+		this(port, TilePyramid.DEFAULT_TILE_SIZE,
+				Long.getLong(CACHE_BYTES_PROPERTY, DEFAULT_CACHE_BYTES));
+	}
+	
+	/**
+	 * Cria o servidor
+	 * 
+	 * @param port A porta local ou 0 para uma porta livre
+	 * @param tileSize O tamanho (altura e largura) dos tiles
+	 * @param cacheBytes O limite do cache de tiles em bytes
+	 */
+	public TileServer(int port, int tileSize, long cacheBytes) {
+		
+		this.tileSize = tileSize;
+		
+		address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				port);
+		
+		layers = new ConcurrentSkipListMap<>();
+		cache = new TileCache(cacheBytes);
+		
+		metrics = new LinkedHashMap<>();
+		for(String type : TYPES) metrics.put(type, new RequestMetrics(type));
+	
+	}
+	
+	/**
+	 * Carrega um arquivo .quad, identificado pelo nome do arquivo sem a
+	 * extensão.
+	 * 
+	 * <p>A árvore é lida por {@link QuadTreeReader#readOffHeap(File)}: os 
+	 * arquivos gravados sem subárvores compartilhadas, com ou sem 
+	 * codificação entrópica, são lidos diretamente para os buffers da 
+	 * árvore, e os demais são carregados no <i>heap</i> e copiados. O 
+	 * arquivo não é mapeado em memória porque nenhum formato .quad armazena
+	 * os nós no layout de {@link OffHeapQuadTree}: os arquivos não contêm o
+	 * tamanho das subárvores, e as cores são gravadas apenas nas folhas ou
+	 * codificadas.</p>
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return O nome da árvore
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou arquivo inválido
+	 */
+	public String load(File file) throws IOException {
+		
+		String name = file.getName();
+		
+		if(name.toLowerCase(Locale.ROOT).endsWith(".quad")) {
+			name = name.substring(0, name.length() - 5);
+		}
+		
+		OffHeapQuadTree tree = new QuadTreeReader().readOffHeap(file);
+		
+		try {
+			add(name, tree);
+		} catch (IllegalArgumentException e) {
+			tree.close();
+			throw e;
+		}
+		
+		return name;
+	}
+	
+	/**
+	 * Adiciona uma árvore ao servidor. A árvore é fechada pelo servidor em
+	 * {@link #close()}
+	 * 
+	 * @param name O nome da árvore nas requisições
+	 * @param tree A árvore
+	 */
+	public void add(String name, OffHeapQuadTree tree) {
+		
+		if(name.isEmpty() || name.contains("/") || name.equals("metrics")) {
+			throw new IllegalArgumentException("Nome inválido: " + name);
+		}
+		
+		Layer layer = new Layer(tree, new TilePyramid(tree, tileSize));
+		
+		if(layers.putIfAbsent(name, layer) != null) {
+			throw new IllegalArgumentException("Árvore já carregada: " +
+				name);
+		}
+	
+	}
+	
+	/**
+	 * Inicia o servidor
+	 * 
+	 * @throws IOException Erro ao abrir a porta
+	 */
+	public synchronized void start() throws IOException {
+		
+		if(server != null) {
+			throw new IllegalStateException("Servidor já iniciado");
+		}
+		
+		server = HttpServer.create(address, 0);
+		server.createContext("/", new HttpHandler() {
+			
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				TileServer.this.handle(exchange);
+			}
+		
+		});
+		
+		executor = createExecutor();
+		server.setExecutor(executor);
+		
+		server.start();
+	
+	}
+	
+	/**
+	 * Cria as threads que atendem as requisições: uma <i>virtual thread</i>
+	 * por requisição se a JVM as oferece (Java 21) ou um conjunto fixo de
+	 * threads
+	 * 
+	 * @return O executor das requisições
+	 */
+	private ExecutorService createExecutor() {
+		
+		try {
+			
+			Method method = Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor");
+			
+			ExecutorService service = (ExecutorService) method.invoke(null);
+			virtual = true;
+			
+			return service;
+		
+		} catch (ReflectiveOperationException e) {
+			virtual = false;
+		}
+		
+		final AtomicInteger counter = new AtomicInteger();
+		
+		return Executors.newFixedThreadPool(
+				2 * Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				
+				Thread thread = new Thread(r, "QuadTree-servidor-" +
+						counter.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		
+		});
+	
+	}
+	
+	/**
+	 * Encerra o servidor, aguardando no máximo um segundo pelas requisições
+	 * em andamento, e fecha as árvores carregadas. A árvore utilizada por 
+	 * uma requisição que ainda não terminou é fechada ao fim da 
+	 * requisição
+	 */
+	@Override
+	public synchronized void close() {
+		
+		if(server != null) {
+			
+			server.stop(1);
+			executor.shutdownNow();
+			
+			server = null;
+		}
+		
+		for(Layer layer : layers.values()) layer.release();
+		layers.clear();
+	
+	}
+	
+	/**
+	 * Atende uma requisição e registra a sua latência
+	 * 
+	 * @param exchange A requisição
+	 */
+	private void handle(HttpExchange exchange) {
+		
+		long start = System.nanoTime();
+		
+		List<String> path = new ArrayList<>();
+		
+		for(String s : exchange.getRequestURI().getPath().split("/")) {
+			if(!s.isEmpty()) path.add(s);
+		}
+		
+		String type = type(path);
+		boolean success = false;
+		
+		try {
+			
+			if(!"GET".equals(exchange.getRequestMethod())) {
+				throw new RequestException(405, "Método não permitido");
+			}
+			
+			respond(exchange, path, type);
+			success = true;
+		
+		} catch (RequestException e) {
+			error(exchange, e.status, e.getMessage());
+		} catch (RuntimeException | IOException e) {
+			error(exchange, 500, String.valueOf(e.getMessage()));
+		} finally {
+			exchange.close();
+			metrics.get(type).record(System.nanoTime() - start, success);
+		}
+	
+	}
+	
+	/**
+	 * Retorna o tipo de uma requisição
+	 * 
+	 * @param path Os segmentos do caminho da requisição
+	 * 
+	 * @return O tipo da requisição
+	 */
+	private static String type(List<String> path) {
+		
+		switch(path.size()) {
+			
+			case 1:
+				return "metrics".equals(path.get(0)) ? "outras" : "descritor";
+			
+			case 2:
+				if("region".equals(path.get(1))) return "região";
+				if("point".equals(path.get(1))) return "ponto";
+				if(TilePyramid.DESCRIPTOR.equals(path.get(1))) {
+					return "descritor";
+				}
+				return "outras";
+			
+			case 4: return "tile";
+			
+			default: return "outras";
+		}
+	
+	}
+	
+	/**
+	 * Responde uma requisição GET
+	 * 
+	 * @param exchange A requisição
+	 * @param path Os segmentos do caminho da requisição
+	 * @param type O tipo da requisição
+	 * 
+	 * @throws RequestException Requisição inválida
+	 * @throws IOException Erro ao enviar a resposta
+	 */
+	private void respond(HttpExchange exchange, List<String> path,
+			String type) throws RequestException, IOException {
+		
+		if(path.isEmpty()) {
+			send(exchange, "application/json", list());
+			return;
+		}
+		
+		if(path.size() == 1 && "metrics".equals(path.get(0))) {
+			send(exchange, "application/json", metrics());
+			return;
+		}
+		
+		String name = path.get(0);
+		Layer layer = layers.get(name);
+		
+		if(layer == null) {
+			throw new RequestException(404, "Árvore não encontrada: " + name);
+		}
+		
+		//a árvore não é fechada durante a requisição
+		if(!layer.acquire()) {
+			throw new RequestException(503, "Servidor encerrado");
+		}
+		
+		try {
+			
+			Map<String, String> query = query(exchange);
+			
+			switch(type) {
+				
+				case "tile":
+					send(exchange, "image/png", tile(name, layer, path));
+					break;
+				
+				case "região":
+					send(exchange, "image/png", region(layer, query));
+					break;
+				
+				case "ponto":
+					send(exchange, "application/json", point(layer, query));
+					break;
+				
+				case "descritor":
+					send(exchange, "application/json", descriptor(layer));
+					break;
+				
+				default:
+					throw new RequestException(404, "Recurso não " +
+							"encontrado");
+			}
+		
+		} finally {
+			layer.release();
+		}
+	
+	}
+	
+	/**
+	 * Retorna o PNG de um tile, do cache ou desenhado a partir da árvore
+	 * 
+	 * @param name O nome da árvore
+	 * @param layer A árvore
+	 * @param path Os segmentos do caminho: nome, z, x e y.png
+	 * 
+	 * @return O PNG do tile
+	 * 
+	 * @throws RequestException Tile inexistente
+	 * @throws IOException Erro ao codificar o PNG
+	 */
+	private byte[] tile(String name, Layer layer, List<String> path)
+			throws RequestException, IOException {
+		
+		String last = path.get(3);
+		
+		if(!last.endsWith(".png")) {
+			throw new RequestException(404, "Formato não suportado");
+		}
+		
+		int z = parse(path.get(1), "z");
+		int x = parse(path.get(2), "x");
+		int y = parse(last.substring(0, last.length() - 4), "y");
+		
+		if(!layer.pyramid.contains(z, x, y)) {
+			throw new RequestException(404, "Tile fora da imagem");
+		}
+		
+		String key = name + '/' + z + '/' + x + '/' + y;
+		
+		byte png[] = cache.get(key);
+		
+		if(png == null) {
+			png = layer.pyramid.encodeTile(z, x, y);
+			cache.put(key, png);
+		}
+		
+		return png;
+	}
+	
+	/**
+	 * Desenha uma região da imagem em tamanho real. A região é limitada às
+	 * dimensões da imagem
+	 * 
+	 * @param layer A árvore
+	 * @param query Os parâmetros x, y, width e height
+	 * 
+	 * @return O PNG da região
+	 * 
+	 * @throws RequestException Parâmetros inválidos
+	 * @throws IOException Erro ao codificar o PNG
+	 */
+	private byte[] region(Layer layer, Map<String, String> query)
+			throws RequestException, IOException {
+		
+		Rectangle region = new Rectangle(parse(query, "x"),
+				parse(query, "y"), parse(query, "width"),
+				parse(query, "height")).intersection(new Rectangle(0, 0,
+						layer.tree.getWidth(), layer.tree.getHeight()));
+		
+		if(region.isEmpty()) {
+			throw new RequestException(400, "Região fora da imagem");
+		}
+		
+		if((long) region.width * region.height > MAX_REGION_PIXELS) {
+			throw new RequestException(400, "Região maior que " +
+					MAX_REGION_PIXELS + " pixels");
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(LoadImage.toImage(layer.tree.render(region)), "png",
+				out);
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Retorna a cor de um pixel
+	 * 
+	 * @param layer A árvore
+	 * @param query Os parâmetros x e y
+	 * 
+	 * @return O JSON com a posição e a cor (#AARRGGBB) do pixel
+	 * 
+	 * @throws RequestException Parâmetros inválidos
+	 */
+	private byte[] point(Layer layer, Map<String, String> query)
+			throws RequestException {
+		
+		int x = parse(query, "x");
+		int y = parse(query, "y");
+		
+		if(x < 0 || y < 0 || x >= layer.tree.getWidth() ||
+				y >= layer.tree.getHeight()) {
+			throw new RequestException(400, "Pixel fora da imagem");
+		}
+		
+		return json(String.format(Locale.ROOT,
+				"{\"x\": %d, \"y\": %d, \"color\": \"#%08X\"}%n", x, y,
+				layer.tree.getColor(x, y)));
+	}
+	
+	/**
+	 * Retorna o descritor da pirâmide de tiles de uma árvore
+	 * 
+	 * @param layer A árvore
+	 * 
+	 * @return O JSON do descritor
+	 */
+	private byte[] descriptor(Layer layer) {
+		return json(String.format(Locale.ROOT,
+				"{%n" +
+				"  \"scheme\": \"xyz\",%n" +
+				"  \"format\": \"png\",%n" +
+				"  \"url\": \"{z}/{x}/{y}.png\",%n" +
+				"  \"width\": %d,%n" +
+				"  \"height\": %d,%n" +
+				"  \"tileSize\": %d,%n" +
+				"  \"minZoom\": 0,%n" +
+				"  \"maxZoom\": %d,%n" +
+				"  \"accuracy\": %s,%n" +
+				"  \"nodes\": %d%n" +
+				"}%n",
+				layer.tree.getWidth(), layer.tree.getHeight(), tileSize,
+				layer.pyramid.getMaxZoom(),
+				Double.toString(layer.tree.getAccuracy()),
+				layer.tree.getNodeCount()));
+	}
+	
+	/**
+	 * Retorna a lista das árvores carregadas
+	 * 
+	 * @return O JSON com o nome e as dimensões de cada árvore
+	 */
+	private byte[] list() {
+		
+		StringBuilder sb = new StringBuilder("[");
+		
+		for(Map.Entry<String, Layer> e : layers.entrySet()) {
+			
+			if(sb.length() > 1) sb.append(',');
+			
+			sb.append(String.format(Locale.ROOT, "%n  {\"name\": \"%s\", " +
+					"\"width\": %d, \"height\": %d}", escape(e.getKey()),
+					e.getValue().tree.getWidth(),
+					e.getValue().tree.getHeight()));
+		}
+		
+		sb.append(String.format("%n]%n"));
+		
+		return json(sb.toString());
+	}
+	
+	/**
+	 * Retorna as métricas das requisições e do cache de tiles
+	 * 
+	 * @return O JSON das métricas, com as latências em milissegundos
+	 */
+	private byte[] metrics() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(String.format(Locale.ROOT, "{%n" +
+				"  \"virtualThreads\": %b,%n" +
+				"  \"cache\": {\"tiles\": %d, \"bytes\": %d, " +
+				"\"hits\": %d, \"misses\": %d},%n" +
+				"  \"requests\": {", virtual, cache.size(), cache.getBytes(),
+				cache.getHits(), cache.getMisses()));
+		
+		boolean first = true;
+		
+		for(RequestMetrics m : metrics.values()) {
+			
+			sb.append(first ? "" : ",");
+			first = false;
+			
+			sb.append(String.format(Locale.ROOT, "%n    \"%s\": " +
+					"{\"count\": %d, \"failures\": %d, \"mean\": %.3f, " +
+					"\"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, " +
+					"\"max\": %.3f}", m.getName(), m.getCount(),
+					m.getFailures(), m.getMeanNanos() / 1e6,
+					m.getPercentileNanos(50) / 1e6,
+					m.getPercentileNanos(95) / 1e6,
+					m.getPercentileNanos(99) / 1e6, m.getMaxNanos() / 1e6));
+		}
+		
+		sb.append(String.format("%n  }%n}%n"));
+		
+		return json(sb.toString());
+	}
+	
+	/**
+	 * Retorna as métricas de um tipo de requisição
+	 * 
+	 * @param type O tipo: "tile", "região", "ponto", "descritor" ou "outras"
+	 * 
+	 * @return As métricas ou null se o tipo não existe
+	 */
+	public RequestMetrics getMetrics(String type) {
+		return metrics.get(type);
+	}
+	
+	/**
+	 * Retorna a porta do servidor
+	 * 
+	 * @return A porta em que o servidor atende ou a porta configurada se o
+	 * 		   servidor não foi iniciado
+	 */
+	public synchronized int getPort() {
+		return server != null ? server.getAddress().getPort() :
+			address.getPort();
+	}
+	
+	/**
+	 * Verifica se as requisições são atendidas por <i>virtual threads</i>
+	 * 
+	 * @return true se cada requisição é atendida por uma
+	 * 		   <i>virtual thread</i>
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+	
+	/**
+	 * Lê os parâmetros da URL de uma requisição
+	 * 
+	 * @param exchange A requisição
+	 * 
+	 * @return Os parâmetros por nome
+	 * 
+	 * @throws UnsupportedEncodingException Nunca ocorre: UTF-8 é suportado
+	 */
+	private static Map<String, String> query(HttpExchange exchange)
+			throws UnsupportedEncodingException {
+		
+		Map<String, String> query = new HashMap<>();
+		
+		String raw = exchange.getRequestURI().getRawQuery();
+		if(raw == null) return query;
+		
+		for(String pair : raw.split("&")) {
+			
+			int eq = pair.indexOf('=');
+			if(eq <= 0) continue;
+			
+			query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+					URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+		
+		return query;
+	}
+	
+	/**
+	 * Lê um parâmetro inteiro da URL
+	 * 
+	 * @param query Os parâmetros da URL
+	 * @param name O nome do parâmetro
+	 * 
+	 * @return O valor do parâmetro
+	 * 
+	 * @throws RequestException Parâmetro ausente ou inválido
+	 */
+	private static int parse(Map<String, String> query, String name)
+			throws RequestException {
+		
+		String value = query.get(name);
+		
+		if(value == null) {
+			throw new RequestException(400, "Parâmetro ausente: " + name);
+		}
+		
+		return parse(value, name);
+	}
+	
+	/**
+	 * Converte um valor inteiro da requisição
+	 * 
+	 * @param value O valor
+	 * @param name O nome do valor, utilizado na mensagem de erro
+	 * 
+	 * @return O valor convertido
+	 * 
+	 * @throws RequestException Valor inválido
+	 */
+	private static int parse(String value, String name)
+			throws RequestException {
+		
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new RequestException(400, "Valor inválido de " + name +
+					": " + value);
+		}
+	
+	}
+	
+	/**
+	 * Codifica um JSON em UTF-8
+	 * 
+	 * @param json O JSON
+	 * 
+	 * @return Os bytes do JSON
+	 */
+	private static byte[] json(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Escapa as aspas e as barras invertidas de uma string JSON
+	 * 
+	 * @param s A string
+	 * 
+	 * @return A string escapada
+	 */
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+	
+	/**
+	 * Envia uma resposta de sucesso
+	 * 
+	 * @param exchange A requisição
+	 * @param contentType O tipo do conteúdo
+	 * @param body O conteúdo
+	 * 
+	 * @throws IOException Erro ao enviar a resposta
+	 */
+	private static void send(HttpExchange exchange, String contentType,
+			byte body[]) throws IOException {
+		send(exchange, 200, contentType, body);
+	}
+	
+	/**
+	 * Envia uma resposta de erro. Erros ao enviar a resposta são ignorados:
+	 * o cliente pode ter encerrado a conexão
+	 * 
+	 * @param exchange A requisição
+	 * @param status O código HTTP
+	 * @param message A mensagem de erro
+	 */
+	private static void error(HttpExchange exchange, int status,
+			String message) {
+		
+		try {
+			send(exchange, status, "text/plain; charset=utf-8",
+					(message + "\n").getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			//conexão encerrada
+		}
+	
+	}
+	
+	/**
+	 * Envia uma resposta
+	 * 
+	 * @param exchange A requisição
+	 * @param status O código HTTP
+	 * @param contentType O tipo do conteúdo
+	 * @param body O conteúdo
+	 * 
+	 * @throws IOException Erro ao enviar a resposta
+	 */
+	private static void send(HttpExchange exchange, int status,
+			String contentType, byte body[]) throws IOException {
+		
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.getResponseHeaders().set("Access-Control-Allow-Origin",
+				"*");
+		exchange.sendResponseHeaders(status, body.length);
+		
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	
+	}
+	
+	@Override
+	public String toString() {
+		
+		StringBuilder sb = new StringBuilder(String.format(
+				"%d árvores, cache %d tiles (%.1f MB), %d acertos, " +
+				"%d falhas", layers.size(), cache.size(),
+				cache.getBytes() / 1048576.0, cache.getHits(),
+				cache.getMisses()));
+		
+		for(RequestMetrics m : metrics.values()) {
+			sb.append(String.format("%n  ")).append(m);
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Inicia o servidor com os arquivos .quad de uma lista de arquivos e
+	 * diretórios. As métricas são impressas no encerramento da JVM
+	 * 
+	 * @param args A porta seguida dos arquivos e diretórios
+	 * 
+	 * @throws IOException Erro ao ler um arquivo ou ao abrir a porta
+	 */
+	public static void main(String[] args) throws IOException {
+		
+		if(args.length < 2) {
+			System.err.println("Uso: TileServer porta arquivos...");
+			return;
+		}
+		
+		final TileServer server = new TileServer(Integer.parseInt(args[0]));
+		
+		for(int i = 1; i < args.length; ++i) {
+			
+			File file = new File(args[i]);
+			
+			File files[] = file.isDirectory() ? file.listFiles() :
+				new File[] {file};
+			
+			if(files == null) continue;
+			
+			for(File f : files) {
+				if(f.isFile() && f.getName().toLowerCase(Locale.ROOT)
+						.endsWith(".quad")) {
+					System.out.println("Carregada: " + server.load(f));
+				}
+			}
+		}
+		
+		server.start();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			
+			@Override
+			public void run() {
+				System.out.println(server);
+				server.close();
+			}
+		
+		});
+		
+		System.out.println("Servidor em http://localhost:" +
+				server.getPort() + "/" + (server.isVirtual() ?
+						" (virtual threads)" : ""));
+	
+	}
+	
+	/**
+	 * <p>Árvore carregada e o gerador dos seus tiles.</p>
+	 * 
+	 * <p>A árvore é fechada quando o servidor a descarta e nenhuma requisição
+	 * a utiliza: cada requisição mantém uma referência à árvore enquanto a 
+	 * desenha, de modo que a memória dos buffers não é liberada durante o 
+	 * desenho.</p>
+	 */
+	private static class Layer {
+		
+		/**
+		 * A árvore
+		 */
+		private OffHeapQuadTree tree;
+		
+		/**
+		 * O gerador dos tiles da árvore
+		 */
+		private TilePyramid pyramid;
+		
+		/**
+		 * Número de requisições que utilizam a árvore, mais um enquanto a 
+		 * árvore está no servidor. A árvore é fechada ao chegar a zero
+		 */
+		private int references = 1;
+		
+		/**
+		 * Cria a árvore carregada
+		 * 
+		 * @param tree A árvore
+		 * @param pyramid O gerador dos tiles
+		 */
+		private Layer(OffHeapQuadTree tree, TilePyramid pyramid) {
+			this.tree = tree;
+			this.pyramid = pyramid;
+		}
+		
+		/**
+		 * Adiciona uma referência à árvore
+		 * 
+		 * @return true se a árvore pode ser utilizada
+		 * 		   false se ela já foi fechada
+		 */
+		private synchronized boolean acquire() {
+			
+			if(references == 0) return false;
+			
+			references++;
+			
+			return true;
+		}
+		
+		/**
+		 * Remove uma referência à árvore, fechando-a se ela não é mais 
+		 * utilizada
+		 */
+		private synchronized void release() {
+			if(--references == 0) tree.close();
+		}
+	
+	}
+	
+	/**
+	 * <p>Requisição inválida, respondida com um código de erro HTTP.</p>
+	 */
+	private static class RequestException extends Exception {
+		
+		/**
+		 * Serial version
+		 */
+		private static final long serialVersionUID = 4186210475230394912L;
+		
+		/**
+		 * O código HTTP
+		 */
+		private int status;
+		
+		/**
+		 * Cria a exceção
+		 * 
+		 * @param status O código HTTP
+		 * @param message A mensagem de erro
+		 */
+		private RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	
+	}
+
+}
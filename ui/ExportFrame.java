@@ -1,6 +1,7 @@
 package quadtree.ui;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
@@ -8,7 +9,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.GroupLayout;
 import javax.swing.GroupLayout.Alignment;
@@ -20,6 +26,17 @@ import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.LayoutStyle.ComponentPlacement;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import quadtree.batch.AccuracyTuner;
+import quadtree.batch.TunedTree;
+import quadtree.core.SizeEstimate;
+import quadtree.core.SizeEstimator;
+import quadtree.ui.components.EstimateChart;
+import quadtree.util.ImageCache;
 
 /**
  * <p><i>Frame</i> para configurar a exportação de uma imagem para uma 
@@ -27,8 +44,17 @@ import javax.swing.SpinnerNumberModel;
  * 
  * <p>Apresenta a precisão desejada e a opção de cancelar a exportação.</p>
  * 
+ * <p>Enquanto a precisão é ajustada, apresenta as estimativas do número de 
+ * nós, da memória e do tamanho do arquivo da árvore, calculadas em segundo 
+ * plano por {@link SizeEstimator}: a curva das estimativas em função da 
+ * precisão e os valores da precisão selecionada. A memória estimada é 
+ * comparada com o limite de memória da JVM.</p>
+ * 
+ * <p>A precisão pode ser ajustada automaticamente à menor precisão que 
+ * atende a uma PSNR mínima ({@link AccuracyTuner}).</p>
+ * 
  * @author pedro
- *
+ * 
  */
 public class ExportFrame extends JDialog {
 	
@@ -37,6 +63,12 @@ public class ExportFrame extends JDialog {
 	 */
 	private static final long serialVersionUID = -3943394636921260626L;
 	
+	/**
+	 * Precisões (em %) da curva de estimativas
+	 */
+	private static final double CURVE[] = {0, 10, 20, 30, 40, 50, 60, 70, 
+			80, 85, 90, 92.5, 95, 97.5, 99, 99.5, 100};
+	
 	/**
 	 * Botão para cancelar a exportação
 	 */
@@ -57,21 +89,84 @@ public class ExportFrame extends JDialog {
 	 * Armazena se a exportação foi confirmada ou cancelada
 	 */
 	private boolean export;
-
+	
+	/**
+	 * Gráfico das estimativas em função da precisão
+	 */
+	private EstimateChart chart;
+	
+	/**
+	 * Apresenta as estimativas da precisão selecionada
+	 */
+	private JLabel lblEstimate;
+	
+	/**
+	 * Cálculo das estimativas em segundo plano ou null se a imagem não foi 
+	 * informada
+	 */
+	private EstimateTask estimateTask;
+	
+	/**
+	 * O arquivo da imagem a ser exportada ou null
+	 */
+	private File file;
+	
+	/**
+	 * Apresenta a PSNR mínima do ajuste da precisão
+	 */
+	private JSpinner spinnerPsnr;
+	
+	/**
+	 * Botão para ajustar a precisão à PSNR mínima
+	 */
+	private JButton btnTune;
+	
+	/**
+	 * Apresenta o resultado do ajuste da precisão
+	 */
+	private JLabel lblTune;
+	
+	/**
+	 * Thread do ajuste da precisão em andamento ou null
+	 */
+	private Thread tuneThread;
+	
 	/**
 	 * Cria a instância de um frame para a exportação da imagem para uma 
 	 * QuadTree
+	 * 
+	 * @param file O arquivo da imagem a ser exportada, utilizado para estimar 
+	 * 			   o tamanho da árvore, ou null
 	 */
-	public ExportFrame() {
+	public ExportFrame(File file) {
 		
 		export = false;
 		
+		this.file = file;
+		
 		//inicializa os componentes gráficos
 		initComponents();
 		
 		//define os listeners
 		setListeners();
 		
+		//inicia o cálculo das estimativas
+		if(file != null) {
+			
+			estimateTask = new EstimateTask(file);
+			
+			Thread thread = new Thread(estimateTask, "QuadTree-estimativa");
+			thread.setDaemon(true);
+			thread.start();
+			
+			updateEstimate();
+		}
+		else {
+			chart.setVisible(false);
+			lblEstimate.setVisible(false);
+			spinnerPsnr.getParent().setVisible(false);
+		}
+		
 	}
 	
 	/**
@@ -80,10 +175,14 @@ public class ExportFrame extends JDialog {
 	private void initComponents() {
 		
 		setTitle("Exportar para QuadTree");
-		setMinimumSize(new Dimension(300, 120));
+		setMinimumSize(new Dimension(420, 360));
 		setResizable(false);
 		setModal(true);
 		
+		//o fechamento pela barra de título também interrompe as tarefas em
+		//segundo plano (dispose)
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		
 		JPanel buttonsPanel = new JPanel();
 		
 		FlowLayout flowLayout = (FlowLayout) buttonsPanel.getLayout();
@@ -99,7 +198,32 @@ public class ExportFrame extends JDialog {
 		buttonsPanel.add(btnExport);
 		
 		JPanel spinnerPanel = new JPanel();
-		getContentPane().add(spinnerPanel, BorderLayout.CENTER);
+		getContentPane().add(spinnerPanel, BorderLayout.NORTH);
+		
+		JPanel estimatePanel = new JPanel(new BorderLayout());
+		estimatePanel.setBorder(new EmptyBorder(0, 10, 0, 10));
+		getContentPane().add(estimatePanel, BorderLayout.CENTER);
+		
+		chart = new EstimateChart();
+		estimatePanel.add(chart, BorderLayout.CENTER);
+		
+		lblEstimate = new JLabel(" ");
+		estimatePanel.add(lblEstimate, BorderLayout.SOUTH);
+		
+		JPanel tunePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		estimatePanel.add(tunePanel, BorderLayout.NORTH);
+		
+		tunePanel.add(new JLabel("PSNR mínima (dB)"));
+		
+		spinnerPsnr = new JSpinner(new SpinnerNumberModel(35.0, 10.0, 80.0, 
+				0.5));
+		tunePanel.add(spinnerPsnr);
+		
+		btnTune = new JButton("Ajustar precisão");
+		tunePanel.add(btnTune);
+		
+		lblTune = new JLabel();
+		tunePanel.add(lblTune);
 		
 		JLabel label = new JLabel("Precisão");
 		
@@ -152,6 +276,25 @@ public class ExportFrame extends JDialog {
 		btnCancel.addActionListener(btnListener);
 		btnExport.addActionListener(btnListener);
 		
+		btnTune.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				tune();
+			}
+			
+		});
+		
+		//atualiza as estimativas a cada alteração da precisão
+		spinnerAccuracy.addChangeListener(new ChangeListener() {
+			
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				updateEstimate();
+			}
+			
+		});
+		
 		//permite que ao apertar o botão enter a exportação se confirmada e
 		//que com o esc a exportação seja cancelada
 		Component editor = spinnerAccuracy.getEditor().getComponent(0);
@@ -176,6 +319,166 @@ public class ExportFrame extends JDialog {
 		
 	}
 	
+	/**
+	 * Apresenta a estimativa da precisão selecionada ou solicita o seu 
+	 * cálculo
+	 */
+	private void updateEstimate() {
+		
+		if(estimateTask == null) return;
+		
+		double accuracy = getAccuracy() / 100.0;
+		
+		chart.setSelected(accuracy);
+		
+		SizeEstimate estimate = chart.get(accuracy);
+		
+		if(estimate == null) {
+			estimateTask.request(accuracy);
+			return;
+		}
+		
+		long limit = Runtime.getRuntime().maxMemory();
+		
+		lblEstimate.setText(String.format("<html>%d ± %d nós<br>" + 
+				"Memória: %s ± %s (pico %s, limite %s)<br>" + 
+				"Arquivo: %s ± %s</html>", estimate.getNodeCount(), 
+				estimate.getNodeCountError(), 
+				format(estimate.getMemoryBytes()), 
+				format(estimate.getMemoryError()), 
+				format(estimate.getPeakMemoryBytes()), format(limit), 
+				format(estimate.getFileBytes()), 
+				format(estimate.getFileError())));
+		
+		//a construção pode exceder a memória disponível
+		lblEstimate.setForeground(estimate.fits(limit) ? 
+				getForeground() : Color.RED);
+		
+	}
+	
+	/**
+	 * Apresenta uma estimativa calculada em segundo plano
+	 * 
+	 * @param estimate A estimativa
+	 */
+	private void estimated(SizeEstimate estimate) {
+		
+		chart.add(estimate);
+		
+		if(estimate.getAccuracy() == getAccuracy() / 100.0) updateEstimate();
+		
+	}
+	
+	/**
+	 * Apresenta a falha do cálculo das estimativas
+	 * 
+	 * @param error O erro ao ler a imagem
+	 */
+	private void failed(IOException error) {
+		
+		chart.setVisible(false);
+		
+		lblEstimate.setText("Estimativa indisponível: " + error.getMessage());
+		
+	}
+	
+	/**
+	 * Inicia em segundo plano o ajuste da precisão à PSNR mínima. A imagem é
+	 * decodificada e as árvores candidatas são construídas por 
+	 * {@link AccuracyTuner}; ao final a precisão encontrada é selecionada
+	 */
+	private void tune() {
+		
+		final double psnr = (double) spinnerPsnr.getValue();
+		
+		btnTune.setEnabled(false);
+		lblTune.setText("Ajustando...");
+		
+		tuneThread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				String text;
+				Double accuracy = null;
+				
+				try {
+					
+					ImageCache cache = ImageCache.getInstance();
+					
+					AccuracyTuner tuner = new AccuracyTuner(
+							cache.getPixels(file), cache.getStatistics(file));
+					tuner.setMinPsnr(psnr);
+					
+					TunedTree tuned = tuner.tune();
+					
+					accuracy = tuned.getAccuracy() * 100;
+					text = String.format("PSNR %.1f dB", 
+							tuned.getMetrics().getPsnr());
+					
+				} catch (CancellationException e) {
+					//diálogo fechado
+					return;
+				} catch (IOException | RuntimeException | 
+						OutOfMemoryError e) {
+					text = "Ajuste indisponível: " + e.getMessage();
+				} finally {
+					//as estatísticas cresceram durante o ajuste
+					ImageCache.getInstance().trim();
+				}
+				
+				final String result = text;
+				final Double selected = accuracy;
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						btnTune.setEnabled(true);
+						lblTune.setText(result);
+						
+						if(selected != null) spinnerAccuracy.setValue(selected);
+						
+					}
+					
+				});
+				
+			}
+			
+		}, "QuadTree-ajuste");
+		
+		tuneThread.setDaemon(true);
+		tuneThread.start();
+		
+	}
+	
+	/**
+	 * Formata um tamanho em bytes
+	 * 
+	 * @param bytes O tamanho em bytes
+	 * 
+	 * @return O tamanho formatado em KB, MB ou GB
+	 */
+	private static String format(long bytes) {
+		
+		if(bytes < 1L << 20) return String.format("%.1f KB", bytes / 1024.0);
+		if(bytes < 1L << 30) return String.format("%.1f MB", bytes / 1048576.0);
+		
+		return String.format("%.2f GB", bytes / 1073741824.0);
+	}
+	
+	@Override
+	public void dispose() {
+		
+		//interrompe o cálculo das estimativas e o ajuste da precisão
+		if(estimateTask != null) estimateTask.close();
+		if(tuneThread != null) tuneThread.interrupt();
+		
+		super.dispose();
+		
+	}
+	
 	/**
 	 * Retorna se a exportação foi confirmada ou cancelada
 	 * 
@@ -200,4 +503,138 @@ public class ExportFrame extends JDialog {
 		
 		return accuracy;
 	}
+	
+	/**
+	 * <p>Cálculo das estimativas em segundo plano.</p>
+	 * 
+	 * <p>A precisão selecionada tem prioridade sobre os pontos da curva: 
+	 * cada alteração da precisão é atendida assim que a estimativa em 
+	 * andamento termina.</p>
+	 */
+	private class EstimateTask implements Runnable {
+		
+		/**
+		 * O arquivo da imagem
+		 */
+		private File file;
+		
+		/**
+		 * Precisões da curva ainda não calculadas
+		 */
+		private Deque<Double> curve;
+		
+		/**
+		 * Precisão selecionada ainda não calculada ou null
+		 */
+		private Double requested;
+		
+		/**
+		 * Armazena se o cálculo foi interrompido
+		 */
+		private boolean closed;
+		
+		/**
+		 * Cria o cálculo das estimativas de uma imagem
+		 * 
+		 * @param file O arquivo da imagem
+		 */
+		private EstimateTask(File file) {
+			
+			this.file = file;
+			
+			curve = new ArrayDeque<>();
+			for(double accuracy : CURVE) curve.add(accuracy / 100.0);
+			
+		}
+		
+		/**
+		 * Solicita a estimativa de uma precisão
+		 * 
+		 * @param accuracy A precisão, entre 0 e 1
+		 */
+		private synchronized void request(double accuracy) {
+			
+			requested = accuracy;
+			
+			notifyAll();
+			
+		}
+		
+		/**
+		 * Interrompe o cálculo
+		 */
+		private synchronized void close() {
+			
+			closed = true;
+			
+			notifyAll();
+			
+		}
+		
+		/**
+		 * Aguarda a próxima precisão a ser calculada
+		 * 
+		 * @return A precisão ou null se o cálculo foi interrompido
+		 * 
+		 * @throws InterruptedException A thread foi interrompida
+		 */
+		private synchronized Double next() throws InterruptedException {
+			
+			while(!closed && requested == null && curve.isEmpty()) wait();
+			
+			if(closed) return null;
+			
+			Double accuracy = requested;
+			requested = null;
+			
+			if(accuracy == null) return curve.poll();
+			
+			//a precisão selecionada não é calculada novamente na curva
+			curve.remove(accuracy);
+			
+			return accuracy;
+		}
+		
+		@Override
+		public void run() {
+			
+			try {
+				
+				SizeEstimator estimator = new SizeEstimator(file);
+				
+				Double accuracy;
+				
+				while((accuracy = next()) != null) {
+					
+					final SizeEstimate estimate = 
+							estimator.estimate(accuracy);
+					
+					SwingUtilities.invokeLater(new Runnable() {
+						
+						@Override
+						public void run() {
+							estimated(estimate);
+						}
+						
+					});
+				}
+				
+			} catch (final IOException e) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						failed(e);
+					}
+					
+				});
+				
+			} catch (InterruptedException e) {
+				//cálculo interrompido
+			}
+			
+		}
+		
+	}
 }
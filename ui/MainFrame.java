@@ -205,6 +205,42 @@ public class MainFrame extends JFrame {
 		tabs.setSelectedComponent(component);
 	}
 	
+	/**
+	 * Substitui o componente de uma aba, mantendo a posição da aba
+	 * 
+	 * @param old O componente atual da aba
+	 * @param title O novo título da aba
+	 * @param component O novo componente da aba
+	 * 
+	 * @return true se a aba foi substituída
+	 * 		   false se a aba já foi fechada
+	 */
+	public boolean replaceTab(Component old, String title, 
+			Component component) {
+		
+		int index = tabs.indexOfComponent(old);
+		
+		if(index == -1) return false;
+		
+		boolean selected = tabs.getSelectedIndex() == index;
+		
+		tabs.remove(index);
+		tabs.insertTab(title, null, component, null, index);
+		
+		if(selected) tabs.setSelectedComponent(component);
+		
+		return true;
+	}
+	
+	/**
+	 * Remove a aba de um componente, se ainda aberta
+	 * 
+	 * @param component O componente da aba
+	 */
+	public void removeTab(Component component) {
+		tabs.remove(component);
+	}
+	
 	/**
 	 * Permite (des)habilitar o menu de salvar a QuadTree
 	 * O menu de exportação só está disponível para QuadTrees
@@ -14,6 +14,7 @@ import java.awt.event.MouseEvent;
 
 import javax.swing.AbstractButton;
 import javax.swing.BorderFactory;
+import javax.swing.Icon;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -35,17 +36,17 @@ public class ButtonTabbedPane extends JTabbedPane {
 	private static final long serialVersionUID = 4805006657498099197L;
 	
 	@Override
-	public Component add(String title, Component component) {
+	public void insertTab(String title, Icon icon, Component component, 
+			String tip, int index) {
 		
-		Component c = super.add(title, component);
-		ImageView imageView = (ImageView) c;
+		super.insertTab(title, icon, component, tip, index);
+		ImageView imageView = (ImageView) component;
 		
-		int index = getTabCount() - 1;
+		index = indexOfComponent(component);
 		
 		setToolTipTextAt(index, imageView.getPath());
 		setTabComponentAt(index, new ButtonTabComponent(this));
 		
-		return c;
 	}
 	
 	/**
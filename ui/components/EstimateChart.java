@@ -0,0 +1,229 @@
+package quadtree.ui.components;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import javax.swing.JComponent;
+
+import quadtree.core.SizeEstimate;
+
+/**
+ * <p>Gráfico das estimativas do tamanho de uma QuadTree em função da
+ * precisão.</p>
+ * 
+ * <p>Apresenta duas curvas, cada uma normalizada pelo seu maior valor: o
+ * número de nós, ao qual a memória ocupada é proporcional, e o tamanho do
+ * arquivo .quad. A precisão selecionada é marcada por uma linha vertical. As
+ * estimativas podem ser adicionadas à medida que são calculadas.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class EstimateChart extends JComponent {
+	
+	/**
+	 * Serial version
+	 */
+	private static final long serialVersionUID = -6212538829041753365L;
+	
+	/**
+	 * Cor da curva do número de nós
+	 */
+	private static final Color NODES_COLOR = new Color(0x1F77B4);
+	
+	/**
+	 * Cor da curva do tamanho do arquivo
+	 */
+	private static final Color FILE_COLOR = new Color(0xFF7F0E);
+	
+	/**
+	 * Margem do gráfico
+	 */
+	private static final int MARGIN = 24;
+	
+	/**
+	 * As estimativas por precisão
+	 */
+	private TreeMap<Double, SizeEstimate> estimates;
+	
+	/**
+	 * A precisão selecionada, entre 0 e 1
+	 */
+	private double selected;
+	
+	/**
+	 * Cria o gráfico vazio
+	 */
+	public EstimateChart() {
+		
+		estimates = new TreeMap<>();
+		selected = -1;
+		
+		setPreferredSize(new Dimension(360, 160));
+	
+	}
+	
+	/**
+	 * Adiciona uma estimativa ao gráfico
+	 * 
+	 * @param estimate A estimativa
+	 */
+	public void add(SizeEstimate estimate) {
+		
+		estimates.put(estimate.getAccuracy(), estimate);
+		
+		repaint();
+	
+	}
+	
+	/**
+	 * Retorna a estimativa de uma precisão
+	 * 
+	 * @param accuracy A precisão, entre 0 e 1
+	 * 
+	 * @return A estimativa ou null se ela ainda não foi calculada
+	 */
+	public SizeEstimate get(double accuracy) {
+		return estimates.get(accuracy);
+	}
+	
+	/**
+	 * Define a precisão selecionada
+	 * 
+	 * @param accuracy A precisão, entre 0 e 1
+	 */
+	public void setSelected(double accuracy) {
+		
+		selected = accuracy;
+		
+		repaint();
+	
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		
+		super.paintComponent(g);
+		
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		
+		int left = MARGIN;
+		int top = MARGIN / 2;
+		int width = getWidth() - 2 * MARGIN;
+		int height = getHeight() - MARGIN - top;
+		
+		FontMetrics fm = g2.getFontMetrics();
+		
+		//eixos
+		g2.setColor(Color.GRAY);
+		g2.drawLine(left, top + height, left + width, top + height);
+		g2.drawLine(left, top, left, top + height);
+		
+		for(int p = 0; p <= 100; p += 25) {
+			
+			int x = left + width * p / 100;
+			String label = p + "%";
+			
+			g2.drawLine(x, top + height, x, top + height + 3);
+			g2.drawString(label, x - fm.stringWidth(label) / 2,
+					top + height + 3 + fm.getAscent());
+		}
+		
+		if(estimates.isEmpty()) {
+			
+			String label = "Calculando estimativas...";
+			
+			g2.drawString(label, left + (width - fm.stringWidth(label)) / 2,
+					top + height / 2);
+			
+			g2.dispose();
+			
+			return;
+		}
+		
+		long maxNodes = 1;
+		long maxFile = 1;
+		
+		for(SizeEstimate e : estimates.values()) {
+			maxNodes = Math.max(maxNodes, e.getNodeCount());
+			maxFile = Math.max(maxFile, e.getFileBytes());
+		}
+		
+		List<int[]> nodes = new ArrayList<>();
+		List<int[]> file = new ArrayList<>();
+		
+		for(SizeEstimate e : estimates.values()) {
+			
+			int x = left + (int) Math.round(width * e.getAccuracy());
+			
+			nodes.add(new int[] {x, top + height -
+					(int) Math.round(height * e.getNodeCount() /
+							(double) maxNodes)});
+			file.add(new int[] {x, top + height -
+					(int) Math.round(height * e.getFileBytes() /
+							(double) maxFile)});
+		}
+		
+		g2.setStroke(new BasicStroke(2));
+		
+		drawCurve(g2, file, FILE_COLOR);
+		drawCurve(g2, nodes, NODES_COLOR);
+		
+		//legenda
+		g2.setColor(NODES_COLOR);
+		g2.drawString("nós / memória", left + 6, top + fm.getAscent());
+		g2.setColor(FILE_COLOR);
+		g2.drawString("arquivo", left + 6, top + 2 * fm.getAscent());
+		
+		//precisão selecionada
+		if(selected >= 0) {
+			
+			int x = left + (int) Math.round(width * selected);
+			
+			g2.setColor(Color.RED);
+			g2.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT,
+					BasicStroke.JOIN_MITER, 1, new float[] {3, 3}, 0));
+			g2.drawLine(x, top, x, top + height);
+		}
+		
+		g2.dispose();
+	
+	}
+	
+	/**
+	 * Desenha uma curva e os seus pontos
+	 * 
+	 * @param g2 O contexto gráfico
+	 * @param points Os pontos da curva, ordenados pela precisão
+	 * @param color A cor da curva
+	 */
+	private void drawCurve(Graphics2D g2, List<int[]> points, Color color) {
+		
+		g2.setColor(color);
+		
+		int previous[] = null;
+		
+		for(int point[] : points) {
+			
+			if(previous != null) {
+				g2.drawLine(previous[0], previous[1], point[0], point[1]);
+			}
+			
+			g2.fillOval(point[0] - 2, point[1] - 2, 5, 5);
+			
+			previous = point;
+		}
+	
+	}
+
+}
@@ -0,0 +1,121 @@
+package quadtree.ui.components;
+
+import java.awt.FlowLayout;
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.Future;
+
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+
+/**
+ * <p>Painel exibido no lugar de uma QuadTree durante a sua construção.</p>
+ * 
+ * <p>Apresenta o progresso da construção e permite cancelá-la. A construção
+ * também é cancelada se a aba do painel é fechada.</p>
+ * 
+ * @author pedro
+ *
+ */
+public class ProgressView extends ImageView {
+	
+	/**
+	 * Serial version
+	 */
+	private static final long serialVersionUID = 2716324095113872301L;
+	
+	/**
+	 * Barra de progresso da construção
+	 */
+	private JProgressBar progressBar;
+	
+	/**
+	 * Botão para cancelar a construção
+	 */
+	private JButton btnCancel;
+	
+	/**
+	 * A construção acompanhada pelo painel
+	 */
+	private Future<?> task;
+	
+	/**
+	 * Cria a instância do painel de progresso
+	 * 
+	 * @param name O nome da imagem em construção
+	 * @param path O caminho absoluto do arquivo da imagem
+	 */
+	public ProgressView(String name, String path) {
+		
+		super(name, path);
+		
+		setLayout(new GridBagLayout());
+		
+		JPanel panel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+		
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		panel.add(progressBar);
+		
+		btnCancel = new JButton("Cancelar");
+		btnCancel.setIcon(new ImageIcon(ProgressView.class
+				.getResource("/quadtree/resources/cancel.png")));
+		panel.add(btnCancel);
+		
+		add(panel);
+		
+		btnCancel.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel();
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Define a construção acompanhada pelo painel
+	 * 
+	 * @param task A construção
+	 */
+	public void setTask(Future<?> task) {
+		this.task = task;
+	}
+	
+	/**
+	 * Atualiza a barra de progresso
+	 * 
+	 * @param done O trabalho concluído
+	 * @param total O trabalho total
+	 */
+	public void setProgress(long done, long total) {
+		progressBar.setValue((int) (100 * done / Math.max(1, total)));
+	}
+	
+	/**
+	 * Cancela a construção
+	 */
+	public void cancel() {
+		
+		btnCancel.setEnabled(false);
+		
+		if(task != null) task.cancel(true);
+		
+	}
+	
+	@Override
+	public void removeNotify() {
+		
+		//a aba foi fechada
+		cancel();
+		
+		super.removeNotify();
+		
+	}
+
+}
@@ -2,17 +2,20 @@ package quadtree.ui.components;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
-import javax.swing.ImageIcon;
+import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JSlider;
 import javax.swing.SwingConstants;
@@ -20,6 +23,8 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import quadtree.core.Node;
+import quadtree.core.NodeTraversal;
+import quadtree.core.NodeVisitor;
 import quadtree.core.QuadTree;
 
 /**
@@ -31,15 +36,26 @@ import quadtree.core.QuadTree;
  * árvore.</p>
  * 
  * @author pedro
- *
+ * 
  */
 public class QuadTreeImageView extends ImageView {
-
+	
 	/**
 	 * Serial version
 	 */
 	private static final long serialVersionUID = -4780788625883802149L;
 	
+	/**
+	 * Menor dimensão, em pixels da tela, de um nó subdividido na camada das
+	 * divisões
+	 */
+	private static final int MIN_DIVISION = 3;
+	
+	/**
+	 * Cor das regiões com divisões menores que {@link #MIN_DIVISION}
+	 */
+	private static final Color DENSE_COLOR = new Color(0, 0, 0, 0x80);
+	
 	/**
 	 * Representa os níveis de detalhes da imagem
 	 */
@@ -54,7 +70,7 @@ public class QuadTreeImageView extends ImageView {
 	 * A QuadTree que representa a imagem do painel 
 	 */
 	private QuadTree quadTree;
-
+	
 	/**
 	 * A altura da árvore de detalhes que deseja-se
 	 */
@@ -64,7 +80,28 @@ public class QuadTreeImageView extends ImageView {
 	 * Indica se as divisões da QuadTree devem ou não ser mostradas na imagem
 	 */
 	private boolean showDivisions;
-
+	
+	/**
+	 * A imagem do nível de detalhamento {@link #imageLevel}, sem zoom
+	 */
+	private BufferedImage image;
+	
+	/**
+	 * O nível de detalhamento da imagem
+	 */
+	private int imageLevel;
+	
+	/**
+	 * As camadas das divisões por nível de detalhamento, com o zoom
+	 * {@link #overlayZoom}
+	 */
+	private Map<Integer, SoftReference<BufferedImage>> overlays;
+	
+	/**
+	 * O zoom das camadas das divisões
+	 */
+	private int overlayZoom;
+	
 	/**
 	 * Cria uma instância do painel de representação de uma QuadTree
 	 * 
@@ -79,6 +116,8 @@ public class QuadTreeImageView extends ImageView {
 		
 		showDivisions = false;
 		
+		overlays = new HashMap<>();
+		
 		this.quadTree = quadTree;
 		
 		//inicializa os componentes gráficos da imagem
@@ -120,7 +159,7 @@ public class QuadTreeImageView extends ImageView {
 		for(int i = 25; i <= 300; i += 25) {
 			labels.put(new Integer(i), new JLabel(i + "%"));
 		}
-
+		
 		zoom.setLabelTable(labels);
 		add(basePanel, BorderLayout.CENTER);
 		
@@ -134,38 +173,35 @@ public class QuadTreeImageView extends ImageView {
 	}
 	
 	/**
-	 * Cria a imagem utilizando a quadTree em um buffer e define o buffer como
-	 * ícone do JLabel
+	 * Cria a imagem do nível de detalhamento atual utilizando a quadTree em um
+	 * buffer, se ela ainda não foi criada, e aplica o zoom. As divisões não são
+	 * desenhadas na imagem, mas em uma camada separada ({@link #getOverlay()})
 	 */
 	private void createImage() {
 		
-		int w = quadTree.getWidth();
-		int h = quadTree.getHeight();
-		
-		lblImage.setPreferredSize(new Dimension(w, h));
-		lblImage.setSize(new Dimension(w, h));
-		
-		BufferedImage buffer = new BufferedImage(w, h, 
-				BufferedImage.TYPE_INT_ARGB);
-		
-		Graphics g = buffer.createGraphics();
-		Graphics2D g2d = (Graphics2D) g;
-		
-		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		paintImage(g2d, quadTree.getRoot(), level);
-		
-		if(showDivisions) {
+		if(image == null || imageLevel != level) {
+			
+			int w = quadTree.getWidth();
+			int h = quadTree.getHeight();
+			
+			BufferedImage buffer = new BufferedImage(w, h, 
+					BufferedImage.TYPE_INT_ARGB);
+			
+			Graphics g = buffer.createGraphics();
+			Graphics2D g2d = (Graphics2D) g;
+			
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			
+			paintImage(g2d, quadTree.getRoot(), level);
 			
-			g2d.setColor(Color.black);
+			g2d.dispose();
 			
-			g2d.drawRect(0, 0, w - 1 , h - 1);
+			image = buffer;
+			imageLevel = level;
 		}
 		
-		ImageIcon icon = new ImageIcon(buffer);
-		
-		lblImage.setIcon(icon);
+		if(lblImage.getIcon() == null) lblImage.setIcon(new LayerIcon());
 		
 		zoom();
 		
@@ -176,52 +212,114 @@ public class QuadTreeImageView extends ImageView {
 	 * detalhamento desejado. A imagem pode ser desenhada sobre um JPanel ou um
 	 * buffer, por exemplo.
 	 * 
-	 * Chamadas recursivas são realizadas para representar todas as regiões da 
-	 * imagem.
+	 * A árvore é percorrida em pré-ordem ({@link NodeTraversal}) até o nível
+	 * de detalhamento desejado.
 	 * 
 	 * @param g2d O Gráfico sobre o qual a imagem será representada
-	 * @param node O nó atual que será representado (região da imagem)
-	 * @param level O nível de detalhamento desejado. A cada iteração o nóvel
-	 * 				é reduzido em uma unidade. Quando o nível de detalhamento
-	 * 				for igual a 0 o nó é desenhado
+	 * @param node A raiz da árvore
+	 * @param level O nível de detalhamento desejado. Os nós nesse nível e as
+	 * 				folhas acima dele são desenhados
 	 */
-	private void paintImage(Graphics2D g2d, Node node, int level) {
+	private void paintImage(final Graphics2D g2d, Node node, final int level) {
 		
-		//ou está no nivel de detalhamento desejado (level = 0) ou o nó é uma 
-		//folha e não existe nível inferior
-		if(level == 0 || node.isLeaf()) {
-			
-			Color c = node.getColor();
-			
-			int x = node.getX();
-			int y = node.getY();
-			
-			int w = node.getWidth();
-			int h = node.getHeight();
+		new NodeTraversal().traverse(node, new NodeVisitor() {
 			
-			g2d.setColor(c);
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				//ou está no nivel de detalhamento desejado ou o nó é uma 
+				//folha e não existe nível inferior
+				if(depth < level && !node.isLeaf()) return true;
+				
+				Color c = node.getColor();
+				
+				int x = node.getX();
+				int y = node.getY();
+				
+				int w = node.getWidth();
+				int h = node.getHeight();
+				
+				g2d.setColor(c);
+				
+				g2d.fillRect(x, y, w, h);
+				
+				return false;
+			}
 			
-			g2d.fillRect(x, y, w, h);
+		});
+				
+	}
+	
+	/**
+	 * Retorna a camada das divisões do nível de detalhamento e do zoom atuais,
+	 * criando-a se necessário.
+	 * 
+	 * A camada é transparente e tem as dimensões da imagem com zoom, de modo 
+	 * que as divisões têm a espessura de um pixel da tela. Os nós cujas 
+	 * dimensões com zoom são menores que {@link #MIN_DIVISION} pixels não são
+	 * subdivididos: a região é preenchida com preto translúcido, pois as suas
+	 * divisões não seriam distinguíveis.
+	 * 
+	 * @return A camada das divisões
+	 */
+	private BufferedImage getOverlay() {
+		
+		SoftReference<BufferedImage> ref = overlays.get(level);
+		BufferedImage overlay = ref == null ? null : ref.get();
+		
+		if(overlay != null) return overlay;
+		
+		final double scale = zoom.getValue() / 100.0;
+		
+		int w = lblImage.getIcon().getIconWidth();
+		int h = lblImage.getIcon().getIconHeight();
+		
+		overlay = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		
+		final Graphics2D g2d = overlay.createGraphics();
+		
+		final int level = this.level;
+		
+		new NodeTraversal().traverse(quadTree.getRoot(), new NodeVisitor() {
 			
-			if(showDivisions) {
+			@Override
+			public boolean visit(Node node, int depth) {
+				
+				int x0 = (int) (node.getX() * scale + 0.5);
+				int y0 = (int) (node.getY() * scale + 0.5);
+				int x1 = (int) ((node.getX() + node.getWidth()) * scale + 0.5);
+				int y1 = (int) ((node.getY() + node.getHeight()) * scale + 0.5);
+				
+				boolean small = x1 - x0 < MIN_DIVISION || 
+						y1 - y0 < MIN_DIVISION;
+				
+				if(depth < level && !node.isLeaf()) {
+					
+					if(!small) return true;
+					
+					//divisões menores que o pixel da tela
+					g2d.setColor(DENSE_COLOR);
+					g2d.fillRect(x0, y0, x1 - x0, y1 - y0);
+				}
+				
 				g2d.setColor(Color.black);
-				g2d.drawRect(x, y, w, h);
+				g2d.drawRect(x0, y0, x1 - x0, y1 - y0);
+				
+				return false;
 			}
 			
-			return;
-											
-		}		 
+		});
 		
-		for(int i = 0; i < node.getQ().length; ++i) {
-			
-			if(node.getQ()[i] != null) {
-				paintImage(g2d, node.getQ()[i], level - 1);	
-			}			
-			
-		}
-				
+		g2d.setColor(Color.black);
+		g2d.drawRect(0, 0, w - 1, h - 1);
+		
+		g2d.dispose();
+		
+		overlays.put(level, new SoftReference<>(overlay));
+		
+		return overlay;
 	}
-
+	
 	/**
 	 * Define as ações da interface gráfica.
 	 */
@@ -261,32 +359,27 @@ public class QuadTreeImageView extends ImageView {
 	}
 		
 	/**
-	 * Aplica zoom sobre a imagem de acordo com o slider de zoom
+	 * Aplica zoom sobre a imagem de acordo com o slider de zoom. A imagem é
+	 * redimensionada ao ser desenhada; as camadas das divisões, que dependem
+	 * do zoom, são descartadas se o zoom mudou
 	 */
 	private void zoom() {
 		
-		//cria a imagem em tamangho real
-		//createImage();
-		
-		//dimensões da imagem em tamanho real
-		int h = quadTree.getHeight();
-		int w = quadTree.getWidth();
+		if(zoom.getValue() != overlayZoom) {
+			overlays.clear();
+			overlayZoom = zoom.getValue();
+		}
 		
-		//cálculo o fator de zoom
-		double scale = zoom.getValue() / 100.0;
+		Icon icon = lblImage.getIcon();
 		
-		//novas dimensões sobre o zoom
-		h = (int) ((h * scale) + 0.5);
-		w = (int) ((w * scale) + 0.5);
+		Dimension size = new Dimension(icon.getIconWidth(), 
+				icon.getIconHeight());
 		
-		lblImage.setPreferredSize(new Dimension(w, h));
-		lblImage.setSize(new Dimension(w, h));
+		lblImage.setPreferredSize(size);
+		lblImage.setSize(size);
 		
-		ImageIcon imageIcon = (ImageIcon) lblImage.getIcon();
-		 
-		Image image = imageIcon.getImage().getScaledInstance(w, h, 
-				Image.SCALE_DEFAULT);
-		lblImage.setIcon(new ImageIcon(image));
+		lblImage.revalidate();
+		lblImage.repaint();
 		
 	}
 	
@@ -302,17 +395,24 @@ public class QuadTreeImageView extends ImageView {
 	}
 	
 	/**
-	 * Define se a imagem deve exibir as divisões da quadTree
+	 * Define se a imagem deve exibir as divisões da quadTree. A imagem não é
+	 * redesenhada: as divisões são uma camada sobreposta à imagem
 	 * 
 	 * @param showDivisions true se as divisões devem ser apresentadas
 	 *                      false caso contrário
 	 */
 	public void setShowDivisions(boolean showDivisions) {
+		
 		this.showDivisions = showDivisions;
+		
+		//apenas a composição das camadas muda
+		lblImage.repaint();
+	
 	}
 	
 	/**
-	 * Atualiza a imagem, redesenhando-a e aplicando o zoom
+	 * Atualiza a imagem, redesenhando-a se o nível de detalhamento mudou, e
+	 * aplica o zoom
 	 */
 	public void update() {
 		createImage();
@@ -327,4 +427,33 @@ public class QuadTreeImageView extends ImageView {
 		return quadTree;
 	}
 	
+	/**
+	 * <p>Ícone que compõe a imagem e, se as divisões são mostradas, a camada 
+	 * das divisões, com o zoom atual.</p>
+	 */
+	private class LayerIcon implements Icon {
+		
+		@Override
+		public int getIconWidth() {
+			return (int) ((quadTree.getWidth() * zoom.getValue() / 100.0) + 
+					0.5);
+		}
+		
+		@Override
+		public int getIconHeight() {
+			return (int) ((quadTree.getHeight() * zoom.getValue() / 100.0) + 
+					0.5);
+		}
+		
+		@Override
+		public void paintIcon(Component c, Graphics g, int x, int y) {
+			
+			g.drawImage(image, x, y, getIconWidth(), getIconHeight(), null);
+			
+			if(showDivisions) g.drawImage(getOverlay(), x, y, null);
+		
+		}
+	
+	}
+	
 }
@@ -4,11 +4,16 @@ import java.awt.Component;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 import javax.swing.Icon;
@@ -16,14 +21,21 @@ import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
+import quadtree.core.BuildListener;
 import quadtree.core.QuadTree;
+import quadtree.io.QuadTreeReader;
+import quadtree.io.QuadTreeWriter;
 import quadtree.ui.ExportFrame;
 import quadtree.ui.MainFrame;
 import quadtree.ui.components.ImageView;
+import quadtree.ui.components.ProgressView;
 import quadtree.ui.components.QuadTreeImageView;
 import quadtree.ui.components.RegularImageView;
 import quadtree.ui.filechooser.FileChooser;
+import quadtree.util.ImageCache;
+import quadtree.util.LoadImage;
 
 /**
  * <p>Controlador para o <i>frame</i> principal da aplicação</p>
@@ -31,7 +43,7 @@ import quadtree.ui.filechooser.FileChooser;
  * <p>Controlar as operações realizadas sobre a interface</p>
  * 
  * @author pedro
- *
+ * 
  */
 public class MainFrameController {
 	
@@ -50,6 +62,32 @@ public class MainFrameController {
 	 */
 	private QuadTree quadTree;
 	
+	/**
+	 * Executor compartilhado pelo carregamento e construção das imagens de 
+	 * todas as abas
+	 */
+	private static final ExecutorService EXECUTOR = 
+			Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(), 
+					new ThreadFactory() {
+		
+		/**
+		 * Número de threads criadas
+		 */
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread thread = new Thread(r, "QuadTree-" + 
+					count.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+		
+	});
+	
 	/**
 	 * Cria a instância do controlador para o frame principal da alicação
 	 * 
@@ -99,14 +137,8 @@ public class MainFrameController {
 		
 		try {
 			
-			FileInputStream fis = new FileInputStream(file);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			
-			//deserializa o objeto da imagem
-			quadTree = (QuadTree) ois.readObject();
-			
-			ois.close();
-			fis.close();
+			//carrega a árvore do arquivo
+			quadTree = new QuadTreeReader().read(file);
 			
 			int accuracy = (int) (quadTree.getAccuracy() * 100);
 			
@@ -117,7 +149,7 @@ public class MainFrameController {
 			QuadTreeImageView v = new QuadTreeImageView(name, path, quadTree);
 			frame.addTab(name, v);
 			
-		} catch (IOException | ClassNotFoundException e) {
+		} catch (IOException e) {
 			
 			//erro ao abrir a imagem
 			
@@ -139,13 +171,63 @@ public class MainFrameController {
 	 * 
 	 * @param file O arquivo que armazena a imagem
 	 */
-	private void loadRegularImage(File file) {
-		
-		Icon icon = new ImageIcon(file.getAbsolutePath());
+	private void loadRegularImage(final File file) {
 		
-		RegularImageView imageView = new RegularImageView(file, icon);
-		
-		frame.addTab(file.getName(), imageView);
+		//a imagem é decodificada fora da thread de eventos
+		CompletableFuture.supplyAsync(new Supplier<Icon>() {
+			
+			@Override
+			public Icon get() {
+				
+				//os pixels decodificados ficam disponíveis para a exportação
+				try {
+					return new ImageIcon(LoadImage.toImage(
+							ImageCache.getInstance().getPixels(file)));
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+				
+			}
+			
+		}, EXECUTOR).whenComplete(new BiConsumer<Icon, Throwable>() {
+			
+			@Override
+			public void accept(final Icon icon, final Throwable error) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						if(error != null) {
+							
+							//erro ao abrir a imagem
+							
+							String title = "Erro ao abrir";
+							String message = "Ocorreu um erro ao abrir o " +
+									"arquivo " + file.getAbsolutePath() + 
+									"\nPor favor, tente novamente";
+							
+							JOptionPane.showMessageDialog(frame, message, 
+									title, JOptionPane.ERROR_MESSAGE);
+							
+							error.printStackTrace();
+							
+							return;
+						}
+						
+						RegularImageView imageView = 
+								new RegularImageView(file, icon);
+						
+						frame.addTab(file.getName(), imageView);
+						
+					}
+					
+				});
+				
+			}
+			
+		});
 		
 	}
 	
@@ -157,19 +239,13 @@ public class MainFrameController {
 	 */
 	public void export(Component component) {
 		
-		final ImageView imageView = (ImageView) component;
+		ImageView imageView = (ImageView) component;
+		
+		//árvore ainda em construção
+		if(imageView instanceof ProgressView) return;
 		
 		if(imageView instanceof RegularImageView) {
-			
-			new Thread(new Runnable() {
-				
-				@Override
-				public void run() {
-					exportToQuadTree(imageView);
-				}
-				
-			}).run();
-						
+			exportToQuadTree(imageView);
 		}
 		else {
 			exportToImage(imageView);
@@ -185,7 +261,7 @@ public class MainFrameController {
 	private void exportToQuadTree(ImageView imageView) {
 		
 		//cria o frame de configuração da visualização
-		ExportFrame exportFrame = new ExportFrame();
+		ExportFrame exportFrame = new ExportFrame(imageView.getFile());
 		exportFrame.setLocationRelativeTo(frame);
 		exportFrame.setVisible(true);		
 				
@@ -195,15 +271,87 @@ public class MainFrameController {
 		File file = imageView.getFile();
 		
 		double accuracy = exportFrame.getAccuracy() / 100.0;
-			
-		//cria a imagem de acordo com a precisaõ
-		quadTree = new QuadTree(file, accuracy);
 		
-		String name = imageView.getFileName() + " - " + 
+		final String name = imageView.getFileName() + " - " + 
 						exportFrame.getAccuracy() + "%";
 		
-		QuadTreeImageView view = new QuadTreeImageView(name, "", quadTree);
-		frame.addTab(name, view);
+		final ProgressView progressView = 
+				new ProgressView(name, file.getAbsolutePath());
+		frame.addTab(name, progressView);
+			
+		//cria a imagem de acordo com a precisão. O carregamento e a 
+		//construção da árvore são realizados em paralelo, fora da thread de
+		//eventos
+		CompletableFuture<QuadTree> task = QuadTree.buildAsync(file, 
+				accuracy, null, EXECUTOR, new BuildListener() {
+			
+			@Override
+			public void progress(final long pixels, final long total) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						progressView.setProgress(pixels, total);
+					}
+					
+				});
+				
+			}
+			
+		});
+		
+		progressView.setTask(task);
+		
+		task.whenComplete(new BiConsumer<QuadTree, Throwable>() {
+			
+			@Override
+			public void accept(final QuadTree tree, final Throwable error) {
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						//construção cancelada
+						if(error instanceof CancellationException) {
+							frame.removeTab(progressView);
+							return;
+						}
+						
+						if(error != null) {
+							
+							frame.removeTab(progressView);
+							
+							//erro ao carregar a imagem
+							
+							String title = "Erro ao exportar";
+							String message = "Ocorreu um erro ao exportar " + 
+									"a imagem " + name + 
+									"\nPor favor, tente novamente";
+							
+							JOptionPane.showMessageDialog(frame, message, 
+									title, JOptionPane.ERROR_MESSAGE);
+							
+							error.printStackTrace();
+							
+							return;
+						}
+						
+						QuadTreeImageView view = 
+								new QuadTreeImageView(name, "", tree);
+						
+						if(frame.replaceTab(progressView, name, view)) {
+							quadTree = tree;
+						}
+						
+					}
+					
+				});
+				
+			}
+			
+		});
 		
 	}
 	
@@ -273,13 +421,13 @@ public class MainFrameController {
 			}
 			
 		}
-
+	
 	}
 	
 	/**
 	 * Salva a imagem em um arquivo do tipo QuadTree em um arquivo.
 	 * 
-	 * A imagem é salva serializando o objeto da árvore
+	 * A imagem é salva no formato binário dos arquivos .quad
 	 * 
 	 * @param component O Component atual da imagem
 	 */
@@ -301,17 +449,8 @@ public class MainFrameController {
 			
 			try {
 				
-				//serializa o objeto e salva em arquivo
-				FileOutputStream fos = new FileOutputStream(path);
-				ObjectOutputStream oos = new ObjectOutputStream(fos);
-				
-				oos.writeObject(quadTree);
-				
-				oos.flush();
-				oos.close();
-				
-				fos.flush();
-				fos.close();
+				//salva a árvore em arquivo
+				new QuadTreeWriter(quadTree).write(new File(path));
 				
 			} catch (IOException e) {
 				
@@ -324,14 +463,14 @@ public class MainFrameController {
 				
 				JOptionPane.showMessageDialog(frame, message, title, 
 						JOptionPane.ERROR_MESSAGE);
-
+				
 				e.printStackTrace();
 			}
 			
 		}	
 				
 	}
-
+	
 	/**
 	 * Realiza a operção de mudança de aba da interface pricipal.
 	 * 
@@ -383,7 +522,5 @@ public class MainFrameController {
 		
 		imageView.setShowDivisions(selected);
 		
-		imageView.update();
-		
 	}
 }
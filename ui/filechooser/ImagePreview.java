@@ -4,17 +4,27 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+
+import quadtree.io.QuadTreeReader;
+import quadtree.util.Thumbnail;
 
 /**
  * <p>Implementa um <i>preview</i> de imagens em um JFileChooser de acordo com
@@ -23,6 +33,10 @@ import javax.swing.JFileChooser;
  * <p>Implementa PropertyChangeListener de modo que a imagem seja atualizada
  * toda vez que um novo arquivo é selecionado.</p>
  * 
+ * <p>As miniaturas são geradas em segundo plano, por meio de decodificação 
+ * subamostrada, e mantidas em cache. A geração é cancelada se a seleção 
+ * muda antes da sua conclusão.</p>
+ * 
  * @author pedro
  *
  */
@@ -49,6 +63,44 @@ public class ImagePreview extends JComponent
 	 * exibido pelo preview
 	 */
 	private ImageIcon icon;
+	
+	/**
+	 * Arquivo selecionado cuja miniatura é exibida
+	 */
+	private File selected;
+	
+	/**
+	 * Geração da miniatura do arquivo selecionado ou null se não há geração
+	 * em andamento
+	 */
+	private Future<?> pending;
+	
+	/**
+	 * Número máximo de miniaturas mantidas em cache
+	 */
+	private final static int CACHE_SIZE = 64;
+	
+	/**
+	 * Miniaturas já geradas, compartilhadas por todos os previews
+	 */
+	private final static ThumbnailCache CACHE = new ThumbnailCache(CACHE_SIZE);
+	
+	/**
+	 * Executor da geração das miniaturas
+	 */
+	private final static ExecutorService EXECUTOR = 
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			
+			Thread thread = new Thread(r, "ImagePreview");
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+		
+	});
 
 	/**
 	 * Instancia o preview da imagem
@@ -90,8 +142,7 @@ public class ImagePreview extends JComponent
 
 		//apaga o preview em exibição              
 		if (JFileChooser.DIRECTORY_CHANGED_PROPERTY.equals(propName)) {
-			icon = null;
-			repaint();
+			show(null);
 			return;
 		}                  
 
@@ -102,29 +153,107 @@ public class ImagePreview extends JComponent
 			File file = (File) e.getNewValue();
 
 			//diretório selecionado
-			if (file == null) {
-	            icon = null;
-	            repaint();
-	            return;
-			}
-
-			//cria o ícone através da imagem
-			icon = new ImageIcon(file.getPath());
-
-			if (icon.getIconWidth() == -1) {
-				icon.getImage().flush();
-				icon = new ImageIcon(file.getPath());
-			}
-
-			//escala
-			if (icon.getIconWidth() > WIDTH) {
-				icon = new ImageIcon(icon.getImage().getScaledInstance (WIDTH, 
-						-1, Image.SCALE_DEFAULT));
+			if (file == null || file.isDirectory()) {
+				show(null);
+				return;
 			}
-				
+			
+			show(file);
+		}
+		
+	}
+	
+	/**
+	 * Exibe a miniatura de um arquivo. A miniatura é obtida do cache ou 
+	 * gerada em segundo plano; a geração da miniatura anterior, se ainda 
+	 * não concluída, é cancelada
+	 * 
+	 * @param file O arquivo selecionado ou null para apagar o preview
+	 */
+	private void show(final File file) {
+		
+		//a seleção mudou, a miniatura anterior não é mais necessária
+		if(pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+		
+		selected = file;
+		icon = null;
+		
+		if(file == null) {
 			repaint();
+			return;
+		}
+		
+		BufferedImage thumbnail = CACHE.get(file);
+		
+		if(thumbnail != null) {
+			icon = new ImageIcon(thumbnail);
+			repaint();
+			return;
+		}
+		
+		repaint();
+		
+		pending = EXECUTOR.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				
+				try {
+					
+					final BufferedImage thumbnail = thumbnail(file);
+					
+					if(thumbnail == null) return;
+					
+					CACHE.put(file, thumbnail);
+					
+					SwingUtilities.invokeLater(new Runnable() {
+						
+						@Override
+						public void run() {
+							
+							//exibe apenas se o arquivo ainda está selecionado
+							if(file.equals(selected)) {
+								icon = new ImageIcon(thumbnail);
+								repaint();
+							}
+							
+						}
+						
+					});
+					
+				} catch (InterruptedIOException e) {
+					//seleção alterada
+				} catch (IOException e) { 
+					e.printStackTrace(); 
+				}
+				
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Gera a miniatura de um arquivo. A miniatura de um arquivo .quad é lida
+	 * do cabeçalho do arquivo, sem carregar a árvore
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return A miniatura ou null se o formato do arquivo não é suportado
+	 * 
+	 * @throws IOException Erro ao ler o arquivo
+	 */
+	private static BufferedImage thumbnail(File file) throws IOException {
+		
+		if(file.getName().toLowerCase().endsWith(".quad")) {
+			return new QuadTreeReader().readInfo(file).getThumbnail();
 		}
 		
+		return Thumbnail.read(file, WIDTH, HEIGHT);
+		
 	}
 	
-}
\ No newline at end of file
+}
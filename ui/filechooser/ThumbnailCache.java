@@ -0,0 +1,84 @@
+package quadtree.ui.filechooser;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Cache das miniaturas exibidas pelo preview do filechooser.</p>
+ * 
+ * <p>As miniaturas são indexadas pelo caminho e pela data de modificação do
+ * arquivo, de modo que um arquivo alterado gera uma nova miniatura. Quando o
+ * cache está cheio a miniatura utilizada há mais tempo é descartada.</p>
+ * 
+ * @author pedro
+ * 
+ */
+class ThumbnailCache {
+	
+	/**
+	 * Miniaturas indexadas pelo caminho e data de modificação, em ordem de
+	 * acesso
+	 */
+	private Map<String, BufferedImage> thumbnails;
+	
+	/**
+	 * Cria o cache
+	 * 
+	 * @param capacity O número máximo de miniaturas armazenadas
+	 */
+	ThumbnailCache(final int capacity) {
+		
+		thumbnails = new LinkedHashMap<String, BufferedImage>(16, 0.75f,
+				true) {
+			
+			/**
+			 * Serial version
+			 */
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, BufferedImage> eldest) {
+				return size() > capacity;
+			}
+		
+		};
+	
+	}
+	
+	/**
+	 * Retorna a miniatura de um arquivo
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return A miniatura ou null se o arquivo (na versão atual) não está no
+	 * 		   cache
+	 */
+	synchronized BufferedImage get(File file) {
+		return thumbnails.get(key(file));
+	}
+	
+	/**
+	 * Armazena a miniatura de um arquivo
+	 * 
+	 * @param file O arquivo
+	 * @param thumbnail A miniatura
+	 */
+	synchronized void put(File file, BufferedImage thumbnail) {
+		thumbnails.put(key(file), thumbnail);
+	}
+	
+	/**
+	 * Retorna a chave de um arquivo no cache
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return O caminho e a data de modificação do arquivo
+	 */
+	private static String key(File file) {
+		return file.getAbsolutePath() + "@" + file.lastModified();
+	}
+
+}
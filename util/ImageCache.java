@@ -0,0 +1,367 @@
+package quadtree.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import quadtree.core.PixelBuffer;
+import quadtree.core.RegionStatistics;
+
+/**
+ * <p>Cache das imagens decodificadas e das estatísticas das suas regiões,
+ * compartilhado por toda a aplicação.</p>
+ * 
+ * <p>Abrir a mesma imagem em várias abas ou exportá-la com várias precisões
+ * decodifica o arquivo apenas uma vez, e as construções de árvores da mesma
+ * imagem compartilham as estatísticas das regiões já avaliadas 
+ * ({@link RegionStatistics}). Cada arquivo é identificado pelo caminho 
+ * canônico, pelo tamanho e pela data de modificação, de modo que um arquivo
+ * alterado é decodificado novamente.</p>
+ * 
+ * <p>O cache é limitado pela soma dos tamanhos dos pixels e das 
+ * estatísticas: ao exceder o limite, os arquivos utilizados há mais tempo 
+ * são descartados (LRU). As estatísticas crescem durante a construção de 
+ * uma árvore e o limite é verificado novamente ao final da construção 
+ * ({@link #trim()}); durante a construção o cache pode exceder o limite em
+ * até o tamanho das estatísticas em construção. Os pixels e as 
+ * estatísticas são mantidos por referências suaves ({@link SoftReference}),
+ * liberadas pela JVM antes de faltar memória. O limite padrão é um quarto 
+ * da memória máxima da JVM e pode ser definido, em bytes, pela propriedade
+ * de sistema {@value #MAX_BYTES_PROPERTY}.</p>
+ * 
+ * <p>Os pixels armazenados são compartilhados e não devem ser alterados. As
+ * operações podem ser chamadas por várias threads; duas leituras 
+ * simultâneas do mesmo arquivo ausente podem decodificá-lo duas vezes.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class ImageCache {
+	
+	/**
+	 * Propriedade de sistema com o limite do cache em bytes
+	 */
+	public static final String MAX_BYTES_PROPERTY = "quadtree.imageCache";
+	
+	/**
+	 * O cache da aplicação
+	 */
+	private static final ImageCache INSTANCE = new ImageCache(
+			Long.getLong(MAX_BYTES_PROPERTY, 
+					Runtime.getRuntime().maxMemory() / 4));
+	
+	/**
+	 * Os arquivos armazenados, do utilizado há mais tempo ao mais recente
+	 */
+	private LinkedHashMap<String, Entry> entries;
+	
+	/**
+	 * O limite do cache em bytes
+	 */
+	private long maxBytes;
+	
+	/**
+	 * Número de leituras atendidas pelo cache
+	 */
+	private long hits;
+	
+	/**
+	 * Número de leituras que decodificaram o arquivo
+	 */
+	private long misses;
+	
+	/**
+	 * Cria um cache vazio
+	 * 
+	 * @param maxBytes O limite do cache em bytes
+	 */
+	public ImageCache(long maxBytes) {
+		
+		this.maxBytes = maxBytes;
+		
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	}
+	
+	/**
+	 * Retorna o cache compartilhado pela aplicação
+	 * 
+	 * @return O cache da aplicação
+	 */
+	public static ImageCache getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Retorna os pixels de um arquivo de imagem, decodificando-o se ele não
+	 * está no cache
+	 * 
+	 * @param file O arquivo de imagem
+	 * 
+	 * @return Os pixels da imagem, que não devem ser alterados
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou formato não suportado
+	 */
+	public PixelBuffer getPixels(File file) throws IOException {
+		
+		PixelBuffer pixels = peek(file);
+		
+		if(pixels != null) return pixels;
+		
+		pixels = LoadImage.read(file);
+		
+		put(file, pixels);
+		
+		return pixels;
+	}
+	
+	/**
+	 * Retorna os pixels de um arquivo de imagem, se ele está no cache
+	 * 
+	 * @param file O arquivo de imagem
+	 * 
+	 * @return Os pixels da imagem ou null se o arquivo não está no cache
+	 * 
+	 * @throws IOException Erro ao identificar o arquivo
+	 */
+	public synchronized PixelBuffer peek(File file) throws IOException {
+		
+		Entry entry = entries.get(key(file));
+		
+		PixelBuffer pixels = entry == null ? null : entry.pixels.get();
+		
+		if(pixels != null) hits++;
+		else misses++;
+		
+		return pixels;
+	}
+	
+	/**
+	 * Armazena os pixels de um arquivo de imagem
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param pixels Os pixels da imagem, que não devem mais ser alterados
+	 * 
+	 * @throws IOException Erro ao identificar o arquivo
+	 */
+	public synchronized void put(File file, PixelBuffer pixels) 
+			throws IOException {
+		
+		String key = key(file);
+		
+		Entry entry = entries.get(key);
+		
+		if(entry == null) {
+			entry = new Entry();
+			entries.put(key, entry);
+		}
+		
+		entry.pixels = new SoftReference<>(pixels);
+		entry.pixelBytes = 4L * pixels.getWidth() * pixels.getHeight();
+		
+		evict();
+		
+	}
+	
+	/**
+	 * Retorna as estatísticas das regiões de um arquivo de imagem, criando-as
+	 * se o arquivo não possui estatísticas no cache. As estatísticas são
+	 * descartadas junto com os pixels do arquivo
+	 * 
+	 * @param file O arquivo de imagem
+	 * 
+	 * @return As estatísticas das regiões da imagem
+	 * 
+	 * @throws IOException Erro ao identificar o arquivo
+	 */
+	public synchronized RegionStatistics getStatistics(File file) 
+			throws IOException {
+		
+		String key = key(file);
+		
+		Entry entry = entries.get(key);
+		
+		if(entry == null) {
+			entry = new Entry();
+			entries.put(key, entry);
+		}
+		
+		RegionStatistics statistics = entry.statistics.get();
+		
+		if(statistics == null) {
+			statistics = new RegionStatistics();
+			entry.statistics = new SoftReference<>(statistics);
+		}
+		
+		evict();
+		
+		return statistics;
+	}
+	
+	/**
+	 * Verifica novamente o limite do cache, descartando arquivos se 
+	 * necessário. As estatísticas crescem durante as construções que as 
+	 * utilizam, depois de armazenadas: as construções chamam este método ao
+	 * terminar
+	 */
+	public synchronized void trim() {
+		evict();
+	}
+	
+	/**
+	 * Descarta os arquivos cujas referências foram liberadas e os arquivos
+	 * utilizados há mais tempo até que o cache respeite o limite. O arquivo
+	 * mais recente é descartado apenas se excede sozinho o limite
+	 */
+	private void evict() {
+		
+		long bytes = 0;
+		
+		Iterator<Entry> it = entries.values().iterator();
+		
+		while(it.hasNext()) {
+			
+			Entry entry = it.next();
+			
+			if(entry.isEmpty()) it.remove();
+			else bytes = bytes + entry.bytes();
+		}
+		
+		it = entries.values().iterator();
+		
+		while(bytes > maxBytes && it.hasNext()) {
+			
+			bytes = bytes - it.next().bytes();
+			it.remove();
+		}
+	
+	}
+	
+	/**
+	 * Retorna a chave de um arquivo: o caminho canônico, o tamanho e a data
+	 * de modificação
+	 * 
+	 * @param file O arquivo
+	 * 
+	 * @return A chave do arquivo
+	 * 
+	 * @throws IOException Erro ao obter o caminho canônico
+	 */
+	private static String key(File file) throws IOException {
+		return file.getCanonicalPath() + '\0' + file.length() + '\0' + 
+				file.lastModified();
+	}
+	
+	/**
+	 * Descarta todos os arquivos
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * Define o limite do cache, descartando arquivos se necessário
+	 * 
+	 * @param maxBytes O limite do cache em bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		
+		this.maxBytes = maxBytes;
+		
+		evict();
+	
+	}
+	
+	/**
+	 * Retorna o limite do cache
+	 * 
+	 * @return O limite do cache em bytes
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * Retorna o tamanho dos pixels e das estatísticas armazenados
+	 * 
+	 * @return O tamanho em bytes
+	 */
+	public synchronized long getBytes() {
+		
+		evict();
+		
+		long bytes = 0;
+		
+		for(Entry entry : entries.values()) bytes = bytes + entry.bytes();
+		
+		return bytes;
+	}
+	
+	/**
+	 * Retorna o número de leituras atendidas pelo cache
+	 * 
+	 * @return O número de leituras sem decodificação
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Retorna o número de leituras não atendidas pelo cache
+	 * 
+	 * @return O número de leituras de arquivos ausentes
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * <p>Os pixels e as estatísticas de um arquivo.</p>
+	 */
+	private static class Entry {
+		
+		/**
+		 * Os pixels da imagem
+		 */
+		private SoftReference<PixelBuffer> pixels = new SoftReference<>(null);
+		
+		/**
+		 * O tamanho dos pixels em bytes
+		 */
+		private long pixelBytes;
+		
+		/**
+		 * As estatísticas das regiões da imagem
+		 */
+		private SoftReference<RegionStatistics> statistics = 
+				new SoftReference<>(null);
+		
+		/**
+		 * Verifica se os pixels e as estatísticas foram liberados
+		 * 
+		 * @return true se a entrada não armazena mais nada
+		 */
+		private boolean isEmpty() {
+			return pixels.get() == null && statistics.get() == null;
+		}
+		
+		/**
+		 * Retorna o tamanho da entrada
+		 * 
+		 * @return O tamanho dos pixels e das estatísticas ainda não 
+		 * 		   liberados, em bytes
+		 */
+		private long bytes() {
+			
+			RegionStatistics s = statistics.get();
+			
+			return (pixels.get() == null ? 0 : pixelBytes) + 
+					(s == null ? 0 : s.getMemoryBytes());
+		}
+	
+	}
+
+}
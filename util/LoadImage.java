@@ -1,21 +1,43 @@
 package quadtree.util;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 
+import quadtree.core.PixelBuffer;
+
 /**
- * <p>Carrega uma arquivo de imagem em uma matriz de pixels, armazenando a
+ * <p>Carrega uma arquivo de imagem em um buffer de pixels, armazenando a
  * altura e largura da imagem.</p>
+ * 
+ * <p>O carregamento assíncrono, por meio de 
+ * {@link #loadAsync(File, Executor)}, extrai os pixels em faixas de linhas
+ * processadas em paralelo. Cada faixa pode ser utilizada assim que extraída,
+ * por meio de {@link #rows(int, int)}.</p>
  *  
  * @author pedro
- *
+ * 
  */
 public class LoadImage {
 	
+	/**
+	 * Número de linhas de cada faixa extraída em paralelo
+	 */
+	public static final int BAND_HEIGHT = 64;
+	
 	/**
 	 * Altura da imagem
 	 */
@@ -27,45 +49,209 @@ public class LoadImage {
 	private int width;
 	
 	/**
-	 * Matriz de pixels extraidos
+	 * Pixels extraidos no formato ARGB
+	 */
+	private PixelBuffer pixels; 
+	
+	/**
+	 * Extração de cada faixa de linhas. Tem como valor null se os pixels
+	 * foram extraídos de forma síncrona
 	 */
-	private Color pixels[][]; 
+	private CompletableFuture<?> bands[];
 	
 	/**
-	 * Cria o objeto para carregar a matriz de pixels de um arquivo de imagem
+	 * Cria o objeto para carregar os pixels de um arquivo de imagem. O 
+	 * arquivo é decodificado apenas se não está em {@link ImageCache}
 	 * 
-	 * @param file O arquivo de imagem para ser transformado na matriz de
+	 * @param file O arquivo de imagem para ser transformado no buffer de
 	 * 				pixels
 	 */
 	public LoadImage(File file) {
 		pixels = convertImageToArray(file);
 	}
+	
+	/**
+	 * Cria o objeto para uma imagem já extraída
+	 * 
+	 * @param pixels Os pixels da imagem inteira
+	 */
+	private LoadImage(PixelBuffer pixels) {
+		
+		this.pixels = pixels;
+		
+		height = pixels.getHeight();
+		width = pixels.getWidth();
+	
+	}
+		
+	/**
+	 * Cria o objeto para uma imagem já decodificada, iniciando a extração
+	 * das faixas de linhas
+	 * 
+	 * @param buffer A imagem decodificada
+	 * @param executor O executor da extração das faixas
+	 */
+	private LoadImage(final BufferedImage buffer, Executor executor) {
+		
+		height = buffer.getHeight();
+		width = buffer.getWidth();
+		
+		final int argb[] = new int[height * width];
+		
+		pixels = new PixelBuffer(argb, 0, 0, width, height);
+		
+		bands = new CompletableFuture<?>[(height + BAND_HEIGHT - 1) / 
+		                                 BAND_HEIGHT];
+		
+		for(int k = 0; k < bands.length; ++k) {
+			
+			final int y = k * BAND_HEIGHT;
+			final int h = Math.min(BAND_HEIGHT, height - y);
+			
+			bands[k] = CompletableFuture.runAsync(new Runnable() {
+				
+				@Override
+				public void run() {
+					buffer.getRGB(0, y, width, h, argb, y * width, width);
+				}
+				
+			}, executor);
+		}
+		
+	}
+	
+	/**
+	 * Carrega um arquivo de imagem de forma assíncrona. O resultado é 
+	 * concluído assim que a imagem é decodificada e suas dimensões são 
+	 * conhecidas; a extração dos pixels continua em paralelo, em faixas de 
+	 * {@link #BAND_HEIGHT} linhas. Se o arquivo está em {@link ImageCache} os
+	 * pixels são utilizados sem decodificação; caso contrário são 
+	 * armazenados no cache ao final da extração
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param executor O executor da decodificação e da extração das faixas
+	 * 
+	 * @return O carregamento da imagem. É concluído com erro 
+	 * 		   ({@link IOException}) se o arquivo não pode ser lido
+	 * 
+	 * @see #rows(int, int)
+	 * @see #pixelsAsync()
+	 */
+	public static CompletableFuture<LoadImage> loadAsync(final File file, 
+			final Executor executor) {
+		
+		return CompletableFuture.supplyAsync(
+				new Supplier<LoadImage>() {
+			
+			@Override
+			public LoadImage get() {
+				
+				try {
+					
+					//imagem já decodificada
+					PixelBuffer cached = ImageCache.getInstance().peek(file);
+					
+					if(cached != null) return new LoadImage(cached);
+					
+					BufferedImage buffer = ImageIO.read(file);
+					
+					if(buffer == null) {
+						throw new IOException("Formato de imagem não " + 
+								"suportado: " + file);
+					}
+					
+					final LoadImage image = new LoadImage(buffer, executor);
+					
+					//armazenada no cache após a extração de todas as faixas
+					image.pixelsAsync().thenAccept(
+							new Consumer<PixelBuffer>() {
+						
+						@Override
+						public void accept(PixelBuffer pixels) {
+							
+							try {
+								ImageCache.getInstance().put(file, pixels);
+							} catch (IOException e) {
+								//arquivo não identificado: não armazenado
+							}
+							
+						}
+						
+					});
+					
+					return image;
+					
+				} catch (IOException e) { 
+					throw new CompletionException(e);
+				}
+				
+			}
+			
+		}, executor);
 		
+	}
+	
 	/**
-	 * Converte o arquivo da imagem em uma matriz de pixels
+	 * Retorna a extração de um intervalo de linhas da imagem
+	 * 
+	 * @param y A primeira linha do intervalo
+	 * @param height O número de linhas do intervalo
+	 * 
+	 * @return Um resultado concluído quando todas as linhas do intervalo 
+	 * 		   foram extraídas para o buffer de pixels
+	 */
+	public CompletableFuture<Void> rows(int y, int height) {
+		
+		if(bands == null || height <= 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		int first = y / BAND_HEIGHT;
+		int last = Math.min(bands.length - 1, 
+				(y + height - 1) / BAND_HEIGHT);
+		
+		CompletableFuture<?> range[] = new CompletableFuture<?>[last - first + 1];
+		System.arraycopy(bands, first, range, 0, range.length);
+		
+		return CompletableFuture.allOf(range);
+		
+	}
+	
+	/**
+	 * Retorna o buffer de pixels quando todas as faixas foram extraídas
+	 * 
+	 * @return Um resultado concluído com o buffer de pixels da imagem
+	 */
+	public CompletableFuture<PixelBuffer> pixelsAsync() {
+		
+		return rows(0, height).thenApply(
+				new Function<Void, PixelBuffer>() {
+			
+			@Override
+			public PixelBuffer apply(Void v) {
+				return pixels;
+			}
+			
+		});
+		
+	}
+	
+	/**
+	 * Converte o arquivo da imagem em um buffer de pixels
 	 * 
 	 * @param file O arquivo da imagem
 	 * 
-	 * @return A matriz de pixels da imagem
+	 * @return O buffer de pixels da imagem
 	 */
-	private Color[][] convertImageToArray(File file) {
+	private PixelBuffer convertImageToArray(File file) {
 				
 		try {
 			
-			//cria um buffer com o conteúdo da imagem
-			BufferedImage buffer = ImageIO.read(file);
+			pixels = ImageCache.getInstance().getPixels(file);
 			
 			//dimensões da imagem
-			height = buffer.getHeight();
-			width = buffer.getWidth();
-			
-			pixels = new Color[height][width];
-			
-			for(int i = 0; i < height; ++i) {
-				for(int j = 0; j < width; ++j) {
-					pixels[i][j] = new Color(buffer.getRGB(j, i), true);
-				}
-			}
+			height = pixels.getHeight();
+			width = pixels.getWidth();
 			
 		} catch (IOException e) { e.printStackTrace(); }
 		
@@ -73,6 +259,56 @@ public class LoadImage {
 		
 	}
 	
+	/**
+	 * Lê um arquivo de imagem em um buffer de pixels
+	 * 
+	 * @param file O arquivo da imagem
+	 * 
+	 * @return O buffer de pixels da imagem
+	 * 
+	 * @throws IOException Erro ao ler o arquivo ou formato não suportado
+	 */
+	public static PixelBuffer read(File file) throws IOException {
+		
+		//cria um buffer com o conteúdo da imagem
+		BufferedImage buffer = ImageIO.read(file);
+		
+		if(buffer == null) {
+			throw new IOException("Formato de imagem não suportado: " + file);
+		}
+		
+		//dimensões da imagem
+		int height = buffer.getHeight();
+		int width = buffer.getWidth();
+		
+		//extrai todos os pixels no formato ARGB
+		int argb[] = buffer.getRGB(0, 0, width, height, null, 0, width);
+		
+		return new PixelBuffer(argb, 0, 0, width, height);
+		
+	}
+	
+	/**
+	 * Cria uma imagem sobre um buffer de pixels, sem copiar os pixels
+	 * 
+	 * @param pixels Os pixels da imagem inteira
+	 * 
+	 * @return A imagem ARGB que compartilha o vetor de pixels do buffer
+	 */
+	public static BufferedImage toImage(PixelBuffer pixels) {
+		
+		int width = pixels.getWidth();
+		int height = pixels.getHeight();
+		
+		DirectColorModel model = (DirectColorModel) ColorModel.getRGBdefault();
+		
+		WritableRaster raster = Raster.createPackedRaster(
+				new DataBufferInt(pixels.getPixels(), width * height), width,
+				height, width, model.getMasks(), null);
+		
+		return new BufferedImage(model, raster, false, null);
+	}
+	
 	/**
 	 * Retorna a altura da imagem
 	 * 
@@ -92,11 +328,15 @@ public class LoadImage {
 	}
 	
 	/**
-	 * Retorna a matriz de pixels obtida do arquivo de imagem
+	 * Retorna o buffer de pixels obtido do arquivo de imagem. No 
+	 * carregamento assíncrono os pixels só podem ser lidos após a conclusão
+	 * de {@link #rows(int, int)} ou {@link #pixelsAsync()}. O buffer de um
+	 * arquivo é compartilhado por {@link ImageCache} e não deve ser 
+	 * alterado
 	 * 
-	 * @return A matriz de pixels do arquivo de imagem
+	 * @return O buffer de pixels do arquivo de imagem
 	 */
-	public Color[][] getPixels() {
+	public PixelBuffer getPixels() {
 		return pixels;
 	}
 
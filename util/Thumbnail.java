@@ -0,0 +1,188 @@
+package quadtree.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>Cria miniaturas de arquivos de imagem.</p>
+ * 
+ * <p>A imagem é decodificada com subamostragem
+ * ({@link ImageReadParam#setSourceSubsampling(int, int, int, int)}), de
+ * modo que apenas as linhas e colunas necessárias à miniatura são
+ * decodificadas, e a decodificação é abortada se a thread que a realiza é
+ * interrompida.</p>
+ * 
+ * @author pedro
+ * 
+ */
+public class Thumbnail {
+	
+	/**
+	 * Não instanciável
+	 */
+	private Thumbnail() {
+	}
+	
+	/**
+	 * Cria a miniatura de um arquivo de imagem, mantendo a proporção da
+	 * imagem
+	 * 
+	 * @param file O arquivo de imagem
+	 * @param width A largura máxima da miniatura
+	 * @param height A altura máxima da miniatura
+	 * 
+	 * @return A miniatura ou null se o formato do arquivo não é suportado
+	 * 
+	 * @throws InterruptedIOException A thread foi interrompida durante a
+	 * 				decodificação
+	 * @throws IOException Erro ao ler o arquivo
+	 */
+	public static BufferedImage read(File file, int width, int height)
+			throws IOException {
+		
+		ImageInputStream iis = ImageIO.createImageInputStream(file);
+		
+		if(iis == null) return null;
+		
+		try {
+			
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			
+			if(!readers.hasNext()) return null;
+			
+			final ImageReader reader = readers.next();
+			
+			try {
+				
+				reader.setInput(iis, true, true);
+				
+				int w = reader.getWidth(0);
+				int h = reader.getHeight(0);
+				
+				//maior subamostragem que mantém a imagem maior que a
+				//miniatura
+				double ratio = Math.max((double) w / width,
+						(double) h / height);
+				int step = Math.max(1, (int) ratio);
+				
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				
+				//aborta a decodificação quando a thread é interrompida
+				reader.addIIOReadProgressListener(new AbortListener());
+				
+				BufferedImage image = reader.read(0, param);
+				
+				if(Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException(
+							"Miniatura cancelada: " + file);
+				}
+				
+				return scale(image, width, height);
+			
+			} finally {
+				reader.dispose();
+			}
+		
+		} finally {
+			iis.close();
+		}
+	
+	}
+	
+	/**
+	 * Reduz uma imagem para caber nas dimensões da miniatura, mantendo a
+	 * proporção
+	 * 
+	 * @param image A imagem
+	 * @param width A largura máxima da miniatura
+	 * @param height A altura máxima da miniatura
+	 * 
+	 * @return A imagem reduzida ou a própria imagem se ela já cabe na
+	 * 		   miniatura
+	 */
+	private static BufferedImage scale(BufferedImage image, int width,
+			int height) {
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		
+		if(w <= width && h <= height) return image;
+		
+		double scale = Math.min((double) width / w, (double) height / h);
+		
+		int tw = Math.max(1, (int) Math.round(w * scale));
+		int th = Math.max(1, (int) Math.round(h * scale));
+		
+		BufferedImage thumbnail = new BufferedImage(tw, th,
+				BufferedImage.TYPE_INT_ARGB);
+		
+		Graphics2D g2d = thumbnail.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.drawImage(image, 0, 0, tw, th, null);
+		g2d.dispose();
+		
+		return thumbnail;
+	
+	}
+	
+	/**
+	 * <p>Aborta a leitura da imagem quando a thread de leitura é
+	 * interrompida.</p>
+	 */
+	private static class AbortListener implements IIOReadProgressListener {
+		
+		@Override
+		public void imageProgress(ImageReader source, float percentageDone) {
+			if(Thread.currentThread().isInterrupted()) source.abort();
+		}
+		
+		@Override
+		public void sequenceStarted(ImageReader source, int minIndex) {
+		}
+		
+		@Override
+		public void sequenceComplete(ImageReader source) {
+		}
+		
+		@Override
+		public void imageStarted(ImageReader source, int imageIndex) {
+		}
+		
+		@Override
+		public void imageComplete(ImageReader source) {
+		}
+		
+		@Override
+		public void thumbnailStarted(ImageReader source, int imageIndex,
+				int thumbnailIndex) {
+		}
+		
+		@Override
+		public void thumbnailProgress(ImageReader source,
+				float percentageDone) {
+		}
+		
+		@Override
+		public void thumbnailComplete(ImageReader source) {
+		}
+		
+		@Override
+		public void readAborted(ImageReader source) {
+		}
+	
+	}
+
+}
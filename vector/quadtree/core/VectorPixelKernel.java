@@ -0,0 +1,204 @@
+package quadtree.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>Implementação vetorizada das operações sobre pixels, com a Vector 
+ * API.</p>
+ * 
+ * <p>Cada registrador contém um pixel ARGB por posição; os canais são 
+ * separados por deslocamentos e máscaras e acumulados em um registrador de
+ * inteiros por canal. Cada posição acumula no máximo 255 por pixel, de modo
+ * que os acumuladores são reduzidos para as somas de 64 bits a cada
+ * {@link #BLOCK} pixels por posição, antes de um estouro. Os pixels que não
+ * completam um registrador são processados um a um.</p>
+ * 
+ * <p>A classe depende do módulo <code>jdk.incubator.vector</code>, tanto na
+ * compilação quanto na execução, e por isso é compilada separadamente dos
+ * fontes principais, com <code>--add-modules jdk.incubator.vector</code> e
+ * as classes principais no classpath. Ela é opcional: {@link PixelKernel}
+ * a carrega por reflexão apenas se ela está no classpath.</p>
+ * 
+ * @author pedro
+ * 
+ */
+class VectorPixelKernel extends PixelKernel {
+	
+	/**
+	 * O tamanho preferido dos registradores na plataforma
+	 */
+	private static final VectorSpecies<Integer> SPECIES = 
+			IntVector.SPECIES_PREFERRED;
+	
+	/**
+	 * Número máximo de pixels acumulados por posição antes da redução
+	 */
+	private static final int BLOCK = Integer.MAX_VALUE / 255;
+	
+	@Override
+	public void sum(int pixels[], int offset, int length, long sums[]) {
+		
+		int lanes = SPECIES.length();
+		int end = offset + length;
+		int bound = offset + SPECIES.loopBound(length);
+		
+		int k = offset;
+		
+		while(k < bound) {
+			
+			IntVector r = IntVector.zero(SPECIES);
+			IntVector g = IntVector.zero(SPECIES);
+			IntVector b = IntVector.zero(SPECIES);
+			IntVector a = IntVector.zero(SPECIES);
+			
+			int limit = (int) Math.min(bound, k + (long) BLOCK * lanes);
+			
+			for(; k < limit; k += lanes) {
+				
+				IntVector c = IntVector.fromArray(SPECIES, pixels, k);
+				
+				r = r.add(c.lanewise(VectorOperators.LSHR, 16).and(0xff));
+				g = g.add(c.lanewise(VectorOperators.LSHR, 8).and(0xff));
+				b = b.add(c.and(0xff));
+				a = a.add(c.lanewise(VectorOperators.LSHR, 24));
+			}
+			
+			sums[0] += r.reduceLanesToLong(VectorOperators.ADD);
+			sums[1] += g.reduceLanesToLong(VectorOperators.ADD);
+			sums[2] += b.reduceLanesToLong(VectorOperators.ADD);
+			sums[3] += a.reduceLanesToLong(VectorOperators.ADD);
+		}
+		
+		for(; k < end; ++k) {
+			
+			int c = pixels[k];
+			
+			sums[0] += (c >> 16) & 0xff;
+			sums[1] += (c >> 8) & 0xff;
+			sums[2] += c & 0xff;
+			sums[3] += c >>> 24;
+		}
+	
+	}
+	
+	@Override
+	public int count(int pixels[], int offset, int length, int argb) {
+		
+		int lanes = SPECIES.length();
+		int end = offset + length;
+		int bound = offset + SPECIES.loopBound(length);
+		
+		int count = 0;
+		int k = offset;
+		
+		for(; k < bound; k += lanes) {
+			count += IntVector.fromArray(SPECIES, pixels, k)
+					.compare(VectorOperators.EQ, argb).trueCount();
+		}
+		
+		for(; k < end; ++k) {
+			if(pixels[k] == argb) count++;
+		}
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Compara o tempo das implementações escalar e vetorizada sobre uma
+	 * imagem gerada, uma linha por chamada, como na varredura das regiões.
+	 * 
+	 * <p>Uso: VectorPixelKernel [largura altura [passadas]], com uma imagem
+	 * de 3000 x 2500 pixels e 20 passadas por padrão. Cada passada soma os 
+	 * canais e conta os pixels iguais ao primeiro pixel de cada linha; o 
+	 * tempo apresentado é a média das passadas, após 5 passadas de 
+	 * aquecimento.</p>
+	 * 
+	 * @param args A largura e a altura da imagem e o número de passadas
+	 */
+	public static void main(String[] args) {
+		
+		int width = args.length >= 2 ? Integer.parseInt(args[0]) : 3000;
+		int height = args.length >= 2 ? Integer.parseInt(args[1]) : 2500;
+		int passes = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+		
+		//regiões de cor uniforme com ruído, como em uma fotografia
+		int pixels[] = new int[width * height];
+		Random random = new Random(1);
+		
+		for(int i = 0; i < height; ++i) {
+			for(int j = 0; j < width; ++j) {
+				
+				int base = ((i / 64) * 31 + (j / 64) * 17) * 0x010203;
+				int noise = random.nextInt(4) == 0 ? random.nextInt(8) : 0;
+				
+				pixels[i * width + j] = 0xff000000 | (base + noise) & 0xffffff;
+			}
+		}
+		
+		PixelKernel.setVectorized(false);
+		PixelKernel scalar = PixelKernel.getInstance();
+		PixelKernel vector = new VectorPixelKernel();
+		
+		long scalarResult[] = new long[5];
+		long vectorResult[] = new long[5];
+		
+		double scalarMillis = benchmark(scalar, pixels, width, height, 
+				passes, scalarResult);
+		double vectorMillis = benchmark(vector, pixels, width, height, 
+				passes, vectorResult);
+		
+		System.out.printf("Imagem %d x %d, %d passadas, %d posições por "
+				+ "registrador%n", width, height, passes, SPECIES.length());
+		System.out.printf("escalar:    %.2f ms por passada%n", scalarMillis);
+		System.out.printf("vetorizada: %.2f ms por passada (%.1fx)%n", 
+				vectorMillis, scalarMillis / vectorMillis);
+		System.out.println("Resultados iguais: " + 
+				Arrays.equals(scalarResult, vectorResult));
+	
+	}
+	
+	/**
+	 * Mede o tempo médio de uma passada de uma implementação sobre a imagem
+	 * 
+	 * @param kernel A implementação
+	 * @param pixels Os pixels da imagem
+	 * @param width A largura da imagem
+	 * @param height A altura da imagem
+	 * @param passes O número de passadas medidas
+	 * @param result As somas dos canais e o número de pixels iguais ao 
+	 * 				 primeiro pixel de cada linha, da última passada
+	 * 
+	 * @return O tempo médio de uma passada em milissegundos
+	 */
+	private static double benchmark(PixelKernel kernel, int pixels[], 
+			int width, int height, int passes, long result[]) {
+		
+		long start = System.nanoTime();
+		
+		for(int pass = -5; pass < passes; ++pass) {
+			
+			//fim do aquecimento
+			if(pass == 0) start = System.nanoTime();
+			
+			Arrays.fill(result, 0);
+			
+			for(int i = 0; i < height; ++i) {
+				
+				int offset = i * width;
+				
+				kernel.sum(pixels, offset, width, result);
+				result[4] += kernel.count(pixels, offset, width, 
+						pixels[offset]);
+			}
+		}
+		
+		return (System.nanoTime() - start) / 1e6 / Math.max(1, passes);
+	}
+
+}